@@ -0,0 +1,212 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsAlphabet;
+import org.marre.sms.SmsConcatRefAllocator;
+import org.marre.sms.SmsException;
+import org.marre.sms.SmsMsgClass;
+import org.marre.sms.SmsPdu;
+import org.marre.sms.SmsTextMessage;
+import org.marre.sms.StripedConcatRefAllocator;
+import org.marre.sms.transport.gsm.GsmEncoder;
+import org.marre.sms.transport.gsm.GsmPduTemplate;
+import org.marre.sms.transport.ucp.UcpSubmitTemplate;
+import org.marre.sms.transport.ucp.UcpTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sends one message to a list of 1M recipients, encoding every recipient
+ * from scratch compared to encoding once and only patching the destination.
+ * <p>
+ * The score is recipients per second. The recipient list cycles over a
+ * smaller set of addresses to keep the heap small.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark
+{
+    private static final int RECIPIENTS = 1000000;
+    private static final int ADDRESSES = 10000;
+
+    /**
+     * The message, a single GSM SMS or a 3 part 8-bit message (the two
+     * kinds that UcpTransport supports).
+     */
+    @Param({"gsm", "latin1"})
+    public String message;
+
+    private SmsTextMessage msg_;
+    private SmsAddress[] addresses_;
+    private SmsAddress sender_;
+    private ByteBuffer buf_;
+    private UcpTransport ucp_;
+
+    @Setup
+    public void setup() throws SmsException
+    {
+        int length = "gsm".equals(message) ? 100 : 300;
+        String sample = Corpora.MARKETING[0];
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length)
+        {
+            sb.append(sample.charAt(sb.length() % sample.length()));
+        }
+
+        SmsAlphabet alphabet = "gsm".equals(message) ? SmsAlphabet.GSM : SmsAlphabet.LATIN1;
+        msg_ = new SmsTextMessage(sb.toString(), alphabet, SmsMsgClass.CLASS_UNKNOWN);
+        msg_.setRefAllocator(new StripedConcatRefAllocator());
+
+        addresses_ = new SmsAddress[ADDRESSES];
+        for (int i = 0; i < ADDRESSES; i++)
+        {
+            addresses_[i] = new SmsAddress("+4670" + (1000000 + i * 37));
+        }
+
+        sender_ = new SmsAddress("46701111111");
+        buf_ = ByteBuffer.allocate(GsmEncoder.MAX_PDU_SIZE);
+        ucp_ = new UcpTransport();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECIPIENTS)
+    public int gsmPerRecipient() throws SmsException
+    {
+        int n = 0;
+        for (int i = 0; i < RECIPIENTS; i++)
+        {
+            SmsAddress dest = addresses_[i % ADDRESSES];
+            for (SmsPdu pdu : msg_.getPdus(dest))
+            {
+                buf_.clear();
+                n += GsmEncoder.encodePdu(pdu, dest, sender_, buf_);
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECIPIENTS)
+    public int gsmTemplate() throws SmsException
+    {
+        GsmPduTemplate[][] templates = new GsmPduTemplate[2][];
+        int n = 0;
+        for (int i = 0; i < RECIPIENTS; i++)
+        {
+            SmsAddress dest = addresses_[i % ADDRESSES];
+            int refno = msg_.allocateRef(dest);
+            int refType = ((refno >= 0) && ((refno & SmsConcatRefAllocator.REF_16BIT) != 0)) ? 1 : 0;
+            if (templates[refType] == null)
+            {
+                templates[refType] = GsmPduTemplate.create(msg_.getPdusWithRef(refno));
+            }
+
+            for (GsmPduTemplate template : templates[refType])
+            {
+                buf_.clear();
+                n += template.encode(dest, refno, buf_);
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECIPIENTS)
+    public int ucpPerRecipient() throws SmsException
+    {
+        int n = 0;
+        for (int i = 0; i < RECIPIENTS; i++)
+        {
+            SmsAddress dest = addresses_[i % ADDRESSES];
+            SmsPdu[] pdus = msg_.getPdus(dest);
+            for (int j = 0; j < pdus.length; j++)
+            {
+                n += ucp_.buildSubmit(pdus[j], j < pdus.length - 1, dest, sender_).length;
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECIPIENTS)
+    public int ucpTemplate() throws SmsException
+    {
+        UcpSubmitTemplate[][] templates = new UcpSubmitTemplate[2][];
+        int n = 0;
+        for (int i = 0; i < RECIPIENTS; i++)
+        {
+            SmsAddress dest = addresses_[i % ADDRESSES];
+            int refno = msg_.allocateRef(dest);
+            int refType = ((refno >= 0) && ((refno & SmsConcatRefAllocator.REF_16BIT) != 0)) ? 1 : 0;
+            if (templates[refType] == null)
+            {
+                SmsPdu[] pdus = msg_.getPdusWithRef(refno);
+                templates[refType] = new UcpSubmitTemplate[pdus.length];
+                for (int j = 0; j < pdus.length; j++)
+                {
+                    templates[refType][j] = ucp_.buildSubmitTemplate(pdus[j], j < pdus.length - 1, sender_);
+                }
+            }
+
+            for (UcpSubmitTemplate template : templates[refType])
+            {
+                n += template.getCommand(dest, refno).length;
+            }
+        }
+        return n;
+    }
+}
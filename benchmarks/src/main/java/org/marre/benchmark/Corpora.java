@@ -0,0 +1,91 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.benchmark;
+
+/**
+ * Sample messages used by the benchmarks.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+final class Corpora
+{
+    /** Short one time password messages. */
+    static final String[] OTP = {
+        "Your verification code is 482913. It expires in 10 minutes.",
+        "Use 771204 to log in. Never share this code with anyone.",
+        "Code: 1193. Do not reply to this message.",
+        "Your one-time password for payment of EUR 49.90 is 605118.",
+        "G-552871 is your confirmation code.",
+        "Bekräftelsekod: 309912. Giltig i 5 minuter.",
+        "Votre code de sécurité est 884120.",
+        "Ihr Bestätigungscode lautet 120044. Gültig für 15 Minuten.",
+    };
+
+    /** Longer campaign messages, most of them concatenated. */
+    static final String[] MARKETING = {
+        "Summer sale! Get 30% off everything in store and online this weekend only. "
+            + "Show this message at the checkout or use code SUMMER30 online. "
+            + "Reply STOP to opt out.",
+        "Dear customer, your monthly plan has been renewed. You have 10 GB of data, "
+            + "unlimited calls and 500 SMS until the 30th. Top up at any of our stores "
+            + "or in the app. Questions? Call 555 0100 (free of charge).",
+        "Från och med måndag har vi nya öppettider: 08-20 på vardagar och 10-16 på "
+            + "helger. Välkommen in! Svara STOPP för att avsluta utskicken.",
+        "Black Friday deals are live {members only}: 2 for 1 on all [selected] items, "
+            + "plus free delivery on orders over €50. Offer ends at midnight ~ hurry! "
+            + "Terms apply, see shop.example.com/terms for details.",
+        "Hola! Tu pedido nº 44912 está en camino y llegará mañana entre las 9 y las 14. "
+            + "Puedes seguir el envío en la app. ¿Necesitas cambiar la entrega? Responde CAMBIAR.",
+    };
+
+    /**
+     * Repeats the sample until the text is length chars long.
+     */
+    static String repeat(String sample, int length)
+    {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length)
+        {
+            sb.append(sample.charAt(sb.length() % sample.length()));
+        }
+        return sb.toString();
+    }
+
+    private Corpora()
+    {
+        // Constants only
+    }
+}
@@ -0,0 +1,154 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.marre.sms.SmsPduUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the table driven GSM charset lookup with the linear scan that
+ * SmsPduUtil used to do.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GsmCharsetBenchmark
+{
+    @Param({"otp", "marketing"})
+    public String corpus;
+
+    private String[] messages_;
+
+    @Setup
+    public void setup()
+    {
+        messages_ = "otp".equals(corpus) ? Corpora.OTP : Corpora.MARKETING;
+    }
+
+    @Benchmark
+    public int linearScanEncode()
+    {
+        int n = 0;
+        for (String msg : messages_)
+        {
+            n += legacyGetSeptets(msg).length;
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int tableEncode()
+    {
+        int n = 0;
+        for (String msg : messages_)
+        {
+            n += SmsPduUtil.getSeptets(msg).length;
+        }
+        return n;
+    }
+
+    /**
+     * The septet packing as it was done before the reverse lookup table.
+     */
+    private static byte[] legacyGetSeptets(String msg)
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(140);
+        int data = 0;
+        int nBits = 0;
+
+        for (int i = 0; i < msg.length(); i++)
+        {
+            byte gsmChar = legacyToGsmCharset(msg.charAt(i));
+
+            data |= (gsmChar << nBits);
+            nBits += 7;
+
+            while (nBits >= 8)
+            {
+                baos.write((char) (data & 0xff));
+
+                data >>>= 8;
+                nBits -= 8;
+            }
+        }
+
+        if (nBits > 0)
+        {
+            baos.write(data);
+        }
+
+        return baos.toByteArray();
+    }
+
+    private static byte legacyToGsmCharset(char ch)
+    {
+        for (int i = 0; i < SmsPduUtil.GSM_DEFAULT_ALPHABET_TABLE.length; i++)
+        {
+            if (SmsPduUtil.GSM_DEFAULT_ALPHABET_TABLE[i] == ch)
+            {
+                return (byte) i;
+            }
+        }
+
+        for (int i = 0; i < SmsPduUtil.GSM_DEFAULT_ALPHABET_ALTERNATIVES.length / 2; i += 2)
+        {
+            if (SmsPduUtil.GSM_DEFAULT_ALPHABET_ALTERNATIVES[i * 2] == ch)
+            {
+                return (byte) (SmsPduUtil.GSM_DEFAULT_ALPHABET_ALTERNATIVES[i * 2 + 1] & 0x7f);
+            }
+        }
+
+        return '?';
+    }
+}
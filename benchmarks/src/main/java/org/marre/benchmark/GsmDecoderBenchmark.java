@@ -0,0 +1,156 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsAlphabet;
+import org.marre.sms.SmsException;
+import org.marre.sms.SmsMsgClass;
+import org.marre.sms.SmsPdu;
+import org.marre.sms.SmsTextMessage;
+import org.marre.sms.transport.gsm.GsmDecoder;
+import org.marre.sms.transport.gsm.GsmEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decodes received SMS-DELIVER pdus, with and without extracting the text.
+ * <p>
+ * The pdus are the segments of the marketing corpus, as a GSM modem
+ * would return them from AT+CMGL. The score is pdus per second.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GsmDecoderBenchmark
+{
+    private static final int PDUS = 1024;
+
+    /** TP-SCTS 2024-05-06 07:08:09 +02:00 */
+    private static final byte[] SCTS = {0x42, 0x50, 0x60, 0x70, (byte) 0x80, (byte) 0x90, (byte) 0x80};
+
+    @Param({"gsm", "ucs2"})
+    public String alphabet;
+
+    private byte[][] pdus_;
+
+    @Setup
+    public void setup() throws SmsException
+    {
+        SmsAlphabet smsAlphabet = "gsm".equals(alphabet) ? SmsAlphabet.GSM : SmsAlphabet.UCS2;
+        SmsAddress originator = new SmsAddress("+46701234567");
+        SmsAddress sender = new SmsAddress("+46709876543");
+        ByteBuffer buf = ByteBuffer.allocate(256);
+
+        pdus_ = new byte[PDUS][];
+        int n = 0;
+        while (n < PDUS)
+        {
+            for (int i = 0; (i < Corpora.MARKETING.length) && (n < PDUS); i++)
+            {
+                SmsTextMessage msg = new SmsTextMessage(Corpora.MARKETING[i], smsAlphabet, SmsMsgClass.CLASS_UNKNOWN);
+                SmsPdu[] smsPdus = msg.getPdus();
+                for (int j = 0; (j < smsPdus.length) && (n < PDUS); j++)
+                {
+                    pdus_[n++] = toDeliver(GsmEncoder.encodePdu(smsPdus[j], originator, sender), buf);
+                }
+            }
+        }
+    }
+
+    /**
+     * Turns an encoded SMS-SUBMIT into the SMS-DELIVER the recipient gets.
+     */
+    private static byte[] toDeliver(byte[] submit, ByteBuffer buf)
+    {
+        int addressEnd = 2 + 2 + ((submit[2] & 0xff) + 1) / 2;
+
+        buf.clear();
+        // TP-MTI = DELIVER, TP-MMS = no more messages, TP-UDHI as submitted
+        buf.put((byte) (0x04 | (submit[0] & 0x40)));
+        // TP-OA is encoded as TP-DA
+        buf.put(submit, 2, addressEnd - 2);
+        // TP-PID, TP-DCS
+        buf.put(submit, addressEnd, 2);
+        buf.put(SCTS);
+        // TP-UDL, TP-UD
+        buf.put(submit, addressEnd + 2, submit.length - addressEnd - 2);
+
+        byte[] deliver = new byte[buf.position()];
+        buf.flip();
+        buf.get(deliver);
+        return deliver;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PDUS)
+    public void decode(Blackhole bh) throws SmsException
+    {
+        for (int i = 0; i < PDUS; i++)
+        {
+            bh.consume(GsmDecoder.decodePdu(pdus_[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PDUS)
+    public void decodeText(Blackhole bh) throws SmsException
+    {
+        for (int i = 0; i < PDUS; i++)
+        {
+            bh.consume(GsmDecoder.decodePdu(pdus_[i]).getText());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsAlphabet;
+import org.marre.sms.SmsException;
+import org.marre.sms.SmsMsgClass;
+import org.marre.sms.SmsPdu;
+import org.marre.sms.SmsTextMessage;
+import org.marre.sms.transport.gsm.GsmEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encodes the pdus of a message as SMS-SUBMIT with GsmEncoder, into new
+ * arrays and into a reused buffer.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GsmEncoderBenchmark
+{
+    @Param({"GSM", "UCS2"})
+    public SmsAlphabet alphabet;
+
+    @Param({"160", "400"})
+    public int length;
+
+    private SmsPdu[] pdus_;
+    private SmsAddress destination_;
+    private SmsAddress sender_;
+    private ByteBuffer buf_;
+
+    @Setup
+    public void setup() throws SmsException
+    {
+        String text = Corpora.repeat(Corpora.MARKETING[1], length);
+        pdus_ = new SmsTextMessage(text, alphabet, SmsMsgClass.CLASS_UNKNOWN).getPdus();
+        destination_ = new SmsAddress("+46701234567");
+        sender_ = new SmsAddress("+46709876543");
+        buf_ = ByteBuffer.allocate(256);
+    }
+
+    @Benchmark
+    public void encodePdu(Blackhole bh) throws SmsException
+    {
+        for (SmsPdu pdu : pdus_)
+        {
+            bh.consume(GsmEncoder.encodePdu(pdu, destination_, sender_));
+        }
+    }
+
+    @Benchmark
+    public void encodePduToBuffer(Blackhole bh) throws SmsException
+    {
+        for (SmsPdu pdu : pdus_)
+        {
+            buf_.clear();
+            bh.consume(GsmEncoder.encodePdu(pdu, destination_, sender_, buf_));
+        }
+    }
+}
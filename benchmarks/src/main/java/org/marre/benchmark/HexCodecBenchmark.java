@@ -0,0 +1,135 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.marre.util.HexCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hex codes a pdu, comparing the old Integer.toHexString/parseInt based
+ * StringUtil code with HexCodec.
+ * <p>
+ * The default size is a full SMS-SUBMIT pdu with a SC address, as sent
+ * with AT+CMGS.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HexCodecBenchmark
+{
+    @Param({"160"})
+    public int size;
+
+    private byte[] data_;
+    private String hex_;
+    private byte[] ascii_;
+
+    @Setup
+    public void setup()
+    {
+        data_ = new byte[size];
+        new Random(42).nextBytes(data_);
+        hex_ = HexCodec.encode(data_, 0, data_.length);
+        ascii_ = new byte[size * 2];
+    }
+
+    @Benchmark
+    public String encodeLegacy()
+    {
+        StringBuilder hexStrBuff = new StringBuilder(data_.length * 2);
+
+        for (int i = 0; i < data_.length; i++) {
+            String hexByteStr = Integer.toHexString(data_[i] & 0xff).toUpperCase();
+            if (hexByteStr.length() == 1) {
+                hexStrBuff.append("0");
+            }
+            hexStrBuff.append(hexByteStr);
+        }
+
+        return hexStrBuff.toString();
+    }
+
+    @Benchmark
+    public String encodeString()
+    {
+        return HexCodec.encode(data_, 0, data_.length);
+    }
+
+    @Benchmark
+    public byte[] encodeAscii()
+    {
+        HexCodec.encode(data_, 0, data_.length, ascii_, 0);
+        return ascii_;
+    }
+
+    @Benchmark
+    public byte[] decodeLegacy()
+    {
+        byte[] data = new byte[hex_.length() / 2];
+
+        for (int i = 0; i < data.length; i++)
+        {
+            String a = hex_.substring(i * 2, i * 2 + 2);
+            data[i] = (byte) Integer.parseInt(a, 16);
+        }
+
+        return data;
+    }
+
+    @Benchmark
+    public byte[] decode()
+    {
+        return HexCodec.decode(hex_);
+    }
+}
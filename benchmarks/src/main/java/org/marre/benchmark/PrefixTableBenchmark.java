@@ -0,0 +1,154 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.marre.sms.SmsException;
+import org.marre.sms.transport.SmsPrefixTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Longest prefix lookups of destination numbers, comparing SmsPrefixTable
+ * with probing a HashMap once per prefix length.
+ * <p>
+ * The numbers are 2M random 11 digit MSISDNs, so the lookups miss the CPU
+ * caches like they do with real traffic. The score is lookups per second.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class PrefixTableBenchmark
+{
+    private static final int NUMBERS = 1 << 21;
+    private static final int BATCH = 1024;
+
+    @Param({"50000"})
+    public int prefixes;
+
+    private String[] numbers_;
+    private SmsPrefixTable table_;
+    private Map<String, SmsPrefixTable.Entry> map_;
+    private int maxPrefixLength_;
+    private int next_;
+
+    @Setup
+    public void setup() throws SmsException
+    {
+        Random random = new Random(42);
+
+        // Country codes with operator and number range prefixes below them
+        map_ = new HashMap<String, SmsPrefixTable.Entry>();
+        while (map_.size() < prefixes)
+        {
+            String prefix = randomDigits(random, 2 + random.nextInt(6));
+            map_.put(prefix, new SmsPrefixTable.Entry(prefix, "route" + random.nextInt(4), 240, random.nextInt(20)));
+            maxPrefixLength_ = Math.max(maxPrefixLength_, prefix.length());
+        }
+        table_ = new SmsPrefixTable(map_.values());
+
+        numbers_ = new String[NUMBERS];
+        for (int i = 0; i < NUMBERS; i++)
+        {
+            numbers_[i] = randomDigits(random, 11);
+        }
+    }
+
+    private static String randomDigits(Random random, int length)
+    {
+        char[] digits = new char[length];
+        for (int i = 0; i < length; i++)
+        {
+            digits[i] = (char) ('0' + random.nextInt(10));
+        }
+        return new String(digits);
+    }
+
+    private int nextBatch()
+    {
+        int start = next_;
+        next_ = (start + BATCH) & (NUMBERS - 1);
+        return start;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void trie(Blackhole bh)
+    {
+        int start = nextBatch();
+        for (int i = start; i < start + BATCH; i++)
+        {
+            bh.consume(table_.lookup(numbers_[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void hashMap(Blackhole bh)
+    {
+        int start = nextBatch();
+        for (int i = start; i < start + BATCH; i++)
+        {
+            String number = numbers_[i];
+            SmsPrefixTable.Entry entry = null;
+            for (int length = Math.min(number.length(), maxPrefixLength_); length > 0 && entry == null; length--)
+            {
+                entry = map_.get(number.substring(0, length));
+            }
+            bh.consume(entry);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.marre.sms.SeptetCodec;
+import org.marre.sms.SmsPduUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the block based septet packing in SeptetCodec with the stream
+ * based writeSeptets/readSeptets in SmsPduUtil.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeptetPackingBenchmark
+{
+    @Param({"1", "160", "1600"})
+    public int length;
+
+    private String text_;
+    private int nSeptets_;
+    private byte[] septets_;
+    private char[] chars_;
+    private ByteArrayOutputStream baos_;
+
+    @Setup
+    public void setup()
+    {
+        String sample = Corpora.MARKETING[0];
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length)
+        {
+            sb.append(sample.charAt(sb.length() % sample.length()));
+        }
+
+        text_ = sb.toString();
+        nSeptets_ = SmsPduUtil.getSeptetCount(text_);
+        septets_ = SmsPduUtil.getSeptets(text_);
+        chars_ = new char[nSeptets_];
+        baos_ = new ByteArrayOutputStream(septets_.length);
+    }
+
+    @Benchmark
+    public int streamPack() throws IOException
+    {
+        baos_.reset();
+        SmsPduUtil.writeSeptets(baos_, text_);
+        return baos_.size();
+    }
+
+    @Benchmark
+    public int blockPack()
+    {
+        return SeptetCodec.encode(text_, septets_, 0);
+    }
+
+    @Benchmark
+    public String streamUnpack() throws IOException
+    {
+        return SmsPduUtil.readSeptets(new ByteArrayInputStream(septets_), nSeptets_);
+    }
+
+    @Benchmark
+    public int blockUnpack()
+    {
+        return SeptetCodec.decode(septets_, 0, nSeptets_, chars_, 0);
+    }
+}
@@ -0,0 +1,117 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.marre.sms.SmsPduUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The septet and BCD codecs in SmsPduUtil, as used for every GSM pdu and
+ * address.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmsPduUtilBenchmark
+{
+    @Param({"160"})
+    public int length;
+
+    private String text_;
+    private byte[] septets_;
+    private int nSeptets_;
+    private String number_;
+    private byte[] bcd_;
+    private ByteBuffer buf_;
+
+    @Setup
+    public void setup()
+    {
+        text_ = Corpora.repeat(Corpora.MARKETING[0], length);
+        septets_ = SmsPduUtil.getSeptets(text_);
+        nSeptets_ = SmsPduUtil.getSeptetCount(text_);
+
+        number_ = "46701234567";
+        buf_ = ByteBuffer.allocate(16);
+        SmsPduUtil.writeBcdNumber(buf_, number_);
+        bcd_ = new byte[buf_.position()];
+        System.arraycopy(buf_.array(), 0, bcd_, 0, bcd_.length);
+    }
+
+    @Benchmark
+    public byte[] getSeptets()
+    {
+        return SmsPduUtil.getSeptets(text_);
+    }
+
+    @Benchmark
+    public String readSeptets()
+    {
+        return SmsPduUtil.readSeptets(septets_, nSeptets_);
+    }
+
+    @Benchmark
+    public int writeBcdNumber()
+    {
+        buf_.clear();
+        SmsPduUtil.writeBcdNumber(buf_, number_);
+        return buf_.position();
+    }
+
+    @Benchmark
+    public String readBcdNumber()
+    {
+        return SmsPduUtil.readBcdNumber(bcd_, 0, bcd_.length);
+    }
+}
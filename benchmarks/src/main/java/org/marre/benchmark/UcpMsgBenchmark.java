@@ -0,0 +1,113 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.marre.sms.SmsPduUtil;
+import org.marre.sms.transport.ucp.UcpSeries50;
+import org.marre.util.StringUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds the text of an UCP 51 submit with UcpMsg.buildCommand().
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UcpMsgBenchmark
+{
+    @Param({"160"})
+    public int length;
+
+    private UcpSeries50 submit_;
+
+    /**
+     * Sets the fields like UcpTransport does for an 8-bit message with an
+     * UDH, the field constants are protected.
+     */
+    private static final class Submit extends UcpSeries50
+    {
+        Submit(String text)
+        {
+            super(OP_SUBMIT_SHORT_MESSAGE);
+
+            setTRN(1);
+            setField(FIELD_ADC, "46701234567");
+            setField(FIELD_OTOA, "1139");
+            setField(FIELD_OADC, "46709876543");
+            setField(FIELD_MT, "4");
+            byte[] data = SmsPduUtil.toGsmCharset(text);
+            setField(FIELD_NB, StringUtil.intToString(data.length * 8, 4));
+            setField(FIELD_MSG, StringUtil.bytesToHexString(data));
+            addXSer(XSER_TYPE_UDH, new byte[] {0x05, 0x00, 0x03, 0x2A, 0x02, 0x01});
+            addXSer(XSER_TYPE_DCS, (byte) 0xF5);
+        }
+    }
+
+    @Setup
+    public void setup()
+    {
+        submit_ = new Submit(Corpora.repeat(Corpora.MARKETING[1], length).substring(0, Math.min(length, 134)));
+    }
+
+    @Benchmark
+    public String buildCommand()
+    {
+        return submit_.buildCommand();
+    }
+
+    @Benchmark
+    public byte[] getCommand()
+    {
+        return submit_.getCommand();
+    }
+}
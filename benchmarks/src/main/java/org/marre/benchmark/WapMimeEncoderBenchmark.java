@@ -0,0 +1,113 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.marre.mime.MimeBodyPart;
+import org.marre.mime.MimeFactory;
+import org.marre.mime.MimeMultipartRelated;
+import org.marre.wap.WapMimeEncoder;
+import org.marre.wap.WspEncodingVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * WSP encodes a multipart/related message, a text part and an image, the
+ * way the body of an MMS is encoded.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WapMimeEncoderBenchmark
+{
+    @Param({"1024", "30720"})
+    public int imageSize;
+
+    private String text_;
+    private byte[] image_;
+    private ByteArrayOutputStream baos_;
+
+    @Setup
+    public void setup()
+    {
+        text_ = Corpora.MARKETING[1];
+        image_ = new byte[imageSize];
+        new Random(42).nextBytes(image_);
+        baos_ = new ByteArrayOutputStream(imageSize + 1024);
+    }
+
+    @Benchmark
+    public int encodeMultipart() throws IOException
+    {
+        // writeBody() converts the content type of the message, so a new
+        // message is needed each time
+        MimeMultipartRelated multipart = new MimeMultipartRelated();
+
+        MimeBodyPart text = MimeFactory.createTextBodyPart(text_);
+        text.setContentId("<text>");
+        multipart.addBodyPart(text);
+
+        MimeBodyPart image = MimeFactory.createBinaryBodyPart(image_, "image/jpeg");
+        image.setContentId("<image>");
+        image.setContentLocation("image.jpg");
+        multipart.addBodyPart(image);
+
+        WapMimeEncoder encoder = new WapMimeEncoder(WspEncodingVersion.VERSION_1_2);
+        baos_.reset();
+        encoder.writeContentType(baos_, multipart);
+        encoder.writeHeaders(baos_, multipart);
+        encoder.writeBody(baos_, multipart);
+        return baos_.size();
+    }
+}
@@ -0,0 +1,114 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.marre.wap.nokia.NokiaOtaBrowserSettings;
+import org.marre.wap.push.WapSIPush;
+import org.marre.wap.push.WapSLPush;
+import org.marre.wap.wbxml.WbxmlDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes SI, SL and Nokia OTA browser settings documents with WbxmlWriter.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WbxmlWriterBenchmark
+{
+    @Param({"si", "sl", "ota"})
+    public String document;
+
+    private WbxmlDocument doc_;
+    private ByteArrayOutputStream baos_;
+
+    @Setup
+    public void setup()
+    {
+        doc_ = createDocument(document);
+        baos_ = new ByteArrayOutputStream(256);
+    }
+
+    static WbxmlDocument createDocument(String document)
+    {
+        if ("si".equals(document))
+        {
+            WapSIPush si = new WapSIPush("http://www.example.com/email/123/abc.wml", "You have 4 new e-mails");
+            si.setId("email123");
+            return si;
+        }
+        else if ("sl".equals(document))
+        {
+            WapSLPush sl = new WapSLPush("http://www.example.com/ppaid/123/abc.wml");
+            sl.setAction(WapSLPush.ACTION_EXECUTE_HIGH);
+            return sl;
+        }
+        else
+        {
+            NokiaOtaBrowserSettings ota = new NokiaOtaBrowserSettings();
+            ota.addBookmark("Example", "http://wap.example.com");
+            ota.addBookmark("News", "http://wap.example.com/news");
+            return ota;
+        }
+    }
+
+    @Benchmark
+    public int write() throws IOException
+    {
+        baos_.reset();
+        doc_.writeXmlTo(doc_.getWbxmlWriter(baos_));
+        return baos_.size();
+    }
+}
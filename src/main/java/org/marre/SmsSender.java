@@ -37,12 +37,18 @@ package org.marre;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Properties;
+import java.util.concurrent.Future;
 
 import org.marre.sms.*;
 import org.marre.sms.MwiType;
 import org.marre.sms.SmsMwiMessage;
+import org.marre.sms.transport.SmsAsyncTransport;
+import org.marre.sms.transport.SmsAsyncTransportAdapter;
+import org.marre.sms.transport.SmsBroadcastException;
+import org.marre.sms.transport.SmsBroadcastTransport;
 import org.marre.sms.transport.SmsTransport;
 import org.marre.sms.transport.SmsTransportManager;
+import org.marre.sms.transport.clickatell.ClickatellTransport;
 import org.marre.wap.nokia.NokiaOtaBrowserSettings;
 import org.marre.wap.push.SmsMmsNotificationMessage;
 import org.marre.wap.push.SmsWapPushMessage;
@@ -92,6 +98,16 @@ public class SmsSender
      */
     protected SmsTransport transport_;
 
+    /**
+     * Used by the async methods, created when it is first needed.
+     */
+    private SmsAsyncTransport asyncTransport_;
+
+    /**
+     * If text messages may use national language shift tables.
+     */
+    private boolean autoNationalLanguageShift_;
+
     /**
      * Creates a SmsSender object by using the given transport and properties.
      * <p>
@@ -100,12 +116,45 @@ public class SmsSender
      * @param transport
      *            Classname of the SmsTransport class
      * @param props
-     *            Properties to initialize the transport with
+     *            Properties to initialize the transport with <br>
+     *            <b>smsj.sender.nationallanguageshift</b>: true if text
+     *            messages may use national language shift tables, default
+     *            true except for the ClickatellTransport that can't send
+     *            7-bit text with a UDH
      * @throws SmsException
      */
     public SmsSender(String transport, Properties props) throws SmsException
     {
         transport_ = SmsTransportManager.getTransport(transport, props);
+
+        String defaultShift = String.valueOf(!(transport_ instanceof ClickatellTransport));
+        autoNationalLanguageShift_ = Boolean.valueOf(
+                props.getProperty("smsj.sender.nationallanguageshift", defaultShift).trim()).booleanValue();
+    }
+
+    /**
+     * Lets text messages use national language shift tables or not.
+     * 
+     * @param autoNationalLanguageShift
+     *            false if the transport can't send 7-bit text with a UDH
+     * @see SmsTextMessage#setAutoNationalLanguageShift(boolean)
+     */
+    public void setAutoNationalLanguageShift(boolean autoNationalLanguageShift)
+    {
+        autoNationalLanguageShift_ = autoNationalLanguageShift;
+    }
+
+    /**
+     * Creates a text message that chooses the alphabet from the text.
+     */
+    private SmsTextMessage createTextMessage(String text)
+    {
+        SmsTextMessage textMessage = new SmsTextMessage(text, SmsMsgClass.CLASS_UNKNOWN);
+        if (!autoNationalLanguageShift_)
+        {
+            textMessage.setAutoNationalLanguageShift(false);
+        }
+        return textMessage;
     }
 
     /**
@@ -249,7 +298,8 @@ public class SmsSender
      * Sends an ordinary SMS to the given recipient.
      * 
      * There is no limit on the number of concatenated SMS that this message will
-     * use. It will send the message with the GSM charset (Max 160 chars/SMS).
+     * use. It will send the message with the GSM charset (Max 160 chars/SMS) if
+     * possible, otherwise with the UCS2 charset (Max 70 chars/SMS).
      * 
      * @param text Message to send
      * @param dest Destination number (international format without leading +).
@@ -263,15 +313,37 @@ public class SmsSender
      */
     public String sendTextSms(String text, String dest, String sender) throws SmsException, IOException
     {
-        SmsTextMessage textMessage = new SmsTextMessage(text, SmsAlphabet.GSM, SmsMsgClass.CLASS_UNKNOWN);
+        SmsTextMessage textMessage = createTextMessage(text);
         return sendSms(textMessage, dest, sender);
     }
 
+    /**
+     * Queues an ordinary SMS for sending to the given recipient.
+     * 
+     * Same as sendTextSms(String, String, String), but returns without waiting
+     * for the SMSC. See sendSmsAsync(SmsMessage, String, String).
+     * 
+     * @param text Message to send
+     * @param dest Destination number (international format without leading +).
+     * @param sender Sender number (international format without leading +). Can also be an alphanumerical string like
+     *               "SMSJ". This is property is not supported by all transports.
+     *            
+     * @return A future with a local message id for each segment.
+     * 
+     * @throws SmsException
+     */
+    public Future<String[]> sendTextSmsAsync(String text, String dest, String sender) throws SmsException
+    {
+        SmsTextMessage textMessage = createTextMessage(text);
+        return sendSmsAsync(textMessage, dest, sender);
+    }
+
     /**
      * Sends an ordinary SMS to the given recipient.
      * 
      * There is no limit on the number of concatenated SMS that this message will
-     * use. It will send the message with the GSM charset (Max 160 chars/SMS).
+     * use. It will send the message with the GSM charset (Max 160 chars/SMS) if
+     * possible, otherwise with the UCS2 charset (Max 70 chars/SMS).
      * 
      * @param text Message to send
      * @param dest Destination number (international format without leading +).
@@ -283,7 +355,7 @@ public class SmsSender
      */
     public String sendTextSms(String text, String dest) throws SmsException, IOException
     {
-        SmsTextMessage textMessage = new SmsTextMessage(text, SmsAlphabet.GSM, SmsMsgClass.CLASS_UNKNOWN);
+        SmsTextMessage textMessage = createTextMessage(text);
         return sendSms(textMessage, dest, null);
     }
     
@@ -501,7 +573,141 @@ public class SmsSender
             senderAddress = new SmsAddress(sender);
         }
         
-        return transport_.send(msg, destAddress, senderAddress);
+        return getSendTransport().send(msg, destAddress, senderAddress);
+    }
+
+    /**
+     * Queues a SmsMessage for sending and returns immediately.
+     * <p>
+     * Transports that implement SmsAsyncTransport send the message themselves,
+     * the other transports are wrapped in a SmsAsyncTransportAdapter.
+     * disconnect() waits for the queued messages to be sent.
+     * 
+     * @param msg The message to send. Must not be changed until the future has completed.
+     * @param dest
+     *            Destination number (international format without leading +)
+     *            Ex. 44546754235
+     * @param sender
+     *            Destination number (international format without leading +).
+     *            Can also be an alphanumerical string. Ex "SMSJ". (not
+     *            supported by all transports).
+     *            
+     * @return A future with a local message id for each segment. It is
+     *         possible that the ids are null and that there is only one id
+     *         for all segments, see SmsAsyncTransport.
+     * 
+     * @throws SmsException
+     */
+    public Future<String[]> sendSmsAsync(SmsMessage msg, String dest, String sender) throws SmsException
+    {
+        SmsAddress destAddress = new SmsAddress(dest);
+        SmsAddress senderAddress = null;
+
+        if (sender != null)
+        {
+            senderAddress = new SmsAddress(sender);
+        }
+
+        return getAsyncTransport().sendAsync(msg, destAddress, senderAddress);
+    }
+
+    /**
+     * Sends the same SmsMessage to many recipients.
+     * <p>
+     * Transports that implement SmsBroadcastTransport only encode the message
+     * once, the other transports send it to one recipient at a time.
+     * 
+     * @param msg The message to send.
+     * @param dests
+     *            Destination numbers (international format without leading +)
+     * @param sender
+     *            Destination number (international format without leading +).
+     *            Can also be an alphanumerical string. Ex "SMSJ". (not
+     *            supported by all transports).
+     *            
+     * @return Returns a local message id for each recipient. It is possible that the message ids are null.
+     * 
+     * @throws SmsBroadcastException If any recipient failed, or the send was
+     *             aborted because the connection failed. Tells which
+     *             recipients got the message.
+     * @throws SmsException
+     * @throws IOException
+     */
+    public String[] sendSms(SmsMessage msg, String[] dests, String sender) throws SmsException, IOException
+    {
+        SmsAddress[] destAddresses = new SmsAddress[dests.length];
+        SmsAddress senderAddress = null;
+
+        for (int i = 0; i < dests.length; i++)
+        {
+            destAddresses[i] = new SmsAddress(dests[i]);
+        }
+
+        if (sender != null)
+        {
+            senderAddress = new SmsAddress(sender);
+        }
+
+        if (transport_ instanceof SmsBroadcastTransport)
+        {
+            // Same lock as the SmsAsyncTransportAdapter
+            synchronized (transport_)
+            {
+                return ((SmsBroadcastTransport) transport_).send(msg, destAddresses, senderAddress);
+            }
+        }
+
+        // Same behaviour as SmsBroadcastTransport
+        SmsTransport transport = getSendTransport();
+        String[] msgIds = new String[dests.length];
+        SmsException[] errors = new SmsException[dests.length];
+        for (int i = 0; i < destAddresses.length; i++)
+        {
+            try
+            {
+                msgIds[i] = transport.send(msg, destAddresses[i], senderAddress);
+            }
+            catch (SmsException ex)
+            {
+                errors[i] = ex;
+            }
+            catch (IOException ex)
+            {
+                throw SmsBroadcastException.aborted(msgIds, errors, i, ex);
+            }
+        }
+
+        SmsBroadcastException failure = SmsBroadcastException.create(msgIds, errors);
+        if (failure != null)
+        {
+            throw failure;
+        }
+        return msgIds;
+    }
+
+    /**
+     * Returns the transport to use for blocking sends. Once the transport is
+     * wrapped in an SmsAsyncTransportAdapter all sends must go through it.
+     */
+    private synchronized SmsTransport getSendTransport()
+    {
+        return (asyncTransport_ != null) ? asyncTransport_ : transport_;
+    }
+
+    private synchronized SmsAsyncTransport getAsyncTransport()
+    {
+        if (asyncTransport_ == null)
+        {
+            if (transport_ instanceof SmsAsyncTransport)
+            {
+                asyncTransport_ = (SmsAsyncTransport) transport_;
+            }
+            else
+            {
+                asyncTransport_ = new SmsAsyncTransportAdapter(transport_);
+            }
+        }
+        return asyncTransport_;
     }
     
     /**
@@ -529,7 +735,22 @@ public class SmsSender
     {
         if (transport_ != null)
         {
-            transport_.disconnect();
+            // The adapter waits for queued messages before it disconnects the transport
+            SmsAsyncTransport asyncTransport;
+            synchronized (this)
+            {
+                asyncTransport = asyncTransport_;
+                asyncTransport_ = null;
+            }
+
+            if (asyncTransport != null)
+            {
+                asyncTransport.disconnect();
+            }
+            else
+            {
+                transport_.disconnect();
+            }
             transport_ = null;
         }
     }
@@ -39,8 +39,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 
 import org.slf4j.Logger;
@@ -58,6 +60,7 @@ public class GsmOperator
 {
     private static final Logger log_ = LoggerFactory.getLogger(GsmOperator.class);
     private static List<GsmOperator> operators_;
+    private static Map<Integer, GsmOperator> operatorsByMccMnc_ = Collections.emptyMap();
     
     private final String name_;
     private final String country_;
@@ -110,6 +113,18 @@ public class GsmOperator
     public static List<GsmOperator> getOperators() {
         return Collections.unmodifiableList(operators_);
     }
+
+    /**
+     * Finds an operator by its network code.
+     * 
+     * @param mcc Mobile country code
+     * @param mnc Mobile network code
+     * @return The operator, or null if it is not known to smsj
+     */
+    public static GsmOperator getOperator(int mcc, int mnc)
+    {
+        return operatorsByMccMnc_.get(Integer.valueOf(mcc * 1000 + mnc));
+    }
     
     private static void loadOperatorsFromResource(String resourceName)
     {
@@ -121,6 +136,7 @@ public class GsmOperator
             {
                 BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
                 List<GsmOperator> operators = new LinkedList<GsmOperator>();
+                Map<Integer, GsmOperator> operatorsByMccMnc = new HashMap<Integer, GsmOperator>();
                 
                 for (String row=reader.readLine(); row != null; row=reader.readLine()) {
                     StringTokenizer st = new StringTokenizer(row, "|");
@@ -130,11 +146,14 @@ public class GsmOperator
                     int mcc = Integer.parseInt(st.nextToken());
                     int mnc = Integer.parseInt(st.nextToken());
                     
-                    operators.add(new GsmOperator(name, country, mcc, mnc));
+                    GsmOperator operator = new GsmOperator(name, country, mcc, mnc);
+                    operators.add(operator);
+                    operatorsByMccMnc.put(Integer.valueOf(mcc * 1000 + mnc), operator);
                 }
                 
                 // Store result as an unmodifiable list
                 operators_ = Collections.unmodifiableList(operators);
+                operatorsByMccMnc_ = operatorsByMccMnc;
             }
             catch (IOException ex)
             {
@@ -0,0 +1,538 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Septet (GSM 7-bit) encoder and decoder that works on caller supplied
+ * buffers.
+ * <p>
+ * Unlike the stream based methods in SmsPduUtil nothing is allocated per
+ * call, which makes it possible to reuse the same buffers for every message.
+ * Chars from the extension table are written as escape sequences and chars
+ * that can't be represented in the GSM charset are replaced with '?'.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public final class SeptetCodec
+{
+    /**
+     * This class isn't intended to be instantiated
+     */
+    private SeptetCodec()
+    {
+    }
+
+    /**
+     * Returns the number of octets needed to hold the given number of
+     * septets when starting at the given bit offset.
+     * 
+     * @param nSeptets
+     *            Number of septets
+     * @param bitOffset
+     *            Bit offset of the first septet
+     * @return Number of octets
+     */
+    public static int getOctetCount(int nSeptets, int bitOffset)
+    {
+        return (bitOffset + nSeptets * 7 + 7) / 8;
+    }
+
+    /**
+     * Encodes the text into septets.
+     * <p>
+     * The bits before destBitOffset in the first byte are kept, the rest of
+     * the bytes are overwritten. Use SmsPduUtil.getSeptetCount() and
+     * getOctetCount() to find out how big the buffer must be.
+     * 
+     * @param text
+     *            The text to encode
+     * @param dest
+     *            Buffer to write to
+     * @param destBitOffset
+     *            Bit offset in dest to start writing at
+     * @return Number of septets written
+     */
+    public static int encode(CharSequence text, byte[] dest, int destBitOffset)
+    {
+        return encode(text, dest, destBitOffset, SmsNationalLanguage.DEFAULT, SmsNationalLanguage.DEFAULT);
+    }
+
+    /**
+     * Encodes the text into septets using national language shift tables.
+     * <p>
+     * Works as encode(CharSequence, byte[], int), chars are looked up in the
+     * locking shift table first and then in the single shift table. Use
+     * SmsPduUtil.getSeptetCount(CharSequence, SmsNationalLanguage,
+     * SmsNationalLanguage) to find out how many septets are needed.
+     * 
+     * @param text
+     *            The text to encode
+     * @param dest
+     *            Buffer to write to
+     * @param destBitOffset
+     *            Bit offset in dest to start writing at
+     * @param lockingShift
+     *            Language of the locking shift table
+     * @param singleShift
+     *            Language of the single shift table
+     * @return Number of septets written
+     */
+    public static int encode(CharSequence text, byte[] dest, int destBitOffset,
+            SmsNationalLanguage lockingShift, SmsNationalLanguage singleShift)
+    {
+        int index = destBitOffset >>> 3;
+        int nBits = destBitOffset & 7;
+        int data = (nBits == 0) ? 0 : (dest[index] & ((1 << nBits) - 1));
+        int nSeptets = 0;
+        int length = text.length();
+
+        for (int i = 0; i < length; i++)
+        {
+            // Fast path, 8 chars into 7 octets
+            if (length - i >= 8)
+            {
+                long block = pack8(text, i, lockingShift, singleShift);
+                if (block >= 0)
+                {
+                    block = (block << nBits) | data;
+
+                    dest[index]     = (byte) block;
+                    dest[index + 1] = (byte) (block >>> 8);
+                    dest[index + 2] = (byte) (block >>> 16);
+                    dest[index + 3] = (byte) (block >>> 24);
+                    dest[index + 4] = (byte) (block >>> 32);
+                    dest[index + 5] = (byte) (block >>> 40);
+                    dest[index + 6] = (byte) (block >>> 48);
+                    index += 7;
+
+                    data = (int) (block >>> 56);
+                    nSeptets += 8;
+                    i += 7;
+                    continue;
+                }
+            }
+
+            int gsmCode = gsmCodeOf(text.charAt(i), lockingShift, singleShift);
+
+            if (gsmCode > 0x7f)
+            {
+                // Extension table, write the escape char first
+                data |= SmsPduUtil.EXT_TABLE_PREFIX << nBits;
+                nBits += 7;
+                nSeptets++;
+                gsmCode &= 0x7f;
+
+                if (nBits >= 8)
+                {
+                    dest[index++] = (byte) data;
+                    data >>>= 8;
+                    nBits -= 8;
+                }
+            }
+
+            data |= gsmCode << nBits;
+            nBits += 7;
+            nSeptets++;
+
+            if (nBits >= 8)
+            {
+                dest[index++] = (byte) data;
+                data >>>= 8;
+                nBits -= 8;
+            }
+        }
+
+        // Write remaining bits
+        if (nBits > 0)
+        {
+            dest[index] = (byte) data;
+        }
+
+        return nSeptets;
+    }
+
+    /**
+     * Encodes the text into septets.
+     * <p>
+     * The septets are written at the current position of the buffer,
+     * preceded by fillBits zero bits. The position is moved past the last
+     * written byte.
+     * 
+     * @param text
+     *            The text to encode
+     * @param dest
+     *            Buffer to write to
+     * @param fillBits
+     *            Number of fill bits (0-7) before the first septet
+     * @return Number of septets written
+     */
+    public static int encode(CharSequence text, ByteBuffer dest, int fillBits)
+    {
+        return encode(text, dest, fillBits, SmsNationalLanguage.DEFAULT, SmsNationalLanguage.DEFAULT);
+    }
+
+    /**
+     * Encodes the text into septets using national language shift tables.
+     * 
+     * @param text
+     *            The text to encode
+     * @param dest
+     *            Buffer to write to
+     * @param fillBits
+     *            Number of fill bits (0-7) before the first septet
+     * @param lockingShift
+     *            Language of the locking shift table
+     * @param singleShift
+     *            Language of the single shift table
+     * @return Number of septets written
+     */
+    public static int encode(CharSequence text, ByteBuffer dest, int fillBits,
+            SmsNationalLanguage lockingShift, SmsNationalLanguage singleShift)
+    {
+        int nBits = fillBits;
+        int data = 0;
+        int nSeptets = 0;
+        int length = text.length();
+
+        for (int i = 0; i < length; i++)
+        {
+            // Fast path, 8 chars into 7 octets
+            if (length - i >= 8)
+            {
+                long block = pack8(text, i, lockingShift, singleShift);
+                if (block >= 0)
+                {
+                    block = (block << nBits) | data;
+
+                    dest.put((byte) block);
+                    dest.put((byte) (block >>> 8));
+                    dest.put((byte) (block >>> 16));
+                    dest.put((byte) (block >>> 24));
+                    dest.put((byte) (block >>> 32));
+                    dest.put((byte) (block >>> 40));
+                    dest.put((byte) (block >>> 48));
+
+                    data = (int) (block >>> 56);
+                    nSeptets += 8;
+                    i += 7;
+                    continue;
+                }
+            }
+
+            int gsmCode = gsmCodeOf(text.charAt(i), lockingShift, singleShift);
+
+            if (gsmCode > 0x7f)
+            {
+                // Extension table, write the escape char first
+                data |= SmsPduUtil.EXT_TABLE_PREFIX << nBits;
+                nBits += 7;
+                nSeptets++;
+                gsmCode &= 0x7f;
+
+                if (nBits >= 8)
+                {
+                    dest.put((byte) data);
+                    data >>>= 8;
+                    nBits -= 8;
+                }
+            }
+
+            data |= gsmCode << nBits;
+            nBits += 7;
+            nSeptets++;
+
+            if (nBits >= 8)
+            {
+                dest.put((byte) data);
+                data >>>= 8;
+                nBits -= 8;
+            }
+        }
+
+        // Write remaining bits
+        if ((nBits > 0) && ((nSeptets > 0) || (fillBits > 0)))
+        {
+            dest.put((byte) data);
+        }
+
+        return nSeptets;
+    }
+
+    /**
+     * Writes already packed septets to the buffer.
+     * <p>
+     * The septets are written at the current position of the buffer,
+     * preceded by fillBits zero bits. The position is moved past the last
+     * written byte.
+     * 
+     * @param septets
+     *            Packed septets, starting at bit 0
+     * @param nSeptets
+     *            Number of septets to write
+     * @param dest
+     *            Buffer to write to
+     * @param fillBits
+     *            Number of fill bits (0-7) before the first septet
+     */
+    public static void write(byte[] septets, int nSeptets, ByteBuffer dest, int fillBits)
+    {
+        write(septets, 0, nSeptets, dest, fillBits);
+    }
+
+    /**
+     * Writes already packed septets, starting at the given octet, to the
+     * buffer.
+     * 
+     * @param septets
+     *            Packed septets
+     * @param offset
+     *            Offset of the octet holding the first septet at bit 0
+     * @param nSeptets
+     *            Number of septets to write
+     * @param dest
+     *            Buffer to write to
+     * @param fillBits
+     *            Number of fill bits (0-7) before the first septet
+     */
+    public static void write(byte[] septets, int offset, int nSeptets, ByteBuffer dest, int fillBits)
+    {
+        int nOctets = getOctetCount(nSeptets, 0);
+
+        if (fillBits == 0)
+        {
+            dest.put(septets, offset, nOctets);
+            return;
+        }
+
+        int nTotalBits = nSeptets * 7 + fillBits;
+        int data = 0;
+        for (int i = 0; i < nOctets; i++)
+        {
+            data |= (septets[offset + i] & 0xff) << fillBits;
+            dest.put((byte) data);
+            data >>>= 8;
+        }
+
+        // Spill over into one more byte?
+        if (nTotalBits > nOctets * 8)
+        {
+            dest.put((byte) data);
+        }
+    }
+
+    /**
+     * Decodes septets into the given char array.
+     * <p>
+     * Escape sequences are decoded with the extension table, so the number
+     * of chars can be less than the number of septets.
+     * 
+     * @param src
+     *            Packed septets
+     * @param srcBitOffset
+     *            Bit offset of the first septet
+     * @param nSeptets
+     *            Number of septets to decode
+     * @param dest
+     *            Buffer to write the chars to, must have room for nSeptets
+     *            chars
+     * @param destOffset
+     *            Offset in dest
+     * @return Number of chars written
+     */
+    public static int decode(byte[] src, int srcBitOffset, int nSeptets, char[] dest, int destOffset)
+    {
+        return decode(src, srcBitOffset, nSeptets, dest, destOffset,
+                SmsNationalLanguage.DEFAULT, SmsNationalLanguage.DEFAULT);
+    }
+
+    /**
+     * Decodes septets into the given char array using national language
+     * shift tables.
+     * 
+     * @param src
+     *            Packed septets
+     * @param srcBitOffset
+     *            Bit offset of the first septet
+     * @param nSeptets
+     *            Number of septets to decode
+     * @param dest
+     *            Buffer to write the chars to, must have room for nSeptets
+     *            chars
+     * @param destOffset
+     *            Offset in dest
+     * @param lockingShift
+     *            Language of the locking shift table
+     * @param singleShift
+     *            Language of the single shift table
+     * @return Number of chars written
+     */
+    public static int decode(byte[] src, int srcBitOffset, int nSeptets, char[] dest, int destOffset,
+            SmsNationalLanguage lockingShift, SmsNationalLanguage singleShift)
+    {
+        int index = srcBitOffset >>> 3;
+        int nBits = 0;
+        int data = 0;
+        int n = destOffset;
+        boolean escaped = false;
+
+        // Align to the first septet
+        if ((srcBitOffset & 7) != 0)
+        {
+            data = (src[index++] & 0xff) >>> (srcBitOffset & 7);
+            nBits = 8 - (srcBitOffset & 7);
+        }
+
+        for (int i = 0; i < nSeptets; i++)
+        {
+            // Fast path, 7 octets into 8 septets
+            if ((nSeptets - i >= 8) && !escaped)
+            {
+                long block = (src[index] & 0xffL)
+                        | (src[index + 1] & 0xffL) << 8
+                        | (src[index + 2] & 0xffL) << 16
+                        | (src[index + 3] & 0xffL) << 24
+                        | (src[index + 4] & 0xffL) << 32
+                        | (src[index + 5] & 0xffL) << 40
+                        | (src[index + 6] & 0xffL) << 48;
+                index += 7;
+
+                block = (block << nBits) | data;
+
+                if (!hasEscape(block))
+                {
+                    dest[n]     = lockingShift.fromLockingShift((int) (block & 0x7f));
+                    dest[n + 1] = lockingShift.fromLockingShift((int) ((block >>> 7) & 0x7f));
+                    dest[n + 2] = lockingShift.fromLockingShift((int) ((block >>> 14) & 0x7f));
+                    dest[n + 3] = lockingShift.fromLockingShift((int) ((block >>> 21) & 0x7f));
+                    dest[n + 4] = lockingShift.fromLockingShift((int) ((block >>> 28) & 0x7f));
+                    dest[n + 5] = lockingShift.fromLockingShift((int) ((block >>> 35) & 0x7f));
+                    dest[n + 6] = lockingShift.fromLockingShift((int) ((block >>> 42) & 0x7f));
+                    dest[n + 7] = lockingShift.fromLockingShift((int) ((block >>> 49) & 0x7f));
+                    n += 8;
+
+                    data = (int) (block >>> 56);
+                    i += 7;
+                    continue;
+                }
+
+                // Escape chars in this block, take the slow path instead
+                index -= 7;
+                data = (int) (block & ((1 << nBits) - 1));
+            }
+
+            if (nBits < 7)
+            {
+                data |= (src[index++] & 0xff) << nBits;
+                nBits += 8;
+            }
+
+            byte gsmChar = (byte) (data & 0x7f);
+            data >>>= 7;
+            nBits -= 7;
+
+            if (escaped)
+            {
+                dest[n++] = singleShift.fromSingleShift(gsmChar, lockingShift);
+                escaped = false;
+            }
+            else if (gsmChar == SmsPduUtil.EXT_TABLE_PREFIX)
+            {
+                escaped = true;
+            }
+            else
+            {
+                dest[n++] = lockingShift.fromLockingShift(gsmChar);
+            }
+        }
+
+        // A trailing escape char without a following char
+        if (escaped)
+        {
+            dest[n++] = lockingShift.fromLockingShift(SmsPduUtil.EXT_TABLE_PREFIX);
+        }
+
+        return n - destOffset;
+    }
+
+    /**
+     * Packs 8 chars into the lower 56 bits of a long.
+     * 
+     * @return The packed septets or -1 if any of the chars needs to be
+     *         escaped
+     */
+    private static long pack8(CharSequence text, int offset,
+            SmsNationalLanguage lockingShift, SmsNationalLanguage singleShift)
+    {
+        long block = 0;
+        int flags = 0;
+
+        for (int i = 0; i < 8; i++)
+        {
+            int gsmCode = gsmCodeOf(text.charAt(offset + i), lockingShift, singleShift);
+            flags |= gsmCode;
+            block |= ((long) gsmCode) << (i * 7);
+        }
+
+        return ((flags & ~0x7f) == 0) ? block : -1;
+    }
+
+    /**
+     * Checks if any of the 8 septets in the lower 56 bits is the escape char.
+     */
+    private static boolean hasEscape(long block)
+    {
+        for (int i = 0; i < 56; i += 7)
+        {
+            if (((block >>> i) & 0x7f) == SmsPduUtil.EXT_TABLE_PREFIX)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Looks up the gsm code, returns '?' for unmapped chars and the code
+     * with bit 8 set for chars from the extension table.
+     */
+    private static int gsmCodeOf(char ch, SmsNationalLanguage lockingShift, SmsNationalLanguage singleShift)
+    {
+        int gsmCode = SmsNationalLanguage.lookupGsmCode(ch, lockingShift, singleShift);
+        return (gsmCode < 0) ? '?' : gsmCode;
+    }
+}
@@ -34,6 +34,10 @@
  * ***** END LICENSE BLOCK ***** */
 package org.marre.sms;
 
+import java.nio.ByteBuffer;
+
+import org.marre.util.StringUtil;
+
 /**
  * Represents an phonenumber in SMSj.
  * <p>
@@ -58,6 +62,12 @@ public final class SmsAddress
 
     private String address_;
 
+    /** TP-DA/TP-OA encoding, created on the first call to writeTpAddress(). */
+    private volatile byte[] tpAddress_;
+
+    /** UCP OAdC, created on the first call to getUcpOAdC(). */
+    private volatile String ucpOAdC_;
+
     /**
      * Creates an SmsAddress object.
      * <p>
@@ -182,6 +192,100 @@ public final class SmsAddress
         return ton_;
     }
 
+    /**
+     * Returns the type of address octet (TOA) used in GSM pdus.
+     *
+     * @return The TOA
+     */
+    public byte getTypeOfAddress()
+    {
+        return (byte) (0x80 | (ton_.getValue() << 4) | npi_.getValue());
+    }
+
+    /**
+     * Returns the size of the address when encoded as TP-DA or TP-OA.
+     *
+     * @return Number of octets, including the length and TOA octets
+     */
+    public int getTpAddressLength()
+    {
+        return getTpAddress().length;
+    }
+
+    /**
+     * Writes the address as TP-DA or TP-OA: the length in semi octets, the
+     * TOA and the BCD digits (or packed septets if alphanumeric).
+     * <p>
+     * The encoding is created on the first call and reused after that.
+     *
+     * @param buf Buffer to write to
+     */
+    public void writeTpAddress(ByteBuffer buf)
+    {
+        buf.put(getTpAddress());
+    }
+
+    private byte[] getTpAddress()
+    {
+        byte[] tpAddress = tpAddress_;
+
+        if (tpAddress == null)
+        {
+            if (isAlphanumeric())
+            {
+                byte[] septets = SmsPduUtil.getSeptets(address_);
+                int nSemiOctets = (SmsPduUtil.getSeptetCount(address_) * 7 + 3) / 4;
+
+                tpAddress = new byte[2 + septets.length];
+                tpAddress[0] = (byte) nSemiOctets;
+                tpAddress[1] = getTypeOfAddress();
+                System.arraycopy(septets, 0, tpAddress, 2, septets.length);
+            }
+            else
+            {
+                tpAddress = new byte[2 + (address_.length() + 1) / 2];
+                ByteBuffer buf = ByteBuffer.wrap(tpAddress);
+                buf.put((byte) address_.length());
+                buf.put(getTypeOfAddress());
+                SmsPduUtil.writeBcdNumber(buf, address_);
+            }
+
+            tpAddress_ = tpAddress;
+        }
+
+        return tpAddress;
+    }
+
+    /**
+     * Returns the address as an UCP OAdC field.
+     * <p>
+     * Alphanumeric addresses are coded as packed septets in hex, prefixed with
+     * the number of hex digits. Other addresses are returned as is.
+     *
+     * @return The OAdC
+     */
+    public String getUcpOAdC()
+    {
+        String oadc = ucpOAdC_;
+
+        if (oadc == null)
+        {
+            if (isAlphanumeric())
+            {
+                String septets = StringUtil.bytesToHexString(SmsPduUtil.getSeptets(address_));
+                oadc = StringUtil.byteToHexString((byte) septets.length()) + septets;
+            }
+            else
+            {
+                oadc = address_;
+            }
+
+            ucpOAdC_ = oadc;
+        }
+
+        return oadc;
+    }
+
     /**
      * Returns the NPI field
      *
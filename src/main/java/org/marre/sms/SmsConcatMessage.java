@@ -34,21 +34,26 @@
  * ***** END LICENSE BLOCK ***** */
 package org.marre.sms;
 
-import java.util.Random;
+import java.util.Arrays;
 
 /**
  * Baseclass for messages that needs to be concatenated.
  * <p>- Only usable for messages that uses the same UDH fields for all message
  * parts. <br>- This class could be better written. There are several parts
- * that are copy- pasted. <br>- The septet coding could be a bit optimized.
- * <br>
+ * that are copy- pasted. <br>
  * 
  * @author Markus Eriksson
  * @version $Id$
  */
 public abstract class SmsConcatMessage implements SmsMessage
 {
-    private static final Random rnd_ = new Random();
+    /** Shared by all messages that don't have an allocator of their own. */
+    private static volatile SmsConcatRefAllocator defaultRefAllocator_ = new StripedConcatRefAllocator();
+
+    private SmsConcatRefAllocator refAllocator_;
+
+    /** Cached encoded message, null if not encoded or not cacheable. */
+    private volatile EncodedMessage encoded_;
 
     /**
      * Creates an empty SmsConcatMessage.
@@ -58,6 +63,45 @@ public abstract class SmsConcatMessage implements SmsMessage
         // Empty
     }
 
+    /**
+     * Sets the allocator that is used for messages that don't have an
+     * allocator of their own.
+     * 
+     * @param refAllocator
+     *            The allocator
+     */
+    public static void setDefaultRefAllocator(SmsConcatRefAllocator refAllocator)
+    {
+        if (refAllocator == null)
+        {
+            throw new IllegalArgumentException("refAllocator cannot be null");
+        }
+
+        defaultRefAllocator_ = refAllocator;
+    }
+
+    /**
+     * Returns the allocator that is used for messages that don't have an
+     * allocator of their own.
+     * 
+     * @return The allocator
+     */
+    public static SmsConcatRefAllocator getDefaultRefAllocator()
+    {
+        return defaultRefAllocator_;
+    }
+
+    /**
+     * Sets the allocator of concat reference numbers for this message.
+     * 
+     * @param refAllocator
+     *            The allocator, null to use the default allocator
+     */
+    public void setRefAllocator(SmsConcatRefAllocator refAllocator)
+    {
+        refAllocator_ = refAllocator;
+    }
+
     /**
      * Returns the whole UD
      * 
@@ -65,6 +109,22 @@ public abstract class SmsConcatMessage implements SmsMessage
      */
     public abstract SmsUserData getUserData();
     
+    /**
+     * Calculates the number of SMS needed for this message.
+     * <p>
+     * The default implementation builds the user data, subclasses that can
+     * calculate this without encoding the message should override it. The
+     * calculation assumes 8-bit concat references, a 16-bit reference takes
+     * one more octet in each SMS.
+     * 
+     * @return The segment information
+     */
+    public SmsSegmentInfo getSegmentInfo()
+    {
+        EncodedMessage encoded = getEncodedMessage();
+        return SmsSegmentCalculator.calculate(encoded.ud_, encoded.udhElements_);
+    }
+
     /**
      * Returns the udh elements
      * <p>
@@ -75,244 +135,259 @@ public abstract class SmsConcatMessage implements SmsMessage
      */
     public abstract SmsUdhElement[] getUdhElements();
 
-    private SmsPdu[] createOctalPdus(SmsUdhElement[] udhElements, SmsUserData ud, int maxBytes)
+    /**
+     * Returns true if the encoded message can be cached between calls to
+     * getPdus().
+     * <p>
+     * Subclasses that return true must call contentChanged() whenever
+     * something that affects getUserData() or getUdhElements() changes. The
+     * default is false since the content of many messages are objects that
+     * can be changed from the outside.
+     * 
+     * @return true if the encoded message can be cached
+     */
+    protected boolean isPduCacheEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Throws away the cached encoded message.
+     * <p>
+     * Must be called by subclasses that enable the cache when the content
+     * changes.
+     */
+    protected void contentChanged()
     {
-        int nMaxChars;
-        int nMaxConcatChars;
-        SmsPdu[] smsPdus = null;
+        encoded_ = null;
+    }
 
-        // 8-bit concat header is 6 bytes...
-        nMaxConcatChars = maxBytes - 6;
-        nMaxChars = maxBytes;
+    /**
+     * Returns the encoded message, from the cache if possible.
+     */
+    private EncodedMessage getEncodedMessage()
+    {
+        EncodedMessage encoded = encoded_;
 
-        if (ud.getLength() <= nMaxChars)
-        {
-            smsPdus = new SmsPdu[]{new SmsPdu(udhElements, ud)};
-        }
-        else
+        if (encoded == null)
         {
-            int refno = rnd_.nextInt(256);
+            encoded = new EncodedMessage(getUdhElements(), getUserData());
 
-            // Calculate number of SMS needed
-            int nSms = ud.getLength() / nMaxConcatChars;
-            if ((ud.getLength() % nMaxConcatChars) > 0)
+            if (isPduCacheEnabled())
             {
-                nSms += 1;
+                encoded_ = encoded;
             }
-            smsPdus = new SmsPdu[nSms];
+        }
 
-            // Calculate number of UDHI
-            SmsUdhElement[] pduUdhElements = null;
-            if (udhElements == null)
-            {
-                pduUdhElements = new SmsUdhElement[1];
-            }
-            else
-            {
-                pduUdhElements = new SmsUdhElement[udhElements.length + 1];
+        return encoded;
+    }
 
-                // Copy the UDH headers
-                System.arraycopy(udhElements, 0, pduUdhElements, 1, udhElements.length);
-            }
+    /**
+     * Converts this message into SmsPdu:s
+     * <p>
+     * If the message is too long to fit in one SmsPdu the message is divided
+     * into many SmsPdu:s with a concat pdu UDH element. The message is
+     * never divided inside a GSM escape sequence or an UCS2 surrogate pair.
+     * 
+     * @return Returns the message as SmsPdu:s
+     */
+    public SmsPdu[] getPdus()
+    {
+        return getPdus(null);
+    }
 
-            // Create pdus
-            for (int i = 0; i < nSms; i++)
-            {
-                byte[] pduUd;
-                int udBytes;
-                int udLength;
-                int udOffset;
-
-                // Create concat header
-                pduUdhElements[0] = SmsUdhUtil.get8BitConcatUdh(refno, nSms, i + 1);
-
-                // Create
-                // Must concatenate messages
-                // Calc pdu length
-                udOffset = nMaxConcatChars * i;
-                udBytes = ud.getLength() - udOffset;
-                if (udBytes > nMaxConcatChars)
-                {
-                    udBytes = nMaxConcatChars;
-                }
-                udLength = udBytes;
+    /**
+     * Converts this message into SmsPdu:s for the given destination.
+     * <p>
+     * The destination is passed to the SmsConcatRefAllocator so that
+     * concatenated messages to the same destination get different reference
+     * numbers. Depending on the allocator an 8-bit or 16-bit concat UDH
+     * element is used.
+     * <p>
+     * If the cache is enabled the user data is only encoded and cut into
+     * segments once, later calls only create new concat UDH elements.
+     * 
+     * @param destination
+     *            The destination, null if unknown
+     * @return Returns the message as SmsPdu:s
+     */
+    public SmsPdu[] getPdus(SmsAddress destination)
+    {
+        return getPdusWithRef(allocateRef(destination));
+    }
 
-                pduUd = new byte[udBytes];
-                System.arraycopy(ud.getData(), udOffset, pduUd, 0, udBytes);
-                smsPdus[i] = new SmsPdu(pduUdhElements, pduUd, udLength, ud.getDcs());
-            }
+    /**
+     * Allocates a concat reference for the given destination.
+     * <p>
+     * Used together with getPdusWithRef() by transports that encode a message
+     * once and send it to many destinations.
+     * 
+     * @param destination
+     *            The destination, null if unknown
+     * @return The reference, or -1 if the message fits in one SMS
+     */
+    public int allocateRef(SmsAddress destination)
+    {
+        if (!getEncodedMessage().concat_)
+        {
+            return -1;
         }
-        return smsPdus;
+
+        SmsConcatRefAllocator refAllocator = (refAllocator_ != null) ? refAllocator_ : defaultRefAllocator_;
+        return refAllocator.nextRef(destination);
     }
 
-    private SmsPdu[] createUnicodePdus(SmsUdhElement[] udhElements, SmsUserData ud, int maxBytes)
+    /**
+     * Converts this message into SmsPdu:s with the given concat reference.
+     * <p>
+     * If SmsConcatRefAllocator.REF_16BIT is set in refno a 16-bit concat UDH
+     * element is used. The concat element is always the first UDH element.
+     * 
+     * @param refno
+     *            The reference from allocateRef()
+     * @return Returns the message as SmsPdu:s
+     */
+    public SmsPdu[] getPdusWithRef(int refno)
     {
-        int nMaxConcatChars;
-        SmsPdu[] smsPdus = null;
+        EncodedMessage encoded = getEncodedMessage();
+
+        if (!encoded.concat_)
+        {
+            return new SmsPdu[]{new SmsPdu(encoded.udhElements_, encoded.ud_)};
+        }
+
+        boolean ref16Bit = (refno & SmsConcatRefAllocator.REF_16BIT) != 0;
 
-        // 8-bit concat header is 6 bytes...
-        nMaxConcatChars = (maxBytes - 6) / 2;
+        SmsUserData[] segments = encoded.getSegments(ref16Bit);
+        int nSms = segments.length;
+        SmsPdu[] smsPdus = new SmsPdu[nSms];
 
-        if (ud.getLength() <= maxBytes)
+        // Calculate number of UDHI
+        SmsUdhElement[] pduUdhElements = null;
+        if (encoded.udhElements_ == null)
         {
-            smsPdus = new SmsPdu[]{new SmsPdu(udhElements, ud)};
+            pduUdhElements = new SmsUdhElement[1];
         }
         else
         {
-            int refno = rnd_.nextInt(256);
+            pduUdhElements = new SmsUdhElement[encoded.udhElements_.length + 1];
 
-            // Calculate number of SMS needed
-            int nSms = (ud.getLength() / 2) / nMaxConcatChars;
-            if (((ud.getLength() / 2) % nMaxConcatChars) > 0)
-            {
-                nSms += 1;
-            }
-            smsPdus = new SmsPdu[nSms];
-
-            // Calculate number of UDHI
-            SmsUdhElement[] pduUdhElements = null;
-            if (udhElements == null)
-            {
-                pduUdhElements = new SmsUdhElement[1];
-            }
-            else
-            {
-                pduUdhElements = new SmsUdhElement[udhElements.length + 1];
-
-                // Copy the UDH headers
-                System.arraycopy(udhElements, 0, pduUdhElements, 1, udhElements.length);
-            }
+            // Copy the UDH headers
+            System.arraycopy(encoded.udhElements_, 0, pduUdhElements, 1, encoded.udhElements_.length);
+        }
 
-            // Create pdus
-            for (int i = 0; i < nSms; i++)
-            {
-                byte[] pduUd;
-                int udBytes;
-                int udLength;
-                int udOffset;
-
-                // Create concat header
-                pduUdhElements[0] = SmsUdhUtil.get8BitConcatUdh(refno, nSms, i + 1);
-
-                // Create
-                // Must concatenate messages
-                // Calc pdu length
-                udOffset = nMaxConcatChars * i;
-                udLength = (ud.getLength() / 2) - udOffset;
-                if (udLength > nMaxConcatChars)
-                {
-                    udLength = nMaxConcatChars;
-                }
-                udBytes = udLength * 2;
+        // Create pdus
+        for (int i = 0; i < nSms; i++)
+        {
+            // Create concat header
+            pduUdhElements[0] = ref16Bit ? SmsUdhUtil.get16BitConcatUdh(refno & 0xffff, nSms, i + 1)
+                    : SmsUdhUtil.get8BitConcatUdh(refno, nSms, i + 1);
 
-                pduUd = new byte[udBytes];
-                System.arraycopy(ud.getData(), udOffset * 2, pduUd, 0, udBytes);
-                smsPdus[i] = new SmsPdu(pduUdhElements, pduUd, udBytes, ud.getDcs());
-            }
+            smsPdus[i] = new SmsPdu(pduUdhElements, segments[i]);
         }
+
         return smsPdus;
     }
 
-    private SmsPdu[] createSeptetPdus(SmsUdhElement[] udhElements, SmsUserData ud, int maxBytes)
+    /**
+     * The encoded user data and UDH of a message, and the user data cut into
+     * segments.
+     * <p>
+     * Nothing is changed after creation except that the segments are created
+     * when first needed, so an instance can be shared between threads.
+     */
+    private static final class EncodedMessage
     {
-        int nMaxChars;
-        int nMaxConcatChars;
-        SmsPdu[] smsPdus = null;
+        private final SmsUdhElement[] udhElements_;
+        private final SmsUserData ud_;
+        private final boolean concat_;
 
-        // 8-bit concat header is 6 bytes...
-        nMaxConcatChars = ((maxBytes - 6) * 8) / 7;
-        nMaxChars = (maxBytes * 8) / 7;
+        /** Segments for 8-bit and 16-bit concat references. */
+        private volatile SmsUserData[] segments8Bit_;
+        private volatile SmsUserData[] segments16Bit_;
 
-        if (ud.getLength() <= nMaxChars)
+        EncodedMessage(SmsUdhElement[] udhElements, SmsUserData ud)
         {
-            smsPdus = new SmsPdu[]{new SmsPdu(udhElements, ud)};
+            udhElements_ = (udhElements == null) ? null : udhElements.clone();
+            ud_ = ud;
+
+            int nMaxLength = SmsSegmentCalculator.getMaxUdLength(ud.getDcs().getAlphabet(),
+                    SmsSegmentCalculator.getUdhLength(udhElements, 0));
+            concat_ = ud.getLength() > nMaxLength;
         }
-        else
+
+        SmsUserData[] getSegments(boolean ref16Bit)
         {
-            int refno = rnd_.nextInt(256);
+            SmsUserData[] segments = ref16Bit ? segments16Bit_ : segments8Bit_;
 
-            // Calculate number of SMS needed
-            int nSms = ud.getLength() / nMaxConcatChars;
-            if ((ud.getLength() % nMaxConcatChars) > 0)
+            if (segments == null)
             {
-                nSms += 1;
-            }
-            smsPdus = new SmsPdu[nSms];
+                segments = createSegments(ref16Bit ? SmsSegmentCalculator.CONCAT_16BIT_UDH_SIZE
+                        : SmsSegmentCalculator.CONCAT_8BIT_UDH_SIZE);
 
-            // Calculate number of UDHI
-            SmsUdhElement[] pduUdhElements = null;
-            if (udhElements == null)
-            {
-                pduUdhElements = new SmsUdhElement[1];
+                if (ref16Bit)
+                {
+                    segments16Bit_ = segments;
+                }
+                else
+                {
+                    segments8Bit_ = segments;
+                }
             }
-            else
+
+            return segments;
+        }
+
+        /**
+         * Cuts the user data into segments.
+         * <p>
+         * Each SMS is filled as much as possible, but GSM escape sequences and
+         * UCS2 surrogate pairs are never split between two SMS.
+         */
+        private SmsUserData[] createSegments(int concatUdhSize)
+        {
+            SmsAlphabet alphabet = ud_.getDcs().getAlphabet();
+            int nMaxConcatLength = SmsSegmentCalculator.getMaxUdLength(alphabet,
+                    SmsSegmentCalculator.getUdhLength(udhElements_, concatUdhSize));
+
+            // Find the segment boundaries
+            int[] offsets = new int[ud_.getLength() / nMaxConcatLength + 2];
+            int nSms = 0;
+            while (offsets[nSms] < ud_.getLength())
             {
-                pduUdhElements = new SmsUdhElement[udhElements.length + 1];
+                if (nSms + 1 >= offsets.length)
+                {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
 
-                // Copy the UDH headers
-                System.arraycopy(udhElements, 0, pduUdhElements, 1, udhElements.length);
+                offsets[nSms + 1] = SmsSegmentCalculator.getSegmentEnd(ud_, offsets[nSms], nMaxConcatLength);
+                nSms++;
             }
 
-            // Convert septets into a string...
-            String msg = SmsPduUtil.readSeptets(ud.getData(), ud.getLength());
+            SmsUserData[] segments = new SmsUserData[nSms];
 
-            // Create pdus
             for (int i = 0; i < nSms; i++)
             {
-                byte[] pduUd;
-                int udOffset;
-                int udLength;
-
-                // Create concat header
-                pduUdhElements[0] = SmsUdhUtil.get8BitConcatUdh(refno, nSms, i + 1);
-
-                // Create
-                // Must concatenate messages
-                // Calc pdu length
-                udOffset = nMaxConcatChars * i;
-                udLength = ud.getLength() - udOffset;
-                if (udLength > nMaxConcatChars)
+                int udOffset = offsets[i];
+                int udLength = offsets[i + 1] - offsets[i];
+
+                if (alphabet == SmsAlphabet.GSM)
                 {
-                    udLength = nMaxConcatChars;
+                    // Septet segments rarely start on an octet boundary, so
+                    // cut the septets for this part out of the packed user data
+                    byte[] pduUd = new byte[SeptetCodec.getOctetCount(udLength, 0)];
+                    SmsPduUtil.arrayCopyBits(ud_.getBuffer(), ud_.getOffset() * 8 + udOffset * 7, 
+                                             pduUd, 0, udLength * 7);
+                    segments[i] = new SmsUserData(pduUd, udLength, ud_.getDcs());
+                }
+                else
+                {
+                    // Octet segments share the array with the whole user data
+                    segments[i] = ud_.slice(udOffset, udLength);
                 }
-
-                pduUd = SmsPduUtil.getSeptets(msg.substring(udOffset, udOffset + udLength));
-                smsPdus[i] = new SmsPdu(pduUdhElements, pduUd, udLength, ud.getDcs());
             }
-        }
-        return smsPdus;
-    }
-
-    /**
-     * Converts this message into SmsPdu:s
-     * <p>
-     * If the message is too long to fit in one SmsPdu the message is divided
-     * into many SmsPdu:s with a 8-bit concat pdu UDH element.
-     * 
-     * @return Returns the message as SmsPdu:s
-     */
-    public SmsPdu[] getPdus()
-    {
-        SmsPdu[] smsPdus;
-        SmsUserData ud = getUserData();
-        SmsUdhElement[] udhElements = getUdhElements();        
-        int udhLength = SmsUdhUtil.getTotalSize(udhElements);
-        int nBytesLeft = 140 - udhLength;
 
-        switch (ud.getDcs().getAlphabet())
-        {
-        case GSM:
-            smsPdus = createSeptetPdus(udhElements, ud, nBytesLeft);
-            break;
-        case UCS2:
-            smsPdus = createUnicodePdus(udhElements, ud, nBytesLeft);
-            break;
-        case LATIN1:
-        default:
-            smsPdus = createOctalPdus(udhElements, ud, nBytesLeft);
-            break;
+            return segments;
         }
-
-        return smsPdus;
     }
 }
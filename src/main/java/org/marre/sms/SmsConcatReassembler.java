@@ -0,0 +1,485 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reassembles received concatenated messages.
+ * <p>
+ * Parts are keyed on the originator, the concat reference and the number
+ * of parts, and can arrive in any order. The text of each part is decoded
+ * when it arrives, so only the text is kept while waiting for the rest.
+ * <p>
+ * Incomplete messages are dropped when they are older than the TTL, or
+ * when the text held by all incomplete messages is over the memory budget,
+ * oldest first. The messages are hashed to a fixed number of shards with
+ * their own locks, so parts from several modems or SMSC connections can be
+ * added concurrently.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsConcatReassembler
+{
+    /** Default number of shards. */
+    public static final int DEFAULT_SHARDS = 64;
+
+    /** Default time to wait for the missing parts. */
+    public static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000L;
+
+    /** Default memory budget, in bytes. */
+    public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024L;
+
+    /** Approximate size of an incomplete message without the text. */
+    private static final int MESSAGE_OVERHEAD = 128;
+
+    /** Approximate size of a part without the text. */
+    private static final int PART_OVERHEAD = 48;
+
+    private final Shard[] shards_;
+    private final int mask_;
+    private final long ttlMillis_;
+    private final long maxBytes_;
+
+    /** Bytes held by all incomplete messages. */
+    private final AtomicLong bytes_ = new AtomicLong();
+
+    /** Shard to start evicting from, to spread eviction over the shards. */
+    private final AtomicLong evictCursor_ = new AtomicLong();
+
+    private final AtomicLong completed_ = new AtomicLong();
+    private final AtomicLong expired_ = new AtomicLong();
+    private final AtomicLong evicted_ = new AtomicLong();
+    private final AtomicLong duplicates_ = new AtomicLong();
+
+    /**
+     * Creates a reassembler with DEFAULT_SHARDS, DEFAULT_TTL_MILLIS and
+     * DEFAULT_MAX_BYTES.
+     */
+    public SmsConcatReassembler()
+    {
+        this(DEFAULT_SHARDS, DEFAULT_TTL_MILLIS, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Creates a reassembler.
+     * 
+     * @param nShards
+     *            Number of shards, rounded up to a power of two
+     * @param ttlMillis
+     *            How long to wait for the missing parts of a message
+     * @param maxBytes
+     *            Approximate memory budget for the incomplete messages
+     */
+    public SmsConcatReassembler(int nShards, long ttlMillis, long maxBytes)
+    {
+        if (nShards < 1)
+        {
+            throw new IllegalArgumentException("nShards must be at least 1");
+        }
+
+        if ((ttlMillis <= 0) || (maxBytes <= 0))
+        {
+            throw new IllegalArgumentException("ttlMillis and maxBytes must be positive");
+        }
+
+        int size = Integer.highestOneBit(nShards);
+        if (size < nShards)
+        {
+            size <<= 1;
+        }
+
+        shards_ = new Shard[size];
+        for (int i = 0; i < size; i++)
+        {
+            shards_[i] = new Shard();
+        }
+
+        mask_ = size - 1;
+        ttlMillis_ = ttlMillis;
+        maxBytes_ = maxBytes;
+    }
+
+    /**
+     * Adds a received SMS-DELIVER.
+     * 
+     * @param pdu
+     *            The pdu
+     * @return The text of the whole message if this was the last missing
+     *         part or not a concatenated message, null otherwise
+     */
+    public String add(SmsDeliverPdu pdu)
+    {
+        return add(pdu.getOriginator(), pdu);
+    }
+
+    /**
+     * Adds a received pdu.
+     * 
+     * @param originator
+     *            The originator of the message
+     * @param pdu
+     *            The pdu
+     * @return The text of the whole message if this was the last missing
+     *         part or not a concatenated message, null otherwise
+     */
+    public String add(SmsAddress originator, SmsPdu pdu)
+    {
+        int ref;
+        int total;
+        int seqNr;
+
+        SmsUdhElement concat = pdu.getUdhElement(SmsUdhIei.CONCATENATED_8BIT);
+        if ((concat != null) && (concat.getUdhIeiDataLength() == 3))
+        {
+            byte[] data = concat.getUdhIeiData();
+            ref = data[0] & 0xff;
+            total = data[1] & 0xff;
+            seqNr = data[2] & 0xff;
+        }
+        else
+        {
+            concat = pdu.getUdhElement(SmsUdhIei.CONCATENATED_16BIT);
+            if ((concat == null) || (concat.getUdhIeiDataLength() != 4))
+            {
+                return pdu.getText();
+            }
+
+            byte[] data = concat.getUdhIeiData();
+            ref = SmsConcatRefAllocator.REF_16BIT | ((data[0] & 0xff) << 8) | (data[1] & 0xff);
+            total = data[2] & 0xff;
+            seqNr = data[3] & 0xff;
+        }
+
+        // 3GPP TS 23.040: ignore the element if the values are invalid
+        if ((total == 0) || (seqNr == 0) || (seqNr > total))
+        {
+            return pdu.getText();
+        }
+
+        if (total == 1)
+        {
+            completed_.incrementAndGet();
+            return pdu.getText();
+        }
+
+        Key key = new Key(originator.getAddress(), ref, total);
+        String text = pdu.getText();
+        long now = currentTimeMillis();
+        Shard shard = shards_[key.getShard() & mask_];
+        String result = null;
+        long usedBytes;
+
+        synchronized (shard)
+        {
+            expire(shard, now);
+
+            Message msg = shard.messages_.get(key);
+            if (msg == null)
+            {
+                msg = new Message(total, now);
+                shard.messages_.put(key, msg);
+                bytes_.addAndGet(msg.bytes_);
+            }
+
+            if (msg.parts_[seqNr - 1] != null)
+            {
+                duplicates_.incrementAndGet();
+                return null;
+            }
+
+            int partBytes = PART_OVERHEAD + text.length() * 2;
+            msg.parts_[seqNr - 1] = text;
+            msg.nReceived_++;
+            msg.bytes_ += partBytes;
+            usedBytes = bytes_.addAndGet(partBytes);
+
+            if (msg.nReceived_ == total)
+            {
+                shard.messages_.remove(key);
+                bytes_.addAndGet(-msg.bytes_);
+                completed_.incrementAndGet();
+                result = msg.getText();
+            }
+        }
+
+        if ((result == null) && (usedBytes > maxBytes_))
+        {
+            evict();
+        }
+
+        return result;
+    }
+
+    /**
+     * Drops all incomplete messages that are older than the TTL.
+     * <p>
+     * Expired messages are also dropped as new parts arrive, this can be
+     * called periodically to release the memory when traffic is low.
+     * 
+     * @return The number of dropped messages
+     */
+    public int expire()
+    {
+        long now = currentTimeMillis();
+        int nExpired = 0;
+
+        for (Shard shard : shards_)
+        {
+            synchronized (shard)
+            {
+                nExpired += expire(shard, now);
+            }
+        }
+
+        return nExpired;
+    }
+
+    /**
+     * Drops the expired messages of a shard, the caller must hold the lock.
+     */
+    private int expire(Shard shard, long now)
+    {
+        int nExpired = 0;
+        Iterator<Message> iter = shard.messages_.values().iterator();
+
+        // The messages are in creation order
+        while (iter.hasNext())
+        {
+            Message msg = iter.next();
+            if (now - msg.created_ < ttlMillis_)
+            {
+                break;
+            }
+
+            iter.remove();
+            bytes_.addAndGet(-msg.bytes_);
+            nExpired++;
+        }
+
+        expired_.addAndGet(nExpired);
+        return nExpired;
+    }
+
+    /**
+     * Drops the oldest message of the shards in turn until the memory use is
+     * within the budget.
+     */
+    private void evict()
+    {
+        int nEmpty = 0;
+
+        while ((bytes_.get() > maxBytes_) && (nEmpty < shards_.length))
+        {
+            Shard shard = shards_[(int) evictCursor_.getAndIncrement() & mask_];
+
+            synchronized (shard)
+            {
+                Iterator<Message> iter = shard.messages_.values().iterator();
+                if (iter.hasNext())
+                {
+                    Message msg = iter.next();
+                    iter.remove();
+                    bytes_.addAndGet(-msg.bytes_);
+                    evicted_.incrementAndGet();
+                    nEmpty = 0;
+                }
+                else
+                {
+                    nEmpty++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting for more parts.
+     * 
+     * @return Number of incomplete messages
+     */
+    public int getIncompleteCount()
+    {
+        int count = 0;
+
+        for (Shard shard : shards_)
+        {
+            synchronized (shard)
+            {
+                count += shard.messages_.size();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the approximate memory used by the incomplete messages.
+     * 
+     * @return Bytes
+     */
+    public long getMemoryUsage()
+    {
+        return bytes_.get();
+    }
+
+    /**
+     * Returns the number of completed concatenated messages.
+     * 
+     * @return Number of completed messages
+     */
+    public long getCompletedCount()
+    {
+        return completed_.get();
+    }
+
+    /**
+     * Returns the number of incomplete messages dropped because of the TTL.
+     * 
+     * @return Number of expired messages
+     */
+    public long getExpiredCount()
+    {
+        return expired_.get();
+    }
+
+    /**
+     * Returns the number of incomplete messages dropped because of the
+     * memory budget.
+     * 
+     * @return Number of evicted messages
+     */
+    public long getEvictedCount()
+    {
+        return evicted_.get();
+    }
+
+    /**
+     * Returns the number of parts that were received more than once.
+     * 
+     * @return Number of duplicate parts
+     */
+    public long getDuplicateCount()
+    {
+        return duplicates_.get();
+    }
+
+    /**
+     * Returns the current time, used for the TTL.
+     * 
+     * @return Milliseconds since 1970-01-01 UTC
+     */
+    protected long currentTimeMillis()
+    {
+        return System.currentTimeMillis();
+    }
+
+    private static final class Shard
+    {
+        /** Incomplete messages in creation order. */
+        private final LinkedHashMap<Key, Message> messages_ = new LinkedHashMap<Key, Message>();
+    }
+
+    private static final class Message
+    {
+        private final String[] parts_;
+        private final long created_;
+        private int nReceived_;
+        private int bytes_;
+
+        private Message(int total, long created)
+        {
+            parts_ = new String[total];
+            created_ = created;
+            bytes_ = MESSAGE_OVERHEAD;
+        }
+
+        private String getText()
+        {
+            int length = 0;
+            for (String part : parts_)
+            {
+                length += part.length();
+            }
+
+            StringBuilder sb = new StringBuilder(length);
+            for (String part : parts_)
+            {
+                sb.append(part);
+            }
+
+            return sb.toString();
+        }
+    }
+
+    private static final class Key
+    {
+        private final String originator_;
+        private final int ref_;
+        private final int total_;
+
+        private Key(String originator, int ref, int total)
+        {
+            originator_ = originator;
+            ref_ = ref;
+            total_ = total;
+        }
+
+        private int getShard()
+        {
+            // Spread the hash bits, similar to HashMap
+            int h = hashCode();
+            return h ^ (h >>> 16);
+        }
+
+        public int hashCode()
+        {
+            return (originator_.hashCode() * 31 + ref_) * 31 + total_;
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            return (ref_ == other.ref_) && (total_ == other.total_) && originator_.equals(other.originator_);
+        }
+    }
+}
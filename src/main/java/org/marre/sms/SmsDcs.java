@@ -36,24 +36,58 @@ package org.marre.sms;
 
 /**
  * Represents a SMS DCS (Data Coding Scheme).
+ * <p>
+ * There are only 256 dcs values, valueOf() and getGeneralDataCodingDcs()
+ * return shared instances. The alphabet, group and message class are
+ * decoded when the instance is created.
  *
  * @version $Id$
  * @author Markus Eriksson
  */
 public class SmsDcs
 {
+    /** Shared instances, indexed by the unsigned dcs value. */
+    private static final SmsDcs[] DCS_TABLE = new SmsDcs[256];
+
+    static
+    {
+        for (int i = 0; i < DCS_TABLE.length; i++)
+        {
+            DCS_TABLE[i] = new SmsDcs((byte) i);
+        }
+    }
 
     /** The encoded dcs. */
     protected final byte dcs_;
+
+    private final DcsGroup group_;
+    private final SmsAlphabet alphabet_;
+    private final SmsMsgClass messageClass_;
     
     /**
      * Creates a specific DCS.
+     * <p>
+     * Prefer valueOf(), it returns a shared instance.
      * 
      * @param dcs The dcs.
      */
     public SmsDcs(byte dcs)
     {
         dcs_ = dcs;
+        group_ = decodeGroup(dcs);
+        alphabet_ = decodeAlphabet(dcs, group_);
+        messageClass_ = decodeMessageClass(dcs, group_);
+    }
+
+    /**
+     * Returns the shared instance of the given dcs.
+     * 
+     * @param dcs The dcs.
+     * @return The SmsDcs
+     */
+    public static SmsDcs valueOf(byte dcs)
+    {
+        return DCS_TABLE[dcs & 0xff];
     }
     
     /**
@@ -101,7 +135,7 @@ public class SmsDcs
         case CLASS_UNKNOWN:    dcs |= 0x00; break;
         }
                 
-        return new SmsDcs(dcs);
+        return valueOf(dcs);
     }
 
     /**
@@ -111,24 +145,50 @@ public class SmsDcs
      */
     public SmsAlphabet getAlphabet()
     {
-        switch (getGroup())
+        return alphabet_;
+    }
+    
+    /**
+     * What group (type of message) is the given dcs.
+     * 
+     * @return The matching group. Or null if unknown.
+     */
+    public DcsGroup getGroup()
+    {
+        return group_;
+    }
+    
+    /**
+     * Get the message class.
+     *
+     * @return Returns the message class.
+     */
+    public SmsMsgClass getMessageClass()
+    {
+        return messageClass_;
+    }
+
+    private static SmsAlphabet decodeAlphabet(byte dcs, DcsGroup group)
+    {
+        if (group == null)
+        {
+            // Automatic deletion group (01xx) uses the same bits as general
+            // data coding, 10xx is reserved
+            return ((dcs & 0xC0) == 0x40) ? decodeGeneralDataCodingAlphabet(dcs) : null;
+        }
+
+        switch (group)
         {
         case GENERAL_DATA_CODING:
             // General Data Coding Indication
-            if (dcs_ == 0x00)
+            if (dcs == 0x00)
             {
                 return SmsAlphabet.GSM;
             }
 
-            switch (dcs_ & 0x0C)
-            {
-            case 0x00: return SmsAlphabet.GSM;
-            case 0x04: return SmsAlphabet.LATIN1;
-            case 0x08: return SmsAlphabet.UCS2;
-            case 0x0C: return SmsAlphabet.RESERVED;
-            default:   return null;
-            }
+            return decodeGeneralDataCodingAlphabet(dcs);
             
+        case MESSAGE_WAITING_DISCARD:
         case MESSAGE_WAITING_STORE_GSM:
             return SmsAlphabet.GSM;
         
@@ -136,7 +196,7 @@ public class SmsDcs
             return SmsAlphabet.UCS2;
 
         case DATA_CODING_MESSAGE:
-            switch (dcs_ & 0x04)
+            switch (dcs & 0x04)
             {
             case 0x00: return SmsAlphabet.GSM;
             case 0x04: return SmsAlphabet.LATIN1;
@@ -149,18 +209,28 @@ public class SmsDcs
     }
     
     /**
-     * What group (type of message) is the given dcs.
-     * 
-     * @return The matching group. Or null if unknown.
+     * Decodes the alphabet bits of a general data coding dcs.
      */
-    public DcsGroup getGroup()
+    private static SmsAlphabet decodeGeneralDataCodingAlphabet(byte dcs)
     {
-        if ((dcs_ & 0xC0) == 0x00) 
+        switch (dcs & 0x0C)
+        {
+        case 0x00: return SmsAlphabet.GSM;
+        case 0x04: return SmsAlphabet.LATIN1;
+        case 0x08: return SmsAlphabet.UCS2;
+        case 0x0C: return SmsAlphabet.RESERVED;
+        default:   return null;
+        }
+    }
+    
+    private static DcsGroup decodeGroup(byte dcs)
+    {
+        if ((dcs & 0xC0) == 0x00) 
         {
             return DcsGroup.GENERAL_DATA_CODING;
         }
         
-        switch ((dcs_ & 0xF0))
+        switch ((dcs & 0xF0))
         {
         case 0xC0: return DcsGroup.MESSAGE_WAITING_DISCARD;
         case 0xD0: return DcsGroup.MESSAGE_WAITING_STORE_GSM;
@@ -170,23 +240,23 @@ public class SmsDcs
         }
     }
     
-    /**
-     * Get the message class.
-     *
-     * @return Returns the message class.
-     */
-    public SmsMsgClass getMessageClass()
+    private static SmsMsgClass decodeMessageClass(byte dcs, DcsGroup group)
     {
-        switch (getGroup())
+        if (group == null)
+        {
+            return SmsMsgClass.CLASS_UNKNOWN;
+        }
+
+        switch (group)
         {
         case GENERAL_DATA_CODING:
             // General Data Coding Indication
-            if (dcs_ == 0x00)
+            if (dcs == 0x00)
             {
                 return SmsMsgClass.CLASS_UNKNOWN;
             }
             
-            switch (dcs_ & 0x13)
+            switch (dcs & 0x13)
             {
             case 0x10: return SmsMsgClass.CLASS_0;
             case 0x11: return SmsMsgClass.CLASS_1;
@@ -197,7 +267,7 @@ public class SmsDcs
             
         case DATA_CODING_MESSAGE:
             // Data coding/message class
-            switch (dcs_ & 0x03)
+            switch (dcs & 0x03)
             {
             case 0x00: return SmsMsgClass.CLASS_0;
             case 0x01: return SmsMsgClass.CLASS_1;
@@ -0,0 +1,134 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+/**
+ * A received SMS-DELIVER pdu.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsDeliverPdu extends SmsPdu
+{
+    private final int firstOctet_;
+    private final SmsAddress originator_;
+    private final int protocolId_;
+    private final long serviceCentreTimestamp_;
+
+    /**
+     * Creates an SMS-DELIVER pdu.
+     * <p>
+     * The UDH and user data are set with setUserDataHeaders() and
+     * setUserData().
+     * 
+     * @param firstOctet
+     *            The first octet, with TP-MTI, TP-MMS, TP-SRI, TP-UDHI and
+     *            TP-RP
+     * @param originator
+     *            TP-OA
+     * @param protocolId
+     *            TP-PID
+     * @param serviceCentreTimestamp
+     *            TP-SCTS in milliseconds since 1970-01-01 UTC
+     */
+    public SmsDeliverPdu(int firstOctet, SmsAddress originator, int protocolId, long serviceCentreTimestamp)
+    {
+        firstOctet_ = firstOctet;
+        originator_ = originator;
+        protocolId_ = protocolId;
+        serviceCentreTimestamp_ = serviceCentreTimestamp;
+    }
+
+    /**
+     * Returns the originating address (TP-OA).
+     * 
+     * @return The originator
+     */
+    public SmsAddress getOriginator()
+    {
+        return originator_;
+    }
+
+    /**
+     * Returns the protocol identifier (TP-PID).
+     * 
+     * @return The protocol identifier
+     */
+    public int getProtocolId()
+    {
+        return protocolId_;
+    }
+
+    /**
+     * Returns the service centre time stamp (TP-SCTS).
+     * 
+     * @return Milliseconds since 1970-01-01 UTC
+     */
+    public long getServiceCentreTimestamp()
+    {
+        return serviceCentreTimestamp_;
+    }
+
+    /**
+     * Returns true if there are more messages waiting in the SC (TP-MMS).
+     * 
+     * @return true if more messages are waiting
+     */
+    public boolean hasMoreMessagesToSend()
+    {
+        // TP-MMS is 0 when there are more messages
+        return (firstOctet_ & 0x04) == 0;
+    }
+
+    /**
+     * Returns true if the sender requested a status report (TP-SRI).
+     * 
+     * @return true if a status report will be returned
+     */
+    public boolean isStatusReportIndicated()
+    {
+        return (firstOctet_ & 0x20) != 0;
+    }
+
+    /**
+     * Returns true if a reply path is set (TP-RP).
+     * 
+     * @return true if a reply path is set
+     */
+    public boolean isReplyPath()
+    {
+        return (firstOctet_ & 0x80) != 0;
+    }
+}
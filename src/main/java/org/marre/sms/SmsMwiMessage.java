@@ -149,6 +149,7 @@ public class SmsMwiMessage extends SmsTextMessage
         }
         
         messages_.add(new MsgWaiting(type, count, profile, storeMessage));
+        contentChanged();
     }
 
     /**
@@ -212,25 +213,35 @@ public class SmsMwiMessage extends SmsTextMessage
     
     /**
      * Builds a udh element for this message.
+     * <p>
+     * The national language shift elements of the text, if any, follow the
+     * message waiting elements.
      * 
      * @see org.marre.sms.SmsTextMessage#getUdhElements()
      */
     public SmsUdhElement[] getUdhElements()
     {
-        SmsUdhElement udhElements[] = null;
+        SmsUdhElement textUdh[] = super.getUdhElements();
         int msgCount = messages_.size();
         
-        if (msgCount > 0)
+        if (msgCount == 0)
+        {
+            return textUdh;
+        }
+
+        int nTextUdh = (textUdh != null) ? textUdh.length : 0;
+        SmsUdhElement udhElements[] = new SmsUdhElement[msgCount + nTextUdh];
+        int i = 0;
+        
+        for(Iterator j = messages_.iterator(); j.hasNext(); i++)
+        {
+            MsgWaiting msgWaiting = (MsgWaiting) j.next();
+            udhElements[i] = getMessageWaitingUdh(msgWaiting);
+        }
+        
+        if (textUdh != null)
         {
-            udhElements = new SmsUdhElement[messages_.size()];
-            int i = 0;
-            
-            for(Iterator j = messages_.iterator(); j.hasNext(); i++)
-            {
-                MsgWaiting msgWaiting = (MsgWaiting) j.next();
-                udhElements[i] = getMessageWaitingUdh(msgWaiting);
-            }
-            
+            System.arraycopy(textUdh, 0, udhElements, msgCount, nTextUdh);
         }
         
         return udhElements;
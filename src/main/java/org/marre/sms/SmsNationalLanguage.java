@@ -0,0 +1,513 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+import java.util.Arrays;
+
+/**
+ * National language shift tables for the GSM 7-bit alphabet, as specified
+ * in 3GPP TS 23.038.
+ * <p>
+ * A locking shift table replaces the default alphabet and a single shift
+ * table replaces the extension table. The tables used by a message are
+ * signalled with the UDH elements created by
+ * SmsUdhUtil.getNationalLanguageLockingShiftUdh() and
+ * SmsUdhUtil.getNationalLanguageSingleShiftUdh().
+ * <p>
+ * DEFAULT represents the default alphabet and extension table.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public final class SmsNationalLanguage
+{
+    /**
+     * Turkish locking shift table.
+     */
+    private static final char[] TURKISH_LOCKING_SHIFT_TABLE = {
+            //   0 '@', '?', '$', '?', '?', '?', '?', '?',
+            '@', 0xa3, '$', 0xa5, 0x20ac, 0xe9, 0xf9, 0x131,
+            //   8 '?', '?', LF, '?', '?', CR, '?', '?',
+            0xf2, 0xc7, 0xa, 0x11e, 0x11f, 0xd, 0xc5, 0xe5,
+            //  16 '?', '_', '?', '?', '?', '?', '?', '?',
+            0x394, '_', 0x3a6, 0x393, 0x39b, 0x3a9, 0x3a0, 0x3a8,
+            //  24 '?', '?', '?', 'EXT', '?', '?', '?', '?',
+            0x3a3, 0x398, 0x39e, 0xa0, 0x15e, 0x15f, 0xdf, 0xc9,
+            //  32 ' ', '!', '"', '#', '?', '%', '&', ''',
+            ' ', '!', '"', '#', 0xa4, '%', '&', '\'',
+            //  40 '(', ')', '*', '+', ',', '-', '.', '/',
+            '(', ')', '*', '+', ',', '-', '.', '/',
+            //  48 '0', '1', '2', '3', '4', '5', '6', '7',
+            '0', '1', '2', '3', '4', '5', '6', '7',
+            //  56 '8', '9', ':', ';', '<', '=', '>', '?',
+            '8', '9', ':', ';', '<', '=', '>', '?',
+            //  64 '?', 'A', 'B', 'C', 'D', 'E', 'F', 'G',
+            0x130, 'A', 'B', 'C', 'D', 'E', 'F', 'G',
+            //  72 'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O',
+            'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O',
+            //  80 'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W',
+            'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W',
+            //  88 'X', 'Y', 'Z', '?', '?', '?', '?', '?',
+            'X', 'Y', 'Z', 0xc4, 0xd6, 0xd1, 0xdc, 0xa7,
+            //  96 '?', 'a', 'b', 'c', 'd', 'e', 'f', 'g',
+            0xe7, 'a', 'b', 'c', 'd', 'e', 'f', 'g',
+            // 104 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o',
+            'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o',
+            // 112 'p', 'q', 'r', 's', 't', 'u', 'v', 'w',
+            'p', 'q', 'r', 's', 't', 'u', 'v', 'w',
+            // 120 'x', 'y', 'z', '?', '?', '?', '?', '?',
+            'x', 'y', 'z', 0xe4, 0xf6, 0xf1, 0xfc, 0xe0};
+
+    /**
+     * Turkish single shift table, encoded as pairs with unicode value and
+     * gsm charset value.
+     */
+    private static final char[] TURKISH_SINGLE_SHIFT_TABLE = {
+            // FORM FEED
+            0x000c, 0x0a,
+            // CIRCUMFLEX ACCENT
+            '^', 0x14,
+            // LEFT CURLY BRACKET
+            '{', 0x28,
+            // RIGHT CURLY BRACKET
+            '}', 0x29,
+            // REVERSE SOLIDUS
+            '\\', 0x2f,
+            // LEFT SQUARE BRACKET
+            '[', 0x3c,
+            // TILDE
+            '~', 0x3d,
+            // RIGHT SQUARE BRACKET
+            ']', 0x3e,
+            // VERTICAL LINE
+            '|', 0x40,
+            // LATIN CAPITAL LETTER G WITH BREVE
+            0x11e, 0x47,
+            // LATIN CAPITAL LETTER I WITH DOT ABOVE
+            0x130, 0x49,
+            // LATIN CAPITAL LETTER S WITH CEDILLA
+            0x15e, 0x53,
+            // LATIN SMALL LETTER C WITH CEDILLA
+            0xe7, 0x63,
+            // EURO SIGN
+            0x20ac, 0x65,
+            // LATIN SMALL LETTER G WITH BREVE
+            0x11f, 0x67,
+            // LATIN SMALL LETTER DOTLESS I
+            0x131, 0x69,
+            // LATIN SMALL LETTER S WITH CEDILLA
+            0x15f, 0x73};
+
+    /**
+     * Spanish single shift table, encoded as pairs with unicode value and
+     * gsm charset value. There is no Spanish locking shift table.
+     */
+    private static final char[] SPANISH_SINGLE_SHIFT_TABLE = {
+            // LATIN SMALL LETTER C WITH CEDILLA
+            0xe7, 0x09,
+            // FORM FEED
+            0x000c, 0x0a,
+            // CIRCUMFLEX ACCENT
+            '^', 0x14,
+            // LEFT CURLY BRACKET
+            '{', 0x28,
+            // RIGHT CURLY BRACKET
+            '}', 0x29,
+            // REVERSE SOLIDUS
+            '\\', 0x2f,
+            // LEFT SQUARE BRACKET
+            '[', 0x3c,
+            // TILDE
+            '~', 0x3d,
+            // RIGHT SQUARE BRACKET
+            ']', 0x3e,
+            // VERTICAL LINE
+            '|', 0x40,
+            // LATIN CAPITAL LETTER A WITH ACUTE
+            0xc1, 0x41,
+            // LATIN CAPITAL LETTER I WITH ACUTE
+            0xcd, 0x49,
+            // LATIN CAPITAL LETTER O WITH ACUTE
+            0xd3, 0x4f,
+            // LATIN CAPITAL LETTER U WITH ACUTE
+            0xda, 0x55,
+            // LATIN SMALL LETTER A WITH ACUTE
+            0xe1, 0x61,
+            // EURO SIGN
+            0x20ac, 0x65,
+            // LATIN SMALL LETTER I WITH ACUTE
+            0xed, 0x69,
+            // LATIN SMALL LETTER O WITH ACUTE
+            0xf3, 0x6f,
+            // LATIN SMALL LETTER U WITH ACUTE
+            0xfa, 0x75};
+
+    /**
+     * Portuguese locking shift table.
+     */
+    private static final char[] PORTUGUESE_LOCKING_SHIFT_TABLE = {
+            //   0 '@', '?', '$', '?', '?', '?', '?', '?',
+            '@', 0xa3, '$', 0xa5, 0xea, 0xe9, 0xfa, 0xed,
+            //   8 '?', '?', LF, '?', '?', CR, '?', '?',
+            0xf3, 0xe7, 0xa, 0xd4, 0xf4, 0xd, 0xc1, 0xe1,
+            //  16 '?', '_', '?', '?', '?', '?', '^', '\',
+            0x394, '_', 0xaa, 0xc7, 0xc0, 0x221e, '^', '\\',
+            //  24 '?', '?', '|', 'EXT', '?', '?', '?', '?',
+            0x20ac, 0xd3, '|', 0xa0, 0xc2, 0xe2, 0xca, 0xc9,
+            //  32 ' ', '!', '"', '#', '?', '%', '&', ''',
+            ' ', '!', '"', '#', 0xba, '%', '&', '\'',
+            //  40 '(', ')', '*', '+', ',', '-', '.', '/',
+            '(', ')', '*', '+', ',', '-', '.', '/',
+            //  48 '0', '1', '2', '3', '4', '5', '6', '7',
+            '0', '1', '2', '3', '4', '5', '6', '7',
+            //  56 '8', '9', ':', ';', '<', '=', '>', '?',
+            '8', '9', ':', ';', '<', '=', '>', '?',
+            //  64 '?', 'A', 'B', 'C', 'D', 'E', 'F', 'G',
+            0xcd, 'A', 'B', 'C', 'D', 'E', 'F', 'G',
+            //  72 'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O',
+            'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O',
+            //  80 'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W',
+            'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W',
+            //  88 'X', 'Y', 'Z', '?', '?', '?', '?', '?',
+            'X', 'Y', 'Z', 0xc3, 0xd5, 0xda, 0xdc, 0xa7,
+            //  96 '~', 'a', 'b', 'c', 'd', 'e', 'f', 'g',
+            '~', 'a', 'b', 'c', 'd', 'e', 'f', 'g',
+            // 104 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o',
+            'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o',
+            // 112 'p', 'q', 'r', 's', 't', 'u', 'v', 'w',
+            'p', 'q', 'r', 's', 't', 'u', 'v', 'w',
+            // 120 'x', 'y', 'z', '?', '?', '`', '?', '?',
+            'x', 'y', 'z', 0xe3, 0xf5, '`', 0xfc, 0xe0};
+
+    /**
+     * Portuguese single shift table, encoded as pairs with unicode value and
+     * gsm charset value.
+     */
+    private static final char[] PORTUGUESE_SINGLE_SHIFT_TABLE = {
+            // LATIN SMALL LETTER E WITH CIRCUMFLEX
+            0xea, 0x05,
+            // LATIN SMALL LETTER C WITH CEDILLA
+            0xe7, 0x09,
+            // FORM FEED
+            0x000c, 0x0a,
+            // LATIN CAPITAL LETTER O WITH CIRCUMFLEX
+            0xd4, 0x0b,
+            // LATIN SMALL LETTER O WITH CIRCUMFLEX
+            0xf4, 0x0c,
+            // LATIN CAPITAL LETTER A WITH ACUTE
+            0xc1, 0x0e,
+            // LATIN SMALL LETTER A WITH ACUTE
+            0xe1, 0x0f,
+            // GREEK CAPITAL LETTER PHI
+            0x3a6, 0x12,
+            // GREEK CAPITAL LETTER GAMMA
+            0x393, 0x13,
+            // CIRCUMFLEX ACCENT
+            '^', 0x14,
+            // GREEK CAPITAL LETTER OMEGA
+            0x3a9, 0x15,
+            // GREEK CAPITAL LETTER PI
+            0x3a0, 0x16,
+            // GREEK CAPITAL LETTER PSI
+            0x3a8, 0x17,
+            // GREEK CAPITAL LETTER SIGMA
+            0x3a3, 0x18,
+            // GREEK CAPITAL LETTER THETA
+            0x398, 0x19,
+            // LATIN CAPITAL LETTER E WITH CIRCUMFLEX
+            0xca, 0x1f,
+            // LEFT CURLY BRACKET
+            '{', 0x28,
+            // RIGHT CURLY BRACKET
+            '}', 0x29,
+            // REVERSE SOLIDUS
+            '\\', 0x2f,
+            // LEFT SQUARE BRACKET
+            '[', 0x3c,
+            // TILDE
+            '~', 0x3d,
+            // RIGHT SQUARE BRACKET
+            ']', 0x3e,
+            // VERTICAL LINE
+            '|', 0x40,
+            // LATIN CAPITAL LETTER A WITH GRAVE
+            0xc0, 0x41,
+            // LATIN CAPITAL LETTER I WITH ACUTE
+            0xcd, 0x49,
+            // LATIN CAPITAL LETTER O WITH ACUTE
+            0xd3, 0x4f,
+            // LATIN CAPITAL LETTER U WITH ACUTE
+            0xda, 0x55,
+            // LATIN CAPITAL LETTER A WITH TILDE
+            0xc3, 0x5b,
+            // LATIN CAPITAL LETTER O WITH TILDE
+            0xd5, 0x5c,
+            // LATIN CAPITAL LETTER A WITH CIRCUMFLEX
+            0xc2, 0x61,
+            // EURO SIGN
+            0x20ac, 0x65,
+            // LATIN SMALL LETTER I WITH ACUTE
+            0xed, 0x69,
+            // LATIN SMALL LETTER O WITH ACUTE
+            0xf3, 0x6f,
+            // LATIN SMALL LETTER U WITH ACUTE
+            0xfa, 0x75,
+            // LATIN SMALL LETTER A WITH TILDE
+            0xe3, 0x7b,
+            // LATIN SMALL LETTER O WITH TILDE
+            0xf5, 0x7c,
+            // LATIN SMALL LETTER A WITH CIRCUMFLEX
+            0xe2, 0x7f};
+
+    /** The GSM 03.38 default alphabet and extension table. */
+    public static final SmsNationalLanguage DEFAULT = new SmsNationalLanguage((byte) 0x00, "DEFAULT",
+            SmsPduUtil.GSM_DEFAULT_ALPHABET_TABLE, SmsPduUtil.GSM_DEFAULT_ALPHABET_ALTERNATIVES,
+            SmsPduUtil.GSM_EXTENSION_ALPHABET_TABLE);
+
+    /** Turkish. */
+    public static final SmsNationalLanguage TURKISH = new SmsNationalLanguage((byte) 0x01, "TURKISH",
+            TURKISH_LOCKING_SHIFT_TABLE, null, TURKISH_SINGLE_SHIFT_TABLE);
+
+    /** Spanish, only has a single shift table. */
+    public static final SmsNationalLanguage SPANISH = new SmsNationalLanguage((byte) 0x02, "SPANISH",
+            null, null, SPANISH_SINGLE_SHIFT_TABLE);
+
+    /** Portuguese. */
+    public static final SmsNationalLanguage PORTUGUESE = new SmsNationalLanguage((byte) 0x03, "PORTUGUESE",
+            PORTUGUESE_LOCKING_SHIFT_TABLE, null, PORTUGUESE_SINGLE_SHIFT_TABLE);
+
+    /** Languages with a locking shift table, DEFAULT first. */
+    static final SmsNationalLanguage[] LOCKING_SHIFT_LANGUAGES = { DEFAULT, TURKISH, PORTUGUESE };
+
+    /** Languages with a single shift table, DEFAULT first. */
+    static final SmsNationalLanguage[] SINGLE_SHIFT_LANGUAGES = { DEFAULT, TURKISH, SPANISH, PORTUGUESE };
+
+    private final byte value_;
+    private final String name_;
+
+    /** gsm charset -> unicode, null if there is no locking shift table. */
+    private final char[] lockingShiftTable_;
+    /** gsm charset -> unicode, 0 for undefined chars. */
+    private final char[] singleShiftTable_ = new char[128];
+
+    /** Reverse lookup tables (unicode -> gsm charset), paged on the high byte. */
+    private final short[][] lockingShiftReverse_ = new short[256][];
+    private final short[][] singleShiftReverse_ = new short[256][];
+
+    private SmsNationalLanguage(byte value, String name, char[] lockingShiftTable, char[] alternatives,
+            char[] singleShiftTable)
+    {
+        value_ = value;
+        name_ = name;
+        lockingShiftTable_ = lockingShiftTable;
+
+        if (alternatives != null)
+        {
+            for (int i = 0; i < alternatives.length; i += 2)
+            {
+                addReverseMapping(lockingShiftReverse_, alternatives[i], alternatives[i + 1] & 0x7f);
+            }
+        }
+
+        if (lockingShiftTable != null)
+        {
+            for (int i = 0; i < lockingShiftTable.length; i++)
+            {
+                // The escape char itself cannot be sent as a char
+                if (i != SmsPduUtil.EXT_TABLE_PREFIX)
+                {
+                    addReverseMapping(lockingShiftReverse_, lockingShiftTable[i], i);
+                }
+            }
+        }
+
+        for (int i = 0; i < singleShiftTable.length; i += 2)
+        {
+            int gsmChar = singleShiftTable[i + 1] & 0x7f;
+            addReverseMapping(singleShiftReverse_, singleShiftTable[i], gsmChar);
+            singleShiftTable_[gsmChar] = singleShiftTable[i];
+        }
+    }
+
+    private static void addReverseMapping(short[][] table, char ch, int gsmCode)
+    {
+        short[] page = table[ch >>> 8];
+
+        if (page == null)
+        {
+            page = new short[256];
+            Arrays.fill(page, (short) -1);
+            table[ch >>> 8] = page;
+        }
+
+        page[ch & 0xff] = (short) gsmCode;
+    }
+
+    /**
+     * Convert a national language identifier into an SmsNationalLanguage
+     * object.
+     * 
+     * @param value
+     *            The national language identifier as specified in the GSM
+     *            spec.
+     * @return One of the statically defined languages or null if the
+     *         language isn't supported.
+     */
+    public static SmsNationalLanguage valueOf(byte value)
+    {
+        switch (value)
+        {
+        case 0x00: return DEFAULT;
+        case 0x01: return TURKISH;
+        case 0x02: return SPANISH;
+        case 0x03: return PORTUGUESE;
+        default: return null;
+        }
+    }
+
+    /**
+     * Returns the national language identifier as specified in the GSM spec.
+     */
+    public byte getValue()
+    {
+        return value_;
+    }
+
+    /**
+     * Returns true if this language has a locking shift table.
+     */
+    public boolean hasLockingShiftTable()
+    {
+        return lockingShiftTable_ != null;
+    }
+
+    /**
+     * Converts a char from the locking shift table to unicode.
+     * <p>
+     * Languages without a locking shift table use the default alphabet.
+     * 
+     * @param gsmChar
+     *            The gsm char to convert
+     * @return Unicode representation of the given gsm char
+     */
+    public char fromLockingShift(int gsmChar)
+    {
+        return (lockingShiftTable_ != null) ? lockingShiftTable_[gsmChar & 0x7f]
+                : SmsPduUtil.GSM_DEFAULT_ALPHABET_TABLE[gsmChar & 0x7f];
+    }
+
+    /**
+     * Converts a char from the single shift table to unicode.
+     * <p>
+     * Undefined chars are decoded with the given locking shift table as
+     * recommended by 3GPP TS 23.038.
+     * 
+     * @param gsmChar
+     *            The gsm char to convert, the char following the escape char
+     * @param lockingShift
+     *            The locking shift table in use
+     * @return Unicode representation of the given gsm char
+     */
+    public char fromSingleShift(int gsmChar, SmsNationalLanguage lockingShift)
+    {
+        char ch = singleShiftTable_[gsmChar & 0x7f];
+        return (ch != 0) ? ch : lockingShift.fromLockingShift(gsmChar);
+    }
+
+    /**
+     * Returns true if the char is found in the locking shift table, or in the
+     * default alphabet if this language has no locking shift table.
+     */
+    boolean isInLockingShiftTable(char ch)
+    {
+        short[][] lockingShiftReverse = (lockingShiftTable_ != null) ? lockingShiftReverse_
+                : DEFAULT.lockingShiftReverse_;
+        short[] page = lockingShiftReverse[ch >>> 8];
+        return (page != null) && (page[ch & 0xff] >= 0);
+    }
+
+    /**
+     * Returns true if the char is found in the single shift table.
+     */
+    boolean isInSingleShiftTable(char ch)
+    {
+        short[] page = singleShiftReverse_[ch >>> 8];
+        return (page != null) && (page[ch & 0xff] >= 0);
+    }
+
+    /**
+     * Looks up the gsm code for the given char using a pair of shift tables.
+     * 
+     * @param ch
+     *            The unicode char
+     * @param lockingShift
+     *            Language of the locking shift table
+     * @param singleShift
+     *            Language of the single shift table
+     * @return The gsm charset value, the value with bit 8 set if the char is
+     *         found in the single shift table or -1 if the char can't be
+     *         represented with the tables.
+     */
+    static int lookupGsmCode(char ch, SmsNationalLanguage lockingShift, SmsNationalLanguage singleShift)
+    {
+        if ((lockingShift == DEFAULT) && (singleShift == DEFAULT))
+        {
+            return SmsPduUtil.lookupGsmCode(ch);
+        }
+
+        // Languages without a locking shift table use the default alphabet
+        short[][] lockingShiftReverse = (lockingShift.lockingShiftTable_ != null) ? lockingShift.lockingShiftReverse_
+                : DEFAULT.lockingShiftReverse_;
+
+        short[] page = lockingShiftReverse[ch >>> 8];
+        if ((page != null) && (page[ch & 0xff] >= 0))
+        {
+            return page[ch & 0xff];
+        }
+
+        page = singleShift.singleShiftReverse_[ch >>> 8];
+        if ((page != null) && (page[ch & 0xff] >= 0))
+        {
+            return SmsPduUtil.GSM_EXT_FLAG | page[ch & 0xff];
+        }
+
+        return -1;
+    }
+
+    public String toString()
+    {
+        return name_;
+    }
+}
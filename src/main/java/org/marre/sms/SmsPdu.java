@@ -34,8 +34,6 @@
  * ***** END LICENSE BLOCK ***** */
 package org.marre.sms;
 
-import java.io.*;
-
 /**
  * Represents an SMS pdu
  * <p>
@@ -51,6 +49,9 @@ public class SmsPdu
     protected SmsUdhElement[] udhElements_;
     protected SmsUserData ud_;
 
+    /** The UDH as bytes, created on the first call to getUserDataHeaders(). */
+    private volatile byte[] udhBytes_;
+
     /**
      * Creates an empty SMS pdu object
      */
@@ -98,6 +99,8 @@ public class SmsPdu
      */
     public void setUserDataHeaders(SmsUdhElement[] udhElements)
     {
+        udhBytes_ = null;
+
         if (udhElements != null)
         {
             udhElements_ = new SmsUdhElement[udhElements.length];
@@ -111,35 +114,58 @@ public class SmsPdu
     }
 
     /**
-     * Returns the user data headers
+     * Returns the UDH elements.
      * 
-     * @return A byte array representing the UDH fields or null if there aren't
-     *         any UDH
+     * @return A copy of the UDH elements or null if there aren't any UDH
      */
-    public byte[] getUserDataHeaders()
+    public SmsUdhElement[] getUdhElements()
+    {
+        return (udhElements_ == null) ? null : udhElements_.clone();
+    }
+
+    /**
+     * Returns the first UDH element with the given identifier.
+     * 
+     * @param iei
+     *            The identifier
+     * @return The element or null if there is no such element
+     */
+    public SmsUdhElement getUdhElement(SmsUdhIei iei)
     {
-        if (udhElements_ == null)
+        if (udhElements_ != null)
         {
-            return null;
+            for (SmsUdhElement udhElement : udhElements_)
+            {
+                if (udhElement.getUdhIei().getValue() == iei.getValue())
+                {
+                    return udhElement;
+                }
+            }
         }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(100);
+        return null;
+    }
 
-        baos.write((byte) SmsUdhUtil.getTotalSize(udhElements_));
+    /**
+     * Returns the user data headers
+     * <p>
+     * The bytes are only created once, the same array is returned on every
+     * call and must not be modified.
+     * 
+     * @return A byte array representing the UDH fields or null if there aren't
+     *         any UDH
+     */
+    public byte[] getUserDataHeaders()
+    {
+        byte[] udhBytes = udhBytes_;
 
-        try
-        {
-            for (SmsUdhElement anUdhElements_ : udhElements_) {
-                anUdhElements_.writeTo(baos);
-            }
-        }
-        catch (IOException ioe)
+        if ((udhBytes == null) && (udhElements_ != null))
         {
-            // Shouldn't happen.
-            throw new RuntimeException("Failed to write to ByteArrayOutputStream");
+            udhBytes = SmsUdhUtil.toByteArray(udhElements_);
+            udhBytes_ = udhBytes;
         }
 
-        return baos.toByteArray();
+        return udhBytes;
     }
 
     /**
@@ -157,6 +183,25 @@ public class SmsPdu
         ud_ = new SmsUserData(ud, udLength, dcs);
     }
 
+    /**
+     * Sets the user data field of the message to a part of the given array.
+     * <p>
+     * The array is not copied.
+     * 
+     * @param ud
+     *            The array holding the content
+     * @param offset
+     *            Offset of the content in ud, in octets
+     * @param udLength
+     *            The length, can be in septets or octets depending on the DCS
+     * @param dcs
+     *            The data coding scheme
+     */
+    public void setUserData(byte[] ud, int offset, int udLength, SmsDcs dcs)
+    {
+        ud_ = new SmsUserData(ud, offset, udLength, dcs);
+    }
+
     /**
      * Sets the user data field of the message.
      * 
@@ -178,6 +223,67 @@ public class SmsPdu
         return ud_;
     }
     
+    /**
+     * Decodes the user data as text.
+     * <p>
+     * Septets are decoded with the national language shift tables given in
+     * the UDH, 8-bit data is decoded as ISO-8859-1.
+     * 
+     * @return The text
+     */
+    public String getText()
+    {
+        byte[] data = ud_.getBuffer();
+        int offset = ud_.getOffset();
+        int length = ud_.getLength();
+        char[] chars;
+
+        if (ud_.getDcs().getAlphabet() == SmsAlphabet.GSM)
+        {
+            SmsNationalLanguage lockingShift = getNationalLanguage(SmsUdhIei.NATIONAL_LANGUAGE_LOCKING_SHIFT);
+            SmsNationalLanguage singleShift = getNationalLanguage(SmsUdhIei.NATIONAL_LANGUAGE_SINGLE_SHIFT);
+
+            chars = new char[length];
+            int nChars = SeptetCodec.decode(data, offset * 8, length, chars, 0, lockingShift, singleShift);
+            return new String(chars, 0, nChars);
+        }
+        else if (ud_.getDcs().getAlphabet() == SmsAlphabet.UCS2)
+        {
+            chars = new char[length / 2];
+            for (int i = 0; i < chars.length; i++)
+            {
+                chars[i] = (char) (((data[offset + i * 2] & 0xff) << 8) | (data[offset + i * 2 + 1] & 0xff));
+            }
+        }
+        else
+        {
+            chars = new char[length];
+            for (int i = 0; i < chars.length; i++)
+            {
+                chars[i] = (char) (data[offset + i] & 0xff);
+            }
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Returns the language of the given shift table UDH element, DEFAULT if
+     * there is no such element or the language isn't supported.
+     */
+    private SmsNationalLanguage getNationalLanguage(SmsUdhIei iei)
+    {
+        SmsUdhElement udhElement = getUdhElement(iei);
+
+        if ((udhElement == null) || (udhElement.getUdhIeiDataLength() < 1))
+        {
+            return SmsNationalLanguage.DEFAULT;
+        }
+
+        SmsNationalLanguage language = SmsNationalLanguage.valueOf(udhElement.getUdhIeiData()[0]);
+        return (language == null) ? SmsNationalLanguage.DEFAULT : language;
+    }
+
     /**
      * Returns the dcs.
      * 
@@ -36,6 +36,8 @@
 package org.marre.sms;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * Various functions to encode and decode strings
@@ -129,6 +131,139 @@ public final class SmsPduUtil
             // GREEK CAPITAL LETTER ZETA
             0x0396, 0x5a};
 
+    /**
+     * The GSM 03.38 extension table.
+     * 
+     * These characters are sent as two septets, EXT_TABLE_PREFIX followed by
+     * the gsm charset value. The table is encoded as pairs with unicode value
+     * and gsm charset value, in the same way as
+     * GSM_DEFAULT_ALPHABET_ALTERNATIVES.
+     * 
+     * See http://www.unicode.org/Public/MAPPINGS/ETSI/GSM0338.TXT
+     */
+    public static final char[] GSM_EXTENSION_ALPHABET_TABLE = {
+            // FORM FEED
+            0x000c, 0x0a,
+            // CIRCUMFLEX ACCENT
+            '^', 0x14,
+            // LEFT CURLY BRACKET
+            '{', 0x28,
+            // RIGHT CURLY BRACKET
+            '}', 0x29,
+            // REVERSE SOLIDUS
+            '\\', 0x2f,
+            // LEFT SQUARE BRACKET
+            '[', 0x3c,
+            // TILDE
+            '~', 0x3d,
+            // RIGHT SQUARE BRACKET
+            ']', 0x3e,
+            // VERTICAL LINE
+            '|', 0x40,
+            // EURO SIGN
+            0x20ac, 0x65};
+
+    /**
+     * Flag set in the reverse lookup table for chars that are found in the
+     * extension table.
+     */
+    static final short GSM_EXT_FLAG = 0x100;
+
+    /**
+     * Marks a char that cannot be represented in the GSM charset.
+     */
+    private static final short GSM_UNMAPPED = -1;
+
+    /**
+     * Reverse lookup table (unicode -> gsm charset).
+     * <p>
+     * Indexed by the high byte of the unicode char, each non-null page is
+     * indexed by the low byte. Only the pages that contain GSM chars are
+     * allocated.
+     */
+    private static final short[][] GSM_REVERSE_TABLE = new short[256][];
+
+    /**
+     * Lookup table for the extension table (gsm charset -> unicode).
+     */
+    private static final char[] GSM_EXTENSION_DECODE_TABLE = new char[128];
+
+    static
+    {
+        // Add the alternatives first so that the default table wins if
+        // there are any duplicates
+        for (int i = 0; i < GSM_DEFAULT_ALPHABET_ALTERNATIVES.length; i += 2)
+        {
+            addReverseMapping(GSM_DEFAULT_ALPHABET_ALTERNATIVES[i], (short) (GSM_DEFAULT_ALPHABET_ALTERNATIVES[i + 1] & 0x7f));
+        }
+
+        for (int i = 0; i < GSM_EXTENSION_ALPHABET_TABLE.length; i += 2)
+        {
+            char ch = GSM_EXTENSION_ALPHABET_TABLE[i];
+            int gsmChar = GSM_EXTENSION_ALPHABET_TABLE[i + 1] & 0x7f;
+
+            addReverseMapping(ch, (short) (GSM_EXT_FLAG | gsmChar));
+            GSM_EXTENSION_DECODE_TABLE[gsmChar] = ch;
+        }
+
+        for (int i = 0; i < GSM_DEFAULT_ALPHABET_TABLE.length; i++)
+        {
+            // The escape char itself cannot be sent as a char
+            if (i != EXT_TABLE_PREFIX)
+            {
+                addReverseMapping(GSM_DEFAULT_ALPHABET_TABLE[i], (short) i);
+            }
+        }
+    }
+
+    private static void addReverseMapping(char ch, short gsmCode)
+    {
+        short[] page = GSM_REVERSE_TABLE[ch >>> 8];
+
+        if (page == null)
+        {
+            page = new short[256];
+            Arrays.fill(page, GSM_UNMAPPED);
+            GSM_REVERSE_TABLE[ch >>> 8] = page;
+        }
+
+        page[ch & 0xff] = gsmCode;
+    }
+
+    /**
+     * Looks up the gsm code for the given unicode char.
+     * 
+     * @param ch
+     *            The unicode char
+     * @return The gsm charset value, the gsm charset value with GSM_EXT_FLAG
+     *         set if the char is found in the extension table or
+     *         GSM_UNMAPPED if the char can't be represented in the GSM charset.
+     */
+    static int lookupGsmCode(char ch)
+    {
+        short[] page = GSM_REVERSE_TABLE[ch >>> 8];
+        return (page == null) ? GSM_UNMAPPED : page[ch & 0xff];
+    }
+
+    /** Digit of each BCD semi octet, 0 for the semi octets that are skipped. */
+    private static final char[] BCD_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '*', '#', 'a', 0, 'b', 0
+    };
+
+    /** BCD semi octet of each ASCII char, 0 for chars that aren't digits. */
+    private static final byte[] BCD_NIBBLES = new byte[128];
+
+    static
+    {
+        for (int i = 0; i < BCD_DIGITS.length; i++)
+        {
+            if (BCD_DIGITS[i] != 0)
+            {
+                BCD_NIBBLES[BCD_DIGITS[i]] = (byte) i;
+            }
+        }
+    }
+
     /**
      * This class isn't intended to be instantiated
      */
@@ -142,20 +277,9 @@ public final class SmsPduUtil
      */
     public static byte[] getSeptets(String msg)
     {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(140);
-
-        try
-        {
-            writeSeptets(baos, msg);
-            baos.close();
-        }
-        catch (IOException ex)
-        {
-            // Should not happen...
-            throw new RuntimeException(ex);
-        }
-
-        return baos.toByteArray();
+        byte[] septets = new byte[SeptetCodec.getOctetCount(getSeptetCount(msg), 0)];
+        SeptetCodec.encode(msg, septets, 0);
+        return septets;
     }
 
     /**
@@ -175,9 +299,29 @@ public final class SmsPduUtil
 
         for (int i = 0; i < msg.length(); i++)
         {
-            byte gsmChar = toGsmCharset(msg.charAt(i));
+            int gsmCode = lookupGsmCode(msg.charAt(i));
+
+            if (gsmCode == GSM_UNMAPPED)
+            {
+                gsmCode = '?';
+            }
+            else if ((gsmCode & GSM_EXT_FLAG) != 0)
+            {
+                // Extension table, write the escape char first
+                data |= (EXT_TABLE_PREFIX << nBits);
+                nBits += 7;
+                gsmCode &= 0x7f;
+
+                while (nBits >= 8)
+                {
+                    os.write((char) (data & 0xff));
+
+                    data >>>= 8;
+                    nBits -= 8;
+                } // while
+            }
 
-            data |= (gsmChar << nBits);
+            data |= (gsmCode << nBits);
             nBits += 7;
 
             while (nBits >= 8)
@@ -196,40 +340,111 @@ public final class SmsPduUtil
         }
     }
 
+    /**
+     * Returns the number of septets needed to encode the given string.
+     * <p>
+     * Chars from the extension table needs two septets, all other chars
+     * (including the ones that will be replaced with '?') needs one.
+     * 
+     * @param msg
+     *            The message
+     * @return Number of septets
+     */
+    public static int getSeptetCount(CharSequence msg)
+    {
+        int nSeptets = msg.length();
+
+        for (int i = 0; i < msg.length(); i++)
+        {
+            if (isGsmExtensionChar(msg.charAt(i)))
+            {
+                nSeptets++;
+            }
+        }
+
+        return nSeptets;
+    }
+
+    /**
+     * Returns the number of septets needed to encode the given string with
+     * national language shift tables.
+     * <p>
+     * Chars from the single shift table needs two septets, all other chars
+     * (including the ones that will be replaced with '?') needs one.
+     * 
+     * @param msg
+     *            The message
+     * @param lockingShift
+     *            Language of the locking shift table
+     * @param singleShift
+     *            Language of the single shift table
+     * @return Number of septets
+     */
+    public static int getSeptetCount(CharSequence msg, SmsNationalLanguage lockingShift, SmsNationalLanguage singleShift)
+    {
+        int nSeptets = msg.length();
+
+        for (int i = 0; i < msg.length(); i++)
+        {
+            if (SmsNationalLanguage.lookupGsmCode(msg.charAt(i), lockingShift, singleShift) > 0x7f)
+            {
+                nSeptets++;
+            }
+        }
+
+        return nSeptets;
+    }
+
     /**
      * Decodes a 7-bit encoded string from the given byte array
+     * <p>
+     * Escape sequences are decoded with the extension table.
      * 
      * @param data
      *            The byte array to read from
      * @param length
-     *            Number of decoded chars to read from the stream
+     *            Number of septets to read from the stream
      * @return The decoded string
      */
     public static String readSeptets(byte[] data, int length)
     {
-        if (data == null)
-        {
-            return null;
-        }
+        return readSeptets(data, 0, length);
+    }
 
-        try
-        {
-            return readSeptets(new ByteArrayInputStream(data), length);
-        }
-        catch (IOException ex)
+    /**
+     * Decodes a 7-bit encoded string from the given part of a byte array
+     * <p>
+     * Escape sequences are decoded with the extension table.
+     * 
+     * @param data
+     *            The byte array to read from
+     * @param offset
+     *            Offset of the octet holding the first septet at bit 0
+     * @param length
+     *            Number of septets to read from the stream
+     * @return The decoded string
+     */
+    public static String readSeptets(byte[] data, int offset, int length)
+    {
+        if ((data == null) || (data.length - offset < SeptetCodec.getOctetCount(length, 0)))
         {
-            // Shouldn't happen since we are reading from a bytearray...
             return null;
         }
+
+        char[] chars = new char[length];
+        int nChars = SeptetCodec.decode(data, offset * 8, length, chars, 0);
+        return new String(chars, 0, nChars);
     }
     
     /**
      * Decodes a 7-bit encoded string from the stream
+     * <p>
+     * Escape sequences are decoded with the extension table.
      * 
      * @param is
      *            The stream to read from
      * @param length
-     *            Number of decoded chars to read from the stream
+     *            Number of septets to read from the stream
      * @return The decoded string
      * @throws IOException
      *             when failing to read from is
@@ -240,8 +455,10 @@ public final class SmsPduUtil
 
         int rest = 0;
         int restBits = 0;
+        int nSeptets = 0;
+        boolean escaped = false;
 
-        while (msg.length() < length)
+        while (nSeptets < length)
         {
             int data = is.read();
 
@@ -253,15 +470,36 @@ public final class SmsPduUtil
             rest |= (data << restBits);
             restBits += 8;
 
-            while ((msg.length() < length) && (restBits >= 7))
+            while ((nSeptets < length) && (restBits >= 7))
             {
-                msg.append(fromGsmCharset((byte) (rest & 0x7f)));
-
+                byte gsmChar = (byte) (rest & 0x7f);
+
+                if (escaped)
+                {
+                    msg.append(fromGsmExtensionCharset(gsmChar));
+                    escaped = false;
+                }
+                else if (gsmChar == EXT_TABLE_PREFIX)
+                {
+                    escaped = true;
+                }
+                else
+                {
+                    msg.append(fromGsmCharset(gsmChar));
+                }
+
+                nSeptets++;
                 rest >>>= 7;
                 restBits -= 7;
             }
         } // for
 
+        // A trailing escape char without a following char
+        if (escaped)
+        {
+            msg.append(fromGsmCharset((byte) EXT_TABLE_PREFIX));
+        }
+
         return msg.toString();
     }
 
@@ -283,52 +521,7 @@ public final class SmsPduUtil
         // First convert to a "half octet" value
         for (int i = 0; i < number.length(); i++)
         {
-            switch (number.charAt(i))
-            {
-            case '0':
-                bcd |= 0x00;
-                break;
-            case '1':
-                bcd |= 0x10;
-                break;
-            case '2':
-                bcd |= 0x20;
-                break;
-            case '3':
-                bcd |= 0x30;
-                break;
-            case '4':
-                bcd |= 0x40;
-                break;
-            case '5':
-                bcd |= 0x50;
-                break;
-            case '6':
-                bcd |= 0x60;
-                break;
-            case '7':
-                bcd |= 0x70;
-                break;
-            case '8':
-                bcd |= 0x80;
-                break;
-            case '9':
-                bcd |= 0x90;
-                break;
-            case '*':
-                bcd |= 0xA0;
-                break;
-            case '#':
-                bcd |= 0xB0;
-                break;
-            case 'a':
-                bcd |= 0xC0;
-                break;
-            case 'b':
-                bcd |= 0xE0;
-                break;
-            }
-
+            bcd |= toBcdNibble(number.charAt(i)) << 4;
             n++;
 
             if (n == 2)
@@ -350,6 +543,37 @@ public final class SmsPduUtil
         }
     }
 
+    /**
+     * Writes the given phonenumber to the buffer (BCD coded)
+     * 
+     * @param buf
+     *            Buffer to write to
+     * @param number
+     *            Number to convert
+     */
+    public static void writeBcdNumber(ByteBuffer buf, String number)
+    {
+        int i = 0;
+
+        for (; i + 1 < number.length(); i += 2)
+        {
+            buf.put((byte) (toBcdNibble(number.charAt(i)) | (toBcdNibble(number.charAt(i + 1)) << 4)));
+        }
+
+        if (i < number.length())
+        {
+            buf.put((byte) (toBcdNibble(number.charAt(i)) | 0xF0));
+        }
+    }
+
+    /**
+     * Converts a digit to a "half octet" value.
+     */
+    private static int toBcdNibble(char digit)
+    {
+        return (digit < BCD_NIBBLES.length) ? BCD_NIBBLES[digit] : 0x0;
+    }
+
     /**
      * Converts bytes to BCD format
      * 
@@ -378,37 +602,25 @@ public final class SmsPduUtil
      */
     public static String readBcdNumber(byte[] data, int offset, int length)
     {
-        StringBuilder out = new StringBuilder();
+        char[] digits = new char[length * 2];
+        int n = 0;
+
         for (int i = offset; i < offset + length; i++)
         {
-            int arrb = data[i];
-            if ((data[i] & 15) <= 9)
-            {
-                out.append("").append(data[i] & 15);
-            }
-            if ((data[i] & 15) == 0xA)
-            {
-                out.append("*");
-            }
-            if ((data[i] & 15) == 0xB)
-            {
-                out.append("#");
-            }
-            arrb = (arrb >>> 4);
-            if ((arrb & 15) <= 9)
-            {
-                out.append("").append(arrb & 15);
-            }
-            if ((arrb & 15) == 0xA)
+            char low = BCD_DIGITS[data[i] & 0x0f];
+            char high = BCD_DIGITS[(data[i] >>> 4) & 0x0f];
+
+            if (low != 0)
             {
-                out.append("*");
+                digits[n++] = low;
             }
-            if ((arrb & 15) == 0xB)
+            if (high != 0)
             {
-                out.append("#");
+                digits[n++] = high;
             }
         }
-        return out.toString();
+
+        return new String(digits, 0, n);
     }
 
     /**
@@ -423,8 +635,27 @@ public final class SmsPduUtil
         return GSM_DEFAULT_ALPHABET_TABLE[gsmChar];
     }
 
+    /**
+     * Convert from the GSM extension table to a unicode char
+     * <p>
+     * Undefined extension chars are decoded with the default table as
+     * recommended by GSM 03.38.
+     * 
+     * @param gsmChar
+     *            The gsm char to convert, the char following the escape char
+     * @return Unicode representation of the given gsm char
+     */
+    public static char fromGsmExtensionCharset(byte gsmChar)
+    {
+        char ch = GSM_EXTENSION_DECODE_TABLE[gsmChar];
+        return (ch != 0) ? ch : GSM_DEFAULT_ALPHABET_TABLE[gsmChar];
+    }
+
     /**
      * Converts a unicode string to GSM charset
+     * <p>
+     * Chars from the extension table are encoded as two bytes, the
+     * EXT_TABLE_PREFIX followed by the char.
      * 
      * @param str
      *            String to convert
@@ -432,11 +663,26 @@ public final class SmsPduUtil
      */
     public static byte[] toGsmCharset(String str)
     {
-        byte[] gsmBytes = new byte[str.length()];
+        byte[] gsmBytes = new byte[getSeptetCount(str)];
+        int n = 0;
 
-        for (int i = 0; i < gsmBytes.length; i++)
+        for (int i = 0; i < str.length(); i++)
         {
-            gsmBytes[i] = toGsmCharset(str.charAt(i));
+            int gsmCode = lookupGsmCode(str.charAt(i));
+
+            if (gsmCode == GSM_UNMAPPED)
+            {
+                gsmBytes[n++] = '?';
+            }
+            else if ((gsmCode & GSM_EXT_FLAG) != 0)
+            {
+                gsmBytes[n++] = (byte) EXT_TABLE_PREFIX;
+                gsmBytes[n++] = (byte) (gsmCode & 0x7f);
+            }
+            else
+            {
+                gsmBytes[n++] = (byte) gsmCode;
+            }
         }
 
         return gsmBytes;
@@ -444,6 +690,10 @@ public final class SmsPduUtil
 
     /**
      * Convert a unicode char to a GSM char
+     * <p>
+     * Chars that only exists in the extension table can't be represented as
+     * a single GSM char and are converted to '?'. Use toGsmCharset(String) or
+     * writeSeptets() to get them escaped.
      * 
      * @param ch
      *            The unicode char to convert
@@ -451,27 +701,42 @@ public final class SmsPduUtil
      */
     public static byte toGsmCharset(char ch)
     {
-        // First check through the GSM charset table
-        for (int i = 0; i < GSM_DEFAULT_ALPHABET_TABLE.length; i++)
-        {
-            if (GSM_DEFAULT_ALPHABET_TABLE[i] == ch)
-            {
-                // Found the correct char
-                return (byte) i;
-            }
-        }
+        int gsmCode = lookupGsmCode(ch);
 
-        // Alternative chars.
-        for (int i = 0; i < GSM_DEFAULT_ALPHABET_ALTERNATIVES.length / 2; i += 2)
+        if ((gsmCode == GSM_UNMAPPED) || ((gsmCode & GSM_EXT_FLAG) != 0))
         {
-            if (GSM_DEFAULT_ALPHABET_ALTERNATIVES[i * 2] == ch) 
-            { 
-                return (byte) (GSM_DEFAULT_ALPHABET_ALTERNATIVES[i * 2 + 1] & 0x7f); 
-            }
+            // Couldn't find a valid char
+            return '?';
         }
 
-        // Couldn't find a valid char
-        return '?';
+        return (byte) gsmCode;
+    }
+
+    /**
+     * Checks if the given unicode char can be represented in the GSM charset,
+     * either in the default table or in the extension table.
+     * 
+     * @param ch
+     *            The unicode char
+     * @return true if the char can be GSM encoded
+     */
+    public static boolean isGsmChar(char ch)
+    {
+        return lookupGsmCode(ch) != GSM_UNMAPPED;
+    }
+
+    /**
+     * Checks if the given unicode char is only found in the GSM extension
+     * table, and therefore needs two septets.
+     * 
+     * @param ch
+     *            The unicode char
+     * @return true if the char must be escaped
+     */
+    public static boolean isGsmExtensionChar(char ch)
+    {
+        int gsmCode = lookupGsmCode(ch);
+        return (gsmCode != GSM_UNMAPPED) && ((gsmCode & GSM_EXT_FLAG) != 0);
     }
 
     /**
@@ -508,4 +773,54 @@ public final class SmsPduUtil
             dest[destStart + nBytes] |= c & 0xff;
         }
     }
+
+    /**
+     * Copies bits from one array to another.
+     * <p>
+     * Bits are numbered from the least significant bit of the first byte,
+     * the same order that septets are packed in. The bits are OR:ed into
+     * dest, so the destination bits must be zero. This can be used to cut
+     * out septets from a packed septet stream without decoding it.
+     * 
+     * @param src
+     *            Source array
+     * @param srcBitOffset
+     *            Bit offset to start copying from
+     * @param dest
+     *            Destination array
+     * @param destBitOffset
+     *            Bit offset to start copying to
+     * @param lengthInBits
+     *            Number of bits to copy
+     */
+    public static void arrayCopyBits(byte[] src, int srcBitOffset,
+            byte[] dest, int destBitOffset,
+            int lengthInBits)
+    {
+        int srcPos = srcBitOffset;
+        int destPos = destBitOffset;
+        int srcEnd = srcBitOffset + lengthInBits;
+
+        while (srcPos < srcEnd)
+        {
+            int srcIndex = srcPos >>> 3;
+            int srcShift = srcPos & 7;
+            int destShift = destPos & 7;
+
+            // Fill up the current destination byte
+            int nBits = Math.min(8 - destShift, srcEnd - srcPos);
+
+            int bits = (src[srcIndex] & 0xff) >>> srcShift;
+            if (srcShift + nBits > 8)
+            {
+                bits |= (src[srcIndex + 1] & 0xff) << (8 - srcShift);
+            }
+            bits &= (1 << nBits) - 1;
+
+            dest[destPos >>> 3] |= (byte) (bits << destShift);
+
+            srcPos += nBits;
+            destPos += nBits;
+        }
+    }
 }
@@ -68,6 +68,7 @@ public abstract class SmsPortAddressedMessage extends SmsConcatMessage
     {
         destPort_ = destPort;
         origPort_ = origPort;
+        contentChanged();
     }
     
     public SmsUdhElement[] getUdhElements()
@@ -91,6 +91,26 @@ public class SmsPortAddressedTextMessage extends SmsPortAddressedMessage
     {
         return smsTextMessage_.getUserData();
     }
+
+    /**
+     * Returns the port addressing UDH element followed by the UDH elements
+     * of the text, if any.
+     */
+    public SmsUdhElement[] getUdhElements()
+    {
+        SmsUdhElement[] portUdh = super.getUdhElements();
+        SmsUdhElement[] textUdh = smsTextMessage_.getUdhElements();
+
+        if (textUdh == null)
+        {
+            return portUdh;
+        }
+
+        SmsUdhElement[] udh = new SmsUdhElement[portUdh.length + textUdh.length];
+        System.arraycopy(portUdh, 0, udh, 0, portUdh.length);
+        System.arraycopy(textUdh, 0, udh, portUdh.length, textUdh.length);
+        return udh;
+    }
     
     /**
      * Returns the text message. 
@@ -0,0 +1,535 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+/**
+ * Calculates how many SMS a message needs, without encoding it.
+ * <p>
+ * The calculations use the same segment boundaries as
+ * SmsConcatMessage.getPdus() so the results can be used to price or validate
+ * messages before they are built. A segment never ends in the middle of a GSM
+ * escape sequence or an UCS2 surrogate pair, so a segment can carry slightly
+ * less than getMaxUdLength().
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public final class SmsSegmentCalculator
+{
+    /** Max size of the user data (including UDH) in one SMS, in octets. */
+    public static final int MAX_UD_OCTETS = 140;
+
+    /** Size of an 8-bit concat UDH element, including the IEI and length. */
+    public static final int CONCAT_8BIT_UDH_SIZE = 5;
+
+    /** Size of a 16-bit concat UDH element, including the IEI and length. */
+    public static final int CONCAT_16BIT_UDH_SIZE = 6;
+
+    /**
+     * This class isn't intended to be instantiated
+     */
+    private SmsSegmentCalculator()
+    {
+    }
+
+    /**
+     * Returns the size of the UDH, including the UDH length octet.
+     * 
+     * @param udhElements
+     *            The UDH elements of the message, can be null
+     * @param concat
+     *            true if an 8-bit concat element is added
+     * @return The UDH size in octets, 0 if there is no UDH
+     */
+    public static int getUdhLength(SmsUdhElement[] udhElements, boolean concat)
+    {
+        return getUdhLength(udhElements, concat ? CONCAT_8BIT_UDH_SIZE : 0);
+    }
+
+    /**
+     * Returns the size of the UDH, including the UDH length octet.
+     * 
+     * @param udhElements
+     *            The UDH elements of the message, can be null
+     * @param concatUdhSize
+     *            Size of the concat element that is added, CONCAT_8BIT_UDH_SIZE,
+     *            CONCAT_16BIT_UDH_SIZE or 0 if there is none
+     * @return The UDH size in octets, 0 if there is no UDH
+     */
+    public static int getUdhLength(SmsUdhElement[] udhElements, int concatUdhSize)
+    {
+        int udhLength = SmsUdhUtil.getTotalSize(udhElements) + concatUdhSize;
+
+        // +1 for the UDH length octet
+        return (udhLength == 0) ? 0 : udhLength + 1;
+    }
+
+    /**
+     * Returns how much user data that fits in one SMS.
+     * 
+     * @param alphabet
+     *            The alphabet
+     * @param udhLength
+     *            The size of the UDH in octets, including the UDH length
+     *            octet
+     * @return Max length in septets for GSM, otherwise in octets
+     */
+    public static int getMaxUdLength(SmsAlphabet alphabet, int udhLength)
+    {
+        switch (alphabet)
+        {
+        case GSM:
+            // The UD starts at the first septet boundary after the UDH
+            return (MAX_UD_OCTETS * 8) / 7 - (udhLength * 8 + 6) / 7;
+
+        case UCS2:
+            // Keep whole chars in each SMS
+            return ((MAX_UD_OCTETS - udhLength) / 2) * 2;
+
+        case LATIN1:
+        default:
+            return MAX_UD_OCTETS - udhLength;
+        }
+    }
+
+    /**
+     * Calculates the segments for a text message.
+     * 
+     * @param text
+     *            The text
+     * @param dcs
+     *            The data coding scheme to encode the text with
+     * @param udhElements
+     *            UDH elements, excluding any concat elements. Can be null.
+     * @return The result
+     */
+    public static SmsSegmentInfo calculate(CharSequence text, SmsDcs dcs, SmsUdhElement[] udhElements)
+    {
+        return calculate(text, dcs.getAlphabet(), SmsNationalLanguage.DEFAULT, SmsNationalLanguage.DEFAULT,
+                udhElements);
+    }
+
+    /**
+     * Calculates the segments for a text message that is sent with national
+     * language shift tables.
+     * 
+     * @param text
+     *            The text
+     * @param dcs
+     *            The data coding scheme to encode the text with
+     * @param lockingShift
+     *            Language of the locking shift table
+     * @param singleShift
+     *            Language of the single shift table
+     * @param udhElements
+     *            UDH elements, excluding any concat elements. Can be null.
+     * @return The result
+     */
+    public static SmsSegmentInfo calculate(CharSequence text, SmsDcs dcs, SmsNationalLanguage lockingShift,
+            SmsNationalLanguage singleShift, SmsUdhElement[] udhElements)
+    {
+        return calculate(text, dcs.getAlphabet(), lockingShift, singleShift, udhElements);
+    }
+
+    static SmsSegmentInfo calculate(CharSequence text, SmsAlphabet alphabet, SmsNationalLanguage lockingShift,
+            SmsNationalLanguage singleShift, SmsUdhElement[] udhElements)
+    {
+        int udLength = 0;
+        for (int i = 0; i < text.length();)
+        {
+            int unitLength = getUnitLength(text, i, alphabet, lockingShift, singleShift);
+            udLength += unitLength;
+            i += getUnitChars(alphabet, unitLength);
+        }
+
+        int udhLength = getUdhLength(udhElements, 0);
+        int maxLength = getMaxUdLength(alphabet, udhLength);
+
+        if (udLength <= maxLength)
+        {
+            return new SmsSegmentInfo(alphabet, udLength, udhLength, 1, maxLength, maxLength - udLength);
+        }
+
+        udhLength = getUdhLength(udhElements, CONCAT_8BIT_UDH_SIZE);
+        maxLength = getMaxUdLength(alphabet, udhLength);
+
+        // Fill the segments in the same way as getSegmentEnd()
+        int nSegments = 1;
+        int segmentLength = 0;
+        for (int i = 0; i < text.length();)
+        {
+            int unitLength = getUnitLength(text, i, alphabet, lockingShift, singleShift);
+
+            if (segmentLength + unitLength > maxLength)
+            {
+                nSegments++;
+                segmentLength = 0;
+            }
+
+            segmentLength += unitLength;
+            i += getUnitChars(alphabet, unitLength);
+        }
+
+        return new SmsSegmentInfo(alphabet, udLength, udhLength, nSegments, maxLength, maxLength - segmentLength);
+    }
+
+    /**
+     * Calculates the segments for already encoded user data.
+     * <p>
+     * The user data is cut in the same places as in
+     * SmsConcatMessage.getPdus().
+     * 
+     * @param ud
+     *            The user data
+     * @param udhElements
+     *            UDH elements, excluding any concat elements. Can be null.
+     * @return The result
+     */
+    public static SmsSegmentInfo calculate(SmsUserData ud, SmsUdhElement[] udhElements)
+    {
+        SmsAlphabet alphabet = ud.getDcs().getAlphabet();
+        int udLength = ud.getLength();
+        int udhLength = getUdhLength(udhElements, 0);
+        int maxLength = getMaxUdLength(alphabet, udhLength);
+
+        if (udLength <= maxLength)
+        {
+            return new SmsSegmentInfo(alphabet, udLength, udhLength, 1, maxLength, maxLength - udLength);
+        }
+
+        udhLength = getUdhLength(udhElements, CONCAT_8BIT_UDH_SIZE);
+        maxLength = getMaxUdLength(alphabet, udhLength);
+
+        int nSegments = 0;
+        int offset = 0;
+        int end = 0;
+        while (end < udLength)
+        {
+            offset = end;
+            end = getSegmentEnd(ud, offset, maxLength);
+            nSegments++;
+        }
+
+        return new SmsSegmentInfo(alphabet, udLength, udhLength, nSegments, maxLength, maxLength - (end - offset));
+    }
+
+    /**
+     * Estimates the segments from the length of the user data.
+     * <p>
+     * The length alone doesn't tell where escape sequences or surrogate
+     * pairs are, so this assumes that the user data can be cut anywhere. The
+     * result can be one SMS too low for long messages, use one of the other
+     * calculate() methods when the text or user data is available.
+     * 
+     * @param udLength
+     *            Length of the user data, in septets for GSM, otherwise in
+     *            octets
+     * @param alphabet
+     *            The alphabet
+     * @param udhElements
+     *            UDH elements, excluding any concat elements. Can be null.
+     * @return The result
+     */
+    public static SmsSegmentInfo calculate(int udLength, SmsAlphabet alphabet, SmsUdhElement[] udhElements)
+    {
+        int udhLength = getUdhLength(udhElements, 0);
+        int maxLength = getMaxUdLength(alphabet, udhLength);
+
+        if (udLength <= maxLength)
+        {
+            return new SmsSegmentInfo(alphabet, udLength, udhLength, 1, maxLength, maxLength - udLength);
+        }
+
+        udhLength = getUdhLength(udhElements, CONCAT_8BIT_UDH_SIZE);
+        maxLength = getMaxUdLength(alphabet, udhLength);
+
+        int nSegments = (udLength + maxLength - 1) / maxLength;
+        return new SmsSegmentInfo(alphabet, udLength, udhLength, nSegments, maxLength, nSegments * maxLength - udLength);
+    }
+
+    /**
+     * Calculates the number of segments from the length of the user data
+     * without walking the text.
+     * <p>
+     * A segment never splits a GSM escape sequence or an UCS2 surrogate pair,
+     * so each such unit may waste one char at a segment boundary. The count
+     * is only returned if it is the same however the units are placed.
+     * 
+     * @param udLength
+     *            Length of the user data, in septets for GSM, otherwise in
+     *            octets
+     * @param nUnits
+     *            The number of escape sequences (GSM) or surrogate pairs
+     *            (UCS2) in the user data
+     * @param alphabet
+     *            The alphabet
+     * @param udhElements
+     *            UDH elements, excluding any concat elements. Can be null.
+     * @return The number of segments or -1 if it depends on where the units
+     *         are placed in the text
+     */
+    static int getSegmentCount(int udLength, int nUnits, SmsAlphabet alphabet, SmsUdhElement[] udhElements)
+    {
+        int maxLength = getMaxUdLength(alphabet, getUdhLength(udhElements, 0));
+        if (udLength <= maxLength)
+        {
+            return 1;
+        }
+
+        maxLength = getMaxUdLength(alphabet, getUdhLength(udhElements, CONCAT_8BIT_UDH_SIZE));
+        int nSegments = (udLength + maxLength - 1) / maxLength;
+
+        // Worst case every boundary but the last one wastes a char
+        int waste = (alphabet == SmsAlphabet.UCS2) ? 2 : 1;
+        if (udLength + Math.min(nUnits, nSegments - 1) * waste <= nSegments * maxLength)
+        {
+            return nSegments;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds where a segment must end.
+     * <p>
+     * The segment is filled as much as possible without splitting a GSM
+     * escape sequence or an UCS2 surrogate pair.
+     * 
+     * @param ud
+     *            The whole user data
+     * @param offset
+     *            Start of the segment, in septets for GSM, otherwise in
+     *            octets
+     * @param maxLength
+     *            Max length of the segment
+     * @return End of the segment (exclusive)
+     */
+    static int getSegmentEnd(SmsUserData ud, int offset, int maxLength)
+    {
+        int end = offset + maxLength;
+
+        if (end >= ud.getLength())
+        {
+            return ud.getLength();
+        }
+
+        byte[] data = ud.getBuffer();
+        int dataOffset = ud.getOffset();
+
+        switch (ud.getDcs().getAlphabet())
+        {
+        case GSM:
+            // Escape sequences are only known by walking from the start of
+            // the segment
+            int i = offset;
+            while (i < end)
+            {
+                int n = (getSeptet(data, dataOffset, i) == SmsPduUtil.EXT_TABLE_PREFIX) ? 2 : 1;
+                if (i + n > end)
+                {
+                    break;
+                }
+                i += n;
+            }
+            return i;
+
+        case UCS2:
+            int lastOffset = dataOffset + end - 2;
+            char last = (char) (((data[lastOffset] & 0xff) << 8) | (data[lastOffset + 1] & 0xff));
+            return Character.isHighSurrogate(last) ? end - 2 : end;
+
+        case LATIN1:
+        default:
+            return end;
+        }
+    }
+
+    /**
+     * Reads one septet from packed septets.
+     */
+    private static int getSeptet(byte[] data, int offset, int index)
+    {
+        int bitOffset = index * 7;
+        int octet = offset + (bitOffset >>> 3);
+        int shift = bitOffset & 7;
+        int septet = (data[octet] & 0xff) >>> shift;
+
+        if (shift > 1)
+        {
+            septet |= (data[octet + 1] & 0xff) << (8 - shift);
+        }
+
+        return septet & 0x7f;
+    }
+
+    /**
+     * Returns the encoded length of the char, or surrogate pair, at the given
+     * index. Chars that can't be encoded are counted as their replacement.
+     * 
+     * @return Length in septets for GSM, otherwise in octets
+     */
+    private static int getUnitLength(CharSequence text, int i, SmsAlphabet alphabet,
+            SmsNationalLanguage lockingShift, SmsNationalLanguage singleShift)
+    {
+        switch (alphabet)
+        {
+        case GSM:
+            return (SmsNationalLanguage.lookupGsmCode(text.charAt(i), lockingShift, singleShift) > 0x7f) ? 2 : 1;
+
+        case UCS2:
+            return (Character.isHighSurrogate(text.charAt(i)) && (i + 1 < text.length())
+                    && Character.isLowSurrogate(text.charAt(i + 1))) ? 4 : 2;
+
+        case LATIN1:
+        default:
+            return 1;
+        }
+    }
+
+    /**
+     * Returns the number of chars in a unit with the given encoded length.
+     */
+    private static int getUnitChars(SmsAlphabet alphabet, int unitLength)
+    {
+        return (alphabet == SmsAlphabet.UCS2) ? unitLength / 2 : 1;
+    }
+
+    /**
+     * Returns the alphabet that can send the text without loss in the least
+     * number of SMS.
+     * <p>
+     * A text that only contains GSM chars never needs more SMS as GSM than
+     * as UCS2 (even escaped chars are 14 bits compared to 16), so GSM is
+     * chosen if all chars are found in the GSM charset, otherwise UCS2.
+     * 
+     * @param text
+     *            The text
+     * @return SmsAlphabet.GSM or SmsAlphabet.UCS2
+     */
+    public static SmsAlphabet getCheapestAlphabet(CharSequence text)
+    {
+        for (int i = 0; i < text.length(); i++)
+        {
+            if (!SmsPduUtil.isGsmChar(text.charAt(i)))
+            {
+                return SmsAlphabet.UCS2;
+            }
+        }
+
+        return SmsAlphabet.GSM;
+    }
+
+    /**
+     * Truncates the text so that it fits in the given number of SMS.
+     * <p>
+     * Chars are never cut in half, an escaped GSM char or an UCS2
+     * surrogate pair is either kept or removed as a whole.
+     * 
+     * @param text
+     *            The text
+     * @param dcs
+     *            The data coding scheme to encode the text with
+     * @param udhElements
+     *            UDH elements, excluding any concat elements. Can be null.
+     * @param maxSegments
+     *            Max number of SMS
+     * @return The text, or the longest prefix of the text that fits
+     */
+    public static String truncate(CharSequence text, SmsDcs dcs, SmsUdhElement[] udhElements, int maxSegments)
+    {
+        return truncate(text, dcs, SmsNationalLanguage.DEFAULT, SmsNationalLanguage.DEFAULT, udhElements,
+                maxSegments);
+    }
+
+    /**
+     * Truncates the text so that it fits in the given number of SMS when
+     * sent with national language shift tables.
+     * 
+     * @param text
+     *            The text
+     * @param dcs
+     *            The data coding scheme to encode the text with
+     * @param lockingShift
+     *            Language of the locking shift table
+     * @param singleShift
+     *            Language of the single shift table
+     * @param udhElements
+     *            UDH elements, excluding any concat elements. Can be null.
+     * @param maxSegments
+     *            Max number of SMS
+     * @return The text, or the longest prefix of the text that fits
+     */
+    public static String truncate(CharSequence text, SmsDcs dcs, SmsNationalLanguage lockingShift,
+            SmsNationalLanguage singleShift, SmsUdhElement[] udhElements, int maxSegments)
+    {
+        if (maxSegments < 1)
+        {
+            throw new IllegalArgumentException("maxSegments must be at least 1");
+        }
+
+        SmsAlphabet alphabet = dcs.getAlphabet();
+        SmsSegmentInfo info = calculate(text, alphabet, lockingShift, singleShift, udhElements);
+
+        if (info.getSegmentCount() <= maxSegments)
+        {
+            return text.toString();
+        }
+
+        int maxLength = getMaxUdLength(alphabet, getUdhLength(udhElements, (maxSegments > 1) ? CONCAT_8BIT_UDH_SIZE : 0));
+        int nSegments = 1;
+        int segmentLength = 0;
+        int i = 0;
+
+        while (i < text.length())
+        {
+            int unitLength = getUnitLength(text, i, alphabet, lockingShift, singleShift);
+
+            if (segmentLength + unitLength > maxLength)
+            {
+                if (nSegments == maxSegments)
+                {
+                    break;
+                }
+                nSegments++;
+                segmentLength = 0;
+            }
+
+            segmentLength += unitLength;
+            i += getUnitChars(alphabet, unitLength);
+        }
+
+        return text.subSequence(0, i).toString();
+    }
+}
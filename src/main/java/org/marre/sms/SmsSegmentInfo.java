@@ -0,0 +1,130 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+/**
+ * The result from SmsSegmentCalculator.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public final class SmsSegmentInfo
+{
+    private final SmsAlphabet alphabet_;
+    private final int udLength_;
+    private final int udhLength_;
+    private final int nSegments_;
+    private final int maxUdLength_;
+    private final int remainingUdLength_;
+
+    SmsSegmentInfo(SmsAlphabet alphabet, int udLength, int udhLength, int nSegments, int maxUdLength,
+            int remainingUdLength)
+    {
+        alphabet_ = alphabet;
+        udLength_ = udLength;
+        udhLength_ = udhLength;
+        nSegments_ = nSegments;
+        maxUdLength_ = maxUdLength;
+        remainingUdLength_ = remainingUdLength;
+    }
+
+    /**
+     * Returns the alphabet that the message is encoded with.
+     * 
+     * @return The alphabet
+     */
+    public SmsAlphabet getAlphabet()
+    {
+        return alphabet_;
+    }
+
+    /**
+     * Returns the length of the whole user data.
+     * <p>
+     * The length is in septets for GSM, otherwise in octets.
+     * 
+     * @return The length
+     */
+    public int getUdLength()
+    {
+        return udLength_;
+    }
+
+    /**
+     * Returns the size of the UDH in each SMS, including the UDH length octet
+     * and any concat element.
+     * 
+     * @return UDH size in octets, 0 if there is no UDH
+     */
+    public int getUdhLength()
+    {
+        return udhLength_;
+    }
+
+    /**
+     * Returns the number of SMS needed.
+     * 
+     * @return Number of SMS
+     */
+    public int getSegmentCount()
+    {
+        return nSegments_;
+    }
+
+    /**
+     * Returns how much user data each SMS can carry.
+     * 
+     * @return The length, in septets for GSM, otherwise in octets
+     */
+    public int getMaxUdLength()
+    {
+        return maxUdLength_;
+    }
+
+    /**
+     * Returns how much more user data that fits in the last SMS.
+     * 
+     * @return The length, in septets for GSM, otherwise in octets
+     */
+    public int getRemainingUdLength()
+    {
+        return remainingUdLength_;
+    }
+
+    public String toString()
+    {
+        return alphabet_ + ": " + udLength_ + " in " + nSegments_ + " SMS (UDH " + udhLength_ + ")";
+    }
+}
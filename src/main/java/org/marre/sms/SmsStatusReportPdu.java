@@ -0,0 +1,157 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+/**
+ * A received SMS-STATUS-REPORT pdu.
+ * <p>
+ * The optional TP-UD of the report is available as user data, it is empty
+ * if the report doesn't have any.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsStatusReportPdu extends SmsPdu
+{
+    private final int messageReference_;
+    private final SmsAddress recipient_;
+    private final long serviceCentreTimestamp_;
+    private final long dischargeTime_;
+    private final int status_;
+    private final int protocolId_;
+
+    /**
+     * Creates an SMS-STATUS-REPORT pdu.
+     * <p>
+     * The UDH and user data are set with setUserDataHeaders() and
+     * setUserData().
+     * 
+     * @param messageReference
+     *            TP-MR of the reported SMS-SUBMIT
+     * @param recipient
+     *            TP-RA
+     * @param serviceCentreTimestamp
+     *            TP-SCTS in milliseconds since 1970-01-01 UTC
+     * @param dischargeTime
+     *            TP-DT in milliseconds since 1970-01-01 UTC
+     * @param status
+     *            TP-ST
+     * @param protocolId
+     *            TP-PID, 0 if not present
+     */
+    public SmsStatusReportPdu(int messageReference, SmsAddress recipient, long serviceCentreTimestamp,
+            long dischargeTime, int status, int protocolId)
+    {
+        messageReference_ = messageReference;
+        recipient_ = recipient;
+        serviceCentreTimestamp_ = serviceCentreTimestamp;
+        dischargeTime_ = dischargeTime;
+        status_ = status;
+        protocolId_ = protocolId;
+    }
+
+    /**
+     * Returns the message reference of the reported SMS (TP-MR).
+     * 
+     * @return The message reference
+     */
+    public int getMessageReference()
+    {
+        return messageReference_;
+    }
+
+    /**
+     * Returns the recipient of the reported SMS (TP-RA).
+     * 
+     * @return The recipient
+     */
+    public SmsAddress getRecipient()
+    {
+        return recipient_;
+    }
+
+    /**
+     * Returns when the SC received the reported SMS (TP-SCTS).
+     * 
+     * @return Milliseconds since 1970-01-01 UTC
+     */
+    public long getServiceCentreTimestamp()
+    {
+        return serviceCentreTimestamp_;
+    }
+
+    /**
+     * Returns when the status was reached (TP-DT).
+     * 
+     * @return Milliseconds since 1970-01-01 UTC
+     */
+    public long getDischargeTime()
+    {
+        return dischargeTime_;
+    }
+
+    /**
+     * Returns the status (TP-ST).
+     * <p>
+     * 0x00-0x1F means that the SMS was delivered, 0x20-0x3F that the SC is
+     * still trying and 0x40-0x7F that the SC has given up.
+     * 
+     * @return The status
+     */
+    public int getStatus()
+    {
+        return status_;
+    }
+
+    /**
+     * Returns true if the SMS was delivered.
+     * 
+     * @return true if delivered
+     */
+    public boolean isDelivered()
+    {
+        return status_ <= 0x1F;
+    }
+
+    /**
+     * Returns the protocol identifier (TP-PID).
+     * 
+     * @return The protocol identifier, 0 if not present
+     */
+    public int getProtocolId()
+    {
+        return protocolId_;
+    }
+}
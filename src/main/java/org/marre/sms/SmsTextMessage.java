@@ -36,6 +36,9 @@ package org.marre.sms;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Represents a text message.
@@ -50,6 +53,24 @@ public class SmsTextMessage extends SmsConcatMessage
 {
     private String text_;
     private SmsDcs dcs_;
+
+    /** True if the alphabet is chosen from the text. */
+    private boolean autoAlphabet_;
+    private SmsMsgClass messageClass_;
+
+    /** National language shift tables, only used with the GSM alphabet. */
+    private SmsNationalLanguage lockingShift_ = SmsNationalLanguage.DEFAULT;
+    private SmsNationalLanguage singleShift_ = SmsNationalLanguage.DEFAULT;
+
+    /** False if the automatic choice must not use national language shift tables. */
+    private boolean autoNationalLanguageShift_ = true;
+
+    /** True if chars outside the GSM charset should be transliterated. */
+    private boolean transliterate_;
+    private SmsTransliteration transliteration_;
+
+    /** The text that is encoded, differs from text_ if transliterated. */
+    private String encodedText_;
     
     /**
      * Creates an SmsTextMessage with the given dcs.
@@ -75,13 +96,33 @@ public class SmsTextMessage extends SmsConcatMessage
     }
 
     /**
-     * Creates an SmsTextMessage with default 7Bit GSM Alphabet
+     * Creates an SmsTextMessage that chooses the alphabet from the text.
+     * <p>
+     * The message is sent with the GSM alphabet if all chars can be
+     * represented in it. National language shift tables are only used if
+     * they need fewer SMS than UCS2. Otherwise UCS2 is used. The alphabet is
+     * chosen again if the text is changed with setText(String).
+     *
+     * @param msg The message
+     * @param messageClass The messageclass
+     */
+    public SmsTextMessage(String msg, SmsMsgClass messageClass)
+    {
+        autoAlphabet_ = true;
+        messageClass_ = messageClass;
+        setText(msg);
+    }
+
+    /**
+     * Creates an SmsTextMessage that chooses the alphabet from the text.
+     * <p>
+     * The 7Bit GSM Alphabet is used if possible, otherwise UCS2.
      *
      * @param msg The message
      */
     public SmsTextMessage(String msg)
     {
-        this(msg, SmsAlphabet.GSM, SmsMsgClass.CLASS_UNKNOWN);
+        this(msg, SmsMsgClass.CLASS_UNKNOWN);
     }
     
     /**
@@ -105,10 +146,13 @@ public class SmsTextMessage extends SmsConcatMessage
         }
         
         text_ = text;
+        updateEncoding();
     }
 
     /**
      * Sets the text.
+     * <p>
+     * The alphabet is no longer chosen automatically after this call.
      * 
      * @param text
      */
@@ -127,6 +171,339 @@ public class SmsTextMessage extends SmsConcatMessage
         
         text_ = text;
         dcs_ = dcs;
+        autoAlphabet_ = false;
+        lockingShift_ = SmsNationalLanguage.DEFAULT;
+        singleShift_ = SmsNationalLanguage.DEFAULT;
+        updateEncoding();
+    }
+
+    /**
+     * Sets the national language shift tables to use with the GSM alphabet.
+     * <p>
+     * The alphabet is no longer chosen automatically after this call.
+     * 
+     * @param lockingShift Language of the locking shift table
+     * @param singleShift Language of the single shift table
+     */
+    public void setNationalLanguageShift(SmsNationalLanguage lockingShift, SmsNationalLanguage singleShift)
+    {
+        if ((lockingShift == null) || (singleShift == null))
+        {
+            throw new IllegalArgumentException("Use SmsNationalLanguage.DEFAULT instead of null.");
+        }
+
+        lockingShift_ = lockingShift;
+        singleShift_ = singleShift;
+        autoAlphabet_ = false;
+        updateEncoding();
+    }
+
+    /**
+     * Lets the automatic choice of alphabet use national language shift
+     * tables or not.
+     * <p>
+     * The shift tables are signalled with a UDH, so they must be turned off
+     * for transports that can't send 7-bit text with a UDH. On by default.
+     * Has no effect if the alphabet is given explicitly.
+     * 
+     * @param autoNationalLanguageShift false to only use the default GSM
+     *            alphabet or UCS2
+     */
+    public void setAutoNationalLanguageShift(boolean autoNationalLanguageShift)
+    {
+        autoNationalLanguageShift_ = autoNationalLanguageShift;
+        updateEncoding();
+    }
+
+    /**
+     * Turns transliteration of chars outside the GSM charset on or off.
+     * <p>
+     * This is a lossy conversion, curly quotes, dashes, accented letters
+     * and similar chars are replaced with GSM chars that look the same. See
+     * SmsTransliterator for the details.
+     * <p>
+     * If the alphabet is chosen from the text, the transliterated text is
+     * only used if it needs fewer SMS than the original text. If the GSM
+     * alphabet was given explicitly the text is always transliterated, since
+     * the chars would be replaced with '?' otherwise. UCS2 and 8-bit
+     * messages are never transliterated.
+     * 
+     * @param transliterate true to transliterate the text
+     */
+    public void setTransliterate(boolean transliterate)
+    {
+        transliterate_ = transliterate;
+        updateEncoding();
+    }
+
+    /**
+     * Returns the result of the transliteration.
+     * 
+     * @return The result, or null if the text isn't transliterated
+     */
+    public SmsTransliteration getTransliteration()
+    {
+        return transliteration_;
+    }
+
+    /**
+     * Chooses the alphabet if needed and transliterates the text.
+     */
+    private void updateEncoding()
+    {
+        contentChanged();
+        encodedText_ = text_;
+        transliteration_ = null;
+
+        if (autoAlphabet_)
+        {
+            int nSegments = selectAlphabet(text_);
+
+            if (transliterate_)
+            {
+                Map<Character, String> substitutions = new LinkedHashMap<Character, String>();
+                String text = SmsTransliterator.transliterate(text_, substitutions);
+                int nTransliteratedSegments = nSegments;
+
+                if (!substitutions.isEmpty())
+                {
+                    nTransliteratedSegments = selectAlphabet(text);
+
+                    if (nTransliteratedSegments < nSegments)
+                    {
+                        encodedText_ = text;
+                    }
+                    else
+                    {
+                        // Not worth losing any chars, keep the original text
+                        selectAlphabet(text_);
+                        substitutions.clear();
+                        nTransliteratedSegments = nSegments;
+                    }
+                }
+
+                transliteration_ = new SmsTransliteration(encodedText_, substitutions, nSegments,
+                        nTransliteratedSegments);
+            }
+        }
+        else if (transliterate_ && (dcs_.getAlphabet() == SmsAlphabet.GSM))
+        {
+            int nSegments = getSegmentInfo().getSegmentCount();
+            Map<Character, String> substitutions = new LinkedHashMap<Character, String>();
+
+            encodedText_ = SmsTransliterator.transliterate(text_, lockingShift_, singleShift_, substitutions);
+            transliteration_ = new SmsTransliteration(encodedText_, substitutions, nSegments,
+                    getSegmentInfo().getSegmentCount());
+        }
+    }
+
+    /**
+     * Returns the language of the locking shift table.
+     */
+    public SmsNationalLanguage getLockingShift()
+    {
+        return lockingShift_;
+    }
+
+    /**
+     * Returns the language of the single shift table.
+     */
+    public SmsNationalLanguage getSingleShift()
+    {
+        return singleShift_;
+    }
+
+    /**
+     * Chooses the alphabet and shift tables that can send the text without
+     * loss in the least number of SMS.
+     * <p>
+     * The text is scanned once to find which tables can encode each char and
+     * how many escapes each pair of tables needs. The segments are then
+     * counted from these totals, the text is only walked again if an escape
+     * or surrogate pair could end up on a segment boundary.
+     * 
+     * @return The number of SMS needed
+     */
+    private int selectAlphabet(String text)
+    {
+        SmsNationalLanguage[] lockingLanguages = SmsNationalLanguage.LOCKING_SHIFT_LANGUAGES;
+        SmsNationalLanguage[] singleLanguages = SmsNationalLanguage.SINGLE_SHIFT_LANGUAGES;
+
+        // Index [0][0] is the default alphabet without any shift tables
+        int[][] nEscapes = new int[lockingLanguages.length][singleLanguages.length];
+        boolean[][] lossless = new boolean[lockingLanguages.length][singleLanguages.length];
+        for (boolean[] row : lossless)
+        {
+            Arrays.fill(row, true);
+        }
+        int nSurrogatePairs = 0;
+
+        for (int i = 0; i < text.length(); i++)
+        {
+            char ch = text.charAt(i);
+
+            if (Character.isHighSurrogate(ch) && (i + 1 < text.length())
+                    && Character.isLowSurrogate(text.charAt(i + 1)))
+            {
+                nSurrogatePairs++;
+            }
+
+            int gsmCode = SmsPduUtil.lookupGsmCode(ch);
+            if (gsmCode < 0)
+            {
+                lossless[0][0] = false;
+            }
+            else if (gsmCode > 0x7f)
+            {
+                nEscapes[0][0]++;
+            }
+
+            int singleMask = 0;
+            for (int s = 0; s < singleLanguages.length; s++)
+            {
+                if (singleLanguages[s].isInSingleShiftTable(ch))
+                {
+                    singleMask |= 1 << s;
+                }
+            }
+
+            for (int l = 0; l < lockingLanguages.length; l++)
+            {
+                if (lockingLanguages[l].isInLockingShiftTable(ch))
+                {
+                    continue;
+                }
+
+                for (int s = (l == 0) ? 1 : 0; s < singleLanguages.length; s++)
+                {
+                    if ((singleMask & (1 << s)) != 0)
+                    {
+                        nEscapes[l][s]++;
+                    }
+                    else
+                    {
+                        lossless[l][s] = false;
+                    }
+                }
+            }
+        }
+
+        SmsAlphabet alphabet = SmsAlphabet.UCS2;
+        SmsNationalLanguage lockingShift = SmsNationalLanguage.DEFAULT;
+        SmsNationalLanguage singleShift = SmsNationalLanguage.DEFAULT;
+        int minSegments = getSegmentCount(text, text.length() * 2, nSurrogatePairs, SmsAlphabet.UCS2,
+                SmsNationalLanguage.DEFAULT, SmsNationalLanguage.DEFAULT);
+
+        search:
+        for (int l = 0; l < lockingLanguages.length; l++)
+        {
+            for (int s = 0; s < singleLanguages.length; s++)
+            {
+                if (!lossless[l][s] || (!autoNationalLanguageShift_ && ((l != 0) || (s != 0))))
+                {
+                    continue;
+                }
+
+                SmsNationalLanguage locking = lockingLanguages[l];
+                SmsNationalLanguage single = singleLanguages[s];
+                int nSeptets = text.length() + nEscapes[l][s];
+                int nSegments = getSegmentCount(text, nSeptets, nEscapes[l][s], SmsAlphabet.GSM, locking, single);
+
+                // The default tables are only beaten if they need escapes
+                if ((l == 0) && (s == 0) && (nEscapes[l][s] == 0))
+                {
+                    alphabet = SmsAlphabet.GSM;
+                    minSegments = nSegments;
+                    break search;
+                }
+
+                // Shift tables add a UDH that many handsets and SMSCs don't
+                // understand, so they must save an SMS compared to UCS2. Plain
+                // GSM with escapes wins ties. Among the shift tables the first
+                // (smallest UDH) wins.
+                boolean isDefault = (l == 0) && (s == 0);
+                if ((nSegments < minSegments)
+                        || ((nSegments == minSegments) && isDefault && (alphabet == SmsAlphabet.UCS2)))
+                {
+                    alphabet = SmsAlphabet.GSM;
+                    lockingShift = locking;
+                    singleShift = single;
+                    minSegments = nSegments;
+                }
+            }
+        }
+
+        dcs_ = SmsDcs.getGeneralDataCodingDcs(alphabet, messageClass_);
+        lockingShift_ = lockingShift;
+        singleShift_ = singleShift;
+
+        return minSegments;
+    }
+
+    /**
+     * Returns the number of SMS needed for the text, walking the text only if
+     * the count can't be told from the length alone.
+     */
+    private static int getSegmentCount(String text, int udLength, int nUnits, SmsAlphabet alphabet,
+            SmsNationalLanguage lockingShift, SmsNationalLanguage singleShift)
+    {
+        SmsUdhElement[] udhElements = getShiftUdhElements(lockingShift, singleShift);
+        int nSegments = SmsSegmentCalculator.getSegmentCount(udLength, nUnits, alphabet, udhElements);
+        if (nSegments < 0)
+        {
+            nSegments = SmsSegmentCalculator.calculate(text, alphabet, lockingShift, singleShift, udhElements)
+                    .getSegmentCount();
+        }
+        return nSegments;
+    }
+
+    /**
+     * Returns the number of septets needed for the text or -1 if any char
+     * can't be represented with the given shift tables.
+     */
+    static int getLosslessSeptetCount(String text, SmsNationalLanguage lockingShift,
+            SmsNationalLanguage singleShift)
+    {
+        int nSeptets = text.length();
+
+        for (int i = 0; i < text.length(); i++)
+        {
+            int gsmCode = SmsNationalLanguage.lookupGsmCode(text.charAt(i), lockingShift, singleShift);
+
+            if (gsmCode < 0)
+            {
+                return -1;
+            }
+            else if (gsmCode > 0x7f)
+            {
+                nSeptets++;
+            }
+        }
+
+        return nSeptets;
+    }
+
+    /**
+     * Returns the UDH elements that signal the given shift tables or null if
+     * both are the default tables.
+     */
+    private static SmsUdhElement[] getShiftUdhElements(SmsNationalLanguage lockingShift,
+            SmsNationalLanguage singleShift)
+    {
+        if (lockingShift == SmsNationalLanguage.DEFAULT)
+        {
+            return (singleShift == SmsNationalLanguage.DEFAULT) ? null
+                    : new SmsUdhElement[] { SmsUdhUtil.getNationalLanguageSingleShiftUdh(singleShift) };
+        }
+        else if (singleShift == SmsNationalLanguage.DEFAULT)
+        {
+            return new SmsUdhElement[] { SmsUdhUtil.getNationalLanguageLockingShiftUdh(lockingShift) };
+        }
+        else
+        {
+            return new SmsUdhElement[] { SmsUdhUtil.getNationalLanguageLockingShiftUdh(lockingShift),
+                    SmsUdhUtil.getNationalLanguageSingleShiftUdh(singleShift) };
+        }
     }
     
     /**
@@ -148,15 +525,18 @@ public class SmsTextMessage extends SmsConcatMessage
         switch (dcs_.getAlphabet())
         {
         case GSM:
-            ud = new SmsUserData(SmsPduUtil.getSeptets(text_), text_.length(), dcs_);
+            int nSeptets = SmsPduUtil.getSeptetCount(encodedText_, lockingShift_, singleShift_);
+            byte[] septets = new byte[SeptetCodec.getOctetCount(nSeptets, 0)];
+            SeptetCodec.encode(encodedText_, septets, 0, lockingShift_, singleShift_);
+            ud = new SmsUserData(septets, nSeptets, dcs_);
             break;
 
         case LATIN1:
-            ud = new SmsUserData(text_.getBytes(StandardCharsets.ISO_8859_1), text_.length(), dcs_);
+            ud = new SmsUserData(encodedText_.getBytes(StandardCharsets.ISO_8859_1), encodedText_.length(), dcs_);
             break;
 
         case UCS2:
-            ud = new SmsUserData(text_.getBytes(StandardCharsets.UTF_16BE), text_.length() * 2, dcs_);
+            ud = new SmsUserData(encodedText_.getBytes(StandardCharsets.UTF_16BE), encodedText_.length() * 2, dcs_);
             break;
 
         default:
@@ -168,10 +548,35 @@ public class SmsTextMessage extends SmsConcatMessage
     }
 
     /**
-     * Returns null.
+     * Calculates the number of SMS needed for this message, without encoding
+     * the text.
+     * 
+     * @return The segment information
+     */
+    public SmsSegmentInfo getSegmentInfo()
+    {
+        return SmsSegmentCalculator.calculate(encodedText_, dcs_, lockingShift_, singleShift_, getUdhElements());
+    }
+
+    /**
+     * Returns true, all changes to the message go through the setters.
+     */
+    protected boolean isPduCacheEnabled()
+    {
+        return true;
+    }
+
+    /**
+     * Returns the national language shift UDH elements, or null if the
+     * default GSM tables are used.
      */
     public SmsUdhElement[] getUdhElements()
     {
-        return null;
+        if (dcs_.getAlphabet() != SmsAlphabet.GSM)
+        {
+            return null;
+        }
+
+        return getShiftUdhElements(lockingShift_, singleShift_);
     }
 }
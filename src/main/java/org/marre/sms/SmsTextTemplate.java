@@ -0,0 +1,422 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A precompiled text message with variables, for sending the same text with
+ * small personal changes to many recipients.
+ * <p>
+ * Variables are written as ${name}. The static text between the variables
+ * is encoded once, as septets and as UCS2, when the template is created.
+ * Creating a message only encodes the values of the variables and copies
+ * the precompiled parts into place, so the cost depends on the length of the
+ * values and not on the length of the template.
+ * <p>
+ * The GSM alphabet is used when both the template and the values can be
+ * encoded with the default GSM tables, otherwise UCS2 is used. National
+ * language shift tables and transliteration are not used, use
+ * SmsTextMessage for that.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public final class SmsTextTemplate
+{
+    private static final String VAR_START = "${";
+    private static final char VAR_END = '}';
+
+    private final String template_;
+
+    /** The static text, one more fragment than there are variable positions. */
+    private final String[] fragments_;
+
+    /** Index in variableNames_ of the variable after each fragment. */
+    private final int[] varIndex_;
+
+    /** Distinct variable names in the order they first appear. */
+    private final String[] variableNames_;
+
+    /**
+     * Fragments as packed septets, gsmFragments_[i][n] starts at bit n of the
+     * first octet. null if the template can't be encoded with the GSM
+     * alphabet.
+     */
+    private final byte[][][] gsmFragments_;
+
+    /** Number of septets in each fragment. */
+    private final int[] fragmentSeptets_;
+
+    /** Number of septets in the static text. */
+    private final int gsmSeptets_;
+
+    /** Fragments as UCS2. */
+    private final byte[][] ucs2Fragments_;
+
+    /** Number of octets in the static text when UCS2 encoded. */
+    private final int ucs2Octets_;
+
+    private final SmsDcs gsmDcs_;
+    private final SmsDcs ucs2Dcs_;
+
+    /**
+     * Compiles a template.
+     * 
+     * @param template
+     *            The text with ${name} variables
+     */
+    public SmsTextTemplate(String template)
+    {
+        this(template, SmsMsgClass.CLASS_UNKNOWN);
+    }
+
+    /**
+     * Compiles a template.
+     * 
+     * @param template
+     *            The text with ${name} variables
+     * @param messageClass
+     *            Message class of the created messages
+     */
+    public SmsTextTemplate(String template, SmsMsgClass messageClass)
+    {
+        List<String> fragments = new ArrayList<String>();
+        List<String> names = new ArrayList<String>();
+        List<Integer> varIndex = new ArrayList<Integer>();
+
+        int pos = 0;
+        int start;
+        while ((start = template.indexOf(VAR_START, pos)) >= 0)
+        {
+            int end = template.indexOf(VAR_END, start + VAR_START.length());
+            if (end < 0)
+            {
+                throw new IllegalArgumentException("Unterminated variable at " + start + " in template");
+            }
+
+            String name = template.substring(start + VAR_START.length(), end);
+            if (!names.contains(name))
+            {
+                names.add(name);
+            }
+
+            fragments.add(template.substring(pos, start));
+            varIndex.add(names.indexOf(name));
+            pos = end + 1;
+        }
+        fragments.add(template.substring(pos));
+
+        template_ = template;
+        fragments_ = fragments.toArray(new String[fragments.size()]);
+        variableNames_ = names.toArray(new String[names.size()]);
+        varIndex_ = new int[varIndex.size()];
+        for (int i = 0; i < varIndex_.length; i++)
+        {
+            varIndex_[i] = varIndex.get(i);
+        }
+
+        gsmFragments_ = compileGsm(fragments_);
+        ucs2Fragments_ = new byte[fragments_.length][];
+        fragmentSeptets_ = new int[fragments_.length];
+
+        int nSeptets = 0;
+        int nOctets = 0;
+        for (int i = 0; i < fragments_.length; i++)
+        {
+            if (gsmFragments_ != null)
+            {
+                fragmentSeptets_[i] = SmsPduUtil.getSeptetCount(fragments_[i]);
+                nSeptets += fragmentSeptets_[i];
+            }
+            ucs2Fragments_[i] = toUcs2(fragments_[i]);
+            nOctets += ucs2Fragments_[i].length;
+        }
+
+        gsmSeptets_ = nSeptets;
+        ucs2Octets_ = nOctets;
+        gsmDcs_ = SmsDcs.getGeneralDataCodingDcs(SmsAlphabet.GSM, messageClass);
+        ucs2Dcs_ = SmsDcs.getGeneralDataCodingDcs(SmsAlphabet.UCS2, messageClass);
+    }
+
+    /**
+     * Encodes every fragment as septets starting at each of the 8 possible
+     * bit offsets, so that they can be copied into place without shifting.
+     */
+    private static byte[][][] compileGsm(String[] fragments)
+    {
+        byte[][][] gsmFragments = new byte[fragments.length][8][];
+
+        for (int i = 0; i < fragments.length; i++)
+        {
+            int nSeptets = SmsTextMessage.getLosslessSeptetCount(fragments[i], SmsNationalLanguage.DEFAULT,
+                    SmsNationalLanguage.DEFAULT);
+            if (nSeptets < 0)
+            {
+                return null;
+            }
+
+            for (int shift = 0; shift < 8; shift++)
+            {
+                gsmFragments[i][shift] = new byte[SeptetCodec.getOctetCount(nSeptets, shift)];
+                SeptetCodec.encode(fragments[i], gsmFragments[i][shift], shift);
+            }
+        }
+
+        return gsmFragments;
+    }
+
+    private static byte[] toUcs2(String text)
+    {
+        byte[] data = new byte[text.length() * 2];
+        writeUcs2(text, data, 0);
+        return data;
+    }
+
+    private static int writeUcs2(String text, byte[] dest, int offset)
+    {
+        for (int i = 0; i < text.length(); i++)
+        {
+            char ch = text.charAt(i);
+            dest[offset++] = (byte) (ch >>> 8);
+            dest[offset++] = (byte) ch;
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the template text.
+     * 
+     * @return The template
+     */
+    public String getTemplate()
+    {
+        return template_;
+    }
+
+    /**
+     * Returns the names of the variables in the order they first appear in
+     * the template.
+     * 
+     * @return The variable names
+     */
+    public String[] getVariableNames()
+    {
+        return variableNames_.clone();
+    }
+
+    /**
+     * Returns the text with the variables replaced.
+     * 
+     * @param values
+     *            Values in the same order as getVariableNames()
+     * @return The text
+     */
+    public String getText(String... values)
+    {
+        checkValues(values);
+
+        StringBuilder sb = new StringBuilder(template_.length());
+        for (int i = 0; i < fragments_.length; i++)
+        {
+            sb.append(fragments_[i]);
+            if (i < varIndex_.length)
+            {
+                sb.append(values[varIndex_[i]]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates a message with the given values.
+     * 
+     * @param values
+     *            Values in the same order as getVariableNames()
+     * @return The message
+     */
+    public SmsConcatMessage createMessage(String... values)
+    {
+        checkValues(values);
+
+        SmsUserData ud = (gsmFragments_ != null) ? encodeGsm(values) : null;
+        if (ud == null)
+        {
+            ud = encodeUcs2(values);
+        }
+
+        return new TemplateMessage(ud);
+    }
+
+    /**
+     * Creates a message with the given values.
+     * 
+     * @param values
+     *            Variable names mapped to values, all variables must be
+     *            given
+     * @return The message
+     */
+    public SmsConcatMessage createMessage(Map<String, String> values)
+    {
+        String[] valueArray = new String[variableNames_.length];
+        for (int i = 0; i < valueArray.length; i++)
+        {
+            valueArray[i] = values.get(variableNames_[i]);
+        }
+        return createMessage(valueArray);
+    }
+
+    private void checkValues(String[] values)
+    {
+        if (values.length != variableNames_.length)
+        {
+            throw new IllegalArgumentException("Expected " + variableNames_.length + " values, got "
+                    + values.length);
+        }
+
+        for (int i = 0; i < values.length; i++)
+        {
+            if (values[i] == null)
+            {
+                throw new IllegalArgumentException("No value for variable " + variableNames_[i]);
+            }
+        }
+    }
+
+    /**
+     * Encodes the message as septets, or returns null if a value can't be
+     * encoded with the GSM alphabet.
+     */
+    private SmsUserData encodeGsm(String[] values)
+    {
+        int[] valueSeptets = new int[values.length];
+        int nSeptets = gsmSeptets_;
+
+        for (int i = 0; i < values.length; i++)
+        {
+            valueSeptets[i] = SmsTextMessage.getLosslessSeptetCount(values[i], SmsNationalLanguage.DEFAULT,
+                    SmsNationalLanguage.DEFAULT);
+            if (valueSeptets[i] < 0)
+            {
+                return null;
+            }
+        }
+
+        for (int index : varIndex_)
+        {
+            nSeptets += valueSeptets[index];
+        }
+
+        byte[] ud = new byte[SeptetCodec.getOctetCount(nSeptets, 0)];
+        int bitPos = 0;
+
+        for (int i = 0; i < fragments_.length; i++)
+        {
+            // Copy the fragment that was encoded at the same bit offset
+            byte[] fragment = gsmFragments_[i][bitPos & 7];
+            if (fragment.length > 0)
+            {
+                int octet = bitPos >>> 3;
+                ud[octet] |= fragment[0];
+                System.arraycopy(fragment, 1, ud, octet + 1, fragment.length - 1);
+            }
+            bitPos += fragmentSeptets_[i] * 7;
+
+            if (i < varIndex_.length)
+            {
+                bitPos += SeptetCodec.encode(values[varIndex_[i]], ud, bitPos) * 7;
+            }
+        }
+
+        return new SmsUserData(ud, nSeptets, gsmDcs_);
+    }
+
+    private SmsUserData encodeUcs2(String[] values)
+    {
+        int nOctets = ucs2Octets_;
+        for (int index : varIndex_)
+        {
+            nOctets += values[index].length() * 2;
+        }
+
+        byte[] ud = new byte[nOctets];
+        int pos = 0;
+
+        for (int i = 0; i < fragments_.length; i++)
+        {
+            System.arraycopy(ucs2Fragments_[i], 0, ud, pos, ucs2Fragments_[i].length);
+            pos += ucs2Fragments_[i].length;
+
+            if (i < varIndex_.length)
+            {
+                pos = writeUcs2(values[varIndex_[i]], ud, pos);
+            }
+        }
+
+        return new SmsUserData(ud, nOctets, ucs2Dcs_);
+    }
+
+    /**
+     * A message created from a template. The user data is already encoded.
+     */
+    private static final class TemplateMessage extends SmsConcatMessage
+    {
+        private final SmsUserData ud_;
+
+        TemplateMessage(SmsUserData ud)
+        {
+            ud_ = ud;
+        }
+
+        public SmsUserData getUserData()
+        {
+            return ud_;
+        }
+
+        public SmsUdhElement[] getUdhElements()
+        {
+            return null;
+        }
+
+        protected boolean isPduCacheEnabled()
+        {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Describes what SmsTextMessage did when transliterating a text.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public final class SmsTransliteration
+{
+    private final String text_;
+    private final Map<Character, String> substitutions_;
+    private final int originalSegmentCount_;
+    private final int segmentCount_;
+
+    SmsTransliteration(String text, Map<Character, String> substitutions, int originalSegmentCount, int segmentCount)
+    {
+        text_ = text;
+        substitutions_ = Collections.unmodifiableMap(substitutions);
+        originalSegmentCount_ = originalSegmentCount;
+        segmentCount_ = segmentCount;
+    }
+
+    /**
+     * Returns the text that is sent.
+     */
+    public String getText()
+    {
+        return text_;
+    }
+
+    /**
+     * Returns the substituted chars and their replacements.
+     * 
+     * @return The substitutions, empty if the text wasn't changed
+     */
+    public Map<Character, String> getSubstitutions()
+    {
+        return substitutions_;
+    }
+
+    /**
+     * Returns true if any chars were substituted.
+     */
+    public boolean isTransliterated()
+    {
+        return !substitutions_.isEmpty();
+    }
+
+    /**
+     * Returns the number of SMS needed without transliteration.
+     */
+    public int getOriginalSegmentCount()
+    {
+        return originalSegmentCount_;
+    }
+
+    /**
+     * Returns the number of SMS needed for the transliterated text.
+     */
+    public int getSegmentCount()
+    {
+        return segmentCount_;
+    }
+
+    /**
+     * Returns the number of SMS saved by the transliteration.
+     * <p>
+     * Can be negative when the encoding was given explicitly and the
+     * replacements made the text longer (an ellipsis becomes three dots).
+     */
+    public int getSavedSegmentCount()
+    {
+        return originalSegmentCount_ - segmentCount_;
+    }
+
+    public String toString()
+    {
+        return substitutions_ + ": " + originalSegmentCount_ + " -> " + segmentCount_ + " SMS";
+    }
+}
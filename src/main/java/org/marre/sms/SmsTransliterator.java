@@ -0,0 +1,365 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+import java.text.Normalizer;
+import java.util.Map;
+
+/**
+ * Replaces chars that aren't found in the GSM charset with look-alikes that
+ * are.
+ * <p>
+ * This is a lossy conversion that can be used to avoid sending a message as
+ * UCS2 just because it contains a curly quote or an accented letter. Smart
+ * quotes, dashes, the ellipsis, some Cyrillic and Greek look-alikes and Latin
+ * letters with diacritics are replaced. Greek capitals that look like Latin
+ * letters are already handled by GSM_DEFAULT_ALPHABET_ALTERNATIVES in
+ * SmsPduUtil.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public final class SmsTransliterator
+{
+    /**
+     * Replacements for chars outside the GSM charset.
+     * 
+     * The table is encoded as pairs with the char and its replacement.
+     */
+    private static final String[] TRANSLITERATION_TABLE = {
+            // LEFT SINGLE QUOTATION MARK
+            "\u2018", "'",
+            // RIGHT SINGLE QUOTATION MARK
+            "\u2019", "'",
+            // SINGLE LOW-9 QUOTATION MARK
+            "\u201a", "'",
+            // SINGLE HIGH-REVERSED-9 QUOTATION MARK
+            "\u201b", "'",
+            // PRIME
+            "\u2032", "'",
+            // SINGLE LEFT-POINTING ANGLE QUOTATION MARK
+            "\u2039", "'",
+            // SINGLE RIGHT-POINTING ANGLE QUOTATION MARK
+            "\u203a", "'",
+            // ACUTE ACCENT
+            "\u00b4", "'",
+            // GRAVE ACCENT
+            "\u0060", "'",
+            // LEFT DOUBLE QUOTATION MARK
+            "\u201c", "\"",
+            // RIGHT DOUBLE QUOTATION MARK
+            "\u201d", "\"",
+            // DOUBLE LOW-9 QUOTATION MARK
+            "\u201e", "\"",
+            // DOUBLE HIGH-REVERSED-9 QUOTATION MARK
+            "\u201f", "\"",
+            // DOUBLE PRIME
+            "\u2033", "\"",
+            // LEFT-POINTING DOUBLE ANGLE QUOTATION MARK
+            "\u00ab", "\"",
+            // RIGHT-POINTING DOUBLE ANGLE QUOTATION MARK
+            "\u00bb", "\"",
+            // HYPHEN
+            "\u2010", "-",
+            // NON-BREAKING HYPHEN
+            "\u2011", "-",
+            // FIGURE DASH
+            "\u2012", "-",
+            // EN DASH
+            "\u2013", "-",
+            // EM DASH
+            "\u2014", "-",
+            // HORIZONTAL BAR
+            "\u2015", "-",
+            // MINUS SIGN
+            "\u2212", "-",
+            // BULLET
+            "\u2022", "-",
+            // HORIZONTAL ELLIPSIS
+            "\u2026", "...",
+            // NO-BREAK SPACE
+            "\u00a0", " ",
+            // EN SPACE
+            "\u2002", " ",
+            // EM SPACE
+            "\u2003", " ",
+            // THIN SPACE
+            "\u2009", " ",
+            // NARROW NO-BREAK SPACE
+            "\u202f", " ",
+            // ZERO WIDTH SPACE
+            "\u200b", "",
+            // ZERO WIDTH NO-BREAK SPACE
+            "\ufeff", "",
+            // COPYRIGHT SIGN
+            "\u00a9", "(c)",
+            // REGISTERED SIGN
+            "\u00ae", "(R)",
+            // TRADE MARK SIGN
+            "\u2122", "TM",
+            // MULTIPLICATION SIGN
+            "\u00d7", "x",
+            // DIVISION SIGN
+            "\u00f7", "/",
+            // FRACTION SLASH
+            "\u2044", "/",
+            // LATIN CAPITAL LETTER D WITH STROKE
+            "\u0110", "D",
+            // LATIN SMALL LETTER D WITH STROKE
+            "\u0111", "d",
+            // LATIN CAPITAL LETTER L WITH STROKE
+            "\u0141", "L",
+            // LATIN SMALL LETTER L WITH STROKE
+            "\u0142", "l",
+            // LATIN CAPITAL LIGATURE OE
+            "\u0152", "OE",
+            // LATIN SMALL LIGATURE OE
+            "\u0153", "oe",
+            // LATIN CAPITAL LETTER THORN
+            "\u00de", "TH",
+            // LATIN SMALL LETTER THORN
+            "\u00fe", "th",
+            // LATIN SMALL LETTER ETH
+            "\u00f0", "d",
+            // LATIN SMALL LETTER DOTLESS I
+            "\u0131", "i",
+            // CYRILLIC CAPITAL LETTER A
+            "\u0410", "A",
+            // CYRILLIC CAPITAL LETTER VE
+            "\u0412", "B",
+            // CYRILLIC CAPITAL LETTER IE
+            "\u0415", "E",
+            // CYRILLIC CAPITAL LETTER KA
+            "\u041a", "K",
+            // CYRILLIC CAPITAL LETTER EM
+            "\u041c", "M",
+            // CYRILLIC CAPITAL LETTER EN
+            "\u041d", "H",
+            // CYRILLIC CAPITAL LETTER O
+            "\u041e", "O",
+            // CYRILLIC CAPITAL LETTER ER
+            "\u0420", "P",
+            // CYRILLIC CAPITAL LETTER ES
+            "\u0421", "C",
+            // CYRILLIC CAPITAL LETTER TE
+            "\u0422", "T",
+            // CYRILLIC CAPITAL LETTER HA
+            "\u0425", "X",
+            // CYRILLIC SMALL LETTER A
+            "\u0430", "a",
+            // CYRILLIC SMALL LETTER IE
+            "\u0435", "e",
+            // CYRILLIC SMALL LETTER O
+            "\u043e", "o",
+            // CYRILLIC SMALL LETTER ER
+            "\u0440", "p",
+            // CYRILLIC SMALL LETTER ES
+            "\u0441", "c",
+            // CYRILLIC SMALL LETTER U
+            "\u0443", "y",
+            // CYRILLIC SMALL LETTER HA
+            "\u0445", "x",
+            // CYRILLIC CAPITAL LETTER DZE
+            "\u0405", "S",
+            // CYRILLIC SMALL LETTER DZE
+            "\u0455", "s",
+            // CYRILLIC CAPITAL LETTER BYELORUSSIAN-UKRAINIAN I
+            "\u0406", "I",
+            // CYRILLIC SMALL LETTER BYELORUSSIAN-UKRAINIAN I
+            "\u0456", "i",
+            // CYRILLIC CAPITAL LETTER JE
+            "\u0408", "J",
+            // CYRILLIC SMALL LETTER JE
+            "\u0458", "j",
+            // GREEK SMALL LETTER OMICRON
+            "\u03bf", "o"};
+
+    /**
+     * Lookup table (unicode -> replacement), paged on the high byte in the
+     * same way as the GSM reverse lookup table in SmsPduUtil.
+     */
+    private static final String[][] REPLACEMENTS = new String[256][];
+
+    static
+    {
+        for (int i = 0; i < TRANSLITERATION_TABLE.length; i += 2)
+        {
+            addReplacement(TRANSLITERATION_TABLE[i].charAt(0), TRANSLITERATION_TABLE[i + 1]);
+        }
+
+        // Latin letters with diacritics are replaced by their base letter
+        addDiacriticReplacements(0x00c0, 0x024f);
+        addDiacriticReplacements(0x1e00, 0x1eff);
+    }
+
+    /**
+     * This class isn't intended to be instantiated
+     */
+    private SmsTransliterator()
+    {
+    }
+
+    private static void addReplacement(char ch, String replacement)
+    {
+        String[] page = REPLACEMENTS[ch >>> 8];
+
+        if (page == null)
+        {
+            page = new String[256];
+            REPLACEMENTS[ch >>> 8] = page;
+        }
+
+        page[ch & 0xff] = replacement;
+    }
+
+    private static void addDiacriticReplacements(int first, int last)
+    {
+        for (int i = first; i <= last; i++)
+        {
+            char ch = (char) i;
+
+            if (SmsPduUtil.isGsmChar(ch) || (getReplacement(ch) != null))
+            {
+                continue;
+            }
+
+            String decomposed = Normalizer.normalize(String.valueOf(ch), Normalizer.Form.NFD);
+            char base = decomposed.charAt(0);
+
+            if ((decomposed.length() < 2) || !SmsPduUtil.isGsmChar(base))
+            {
+                continue;
+            }
+
+            boolean onlyMarks = true;
+            for (int j = 1; j < decomposed.length(); j++)
+            {
+                if (Character.getType(decomposed.charAt(j)) != Character.NON_SPACING_MARK)
+                {
+                    onlyMarks = false;
+                }
+            }
+
+            if (onlyMarks)
+            {
+                addReplacement(ch, String.valueOf(base));
+            }
+        }
+    }
+
+    /**
+     * Returns the replacement for the given char.
+     * 
+     * @param ch
+     *            The char
+     * @return The replacement or null if there is none
+     */
+    public static String getReplacement(char ch)
+    {
+        String[] page = REPLACEMENTS[ch >>> 8];
+        return (page == null) ? null : page[ch & 0xff];
+    }
+
+    /**
+     * Replaces the chars that can't be encoded with the default GSM tables.
+     * 
+     * @param text
+     *            The text
+     * @param substitutions
+     *            The replaced chars and their replacements are added to this
+     *            map. Can be null.
+     * @return The transliterated text
+     */
+    public static String transliterate(CharSequence text, Map<Character, String> substitutions)
+    {
+        return transliterate(text, SmsNationalLanguage.DEFAULT, SmsNationalLanguage.DEFAULT, substitutions);
+    }
+
+    /**
+     * Replaces the chars that can't be encoded with the given shift tables.
+     * <p>
+     * Chars without a replacement are kept as they are.
+     * 
+     * @param text
+     *            The text
+     * @param lockingShift
+     *            Language of the locking shift table
+     * @param singleShift
+     *            Language of the single shift table
+     * @param substitutions
+     *            The replaced chars and their replacements are added to this
+     *            map. Can be null.
+     * @return The transliterated text
+     */
+    public static String transliterate(CharSequence text, SmsNationalLanguage lockingShift,
+            SmsNationalLanguage singleShift, Map<Character, String> substitutions)
+    {
+        StringBuilder sb = null;
+
+        for (int i = 0; i < text.length(); i++)
+        {
+            char ch = text.charAt(i);
+            String replacement = null;
+
+            if (SmsNationalLanguage.lookupGsmCode(ch, lockingShift, singleShift) < 0)
+            {
+                replacement = getReplacement(ch);
+            }
+
+            if (replacement != null)
+            {
+                // Copy the text up to here on the first replacement
+                if (sb == null)
+                {
+                    sb = new StringBuilder(text.length() + 16);
+                    sb.append(text, 0, i);
+                }
+
+                sb.append(replacement);
+
+                if (substitutions != null)
+                {
+                    substitutions.put(ch, replacement);
+                }
+            }
+            else if (sb != null)
+            {
+                sb.append(ch);
+            }
+        }
+
+        return (sb == null) ? text.toString() : sb.toString();
+    }
+}
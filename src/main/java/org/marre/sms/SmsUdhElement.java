@@ -59,6 +59,16 @@ public final class SmsUdhElement
         udhIeiData_ = udhIeiData;
     }
 
+    /**
+     * Returns the identifier of this UDH element.
+     *
+     * @return The identifier
+     */
+    public SmsUdhIei getUdhIei()
+    {
+        return udhIei_;
+    }
+
     /**
      * Returns the total length of this UDH element.
      * <p>
@@ -106,6 +116,22 @@ public final class SmsUdhElement
         return allData;
     }
 
+    /**
+     * Writes the UDH element including UDH "header" to the given array
+     *
+     * @param dest Array to write to
+     * @param offset Offset in dest
+     * @return The offset after the element
+     */
+    public int writeTo(byte[] dest, int offset)
+    {
+        dest[offset] = udhIei_.getValue();
+        dest[offset + 1] = (byte) (udhIeiData_.length & 0xff);
+        System.arraycopy(udhIeiData_, 0, dest, offset + 2, udhIeiData_.length);
+
+        return offset + 2 + udhIeiData_.length;
+    }
+
     /**
      * Writes the UDH element including UDH "header" to the given stream
      *
@@ -34,9 +34,6 @@
  * ***** END LICENSE BLOCK ***** */
 package org.marre.sms;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-
 /**
  * Toolkit class for SmsUdhElement objects.
  *
@@ -45,6 +42,12 @@ import java.io.IOException;
  */
 public final class SmsUdhUtil
 {
+    /**
+     * Offset of the reference number in an UDH byte array that starts with a
+     * concat element (UDHL, IEI, IEDL, reference).
+     */
+    public static final int CONCAT_REF_OFFSET = 3;
+
     /**
      * Constructor for SmsUdhUtil.
      */
@@ -86,27 +89,22 @@ public final class SmsUdhUtil
      */
     public static byte[] toByteArray(SmsUdhElement[] udhElements)
     {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(100);
-        
         if (udhElements == null)
         {
             return new byte[0];
         }
 
-        baos.write((byte) SmsUdhUtil.getTotalSize(udhElements));
+        int totalSize = SmsUdhUtil.getTotalSize(udhElements);
+        byte[] udh = new byte[totalSize + 1];
 
-        try
-        {
-            for (SmsUdhElement udhElement : udhElements) {
-                udhElement.writeTo(baos);
-            }
-        }
-        catch (IOException ioe)
-        {
-            throw new RuntimeException(ioe);
+        udh[0] = (byte) totalSize;
+
+        int offset = 1;
+        for (SmsUdhElement udhElement : udhElements) {
+            offset = udhElement.writeTo(udh, offset);
         }
 
-        return baos.toByteArray();
+        return udh;
     }
     
     /**
@@ -118,33 +116,40 @@ public final class SmsUdhUtil
      */
     public static boolean isConcat(SmsUserData ud, byte[] udh)
     {
-        int udLength = ud.getLength();
-        
-        int bytesLeft = 140;
-        int maxChars;
+        int udhLength = (udh == null) ? 0 : udh.length;
+        int maxLength = SmsSegmentCalculator.getMaxUdLength(ud.getDcs().getAlphabet(), udhLength);
+
+        return (ud.getLength() > maxLength);
+    }
+    
+    /**
+     * Returns the length of the reference number in the concat element that
+     * starts the given UDH.
+     * <p>
+     * SmsConcatMessage always puts the concat element first, so the reference
+     * can be patched at CONCAT_REF_OFFSET without parsing the UDH.
+     * 
+     * @param udh UDH as returned by toByteArray()
+     * @return 1 or 2, or 0 if the UDH doesn't start with a concat element
+     */
+    public static int getConcatRefLength(byte[] udh)
+    {
+        if ((udh == null) || (udh.length < 2))
+        {
+            return 0;
+        }
         
-        if (udh != null)
+        if (udh[1] == SmsUdhIei.CONCATENATED_8BIT.getValue())
         {
-            bytesLeft -= udh.length;
+            return 1;
         }
-
-        switch (ud.getDcs().getAlphabet())
+        
+        if (udh[1] == SmsUdhIei.CONCATENATED_16BIT.getValue())
         {
-        case GSM:
-            maxChars = (bytesLeft * 8) / 7;
-            break;
-            
-        case UCS2:
-            maxChars = bytesLeft / 2;
-            break;
-            
-        case LATIN1:
-        default:
-            maxChars = bytesLeft;
-            break;
+            return 2;
         }
-
-        return (udLength > maxChars);
+        
+        return 0;
     }
     
     /**
@@ -299,4 +304,44 @@ public final class SmsUdhUtil
 
         return new SmsUdhElement(SmsUdhIei.CONCATENATED_16BIT, udh);
     }
+
+    /**
+     * Creates a "National Language Single Shift" UDH element using
+     * UDH_IEI_NATIONAL_LANGUAGE_SINGLE_SHIFT.
+     * <p>
+     * The element tells the receiver to use the single shift table of the
+     * given language instead of the GSM extension table. It must be
+     * contained in every segment of a concatenated SM.
+     *
+     * @param language The language of the single shift table
+     * @return A SmsUdhElement
+     */
+    public static SmsUdhElement getNationalLanguageSingleShiftUdh(SmsNationalLanguage language)
+    {
+        byte[] udh = new byte[1];
+
+        udh[0] = language.getValue();
+
+        return new SmsUdhElement(SmsUdhIei.NATIONAL_LANGUAGE_SINGLE_SHIFT, udh);
+    }
+
+    /**
+     * Creates a "National Language Locking Shift" UDH element using
+     * UDH_IEI_NATIONAL_LANGUAGE_LOCKING_SHIFT.
+     * <p>
+     * The element tells the receiver to use the locking shift table of the
+     * given language instead of the GSM default alphabet. It must be
+     * contained in every segment of a concatenated SM.
+     *
+     * @param language The language of the locking shift table
+     * @return A SmsUdhElement
+     */
+    public static SmsUdhElement getNationalLanguageLockingShiftUdh(SmsNationalLanguage language)
+    {
+        byte[] udh = new byte[1];
+
+        udh[0] = language.getValue();
+
+        return new SmsUdhElement(SmsUdhIei.NATIONAL_LANGUAGE_LOCKING_SHIFT, udh);
+    }
 }
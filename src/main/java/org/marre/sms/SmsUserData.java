@@ -34,7 +34,15 @@
  * ***** END LICENSE BLOCK ***** */
 package org.marre.sms;
 
+import java.util.Arrays;
+
 /**
+ * User data of an SMS.
+ * <p>
+ * The user data can be a view of a part of a larger array, this is used to
+ * carry the segments of a concatenated message without copying them. The
+ * offset is always given in octets, septets are packed from bit 0 of the
+ * first octet.
  * 
  * @author Markus Eriksson
  * @version $Id$
@@ -44,6 +52,9 @@ public class SmsUserData
     /** The actual user data. */
     protected final byte[] data_;
     
+    /** Offset of the user data in data_, in octets. */
+    protected final int offset_;
+    
     /** Length of data, in octets or septets depending on the dcs. */
     protected final int length_;
     
@@ -51,24 +62,127 @@ public class SmsUserData
     protected final SmsDcs dcs_;
     
     public SmsUserData(byte[] userData, int userDataLength, SmsDcs dataCodingScheme)
+    {
+        this(userData, 0, userDataLength, dataCodingScheme);
+    }
+    
+    /**
+     * Creates user data that is a view of a part of the given array.
+     * <p>
+     * The array is not copied, so it must not be changed while the user data
+     * is in use.
+     * 
+     * @param userData
+     *            The array holding the user data
+     * @param offset
+     *            Offset of the first octet
+     * @param userDataLength
+     *            Length of the user data, in octets or septets depending on
+     *            the dcs
+     * @param dataCodingScheme
+     *            The dcs
+     */
+    public SmsUserData(byte[] userData, int offset, int userDataLength, SmsDcs dataCodingScheme)
     {
         data_ = userData;
+        offset_ = offset;
         length_ = userDataLength;
         dcs_ = dataCodingScheme;
     }
     
     public SmsUserData(byte[] userData)
     {
-        data_ = userData;
-        length_ = userData.length;
-        dcs_ = SmsDcs.getGeneralDataCodingDcs(SmsAlphabet.LATIN1, SmsMsgClass.CLASS_UNKNOWN);
+        this(userData, 0, userData.length, SmsDcs.getGeneralDataCodingDcs(SmsAlphabet.LATIN1, SmsMsgClass.CLASS_UNKNOWN));
     }
     
+    /**
+     * Returns the user data.
+     * <p>
+     * If this is a view of a larger array the user data is copied into a
+     * new array, use getBuffer(), getOffset() and getOctetLength() to avoid
+     * the copy.
+     * 
+     * @return The user data
+     */
     public byte[] getData()
+    {
+        int nOctets = getOctetLength();
+        
+        if ((offset_ == 0) && (data_.length <= nOctets))
+        {
+            return data_;
+        }
+        
+        return Arrays.copyOfRange(data_, offset_, offset_ + nOctets);
+    }
+    
+    /**
+     * Returns the array that holds the user data.
+     * <p>
+     * The user data starts at getOffset() and is getOctetLength() octets
+     * long. The returned array must not be modified.
+     * 
+     * @return The backing array
+     */
+    public byte[] getBuffer()
     {
         return data_;
     }
     
+    /**
+     * Returns the offset of the user data in getBuffer().
+     * 
+     * @return Offset in octets
+     */
+    public int getOffset()
+    {
+        return offset_;
+    }
+    
+    /**
+     * Returns the number of octets used by the user data.
+     * 
+     * @return Length in octets
+     */
+    public int getOctetLength()
+    {
+        if (dcs_.getAlphabet() == SmsAlphabet.GSM)
+        {
+            return SeptetCodec.getOctetCount(length_, 0);
+        }
+        
+        return length_;
+    }
+    
+    /**
+     * Returns a view of a part of this user data.
+     * <p>
+     * The view shares the array with this user data. Only octet aligned
+     * views can be created, so offset must be a multiple of 8 if the user
+     * data is septet encoded.
+     * 
+     * @param offset
+     *            Offset of the view, in octets or septets depending on the dcs
+     * @param length
+     *            Length of the view, in octets or septets depending on the dcs
+     * @return The view
+     */
+    public SmsUserData slice(int offset, int length)
+    {
+        int octetOffset = offset;
+        
+        if (dcs_.getAlphabet() == SmsAlphabet.GSM)
+        {
+            if ((offset % 8) != 0)
+            {
+                throw new IllegalArgumentException("Septet offset must be octet aligned");
+            }
+            octetOffset = offset / 8 * 7;
+        }
+        
+        return new SmsUserData(data_, offset_ + octetOffset, length, dcs_);
+    }
+    
     /**
      * Returns the length of the user data field.
      * 
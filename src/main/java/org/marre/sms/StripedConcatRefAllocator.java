@@ -0,0 +1,242 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free SmsConcatRefAllocator with monotonic counters per destination.
+ * <p>
+ * Destinations are hashed to a fixed number of stripes, each with its own
+ * counter, so memory use doesn't grow with the number of destinations. A
+ * destination never gets the same reference again until its stripe has
+ * allocated 256 (or 65536) more references. Messages without a destination
+ * have a counter of their own.
+ * <p>
+ * If a stripe wraps around the 8-bit reference space faster than the given
+ * in-flight time, it switches to 16-bit references for the next in-flight
+ * period, since the old references may still be waiting for their parts at
+ * the handset.
+ * <p>
+ * The switch is made per stripe, not per destination. It depends on the total
+ * volume, not on how often a single destination gets messages. A stripe
+ * wraps when it gets more than 256 concatenated messages per in-flight
+ * time, so with 4096 stripes and 10 minutes everything moves to 16-bit
+ * references when the concatenated traffic goes above about 1750 messages
+ * per second. The default allocator is sized for DEFAULT_RATE with room for
+ * an uneven spread, use forRate() to size it for other traffic.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class StripedConcatRefAllocator implements SmsConcatRefAllocator
+{
+    /** Default time a concatenated message is considered in flight. */
+    public static final long DEFAULT_IN_FLIGHT_MILLIS = 10 * 60 * 1000L;
+
+    /** Concatenated messages per second that the default allocator is sized for. */
+    public static final int DEFAULT_RATE = 1000;
+
+    /** Default number of stripes, enough for DEFAULT_RATE. */
+    public static final int DEFAULT_STRIPES = getStripeCount(DEFAULT_RATE, DEFAULT_IN_FLIGHT_MILLIS);
+
+    /**
+     * Stripes are sized to get at most this many references per in-flight
+     * time at the expected rate. Half the 8-bit space, since the hash doesn't
+     * spread the destinations evenly.
+     */
+    private static final int REFS_PER_STRIPE = 128;
+
+    private final int mask_;
+    /** Index of the counter used when the destination is unknown. */
+    private final int nullStripe_;
+    private final long inFlightMillis_;
+
+    /** Reference counter of each stripe. */
+    private final AtomicIntegerArray counters_;
+    /** Time of the last 8-bit wrap around of each stripe. */
+    private final AtomicLongArray wrapTimes_;
+    /** 16-bit references are used until this time, 0 if not. */
+    private final AtomicLongArray use16BitUntil_;
+
+    /**
+     * Creates an allocator with DEFAULT_STRIPES stripes and
+     * DEFAULT_IN_FLIGHT_MILLIS.
+     */
+    public StripedConcatRefAllocator()
+    {
+        this(DEFAULT_STRIPES, DEFAULT_IN_FLIGHT_MILLIS);
+    }
+
+    /**
+     * Creates an allocator.
+     * 
+     * @param nStripes
+     *            Number of stripes, rounded up to a power of two
+     * @param inFlightMillis
+     *            How long a concatenated message is considered in flight, 0
+     *            to never use 16-bit references
+     */
+    public StripedConcatRefAllocator(int nStripes, long inFlightMillis)
+    {
+        if (nStripes < 1)
+        {
+            throw new IllegalArgumentException("nStripes must be at least 1");
+        }
+
+        int size = Integer.highestOneBit(nStripes);
+        if (size < nStripes)
+        {
+            size <<= 1;
+        }
+
+        mask_ = size - 1;
+        nullStripe_ = size;
+        inFlightMillis_ = inFlightMillis;
+        counters_ = new AtomicIntegerArray(size + 1);
+        wrapTimes_ = new AtomicLongArray(size + 1);
+        use16BitUntil_ = new AtomicLongArray(size + 1);
+
+        // Random start values so that a restart doesn't reuse the same
+        // references
+        Random rnd = new Random();
+        for (int i = 0; i <= size; i++)
+        {
+            counters_.set(i, rnd.nextInt());
+        }
+    }
+
+    /**
+     * Creates an allocator with enough stripes to keep 8-bit references at
+     * the given rate.
+     * 
+     * @param messagesPerSecond
+     *            Expected peak rate of concatenated messages
+     * @param inFlightMillis
+     *            How long a concatenated message is considered in flight
+     * @return The allocator
+     */
+    public static StripedConcatRefAllocator forRate(double messagesPerSecond, long inFlightMillis)
+    {
+        return new StripedConcatRefAllocator(getStripeCount(messagesPerSecond, inFlightMillis), inFlightMillis);
+    }
+
+    /**
+     * Returns the number of stripes needed to keep 8-bit references at the
+     * given rate.
+     * 
+     * @param messagesPerSecond
+     *            Expected peak rate of concatenated messages
+     * @param inFlightMillis
+     *            How long a concatenated message is considered in flight
+     * @return Number of stripes, a power of two
+     */
+    public static int getStripeCount(double messagesPerSecond, long inFlightMillis)
+    {
+        double refsPerInFlight = messagesPerSecond * inFlightMillis / 1000.0;
+        double nStripes = Math.ceil(refsPerInFlight / REFS_PER_STRIPE);
+        if (nStripes <= 1)
+        {
+            return 1;
+        }
+        if (nStripes >= (1 << 24))
+        {
+            return 1 << 24;
+        }
+
+        int size = Integer.highestOneBit((int) nStripes);
+        return (size < nStripes) ? size << 1 : size;
+    }
+
+    public int nextRef(SmsAddress destination)
+    {
+        int stripe = getStripe(destination);
+        int ref = counters_.getAndIncrement(stripe);
+
+        if (((ref & 0xff) == 0) && (inFlightMillis_ > 0))
+        {
+            // Wrapped around the 8-bit space, was it too soon?
+            long now = System.currentTimeMillis();
+            long lastWrap = wrapTimes_.getAndSet(stripe, now);
+
+            if (now - lastWrap < inFlightMillis_)
+            {
+                use16BitUntil_.set(stripe, now + inFlightMillis_);
+            }
+        }
+
+        long use16BitUntil = use16BitUntil_.get(stripe);
+        if (use16BitUntil != 0)
+        {
+            if (System.currentTimeMillis() < use16BitUntil)
+            {
+                return REF_16BIT | (ref & 0xffff);
+            }
+
+            use16BitUntil_.compareAndSet(stripe, use16BitUntil, 0);
+        }
+
+        return ref & 0xff;
+    }
+
+    /**
+     * Returns true if the stripe of the given destination currently uses
+     * 16-bit references.
+     * 
+     * @param destination
+     *            The destination, null if unknown
+     * @return true if 16-bit references are used
+     */
+    public boolean is16Bit(SmsAddress destination)
+    {
+        long use16BitUntil = use16BitUntil_.get(getStripe(destination));
+        return (use16BitUntil != 0) && (System.currentTimeMillis() < use16BitUntil);
+    }
+
+    private int getStripe(SmsAddress destination)
+    {
+        if (destination == null)
+        {
+            return nullStripe_;
+        }
+
+        // Spread the hash bits, similar to HashMap
+        int h = destination.getAddress().hashCode();
+        h ^= (h >>> 16);
+        return h & mask_;
+    }
+}
@@ -0,0 +1,75 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import java.util.concurrent.Future;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsException;
+import org.marre.sms.SmsMessage;
+
+/**
+ * An SmsTransport that can send messages without blocking the caller.
+ * 
+ * Use SmsAsyncTransportAdapter to get this interface for a transport that
+ * only implements the blocking send.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public interface SmsAsyncTransport extends SmsTransport
+{
+    /**
+     * Queues an SmsMessage for sending and returns immediately.
+     * <p>
+     * The future completes when the SMSC has accepted, or rejected, all the
+     * segments of the message. It holds one local identifier per segment, in
+     * segment order. Transports that only get one identifier for the whole
+     * message return an array with that one identifier. The identifiers can be
+     * null.
+     * <p>
+     * If the send fails the future throws an ExecutionException with the
+     * SmsException or IOException as cause.
+     * <p>
+     * The message must not be changed until the future has completed.
+     * 
+     * @param msg The Message to send
+     * @param dest Destination address
+     * @param sender Sender address
+     * @return A future with the local identifier of each segment.
+     * @throws SmsException If the message can't be queued.
+     */
+    Future<String[]> sendAsync(SmsMessage msg, SmsAddress dest, SmsAddress sender) throws SmsException;
+}
@@ -0,0 +1,222 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsException;
+import org.marre.sms.SmsMessage;
+
+/**
+ * Gives any SmsTransport the SmsAsyncTransport interface.
+ * <p>
+ * The messages are sent with the blocking send method of the wrapped
+ * transport on an executor. By default the adapter uses one daemon thread of
+ * its own, so the messages are sent in the order they were queued. The
+ * adapter locks the wrapped transport object while it uses it, anyone else
+ * that uses the same transport object must do the same.
+ * <p>
+ * The future holds the one identifier returned by the blocking send.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsAsyncTransportAdapter implements SmsAsyncTransport
+{
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory()
+    {
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = new Thread(r, "smsj-async-send");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private final SmsTransport transport_;
+    private final ExecutorService externalExecutor_;
+    private ExecutorService executor_;
+
+    /**
+     * Creates an adapter that sends on a thread of its own.
+     * 
+     * @param transport The transport to send with
+     */
+    public SmsAsyncTransportAdapter(SmsTransport transport)
+    {
+        this(transport, null);
+    }
+
+    /**
+     * Creates an adapter that sends on the given executor.
+     * <p>
+     * The executor is not shut down by disconnect(). Messages can be sent in
+     * any order if the executor has more than one thread.
+     * 
+     * @param transport The transport to send with
+     * @param executor The executor to send on, or null to use a thread of our own
+     */
+    public SmsAsyncTransportAdapter(SmsTransport transport, ExecutorService executor)
+    {
+        if (transport == null)
+        {
+            throw new IllegalArgumentException("transport is null");
+        }
+
+        transport_ = transport;
+        externalExecutor_ = executor;
+    }
+
+    /**
+     * Returns the wrapped transport.
+     * 
+     * @return The wrapped transport
+     */
+    public SmsTransport getTransport()
+    {
+        return transport_;
+    }
+
+    public void init(Properties props) throws SmsException
+    {
+        synchronized (transport_)
+        {
+            transport_.init(props);
+        }
+    }
+
+    public void connect() throws SmsException, IOException
+    {
+        synchronized (transport_)
+        {
+            transport_.connect();
+        }
+    }
+
+    public String send(SmsMessage msg, SmsAddress destination, SmsAddress sender) throws SmsException, IOException
+    {
+        synchronized (transport_)
+        {
+            return transport_.send(msg, destination, sender);
+        }
+    }
+
+    public Future<String[]> sendAsync(final SmsMessage msg, final SmsAddress dest, final SmsAddress sender)
+        throws SmsException
+    {
+        Callable<String[]> task = new Callable<String[]>()
+        {
+            public String[] call() throws SmsException, IOException
+            {
+                return new String[] {send(msg, dest, sender)};
+            }
+        };
+
+        try
+        {
+            return getExecutor().submit(task);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            throw new SmsException("Failed to queue message", ex);
+        }
+    }
+
+    public void ping() throws SmsException, IOException
+    {
+        synchronized (transport_)
+        {
+            transport_.ping();
+        }
+    }
+
+    /**
+     * Waits for the queued messages to be sent and disconnects the wrapped
+     * transport.
+     * <p>
+     * Messages queued on an external executor are not waited for.
+     */
+    public void disconnect() throws SmsException, IOException
+    {
+        ExecutorService executor;
+
+        synchronized (this)
+        {
+            executor = executor_;
+            executor_ = null;
+        }
+
+        if (executor != null)
+        {
+            executor.shutdown();
+            try
+            {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (transport_)
+        {
+            transport_.disconnect();
+        }
+    }
+
+    private synchronized ExecutorService getExecutor()
+    {
+        if (externalExecutor_ != null)
+        {
+            return externalExecutor_;
+        }
+
+        if (executor_ == null)
+        {
+            executor_ = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+        }
+        return executor_;
+    }
+}
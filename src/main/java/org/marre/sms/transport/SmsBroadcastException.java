@@ -0,0 +1,163 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import org.marre.sms.SmsException;
+
+/**
+ * Thrown by SmsBroadcastTransport.send() if the message didn't reach all
+ * destinations.
+ * <p>
+ * Tells which destinations got the message and why the others didn't, so
+ * that only the failed destinations are retried. If the send was aborted,
+ * ex. because the connection to the SMSC was lost, the cause is the
+ * IOException and only the first getProcessedCount() destinations were
+ * tried.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsBroadcastException extends SmsException
+{
+    private static final long serialVersionUID = 4392516880210327946L;
+
+    private final String[] ids_;
+    private final SmsException[] errors_;
+    private final int processedCount_;
+
+    /**
+     * Creates an SmsBroadcastException.
+     * 
+     * @param msg The error message
+     * @param ids The identifier of each destination, null if it failed or wasn't tried
+     * @param errors The error of each destination, null if it didn't fail
+     * @param processedCount The number of destinations that were tried
+     * @param cause Why the send was aborted, null if all destinations were tried
+     */
+    public SmsBroadcastException(String msg, String[] ids, SmsException[] errors, int processedCount,
+            Throwable cause)
+    {
+        super(msg, cause);
+        ids_ = ids;
+        errors_ = errors;
+        processedCount_ = processedCount;
+    }
+
+    /**
+     * Creates the exception for a send that tried all destinations.
+     * 
+     * @return The exception, or null if no destination failed
+     */
+    public static SmsBroadcastException create(String[] ids, SmsException[] errors)
+    {
+        int nFailed = 0;
+        SmsException firstError = null;
+        for (SmsException error : errors)
+        {
+            if (error != null)
+            {
+                if (firstError == null)
+                {
+                    firstError = error;
+                }
+                nFailed++;
+            }
+        }
+
+        if (nFailed == 0)
+        {
+            return null;
+        }
+
+        return new SmsBroadcastException(nFailed + " of " + errors.length + " destinations failed, first error: "
+                + firstError.getMessage(), ids, errors, errors.length, null);
+    }
+
+    /**
+     * Creates the exception for a send that was aborted.
+     * 
+     * @param processedCount The number of destinations that were tried
+     * @param cause Why the send was aborted
+     * @return The exception
+     */
+    public static SmsBroadcastException aborted(String[] ids, SmsException[] errors, int processedCount,
+            Throwable cause)
+    {
+        return new SmsBroadcastException("Aborted after " + processedCount + " of " + errors.length
+                + " destinations: " + cause.getMessage(), ids, errors, processedCount, cause);
+    }
+
+    /**
+     * Returns the identifier of each destination.
+     * 
+     * @return The identifiers, null for the destinations that failed or weren't tried
+     */
+    public String[] getIds()
+    {
+        return ids_;
+    }
+
+    /**
+     * Returns the error of each destination.
+     * 
+     * @return The errors, null for the destinations that didn't fail
+     */
+    public SmsException[] getErrors()
+    {
+        return errors_;
+    }
+
+    /**
+     * Returns the number of destinations that were tried, in the order they
+     * were given. The rest didn't get the message.
+     * 
+     * @return The number of tried destinations
+     */
+    public int getProcessedCount()
+    {
+        return processedCount_;
+    }
+
+    /**
+     * Returns true if the destination got the message.
+     * 
+     * @param index Index of the destination
+     * @return true if the message was sent to the destination
+     */
+    public boolean isSent(int index)
+    {
+        return (index < processedCount_) && (errors_[index] == null);
+    }
+}
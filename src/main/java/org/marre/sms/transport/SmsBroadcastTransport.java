@@ -0,0 +1,79 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import java.io.IOException;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsException;
+import org.marre.sms.SmsMessage;
+
+/**
+ * An SmsTransport that can send the same message to many destinations.
+ * 
+ * Implementations encode the message once and only change the destination
+ * address, and the concat reference, for each destination.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public interface SmsBroadcastTransport extends SmsTransport
+{
+    /**
+     * Sends an SmsMessage to all the given destinations.
+     * 
+     * The message must not be changed while it is sent.
+     * <p>
+     * A destination that the SMSC rejects doesn't stop the send, the
+     * remaining destinations are still sent to. If any destination failed an
+     * SmsBroadcastException is thrown at the end, with the identifiers of
+     * the destinations that got the message and the error of each one that
+     * didn't. If a segment after the first one of a concatenated message
+     * fails, the destination may have received the first segments.
+     * <p>
+     * The send is only aborted if the connection to the SMSC fails. Then an
+     * SmsBroadcastException is thrown with the IOException as cause, and
+     * getProcessedCount() tells how many destinations were tried.
+     * 
+     * @param msg The Message to send
+     * @param destinations Destination addresses
+     * @param sender Sender address
+     * @return a local identifier for the message for each destination, see send(SmsMessage, SmsAddress, SmsAddress).
+     * @throws SmsBroadcastException If any destination failed, or the send was aborted
+     * @throws SmsException Indicates a sms related problem before anything was sent.
+     * @throws IOException Inidicates a failure to communicate with the SMS server before anything was sent.
+     */
+    String[] send(SmsMessage msg, SmsAddress[] destinations, SmsAddress sender) throws SmsException, IOException;
+}
@@ -0,0 +1,362 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.marre.sms.GsmOperator;
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsException;
+
+/**
+ * An immutable longest prefix match index over E.164 number prefixes.
+ * <p>
+ * Each prefix maps to a route name and an MCC/MNC. The table is a digit
+ * trie flattened into arrays: the nodes are stored breadth first, so the
+ * children of a node are adjacent, and a node only stores a bitmask of its
+ * child digits and the index of its first child. A lookup does not
+ * allocate.
+ * <p>
+ * Tables are never changed after they are built. To update the routing,
+ * build a new table and replace the reference to the old one, ex. with
+ * SmsRoutingTransport.setPrefixTable().
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public final class SmsPrefixTable
+{
+    /**
+     * A prefix and what it maps to.
+     */
+    public static final class Entry
+    {
+        private final String prefix_;
+        private final String route_;
+        private final int mcc_;
+        private final int mnc_;
+        private final GsmOperator operator_;
+
+        /**
+         * Creates an entry.
+         * 
+         * @param prefix The number prefix, digits only. Country code first, without leading + or 00.
+         * @param route The route name or null
+         * @param mcc Mobile country code or -1
+         * @param mnc Mobile network code or -1
+         */
+        public Entry(String prefix, String route, int mcc, int mnc)
+        {
+            for (int i = 0; i < prefix.length(); i++)
+            {
+                char ch = prefix.charAt(i);
+                if (ch < '0' || ch > '9')
+                {
+                    throw new IllegalArgumentException("Invalid prefix: " + prefix);
+                }
+            }
+
+            prefix_ = prefix;
+            route_ = route;
+            mcc_ = mcc;
+            mnc_ = mnc;
+            operator_ = (mcc >= 0 && mnc >= 0) ? GsmOperator.getOperator(mcc, mnc) : null;
+        }
+
+        public String getPrefix()
+        {
+            return prefix_;
+        }
+
+        /**
+         * @return The route name, or null if the prefix doesn't select a route
+         */
+        public String getRoute()
+        {
+            return route_;
+        }
+
+        /**
+         * @return The mobile country code, or -1 if unknown
+         */
+        public int getMcc()
+        {
+            return mcc_;
+        }
+
+        /**
+         * @return The mobile network code, or -1 if unknown
+         */
+        public int getMnc()
+        {
+            return mnc_;
+        }
+
+        /**
+         * @return The operator, or null if the MCC/MNC is unknown to smsj
+         */
+        public GsmOperator getOperator()
+        {
+            return operator_;
+        }
+    }
+
+    /**
+     * Trie node used while building the table.
+     */
+    private static final class BuildNode
+    {
+        final BuildNode[] children_ = new BuildNode[10];
+        Entry entry_;
+    }
+
+    /** Bit d is set if the node has a child for digit d */
+    private final short[] childMask_;
+    /** Index of the first child */
+    private final int[] firstChild_;
+    /** The entry that ends at the node or null */
+    private final Entry[] entries_;
+    private final int size_;
+
+    /**
+     * Builds a table.
+     * 
+     * @param entries The entries
+     * @throws SmsException If a prefix occurs more than once
+     */
+    public SmsPrefixTable(Collection<Entry> entries) throws SmsException
+    {
+        BuildNode root = new BuildNode();
+        int nNodes = 1;
+
+        for (Entry entry : entries)
+        {
+            BuildNode node = root;
+            String prefix = entry.getPrefix();
+            for (int i = 0; i < prefix.length(); i++)
+            {
+                int digit = prefix.charAt(i) - '0';
+                if (node.children_[digit] == null)
+                {
+                    node.children_[digit] = new BuildNode();
+                    nNodes++;
+                }
+                node = node.children_[digit];
+            }
+
+            if (node.entry_ != null)
+            {
+                throw new SmsException("Duplicate prefix: " + prefix);
+            }
+            node.entry_ = entry;
+        }
+
+        childMask_ = new short[nNodes];
+        firstChild_ = new int[nNodes];
+        entries_ = new Entry[nNodes];
+        size_ = entries.size();
+
+        // Breadth first, the children of a node get consecutive indexes
+        BuildNode[] queue = new BuildNode[nNodes];
+        queue[0] = root;
+        int tail = 1;
+        for (int head = 0; head < nNodes; head++)
+        {
+            BuildNode node = queue[head];
+            int mask = 0;
+
+            entries_[head] = node.entry_;
+            firstChild_[head] = tail;
+            for (int digit = 0; digit < 10; digit++)
+            {
+                if (node.children_[digit] != null)
+                {
+                    mask |= 1 << digit;
+                    queue[tail++] = node.children_[digit];
+                }
+            }
+            childMask_[head] = (short) mask;
+        }
+    }
+
+    /**
+     * Reads a table.
+     * <p>
+     * One entry per line: <code>prefix|route|mcc|mnc</code>. Route, mcc and
+     * mnc can be left out or empty. Empty lines and lines starting with # are
+     * ignored. Ex:
+     * 
+     * <pre>
+     * # Sweden
+     * 46|ucp
+     * 4670|ucp|240|1
+     * 4673|modem|240|7
+     * </pre>
+     * 
+     * @param reader Where to read the table from
+     * @return The table
+     * @throws IOException If the table could not be read
+     * @throws SmsException If the table has errors
+     */
+    public static SmsPrefixTable load(Reader reader) throws IOException, SmsException
+    {
+        BufferedReader in = new BufferedReader(reader);
+        List<Entry> entries = new ArrayList<Entry>();
+        int lineNo = 0;
+
+        for (String line = in.readLine(); line != null; line = in.readLine())
+        {
+            lineNo++;
+            line = line.trim();
+            if (line.length() == 0 || line.charAt(0) == '#')
+            {
+                continue;
+            }
+
+            String[] fields = line.split("\\|", -1);
+            try
+            {
+                String route = (fields.length > 1 && fields[1].trim().length() > 0) ? fields[1].trim() : null;
+                int mcc = (fields.length > 2) ? parseCode(fields[2]) : -1;
+                int mnc = (fields.length > 3) ? parseCode(fields[3]) : -1;
+                entries.add(new Entry(fields[0].trim(), route, mcc, mnc));
+            }
+            catch (IllegalArgumentException ex)
+            {
+                throw new SmsException("Invalid prefix table entry on line " + lineNo + ": " + line, ex);
+            }
+        }
+
+        return new SmsPrefixTable(entries);
+    }
+
+    private static int parseCode(String field)
+    {
+        field = field.trim();
+        return (field.length() > 0) ? Integer.parseInt(field) : -1;
+    }
+
+    /**
+     * Finds the entry with the longest prefix of the number.
+     * 
+     * @param number The number, digits only. A leading + is ignored.
+     * @return The entry or null if no prefix matches
+     */
+    public Entry lookup(CharSequence number)
+    {
+        int node = 0;
+        Entry best = entries_[0];
+        int length = number.length();
+        int i = (length > 0 && number.charAt(0) == '+') ? 1 : 0;
+
+        for (; i < length; i++)
+        {
+            int digit = number.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+            {
+                break;
+            }
+
+            int mask = childMask_[node];
+            int bit = 1 << digit;
+            if ((mask & bit) == 0)
+            {
+                break;
+            }
+
+            node = firstChild_[node] + Integer.bitCount(mask & (bit - 1));
+            if (entries_[node] != null)
+            {
+                best = entries_[node];
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Finds the entry with the longest prefix of the address.
+     * 
+     * @param address The address
+     * @return The entry or null if no prefix matches or the address is alphanumeric
+     */
+    public Entry lookup(SmsAddress address)
+    {
+        return address.isAlphanumeric() ? null : lookup(address.getAddress());
+    }
+
+    /**
+     * Returns all entries, in no particular order.
+     * 
+     * @return The entries
+     */
+    public List<Entry> getEntries()
+    {
+        List<Entry> entries = new ArrayList<Entry>(size_);
+        for (Entry entry : entries_)
+        {
+            if (entry != null)
+            {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the number of entries.
+     * 
+     * @return The number of prefixes in the table
+     */
+    public int size()
+    {
+        return size_;
+    }
+
+    /**
+     * Returns the number of trie nodes, each takes 10 bytes plus the entry.
+     * 
+     * @return The number of nodes
+     */
+    public int getNodeCount()
+    {
+        return entries_.length;
+    }
+}
@@ -0,0 +1,288 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import java.io.InterruptedIOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.marre.sms.SmsException;
+
+/**
+ * A token bucket that limits the number of segments per second sent to an
+ * SMSC.
+ * <p>
+ * The bucket holds up to burst tokens and is refilled with unitsPerSecond
+ * tokens per second. It is implemented as a virtual scheduling algorithm
+ * (GCRA): the only state is the time when the bucket is full again, which is
+ * updated with a compare and set. Threads never wait for a lock, each caller
+ * reserves its tokens and then sleeps until they are due. Reservations are
+ * served in the order they were made, so a thread sending long concatenated
+ * messages does not starve threads sending short ones.
+ * <p>
+ * Transports count one unit per segment.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsRateLimiter
+{
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private final double unitsPerSecond_;
+    private final int burst_;
+    /** Nanoseconds per unit */
+    private final long interval_;
+    /** Nanoseconds it takes to refill the whole bucket */
+    private final long capacity_;
+
+    /** Theoretical arrival time, the time when the bucket is full again. NEVER if never used. */
+    private final AtomicLong tat_ = new AtomicLong(NEVER);
+    private final AtomicLong acquired_ = new AtomicLong();
+
+    /**
+     * Creates a rate limiter with a full bucket.
+     * 
+     * @param unitsPerSecond The sustained rate
+     * @param burst The number of units that can be sent at once after a pause
+     */
+    public SmsRateLimiter(double unitsPerSecond, int burst)
+    {
+        if (!(unitsPerSecond > 0.0) || Double.isInfinite(unitsPerSecond))
+        {
+            throw new IllegalArgumentException("Invalid rate: " + unitsPerSecond);
+        }
+        if (burst < 1)
+        {
+            throw new IllegalArgumentException("Invalid burst: " + burst);
+        }
+
+        unitsPerSecond_ = unitsPerSecond;
+        burst_ = burst;
+        interval_ = Math.max(1L, Math.round(1000000000.0 / unitsPerSecond));
+        capacity_ = interval_ * burst;
+    }
+
+    /**
+     * Creates a rate limiter from properties.
+     * 
+     * @param props
+     *            <b>smsj.throttle.tps</b>: segments per second, no limit if not set <br>
+     *            <b>smsj.throttle.burst</b>: segments that can be sent at once,
+     *            default one second of traffic
+     * @return The rate limiter, or null if smsj.throttle.tps is not set
+     * @throws SmsException If the properties are invalid
+     */
+    public static SmsRateLimiter create(Properties props) throws SmsException
+    {
+        String tps = props.getProperty("smsj.throttle.tps");
+        if (tps == null)
+        {
+            return null;
+        }
+
+        String burst = props.getProperty("smsj.throttle.burst");
+        try
+        {
+            double unitsPerSecond = Double.parseDouble(tps.trim());
+            int defaultBurst = (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.ceil(unitsPerSecond)));
+            return new SmsRateLimiter(unitsPerSecond, (burst != null) ? Integer.parseInt(burst.trim()) : defaultBurst);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            throw new SmsException("Invalid smsj.throttle.tps or smsj.throttle.burst", ex);
+        }
+    }
+
+    /**
+     * Reserves units and returns how long the caller must wait before it
+     * uses them.
+     * <p>
+     * The reservation can't be cancelled. Asking for more units than the
+     * burst is allowed, it just takes longer.
+     * 
+     * @param units The number of units
+     * @return Nanoseconds to wait, 0 if the units can be used now
+     */
+    public long reserve(int units)
+    {
+        if (units < 0)
+        {
+            throw new IllegalArgumentException("Invalid units: " + units);
+        }
+
+        long cost = interval_ * units;
+        while (true)
+        {
+            long now = nanoTime();
+            long tat = tat_.get();
+            long used = getUsed(tat, now);
+            if (tat_.compareAndSet(tat, now + used + cost))
+            {
+                acquired_.addAndGet(units);
+                return Math.max(0L, used + cost - capacity_);
+            }
+        }
+    }
+
+    /**
+     * Returns the nanoseconds of tokens taken from the bucket at the time now.
+     */
+    private static long getUsed(long tat, long now)
+    {
+        // Compare with subtraction, nanoTime() can wrap
+        return (tat == NEVER || tat - now <= 0) ? 0L : tat - now;
+    }
+
+    /**
+     * Takes units from the bucket, waits until they are available.
+     * 
+     * @param units The number of units
+     * @throws InterruptedException If interrupted while waiting. The units are still used.
+     */
+    public void acquire(int units) throws InterruptedException
+    {
+        long wait = reserve(units);
+        if (wait > 0)
+        {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Takes units from the bucket for a send, waits until they are available.
+     * 
+     * @param units The number of units
+     * @throws InterruptedIOException If interrupted while waiting
+     */
+    public void throttle(int units) throws InterruptedIOException
+    {
+        try
+        {
+            acquire(units);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw (InterruptedIOException) new InterruptedIOException("Interrupted while throttled").initCause(ex);
+        }
+    }
+
+    /**
+     * Takes units from the bucket if they are available now.
+     * 
+     * @param units The number of units
+     * @return true if the units were taken
+     */
+    public boolean tryAcquire(int units)
+    {
+        if (units < 0)
+        {
+            throw new IllegalArgumentException("Invalid units: " + units);
+        }
+
+        long cost = interval_ * units;
+        while (true)
+        {
+            long now = nanoTime();
+            long tat = tat_.get();
+            long used = getUsed(tat, now);
+            if (used + cost > capacity_)
+            {
+                return false;
+            }
+            if (tat_.compareAndSet(tat, now + used + cost))
+            {
+                acquired_.addAndGet(units);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of units that can be taken without waiting.
+     * 
+     * @return Units left in the bucket
+     */
+    public int getAvailable()
+    {
+        long used = getUsed(tat_.get(), nanoTime());
+        return (int) Math.max(0L, (capacity_ - used) / interval_);
+    }
+
+    /**
+     * Returns how much of the bucket is used.
+     * 
+     * @return 0.0 when the bucket is full, 1.0 when it is empty. Above 1.0
+     *         when senders are waiting, ex. 2.0 means that one more burst is
+     *         queued.
+     */
+    public double getUtilization()
+    {
+        long used = getUsed(tat_.get(), nanoTime());
+        return (double) used / capacity_;
+    }
+
+    /**
+     * Returns the number of units taken since the rate limiter was created.
+     * 
+     * @return Total units
+     */
+    public long getAcquired()
+    {
+        return acquired_.get();
+    }
+
+    public double getUnitsPerSecond()
+    {
+        return unitsPerSecond_;
+    }
+
+    public int getBurst()
+    {
+        return burst_;
+    }
+
+    /**
+     * Returns the current time, used to fill the bucket.
+     * 
+     * @return Nanoseconds from an arbitrary origin, as System.nanoTime()
+     */
+    protected long nanoTime()
+    {
+        return System.nanoTime();
+    }
+}
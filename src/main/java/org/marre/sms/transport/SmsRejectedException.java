@@ -0,0 +1,107 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import org.marre.sms.SmsException;
+
+/**
+ * Thrown when the SMSC, or the network, rejects a message.
+ * <p>
+ * Unlike other SmsExceptions this is not a problem with the message or with
+ * what the transport supports. The same message may well be accepted later
+ * or by another SMSC, ex. if the SMSC is throttling or the account is
+ * blocked.
+ * <p>
+ * A concatenated message can be rejected after some of its segments were
+ * accepted, then the receiver may already have the first segments.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsRejectedException extends SmsException
+{
+    private static final long serialVersionUID = -2278465151329482206L;
+
+    private final String errorCode_;
+    private final int acceptedSegments_;
+
+    /**
+     * Creates an SmsRejectedException for a message that was rejected before
+     * any segment was accepted.
+     * 
+     * @param msg The error message
+     * @param errorCode The error code from the SMSC, null if unknown
+     */
+    public SmsRejectedException(String msg, String errorCode)
+    {
+        this(msg, errorCode, 0, null);
+    }
+
+    /**
+     * Creates an SmsRejectedException.
+     * 
+     * @param msg The error message
+     * @param errorCode The error code from the SMSC, null if unknown
+     * @param acceptedSegments The number of segments that were accepted before the rejection
+     * @param cause Chained exception
+     */
+    public SmsRejectedException(String msg, String errorCode, int acceptedSegments, Throwable cause)
+    {
+        super(msg, cause);
+        errorCode_ = errorCode;
+        acceptedSegments_ = acceptedSegments;
+    }
+
+    /**
+     * Returns the error code from the SMSC.
+     * 
+     * @return The error code, null if unknown
+     */
+    public String getErrorCode()
+    {
+        return errorCode_;
+    }
+
+    /**
+     * Returns the number of segments of the message that were accepted
+     * before it was rejected.
+     * 
+     * @return 0 if nothing was sent
+     */
+    public int getAcceptedSegments()
+    {
+        return acceptedSegments_;
+    }
+}
@@ -0,0 +1,722 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsException;
+import org.marre.sms.SmsMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An SmsTransport that spreads the messages over several child transports.
+ * <p>
+ * Each message is sent on a route chosen by smooth weighted round robin. The
+ * configured weight of a route is scaled down by its recent error rate and
+ * latency, so traffic moves away from degraded routes and comes back when
+ * they recover. A degraded route always keeps a small share of the traffic,
+ * otherwise it would never be seen recovering.
+ * <p>
+ * A message is never split between routes, all its segments are sent in
+ * order on one route. If the route fails the whole message is sent again on
+ * the next best route. A concatenated message sent again gets a new concat
+ * reference, so the receiver does not mix its segments with the segments
+ * that made it through the failed route. If the SMSC rejects a segment
+ * after it accepted the first ones the message is not sent again, the
+ * SmsRejectedException is thrown to the caller instead.
+ * <p>
+ * Connection failures and SMSC rejections count as errors of the route. Other
+ * SmsExceptions, ex. a message the transport can't send, only make the
+ * router try the next route.
+ * <p>
+ * A destination that matches a prefix in the SmsPrefixTable is sent on the
+ * route of the prefix first. The table can be replaced while messages are
+ * sent, senders keep using the table they started with.
+ * <p>
+ * Ex:
+ * 
+ * <pre>
+ * smsj.router.routes=ucp,modem
+ * smsj.router.route.ucp.transport=org.marre.sms.transport.ucp.UcpTransport
+ * smsj.router.route.ucp.weight=10
+ * smsj.router.route.ucp.smsj.ucp.ip.host=smsc.example.com
+ * smsj.router.route.ucp.smsj.ucp.ip.port=5000
+ * smsj.router.route.modem.transport=org.marre.sms.transport.gsm.GsmTransport
+ * smsj.router.route.modem.weight=1
+ * smsj.router.prefixtable=/etc/smsj/prefixes.txt
+ * </pre>
+ * 
+ * The child transports are locked while they are used, so the router can be
+ * used by many threads.
+ * <p>
+ * Throttling is per route. A route is only throttled if it has its own
+ * limit, ex. smsj.router.route.ucp.smsj.throttle.tps=50. The general
+ * smsj.throttle properties are not given to the routes, they would give
+ * every route the whole limit. To limit the router as a whole, wrap it in an
+ * SmsThrottledTransport.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsRoutingTransport implements SmsTransport
+{
+    private static final Logger log_ = LoggerFactory.getLogger(SmsRoutingTransport.class);
+
+    /** A degraded route keeps at least this part of its weight */
+    private static final double MIN_HEALTH = 0.01;
+
+    private static final String ROUTE_PREFIX = "smsj.router.route.";
+
+    /**
+     * A child transport and its statistics.
+     */
+    private static class Route
+    {
+        final String name_;
+        final SmsTransport transport_;
+        final int weight_;
+
+        boolean connected_;
+
+        // Guarded by the router, see record() and nextRoute()
+        double samples_;
+        double errors_;
+        double latencySamples_;
+        double latencySum_;
+        long lastUpdate_;
+        double currentWeight_;
+
+        Route(String name, SmsTransport transport, int weight)
+        {
+            name_ = name;
+            transport_ = transport;
+            weight_ = weight;
+        }
+
+        double getErrorRate()
+        {
+            return (samples_ > 0) ? (errors_ / samples_) : 0.0;
+        }
+
+        double getLatency()
+        {
+            return (latencySamples_ > 0) ? (latencySum_ / latencySamples_) : 0.0;
+        }
+    }
+
+    private Route[] routes_ = new Route[0];
+    private long halfLife_;
+    private volatile SmsPrefixTable prefixTable_;
+
+    public SmsRoutingTransport()
+    {
+    }
+
+    /**
+     * Initializes the router and its child transports.
+     * 
+     * @param props
+     *            <b>smsj.router.routes</b>: comma separated route names <br>
+     *            <b>smsj.router.route.NAME.transport</b>: classname of the
+     *            transport of the route <br>
+     *            <b>smsj.router.route.NAME.weight</b>: share of the traffic,
+     *            default 1 <br>
+     *            <b>smsj.router.route.NAME.PROPERTY</b>: PROPERTY for the
+     *            transport of the route. Properties that are not route specific
+     *            are given to all routes, except the smsj.throttle ones. <br>
+     *            <b>smsj.router.route.NAME.smsj.throttle.tps</b>: segments per
+     *            second for the route, no limit if not set <br>
+     *            <b>smsj.router.halflife</b>: time in ms it takes for old errors
+     *            and latencies to lose half their weight, default 60000 <br>
+     *            <b>smsj.router.prefixtable</b>: file with the prefix routes, see
+     *            SmsPrefixTable.load()
+     * 
+     * @throws SmsException
+     */
+    public void init(Properties props) throws SmsException
+    {
+        String routeNames = props.getProperty("smsj.router.routes");
+        if (routeNames == null || routeNames.trim().length() == 0)
+        {
+            throw new SmsException("smsj.router.routes is not set");
+        }
+
+        halfLife_ = parseInt(props, "smsj.router.halflife", 60000);
+        if (halfLife_ <= 0)
+        {
+            throw new SmsException("smsj.router.halflife must be positive");
+        }
+
+        List<Route> routes = new ArrayList<Route>();
+        for (String name : routeNames.split(","))
+        {
+            name = name.trim();
+            String prefix = ROUTE_PREFIX + name + ".";
+            String classname = props.getProperty(prefix + "transport");
+            if (classname == null)
+            {
+                throw new SmsException(prefix + "transport is not set");
+            }
+
+            int weight = parseInt(props, prefix + "weight", 1);
+            if (weight <= 0)
+            {
+                throw new SmsException(prefix + "weight must be positive");
+            }
+
+            SmsTransport transport = SmsTransportManager.getTransport(classname, getRouteProperties(props, prefix));
+            routes.add(new Route(name, transport, weight));
+        }
+
+        routes_ = routes.toArray(new Route[routes.size()]);
+
+        String prefixTableFile = props.getProperty("smsj.router.prefixtable");
+        if (prefixTableFile != null)
+        {
+            try
+            {
+                Reader reader = new InputStreamReader(new FileInputStream(prefixTableFile), "UTF-8");
+                try
+                {
+                    setPrefixTable(SmsPrefixTable.load(reader));
+                }
+                finally
+                {
+                    reader.close();
+                }
+            }
+            catch (IOException ex)
+            {
+                throw new SmsException("Failed to read " + prefixTableFile, ex);
+            }
+        }
+    }
+
+    /**
+     * Replaces the prefix table.
+     * <p>
+     * Messages that are being sent finish with the old table.
+     * 
+     * @param prefixTable The new table, or null to only use the weights
+     * @throws SmsException If the table refers to an unknown route
+     */
+    public void setPrefixTable(SmsPrefixTable prefixTable) throws SmsException
+    {
+        if (prefixTable != null)
+        {
+            for (SmsPrefixTable.Entry entry : prefixTable.getEntries())
+            {
+                if (entry.getRoute() != null && findRoute(entry.getRoute()) == null)
+                {
+                    throw new SmsException("Unknown route " + entry.getRoute() + " for prefix " + entry.getPrefix());
+                }
+            }
+        }
+
+        prefixTable_ = prefixTable;
+    }
+
+    /**
+     * Returns the current prefix table.
+     * 
+     * @return The table or null
+     */
+    public SmsPrefixTable getPrefixTable()
+    {
+        return prefixTable_;
+    }
+
+    /**
+     * Returns all properties with the route specific ones overriding the
+     * general ones. The general smsj.throttle properties are left out, only
+     * route specific limits apply.
+     */
+    static Properties getRouteProperties(Properties props, String prefix)
+    {
+        Properties routeProps = new Properties();
+        for (String name : props.stringPropertyNames())
+        {
+            if (!name.startsWith(ROUTE_PREFIX) && !name.startsWith("smsj.throttle."))
+            {
+                routeProps.setProperty(name, props.getProperty(name));
+            }
+        }
+        for (String name : props.stringPropertyNames())
+        {
+            if (name.startsWith(prefix))
+            {
+                routeProps.setProperty(name.substring(prefix.length()), props.getProperty(name));
+            }
+        }
+        return routeProps;
+    }
+
+    private static int parseInt(Properties props, String name, int defaultValue) throws SmsException
+    {
+        String value = props.getProperty(name);
+        if (value == null)
+        {
+            return defaultValue;
+        }
+
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new SmsException("Invalid " + name + ": " + value, ex);
+        }
+    }
+
+    /**
+     * Connects all routes.
+     * <p>
+     * Routes that fail to connect are counted as failing and are connected
+     * again when they are chosen.
+     * 
+     * @throws IOException If no route could be connected
+     */
+    public void connect() throws SmsException, IOException
+    {
+        Exception lastFailure = null;
+        int nConnected = 0;
+
+        for (Route route : routes_)
+        {
+            try
+            {
+                ensureConnected(route);
+                nConnected++;
+            }
+            catch (Exception ex)
+            {
+                log_.warn("Failed to connect route " + route.name_, ex);
+                record(route, false, 0);
+                lastFailure = ex;
+            }
+        }
+
+        if (nConnected == 0 && routes_.length > 0)
+        {
+            throw (IOException) new IOException("Failed to connect any route").initCause(lastFailure);
+        }
+    }
+
+    private static void ensureConnected(Route route) throws SmsException, IOException
+    {
+        synchronized (route.transport_)
+        {
+            if (!route.connected_)
+            {
+                route.transport_.connect();
+                route.connected_ = true;
+            }
+        }
+    }
+
+    /**
+     * Sends the message on the best route and fails over to the other routes.
+     * 
+     * @return the local identifier from the route that sent the message
+     * @throws SmsException If no route could send the message, the failure from the last route
+     * @throws IOException If no route could send the message, the failure from the last route
+     */
+    public String send(SmsMessage msg, SmsAddress destination, SmsAddress sender) throws SmsException, IOException
+    {
+        Exception lastFailure = null;
+        Route preferred = null;
+
+        SmsPrefixTable prefixTable = prefixTable_;
+        if (prefixTable != null)
+        {
+            SmsPrefixTable.Entry entry = prefixTable.lookup(destination);
+            if (entry != null && entry.getRoute() != null)
+            {
+                preferred = findRoute(entry.getRoute());
+            }
+        }
+
+        for (Route route : getRouteOrder(preferred))
+        {
+            long start = System.nanoTime();
+            try
+            {
+                ensureConnected(route);
+                String id;
+                synchronized (route.transport_)
+                {
+                    id = route.transport_.send(msg, destination, sender);
+                }
+                record(route, true, (System.nanoTime() - start) / 1000000L);
+                return id;
+            }
+            catch (SmsRejectedException ex)
+            {
+                // The SMSC is throttling, blocking us or similar
+                record(route, false, 0);
+                if (ex.getAcceptedSegments() > 0)
+                {
+                    // Sending again would give the receiver the first
+                    // segments twice
+                    throw ex;
+                }
+                log_.warn("Route " + route.name_ + " rejected message, trying next route", ex);
+                lastFailure = ex;
+            }
+            catch (SmsException ex)
+            {
+                // Routes support different features, try the next one but
+                // don't hold it against this route.
+                log_.debug("Route " + route.name_ + " could not send message", ex);
+                lastFailure = ex;
+            }
+            catch (IOException ex)
+            {
+                log_.warn("Route " + route.name_ + " failed, trying next route", ex);
+                disconnectQuietly(route);
+                record(route, false, 0);
+                lastFailure = ex;
+            }
+        }
+
+        if (lastFailure instanceof SmsException)
+        {
+            throw (SmsException) lastFailure;
+        }
+        else if (lastFailure instanceof IOException)
+        {
+            throw (IOException) lastFailure;
+        }
+        throw new SmsException("No routes configured");
+    }
+
+    /**
+     * Returns the route for this message first, then the failover routes
+     * best first.
+     * 
+     * @param preferred The route from the prefix table, or null to choose by weight
+     */
+    private synchronized Route[] getRouteOrder(Route preferred)
+    {
+        long now = currentTimeMillis();
+
+        if (preferred != null)
+        {
+            return sortByWeight(preferred, now);
+        }
+
+        double[] weights = new double[routes_.length];
+        double total = 0;
+        Route best = null;
+        double bestWeight = Double.NEGATIVE_INFINITY;
+
+        // Smooth weighted round robin over the effective weights
+        for (int i = 0; i < routes_.length; i++)
+        {
+            Route route = routes_[i];
+            weights[i] = getEffectiveWeight(route, now);
+            total += weights[i];
+            route.currentWeight_ += weights[i];
+            if (route.currentWeight_ > bestWeight)
+            {
+                best = route;
+                bestWeight = route.currentWeight_;
+            }
+        }
+
+        if (best == null)
+        {
+            return routes_;
+        }
+        best.currentWeight_ -= total;
+
+        return sortByWeight(best, now);
+    }
+
+    /**
+     * Returns the routes best first, with the given route before all others.
+     */
+    private Route[] sortByWeight(Route first, long now)
+    {
+        Route[] order = routes_.clone();
+        final long sortTime = now;
+        Arrays.sort(order, new Comparator<Route>()
+        {
+            public int compare(Route r1, Route r2)
+            {
+                return Double.compare(getEffectiveWeight(r2, sortTime), getEffectiveWeight(r1, sortTime));
+            }
+        });
+
+        // Move the chosen route first, keep the order of the others
+        int i = 0;
+        while (order[i] != first)
+        {
+            i++;
+        }
+        System.arraycopy(order, 0, order, 1, i);
+        order[0] = first;
+        return order;
+    }
+
+    /**
+     * Weight scaled by the health of the route.
+     */
+    private double getEffectiveWeight(Route route, long now)
+    {
+        double availability = 1.0 - route.getErrorRate();
+        double health = availability * availability;
+
+        // Slower routes get a share relative to the fastest route
+        double latency = route.getLatency();
+        if (latency > 0)
+        {
+            double fastest = latency;
+            for (Route other : routes_)
+            {
+                double otherLatency = other.getLatency();
+                if (otherLatency > 0 && otherLatency < fastest)
+                {
+                    fastest = otherLatency;
+                }
+            }
+            // Ignore differences within a few ms
+            health *= (fastest + 10.0) / (latency + 10.0);
+        }
+
+        return route.weight_ * Math.max(MIN_HEALTH, health);
+    }
+
+    /**
+     * Adds a sample to the decaying statistics of the route.
+     */
+    private synchronized void record(Route route, boolean success, long latency)
+    {
+        long now = currentTimeMillis();
+        double decay = Math.pow(0.5, Math.max(0, now - route.lastUpdate_) / (double) halfLife_);
+        route.lastUpdate_ = now;
+
+        route.samples_ = route.samples_ * decay + 1.0;
+        route.errors_ = route.errors_ * decay + (success ? 0.0 : 1.0);
+        route.latencySamples_ *= decay;
+        route.latencySum_ *= decay;
+        if (success)
+        {
+            route.latencySamples_ += 1.0;
+            route.latencySum_ += latency;
+        }
+    }
+
+    /**
+     * Pings all connected routes.
+     * 
+     * @throws IOException If no route answered
+     */
+    public void ping() throws SmsException, IOException
+    {
+        Exception lastFailure = null;
+        int nAlive = 0;
+
+        for (Route route : routes_)
+        {
+            synchronized (route.transport_)
+            {
+                if (!route.connected_)
+                {
+                    continue;
+                }
+
+                try
+                {
+                    route.transport_.ping();
+                    nAlive++;
+                }
+                catch (Exception ex)
+                {
+                    log_.warn("Ping failed on route " + route.name_, ex);
+                    disconnectQuietly(route);
+                    record(route, false, 0);
+                    lastFailure = ex;
+                }
+            }
+        }
+
+        if (nAlive == 0 && routes_.length > 0)
+        {
+            throw (IOException) new IOException("No route is alive").initCause(lastFailure);
+        }
+    }
+
+    /**
+     * Disconnects all routes.
+     */
+    public void disconnect() throws SmsException, IOException
+    {
+        IOException failure = null;
+
+        for (Route route : routes_)
+        {
+            synchronized (route.transport_)
+            {
+                if (!route.connected_)
+                {
+                    continue;
+                }
+
+                route.connected_ = false;
+                try
+                {
+                    route.transport_.disconnect();
+                }
+                catch (IOException ex)
+                {
+                    failure = ex;
+                }
+            }
+        }
+
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    private static void disconnectQuietly(Route route)
+    {
+        synchronized (route.transport_)
+        {
+            route.connected_ = false;
+            try
+            {
+                route.transport_.disconnect();
+            }
+            catch (Exception ex)
+            {
+                log_.debug("Failed to disconnect route " + route.name_, ex);
+            }
+        }
+    }
+
+    /**
+     * Returns the names of the routes in configuration order.
+     * 
+     * @return The route names
+     */
+    public String[] getRouteNames()
+    {
+        String[] names = new String[routes_.length];
+        for (int i = 0; i < routes_.length; i++)
+        {
+            names[i] = routes_[i].name_;
+        }
+        return names;
+    }
+
+    /**
+     * Returns the recent error rate of a route.
+     * 
+     * @param name The route name
+     * @return The decayed error rate, 0.0 - 1.0
+     */
+    public synchronized double getErrorRate(String name)
+    {
+        return getRoute(name).getErrorRate();
+    }
+
+    /**
+     * Returns the recent average latency of a route.
+     * 
+     * @param name The route name
+     * @return The decayed average send time in ms, 0 if unknown
+     */
+    public synchronized double getLatency(String name)
+    {
+        return getRoute(name).getLatency();
+    }
+
+    /**
+     * Returns the weight the route gets right now.
+     * 
+     * @param name The route name
+     * @return The configured weight scaled by the health of the route
+     */
+    public synchronized double getEffectiveWeight(String name)
+    {
+        return getEffectiveWeight(getRoute(name), currentTimeMillis());
+    }
+
+    private Route getRoute(String name)
+    {
+        Route route = findRoute(name);
+        if (route == null)
+        {
+            throw new IllegalArgumentException("Unknown route: " + name);
+        }
+        return route;
+    }
+
+    private Route findRoute(String name)
+    {
+        for (Route route : routes_)
+        {
+            if (route.name_.equals(name))
+            {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the current time, used to decay the statistics.
+     * 
+     * @return Milliseconds since 1970-01-01 UTC
+     */
+    protected long currentTimeMillis()
+    {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,189 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsConcatMessage;
+import org.marre.sms.SmsException;
+import org.marre.sms.SmsMessage;
+
+/**
+ * Limits the number of segments per second that any SmsTransport sends.
+ * <p>
+ * Each segment of a message is one unit of the SmsRateLimiter, all units
+ * of a message are taken before it is passed to the wrapped transport. The
+ * UCP, GSM and Clickatell transports can also throttle by themselves, per
+ * segment, with the smsj.throttle properties.
+ * <p>
+ * The wrapper can be created with SmsTransportManager, with the wrapped
+ * transport named by <b>smsj.throttle.transport</b>. Several transports can
+ * share one SmsRateLimiter if they share a TPS limit.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsThrottledTransport implements SmsTransport
+{
+    private SmsTransport transport_;
+    private SmsRateLimiter rateLimiter_;
+
+    public SmsThrottledTransport()
+    {
+    }
+
+    /**
+     * Wraps a transport.
+     * 
+     * @param transport The transport to throttle
+     * @param rateLimiter The rate limiter
+     */
+    public SmsThrottledTransport(SmsTransport transport, SmsRateLimiter rateLimiter)
+    {
+        if (transport == null || rateLimiter == null)
+        {
+            throw new IllegalArgumentException("transport and rateLimiter must be set");
+        }
+
+        transport_ = transport;
+        rateLimiter_ = rateLimiter;
+    }
+
+    /**
+     * Creates and initializes the wrapped transport.
+     * 
+     * @param props
+     *            <b>smsj.throttle.transport</b>: classname of the wrapped transport <br>
+     *            <b>smsj.throttle.tps</b>: segments per second <br>
+     *            <b>smsj.throttle.burst</b>: segments that can be sent at once,
+     *            default one second of traffic <br>
+     *            The properties are also given to the wrapped transport, except
+     *            the smsj.throttle ones.
+     * 
+     * @throws SmsException
+     */
+    public void init(Properties props) throws SmsException
+    {
+        String classname = props.getProperty("smsj.throttle.transport");
+        if (classname == null)
+        {
+            throw new SmsException("smsj.throttle.transport is not set");
+        }
+
+        SmsRateLimiter rateLimiter = SmsRateLimiter.create(props);
+        if (rateLimiter == null)
+        {
+            throw new SmsException("smsj.throttle.tps is not set");
+        }
+
+        // Don't let the wrapped transport throttle again
+        transport_ = SmsTransportManager.getTransport(classname, withoutThrottle(props));
+        rateLimiter_ = rateLimiter;
+    }
+
+    /**
+     * Returns a copy of the properties without the smsj.throttle ones.
+     */
+    static Properties withoutThrottle(Properties props)
+    {
+        Properties result = new Properties();
+        for (String name : props.stringPropertyNames())
+        {
+            if (!name.startsWith("smsj.throttle."))
+            {
+                result.setProperty(name, props.getProperty(name));
+            }
+        }
+        return result;
+    }
+
+    public void connect() throws SmsException, IOException
+    {
+        transport_.connect();
+    }
+
+    /**
+     * Waits until all segments of the message can be sent and sends it.
+     */
+    public String send(SmsMessage msg, SmsAddress destination, SmsAddress sender) throws SmsException, IOException
+    {
+        rateLimiter_.throttle(getSegmentCount(msg));
+        return transport_.send(msg, destination, sender);
+    }
+
+    /**
+     * Returns the number of segments without encoding concatenated messages.
+     */
+    static int getSegmentCount(SmsMessage msg)
+    {
+        if (msg instanceof SmsConcatMessage)
+        {
+            return ((SmsConcatMessage) msg).getSegmentInfo().getSegmentCount();
+        }
+        return msg.getPdus().length;
+    }
+
+    public void ping() throws SmsException, IOException
+    {
+        transport_.ping();
+    }
+
+    public void disconnect() throws SmsException, IOException
+    {
+        transport_.disconnect();
+    }
+
+    /**
+     * Returns the wrapped transport.
+     * 
+     * @return The wrapped transport
+     */
+    public SmsTransport getTransport()
+    {
+        return transport_;
+    }
+
+    /**
+     * Returns the rate limiter, ex. to monitor its utilization.
+     * 
+     * @return The rate limiter
+     */
+    public SmsRateLimiter getRateLimiter()
+    {
+        return rateLimiter_;
+    }
+}
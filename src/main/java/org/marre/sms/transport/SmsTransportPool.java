@@ -0,0 +1,722 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsException;
+import org.marre.sms.SmsMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of connected transports that can be shared by many threads.
+ * <p>
+ * The pool is itself an SmsTransport, so it can be created with
+ * SmsTransportManager or SmsSender:
+ * 
+ * <pre>
+ * props.setProperty(&quot;smsj.pool.transport&quot;, &quot;org.marre.sms.transport.ucp.UcpTransport&quot;);
+ * props.setProperty(&quot;smsj.pool.size&quot;, &quot;4&quot;);
+ * SmsSender sender = new SmsSender(&quot;org.marre.sms.transport.SmsTransportPool&quot;, props);
+ * </pre>
+ * 
+ * connect() connects all the pooled transports before it returns. Each send
+ * borrows a transport, sends on it and gives it back. A transport that has
+ * been idle longer than the validation interval is pinged before it is
+ * handed out, and idle transports are also pinged in the background. A
+ * transport that fails a ping, or fails with an IOException, is
+ * disconnected and replaced by a background thread.
+ * <p>
+ * The pooled transports are created with the same properties as the pool,
+ * except the smsj.throttle ones. If smsj.throttle.tps is set the pool
+ * throttles all its transports with one SmsRateLimiter, so the limit is for
+ * the pool as a whole and not per connection.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsTransportPool implements SmsAsyncTransport
+{
+    private static final Logger log_ = LoggerFactory.getLogger(SmsTransportPool.class);
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory()
+    {
+        private final AtomicInteger threadNo_ = new AtomicInteger();
+
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = new Thread(r, "smsj-pool-" + threadNo_.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    /**
+     * A pooled transport.
+     */
+    private static class Entry
+    {
+        final SmsTransport transport_;
+        volatile long lastUsed_;
+
+        Entry(SmsTransport transport, long now)
+        {
+            transport_ = transport;
+            lastUsed_ = now;
+        }
+    }
+
+    private String transportClassname_;
+    private Properties props_;
+    private int size_;
+    private long validationInterval_;
+    private long retryInterval_;
+    private long borrowTimeout_;
+    private SmsRateLimiter rateLimiter_;
+
+    /** Most recently used first */
+    private final LinkedBlockingDeque<Entry> idle_ = new LinkedBlockingDeque<Entry>();
+    private final Map<SmsTransport, Entry> borrowed_ = new ConcurrentHashMap<SmsTransport, Entry>();
+
+    private ScheduledExecutorService maintenance_;
+    private ExecutorService sendExecutor_;
+    private volatile boolean closed_ = true;
+
+    public SmsTransportPool()
+    {
+    }
+
+    /**
+     * Initializes the pool.
+     * 
+     * @param props
+     *            <b>smsj.pool.transport</b>: classname of the pooled transport <br>
+     *            <b>smsj.pool.size</b>: number of connected transports, default 2 <br>
+     *            <b>smsj.pool.validationinterval</b>: idle time in ms before a
+     *            transport is pinged, default 30000 <br>
+     *            <b>smsj.pool.retryinterval</b>: time in ms between attempts to
+     *            replace a broken transport, default 5000 <br>
+     *            <b>smsj.pool.borrowtimeout</b>: max time in ms to wait for a
+     *            free transport, default 30000 <br>
+     *            <b>smsj.throttle.tps</b>: segments per second for the whole
+     *            pool, no limit if not set <br>
+     *            <b>smsj.throttle.burst</b>: segments that can be sent at once,
+     *            default one second of traffic <br>
+     *            All properties except the smsj.throttle ones are also given
+     *            to the pooled transports.
+     * 
+     * @throws SmsException
+     */
+    public void init(Properties props) throws SmsException
+    {
+        transportClassname_ = props.getProperty("smsj.pool.transport");
+        if (transportClassname_ == null)
+        {
+            throw new SmsException("smsj.pool.transport is not set");
+        }
+
+        size_ = getIntProperty(props, "smsj.pool.size", 2);
+        validationInterval_ = getIntProperty(props, "smsj.pool.validationinterval", 30000);
+        retryInterval_ = getIntProperty(props, "smsj.pool.retryinterval", 5000);
+        borrowTimeout_ = getIntProperty(props, "smsj.pool.borrowtimeout", 30000);
+
+        if (size_ < 1)
+        {
+            throw new SmsException("smsj.pool.size must be at least 1");
+        }
+
+        rateLimiter_ = SmsRateLimiter.create(props);
+        props_ = SmsThrottledTransport.withoutThrottle(props);
+    }
+
+    private static int getIntProperty(Properties props, String name, int defaultValue) throws SmsException
+    {
+        String value = props.getProperty(name);
+        if (value == null)
+        {
+            return defaultValue;
+        }
+
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new SmsException("Invalid " + name + ": " + value, ex);
+        }
+    }
+
+    /**
+     * Connects all the pooled transports.
+     * <p>
+     * Transports that fail to connect are retried in the background.
+     * 
+     * @throws SmsException If not a single transport could be connected
+     */
+    public void connect() throws SmsException, IOException
+    {
+        if (props_ == null)
+        {
+            throw new SmsException("The pool is not initialized");
+        }
+
+        synchronized (this)
+        {
+            if (!closed_)
+            {
+                return;
+            }
+            closed_ = false;
+            maintenance_ = Executors.newSingleThreadScheduledExecutor(THREAD_FACTORY);
+            sendExecutor_ = Executors.newFixedThreadPool(size_, THREAD_FACTORY);
+        }
+
+        // Connect in parallel, the logins can take a while
+        List<Future<Entry>> connects = new ArrayList<Future<Entry>>(size_);
+        for (int i = 0; i < size_; i++)
+        {
+            connects.add(sendExecutor_.submit(new Callable<Entry>()
+            {
+                public Entry call() throws Exception
+                {
+                    return createEntry();
+                }
+            }));
+        }
+
+        Throwable lastFailure = null;
+        for (Future<Entry> connect : connects)
+        {
+            try
+            {
+                offerIdle(connect.get(), false);
+            }
+            catch (ExecutionException ex)
+            {
+                lastFailure = ex.getCause();
+                log_.warn("Failed to connect " + transportClassname_, lastFailure);
+                scheduleReplacement(retryInterval_);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                disconnect();
+                throw new SmsException("Interrupted while connecting", ex);
+            }
+        }
+
+        if (idle_.isEmpty())
+        {
+            disconnect();
+            throw new SmsException("Failed to connect " + transportClassname_, lastFailure);
+        }
+
+        if (validationInterval_ > 0)
+        {
+            maintenance_.scheduleWithFixedDelay(new Runnable()
+            {
+                public void run()
+                {
+                    validateIdle(validationInterval_);
+                }
+            }, validationInterval_, validationInterval_, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Borrows a connected transport from the pool.
+     * <p>
+     * The transport must be given back with release() or, if it is broken,
+     * invalidate().
+     * 
+     * @return A connected transport
+     * @throws SmsException If the pool is closed or no transport became free in time
+     */
+    public SmsTransport borrow() throws SmsException
+    {
+        long deadline = System.currentTimeMillis() + borrowTimeout_;
+
+        while (true)
+        {
+            if (closed_)
+            {
+                throw new SmsException("The pool is not connected");
+            }
+
+            Entry entry;
+            try
+            {
+                long wait = Math.max(0, deadline - System.currentTimeMillis());
+                entry = idle_.pollFirst(wait, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new SmsException("Interrupted while waiting for a transport", ex);
+            }
+
+            if (entry == null)
+            {
+                throw new SmsException("No transport became free within " + borrowTimeout_ + " ms");
+            }
+
+            if ((System.currentTimeMillis() - entry.lastUsed_ < validationInterval_) || validate(entry))
+            {
+                borrowed_.put(entry.transport_, entry);
+                return entry.transport_;
+            }
+        }
+    }
+
+    /**
+     * Gives back a transport that was borrowed from the pool.
+     * 
+     * @param transport The transport
+     */
+    public void release(SmsTransport transport)
+    {
+        Entry entry = takeBorrowed(transport);
+        entry.lastUsed_ = System.currentTimeMillis();
+        offerIdle(entry, true);
+    }
+
+    /**
+     * Gives back a broken transport that was borrowed from the pool.
+     * <p>
+     * The transport is disconnected and replaced in the background.
+     * 
+     * @param transport The transport
+     */
+    public void invalidate(SmsTransport transport)
+    {
+        discard(takeBorrowed(transport));
+    }
+
+    private Entry takeBorrowed(SmsTransport transport)
+    {
+        Entry entry = borrowed_.remove(transport);
+        if (entry == null)
+        {
+            throw new IllegalArgumentException("The transport was not borrowed from this pool");
+        }
+        return entry;
+    }
+
+    public String send(SmsMessage msg, SmsAddress destination, SmsAddress sender) throws SmsException, IOException
+    {
+        throttle(msg);
+        SmsTransport transport = borrow();
+        boolean healthy = false;
+        try
+        {
+            String id = transport.send(msg, destination, sender);
+            healthy = true;
+            return id;
+        }
+        catch (SmsException ex)
+        {
+            // A problem with the message, not with the connection
+            healthy = true;
+            throw ex;
+        }
+        finally
+        {
+            if (healthy)
+            {
+                release(transport);
+            }
+            else
+            {
+                invalidate(transport);
+            }
+        }
+    }
+
+    /**
+     * Queues a message for sending on any of the pooled transports.
+     * <p>
+     * Gives the identifier of every segment if the pooled transport is an
+     * SmsAsyncTransport.
+     */
+    public Future<String[]> sendAsync(final SmsMessage msg, final SmsAddress dest, final SmsAddress sender)
+        throws SmsException
+    {
+        Callable<String[]> task = new Callable<String[]>()
+        {
+            public String[] call() throws SmsException, IOException
+            {
+                return sendSegments(msg, dest, sender);
+            }
+        };
+
+        ExecutorService executor = sendExecutor_;
+        if (closed_ || executor == null)
+        {
+            throw new SmsException("The pool is not connected");
+        }
+
+        try
+        {
+            return executor.submit(task);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            throw new SmsException("Failed to queue message", ex);
+        }
+    }
+
+    private String[] sendSegments(SmsMessage msg, SmsAddress dest, SmsAddress sender)
+        throws SmsException, IOException
+    {
+        throttle(msg);
+        SmsTransport transport = borrow();
+        boolean healthy = false;
+        try
+        {
+            String[] ids;
+            if (transport instanceof SmsAsyncTransport)
+            {
+                ids = ((SmsAsyncTransport) transport).sendAsync(msg, dest, sender).get();
+            }
+            else
+            {
+                ids = new String[] {transport.send(msg, dest, sender)};
+            }
+            healthy = true;
+            return ids;
+        }
+        catch (SmsException ex)
+        {
+            healthy = true;
+            throw ex;
+        }
+        catch (ExecutionException ex)
+        {
+            Throwable cause = ex.getCause();
+            if (cause instanceof SmsException)
+            {
+                healthy = true;
+                throw (SmsException) cause;
+            }
+            else if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            throw new SmsException("Failed to send message", cause);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new SmsException("Interrupted while sending", ex);
+        }
+        finally
+        {
+            if (healthy)
+            {
+                release(transport);
+            }
+            else
+            {
+                invalidate(transport);
+            }
+        }
+    }
+
+    /**
+     * Waits until all segments of the message can be sent. Done before a
+     * transport is borrowed so that waiting threads don't hold connections.
+     */
+    private void throttle(SmsMessage msg) throws InterruptedIOException
+    {
+        SmsRateLimiter rateLimiter = rateLimiter_;
+        if (rateLimiter != null)
+        {
+            rateLimiter.throttle(SmsThrottledTransport.getSegmentCount(msg));
+        }
+    }
+
+    /**
+     * Pings all idle transports and replaces the broken ones.
+     * 
+     * @throws SmsException If there are no connected transports
+     */
+    public void ping() throws SmsException, IOException
+    {
+        validateIdle(0);
+        if (getIdleCount() + getActiveCount() == 0)
+        {
+            throw new SmsException("No connected transports");
+        }
+    }
+
+    /**
+     * Waits for queued messages to be sent and disconnects all transports.
+     * <p>
+     * Borrowed transports are disconnected when they are given back.
+     */
+    public void disconnect() throws SmsException, IOException
+    {
+        ScheduledExecutorService maintenance;
+        ExecutorService sendExecutor;
+
+        synchronized (this)
+        {
+            maintenance = maintenance_;
+            sendExecutor = sendExecutor_;
+            maintenance_ = null;
+            sendExecutor_ = null;
+        }
+
+        if (sendExecutor != null)
+        {
+            sendExecutor.shutdown();
+            try
+            {
+                sendExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (this)
+        {
+            closed_ = true;
+        }
+
+        // A replacement that is connecting must finish before the idle
+        // transports are drained, otherwise it could be added afterwards
+        if (maintenance != null)
+        {
+            maintenance.shutdownNow();
+            try
+            {
+                maintenance.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Entry entry;
+        while ((entry = idle_.pollFirst()) != null)
+        {
+            disconnectQuietly(entry);
+        }
+    }
+
+    /**
+     * Returns the rate limiter shared by the pooled transports.
+     * 
+     * @return The rate limiter, or null if the pool isn't throttled
+     */
+    public SmsRateLimiter getRateLimiter()
+    {
+        return rateLimiter_;
+    }
+
+    /**
+     * Returns the number of connected transports that are free.
+     * 
+     * @return number of idle transports
+     */
+    public int getIdleCount()
+    {
+        return idle_.size();
+    }
+
+    /**
+     * Returns the number of transports that are borrowed.
+     * 
+     * @return number of borrowed transports
+     */
+    public int getActiveCount()
+    {
+        return borrowed_.size();
+    }
+
+    /**
+     * Pings the idle transports that have not been used for maxIdle ms.
+     */
+    private void validateIdle(long maxIdle)
+    {
+        long now = System.currentTimeMillis();
+        for (Entry entry : idle_.toArray(new Entry[0]))
+        {
+            // Only validate the entries that are not borrowed meanwhile
+            if ((now - entry.lastUsed_ >= maxIdle) && idle_.remove(entry) && validate(entry))
+            {
+                offerIdle(entry, false);
+            }
+        }
+    }
+
+    /**
+     * Pings the transport. Discards it if the ping fails.
+     * 
+     * @return true if the transport is still usable
+     */
+    private boolean validate(Entry entry)
+    {
+        try
+        {
+            entry.transport_.ping();
+            entry.lastUsed_ = System.currentTimeMillis();
+            return true;
+        }
+        catch (Exception ex)
+        {
+            log_.warn("Ping failed, replacing transport", ex);
+            discard(entry);
+            return false;
+        }
+    }
+
+    private void discard(Entry entry)
+    {
+        disconnectQuietly(entry);
+        scheduleReplacement(0);
+    }
+
+    private synchronized void scheduleReplacement(long delay)
+    {
+        if (closed_ || maintenance_ == null)
+        {
+            return;
+        }
+
+        try
+        {
+            maintenance_.schedule(new Runnable()
+            {
+                public void run()
+                {
+                    replace();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            // We are shutting down
+        }
+    }
+
+    private void replace()
+    {
+        Entry entry;
+        try
+        {
+            entry = createEntry();
+        }
+        catch (Exception ex)
+        {
+            log_.warn("Failed to connect " + transportClassname_ + ", retrying in " + retryInterval_ + " ms", ex);
+            scheduleReplacement(retryInterval_);
+            return;
+        }
+
+        offerIdle(entry, false);
+    }
+
+    /**
+     * Adds a connected transport to the idle transports, or disconnects it if
+     * the pool has been closed.
+     * 
+     * @param mostRecent
+     *            true if the transport should be the first to be borrowed
+     */
+    private void offerIdle(Entry entry, boolean mostRecent)
+    {
+        // disconnect() sets closed_ under the same lock before it drains idle_
+        synchronized (this)
+        {
+            if (!closed_)
+            {
+                if (mostRecent)
+                {
+                    idle_.offerFirst(entry);
+                }
+                else
+                {
+                    idle_.offerLast(entry);
+                }
+                return;
+            }
+        }
+
+        disconnectQuietly(entry);
+    }
+
+    private Entry createEntry() throws SmsException, IOException
+    {
+        SmsTransport transport = SmsTransportManager.getTransport(transportClassname_, props_);
+        transport.connect();
+        return new Entry(transport, System.currentTimeMillis());
+    }
+
+    private static void disconnectQuietly(Entry entry)
+    {
+        try
+        {
+            entry.transport_.disconnect();
+        }
+        catch (Exception ex)
+        {
+            log_.debug("Failed to disconnect transport", ex);
+        }
+    }
+}
@@ -40,6 +40,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
@@ -53,6 +54,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
 
+import org.marre.sms.transport.SmsRateLimiter;
 import org.marre.sms.transport.SmsTransport;
 import org.marre.util.StringUtil;
 
@@ -80,6 +82,7 @@ public class ClickatellTransport implements SmsTransport
     private String apiId_;
     private String sessionId_;
     private String protocol_;
+    private volatile SmsRateLimiter rateLimiter_;
 
     /** Required feature "Text". Set by default. */
     public static final int FEAT_TEXT = 0x0001;
@@ -227,6 +230,8 @@ public class ClickatellTransport implements SmsTransport
      *       smsj.clickatell.password - clickatell password
      *       smsj.clickatell.apiid    - clickatell apiid
      *       smsj.clickatell.protocol - http or https
+     *       smsj.throttle.tps        - max segments per second, see SmsRateLimiter (optional)
+     *       smsj.throttle.burst      - segments that can be sent at once (optional)
      * </pre>
      * 
      * @param properties
@@ -240,6 +245,7 @@ public class ClickatellTransport implements SmsTransport
         password_ = properties.getProperty("smsj.clickatell.password");
         apiId_ = properties.getProperty("smsj.clickatell.apiid");
         protocol_ = properties.getProperty("smsj.clickatell.protocol", "http");
+        rateLimiter_ = SmsRateLimiter.create(properties);
         
         if ((username_ == null) || (password_ == null) || (apiId_ == null)) 
         { 
@@ -327,14 +333,14 @@ public class ClickatellTransport implements SmsTransport
                 throw new SmsException("Clickatell API cannot send 8 bit encoded messages without UDH");
 
             case UCS2:
-                String udStr = StringUtil.bytesToHexString(ud.getData());
+                String udStr = StringUtil.bytesToHexString(ud.getBuffer(), ud.getOffset(), ud.getOctetLength());
                 requestString += "&unicode=1";
                 requestString += "&text=" + udStr;
                 reqFeat |= FEAT_UCS2;
                 break;
 
             case GSM:
-                String msg = SmsPduUtil.readSeptets(ud.getData(), ud.getLength());            
+                String msg = SmsPduUtil.readSeptets(ud.getBuffer(), ud.getOffset(), ud.getLength());            
                 try
                 {
                     requestString += "&text=" + URLEncoder.encode(msg, "ISO-8859-1");
@@ -361,7 +367,7 @@ public class ClickatellTransport implements SmsTransport
             switch (ud.getDcs().getAlphabet())
             {
             case LATIN1:
-                udStr = StringUtil.bytesToHexString(ud.getData());
+                udStr = StringUtil.bytesToHexString(ud.getBuffer(), ud.getOffset(), ud.getOctetLength());
                 udhStr = StringUtil.bytesToHexString(udhData);                
                 requestString += "&udh=" + udhStr;
                 requestString += "&text=" + udStr;                
@@ -369,7 +375,7 @@ public class ClickatellTransport implements SmsTransport
                 break;
 
             case UCS2:
-                udStr = StringUtil.bytesToHexString(ud.getData());
+                udStr = StringUtil.bytesToHexString(ud.getBuffer(), ud.getOffset(), ud.getOctetLength());
                 udhStr = StringUtil.bytesToHexString(udhData);
                 requestString += "&unicode=1";
                 requestString += "&udh=" + udhStr;
@@ -458,6 +464,8 @@ public class ClickatellTransport implements SmsTransport
         
         if (msg instanceof SmsConcatMessage)
         {
+            // Clickatell splits the message, but every segment counts
+            throttle(((SmsConcatMessage) msg).getSegmentInfo().getSegmentCount());
             msgIds = sendConcatMessage((SmsConcatMessage) msg, receiver, sender);
         }
         else
@@ -467,6 +475,7 @@ public class ClickatellTransport implements SmsTransport
 
             for (int i = 0; i < msgPdu.length; i++)
             {
+                throttle(1);
                 msgIds[i] = send(msgPdu[i], receiver, sender);
             }
         }
@@ -513,4 +522,33 @@ public class ClickatellTransport implements SmsTransport
             throw new SmsException(ex);
         }
     }
+
+    /**
+     * Returns the rate limiter, null if the transport is not throttled.
+     * 
+     * @return The rate limiter
+     */
+    public SmsRateLimiter getRateLimiter()
+    {
+        return rateLimiter_;
+    }
+
+    /**
+     * Sets the rate limiter, ex. to share one between several transports.
+     * 
+     * @param rateLimiter The rate limiter, or null to not throttle
+     */
+    public void setRateLimiter(SmsRateLimiter rateLimiter)
+    {
+        rateLimiter_ = rateLimiter;
+    }
+
+    private void throttle(int segments) throws InterruptedIOException
+    {
+        SmsRateLimiter rateLimiter = rateLimiter_;
+        if (rateLimiter != null)
+        {
+            rateLimiter.throttle(segments);
+        }
+    }
 }
@@ -64,6 +64,16 @@ public interface GsmComm
      */
     void send(String data) throws IOException;
 
+    /**
+     * Send data to the device.
+     * 
+     * @param data
+     * @param offset
+     * @param length
+     * @throws IOException
+     */
+    void send(byte[] data, int offset, int length) throws IOException;
+
     /**
      * Reads one row of data from the device.
      * 
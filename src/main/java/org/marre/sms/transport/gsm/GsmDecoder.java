@@ -0,0 +1,404 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport.gsm;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import org.marre.sms.*;
+
+/**
+ * Decodes GSM pdus received from the SC.
+ * <p>
+ * SMS-DELIVER and SMS-STATUS-REPORT pdus are decoded directly from the
+ * bytes. The user data is copied out of the source, so the buffer can be
+ * reused as soon as a pdu has been decoded.
+ *
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public final class GsmDecoder
+{
+    /** TP-MTI of an SMS-DELIVER. */
+    private static final int MTI_DELIVER = 0x00;
+
+    /** TP-MTI of an SMS-STATUS-REPORT. */
+    private static final int MTI_STATUS_REPORT = 0x02;
+
+    /** TP-UDHI flag in the first octet. */
+    private static final int UDHI = 0x40;
+
+    private GsmDecoder()
+    {
+        // Utility class
+    }
+
+    /**
+     * Decodes a pdu without the SC address.
+     * 
+     * @param data
+     * @return A SmsDeliverPdu or a SmsStatusReportPdu
+     * @throws SmsException If the pdu is invalid or of an unsupported type
+     */
+    public static SmsPdu decodePdu(byte[] data) throws SmsException
+    {
+        return decodePdu(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Decodes a pdu without the SC address.
+     * 
+     * @param data
+     * @param offset Offset of the pdu in data
+     * @param length Length of the pdu
+     * @return A SmsDeliverPdu or a SmsStatusReportPdu
+     * @throws SmsException If the pdu is invalid or of an unsupported type
+     */
+    public static SmsPdu decodePdu(byte[] data, int offset, int length) throws SmsException
+    {
+        return decodePdu(ByteBuffer.wrap(data, offset, length));
+    }
+
+    /**
+     * Decodes a pdu without the SC address.
+     * <p>
+     * The pdu is read from the current position of the buffer and the
+     * position is moved past the pdu.
+     * 
+     * @param buf
+     * @return A SmsDeliverPdu or a SmsStatusReportPdu
+     * @throws SmsException If the pdu is invalid or of an unsupported type
+     */
+    public static SmsPdu decodePdu(ByteBuffer buf) throws SmsException
+    {
+        try
+        {
+            int firstOctet = buf.get() & 0xff;
+
+            switch (firstOctet & 0x03)
+            {
+            case MTI_DELIVER:
+                return decodeDeliver(firstOctet, buf);
+
+            case MTI_STATUS_REPORT:
+                return decodeStatusReport(firstOctet, buf);
+
+            default:
+                throw new SmsException("Unsupported TP-MTI: " + (firstOctet & 0x03));
+            }
+        }
+        catch (BufferUnderflowException ex)
+        {
+            throw new SmsException("Truncated pdu", ex);
+        }
+    }
+
+    /**
+     * Reads the SC address that precedes the pdu in the format used by
+     * AT+CMGR and AT+CMGL.
+     * 
+     * @param buf
+     * @return The SC address or null if it is empty
+     * @throws SmsException If the address is invalid
+     */
+    public static SmsAddress readServiceCentreAddress(ByteBuffer buf) throws SmsException
+    {
+        try
+        {
+            int nOctets = buf.get() & 0xff;
+            if (nOctets == 0)
+            {
+                return null;
+            }
+
+            int toa = buf.get() & 0xff;
+            return readAddressValue(buf, toa, (nOctets - 1) * 2, nOctets - 1);
+        }
+        catch (BufferUnderflowException ex)
+        {
+            throw new SmsException("Truncated pdu", ex);
+        }
+    }
+
+    private static SmsDeliverPdu decodeDeliver(int firstOctet, ByteBuffer buf) throws SmsException
+    {
+        // TP-OA
+        SmsAddress originator = readAddress(buf);
+
+        // TP-PID
+        int protocolId = buf.get() & 0xff;
+
+        // TP-DCS
+        SmsDcs dcs = SmsDcs.valueOf(buf.get());
+
+        // TP-SCTS
+        long serviceCentreTimestamp = readTimestamp(buf);
+
+        SmsDeliverPdu pdu = new SmsDeliverPdu(firstOctet, originator, protocolId, serviceCentreTimestamp);
+
+        // TP-UDL, TP-UD
+        readUserData(buf, (firstOctet & UDHI) != 0, dcs, pdu);
+        return pdu;
+    }
+
+    private static SmsStatusReportPdu decodeStatusReport(int firstOctet, ByteBuffer buf) throws SmsException
+    {
+        // TP-MR
+        int messageReference = buf.get() & 0xff;
+
+        // TP-RA
+        SmsAddress recipient = readAddress(buf);
+
+        // TP-SCTS, TP-DT
+        long serviceCentreTimestamp = readTimestamp(buf);
+        long dischargeTime = readTimestamp(buf);
+
+        // TP-ST
+        int status = buf.get() & 0xff;
+
+        // TP-PI, optional and followed by the fields it indicates
+        int parameterIndicator = 0;
+        if (buf.hasRemaining())
+        {
+            int pi = buf.get() & 0xff;
+            parameterIndicator = pi;
+
+            // Skip extension octets
+            while (((pi & 0x80) != 0) && buf.hasRemaining())
+            {
+                pi = buf.get() & 0xff;
+            }
+        }
+
+        int protocolId = ((parameterIndicator & 0x01) != 0) ? (buf.get() & 0xff) : 0;
+        SmsDcs dcs = SmsDcs.valueOf(((parameterIndicator & 0x02) != 0) ? buf.get() : 0);
+
+        SmsStatusReportPdu pdu = new SmsStatusReportPdu(messageReference, recipient, serviceCentreTimestamp,
+                dischargeTime, status, protocolId);
+
+        if ((parameterIndicator & 0x04) != 0)
+        {
+            readUserData(buf, (firstOctet & UDHI) != 0, dcs, pdu);
+        }
+        else
+        {
+            pdu.setUserData(new byte[0], 0, dcs);
+        }
+
+        return pdu;
+    }
+
+    /**
+     * Reads an address field, number of digits, TOA and the digits.
+     */
+    private static SmsAddress readAddress(ByteBuffer buf) throws SmsException
+    {
+        int nDigits = buf.get() & 0xff;
+        int toa = buf.get() & 0xff;
+        return readAddressValue(buf, toa, nDigits, (nDigits + 1) / 2);
+    }
+
+    private static SmsAddress readAddressValue(ByteBuffer buf, int toa, int nDigits, int nOctets)
+        throws SmsException
+    {
+        SmsTon ton = SmsTon.valueOf((toa >> 4) & 0x07);
+        SmsNpi npi = SmsNpi.valueOf(toa & 0x0f);
+
+        if (buf.remaining() < nOctets)
+        {
+            throw new BufferUnderflowException();
+        }
+
+        byte[] data;
+        int offset;
+        if (buf.hasArray())
+        {
+            data = buf.array();
+            offset = buf.arrayOffset() + buf.position();
+            buf.position(buf.position() + nOctets);
+        }
+        else
+        {
+            data = new byte[nOctets];
+            offset = 0;
+            buf.get(data);
+        }
+
+        String address;
+        if (ton == SmsTon.ALPHANUMERIC)
+        {
+            // Septets, the length is given in semi octets
+            int nSeptets = nDigits * 4 / 7;
+            char[] chars = new char[nSeptets];
+            int nChars = SeptetCodec.decode(data, offset * 8, nSeptets, chars, 0);
+            address = new String(chars, 0, nChars);
+        }
+        else
+        {
+            address = SmsPduUtil.readBcdNumber(data, offset, nOctets);
+        }
+
+        return new SmsAddress(address, ton, npi);
+    }
+
+    /**
+     * Reads a time stamp (TP-SCTS or TP-DT), swapped BCD digits and a time
+     * zone in quarters of an hour.
+     * 
+     * @return Milliseconds since 1970-01-01 UTC
+     */
+    private static long readTimestamp(ByteBuffer buf)
+    {
+        int year = 2000 + readSwappedBcd(buf.get());
+        int month = readSwappedBcd(buf.get());
+        int day = readSwappedBcd(buf.get());
+        int hour = readSwappedBcd(buf.get());
+        int minute = readSwappedBcd(buf.get());
+        int second = readSwappedBcd(buf.get());
+
+        // The sign is bit 3, the quarters are swapped BCD in the rest
+        int tz = buf.get() & 0xff;
+        int quarters = readSwappedBcd((byte) (tz & 0xf7));
+        if ((tz & 0x08) != 0)
+        {
+            quarters = -quarters;
+        }
+
+        long days = getDaysSinceEpoch(year, month, day);
+        long minutes = (days * 24 + hour) * 60 + minute - quarters * 15;
+        return (minutes * 60 + second) * 1000;
+    }
+
+    private static int readSwappedBcd(byte octet)
+    {
+        return (octet & 0x0f) * 10 + ((octet >> 4) & 0x0f);
+    }
+
+    /**
+     * Returns the number of days from 1970-01-01 to the given date in the
+     * proleptic Gregorian calendar.
+     */
+    private static long getDaysSinceEpoch(int year, int month, int day)
+    {
+        int y = (month <= 2) ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * Reads TP-UDL and TP-UD into the pdu.
+     */
+    private static void readUserData(ByteBuffer buf, boolean udhi, SmsDcs dcs, SmsPdu pdu)
+    {
+        int udl = buf.get() & 0xff;
+        boolean septets = (dcs.getAlphabet() == SmsAlphabet.GSM);
+        int nOctets = septets ? SeptetCodec.getOctetCount(udl, 0) : udl;
+
+        if (buf.remaining() < nOctets)
+        {
+            throw new BufferUnderflowException();
+        }
+
+        byte[] data;
+        int offset;
+        if (buf.hasArray())
+        {
+            data = buf.array();
+            offset = buf.arrayOffset() + buf.position();
+            buf.position(buf.position() + nOctets);
+        }
+        else
+        {
+            data = new byte[nOctets];
+            offset = 0;
+            buf.get(data);
+        }
+
+        // UDHL and UDH
+        int nUdhOctets = 0;
+        if (udhi && (nOctets > 0))
+        {
+            nUdhOctets = 1 + (data[offset] & 0xff);
+            if (nUdhOctets > nOctets)
+            {
+                throw new BufferUnderflowException();
+            }
+            pdu.setUserDataHeaders(readUdhElements(data, offset + 1, nUdhOctets - 1));
+        }
+
+        if (septets)
+        {
+            // The user data starts at the first septet boundary after the UDH
+            int nUdhSeptets = (nUdhOctets * 8 + 6) / 7;
+            int nSeptets = Math.max(udl - nUdhSeptets, 0);
+            byte[] ud = new byte[SeptetCodec.getOctetCount(nSeptets, 0)];
+            SmsPduUtil.arrayCopyBits(data, offset * 8 + nUdhSeptets * 7, ud, 0, nSeptets * 7);
+            pdu.setUserData(ud, nSeptets, dcs);
+        }
+        else
+        {
+            byte[] ud = new byte[nOctets - nUdhOctets];
+            System.arraycopy(data, offset + nUdhOctets, ud, 0, ud.length);
+            pdu.setUserData(ud, ud.length, dcs);
+        }
+    }
+
+    private static SmsUdhElement[] readUdhElements(byte[] data, int offset, int length)
+    {
+        // Count the elements first
+        int nElements = 0;
+        int end = offset + length;
+        for (int i = offset; i + 1 < end; i += 2 + (data[i + 1] & 0xff))
+        {
+            nElements++;
+        }
+
+        SmsUdhElement[] udhElements = new SmsUdhElement[nElements];
+        int pos = offset;
+        for (int i = 0; i < nElements; i++)
+        {
+            int nData = Math.min(data[pos + 1] & 0xff, end - pos - 2);
+            byte[] ieData = new byte[nData];
+            System.arraycopy(data, pos + 2, ieData, 0, nData);
+            udhElements[i] = new SmsUdhElement(SmsUdhIei.valueOf(data[pos]), ieData);
+            pos += 2 + (data[pos + 1] & 0xff);
+        }
+
+        return udhElements;
+    }
+}
@@ -34,9 +34,8 @@
  * ***** END LICENSE BLOCK ***** */
 package org.marre.sms.transport.gsm;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 import org.marre.sms.*;
 
@@ -50,6 +49,13 @@ import org.marre.sms.*;
  */
 public final class GsmEncoder
 {
+    /**
+     * Max size of an encoded SMS-SUBMIT pdu without a validity period.
+     * <p>
+     * First octet, MR, DA (max 12), PID, DCS, UDL and UD (max 140).
+     */
+    public static final int MAX_PDU_SIZE = 1 + 1 + 12 + 1 + 1 + 1 + 140;
+
     private GsmEncoder()
     {
         // Utility class
@@ -67,94 +73,37 @@ public final class GsmEncoder
     public static byte[] encodePdu(SmsPdu pdu, SmsAddress destination, SmsAddress sender)
         throws SmsException
     {
-        switch (pdu.getDcs().getAlphabet()) {
-        case GSM:
-            return encodeSeptetPdu(pdu, destination, sender);
-         
-        default:
-            return encodeOctetPdu(pdu, destination, sender);
-        }
+        byte[] data = new byte[getEncodedLength(pdu, destination)];
+        encodePdu(pdu, destination, sender, ByteBuffer.wrap(data));
+        return data;
     }
-    
+
     /**
-     * Encodes an septet encoded pdu.
+     * Encodes the given sms pdu into a gsm sms pdu.
+     * <p>
+     * The pdu is written at the current position of the buffer and the
+     * position is moved past the pdu. A buffer of MAX_PDU_SIZE bytes is
+     * always big enough, so the same buffer can be reused for every pdu.
      * 
      * @param pdu
      * @param destination
      * @param sender
-     * @return
-     * @throws SmsException
+     * @param buf Buffer to write the encoded pdu to
+     * @return Number of bytes written
+     * @throws SmsException If the buffer is too small
      */
-    private static byte[] encodeSeptetPdu(SmsPdu pdu, SmsAddress destination, SmsAddress sender)
+    public static int encodePdu(SmsPdu pdu, SmsAddress destination, SmsAddress sender, ByteBuffer buf)
         throws SmsException
     {
-        SmsUserData userData = pdu.getUserData();
-        byte[] ud = userData.getData();
-        byte[] udh = pdu.getUserDataHeaders();
-
-        int nUdSeptets = userData.getLength();
-        int nUdBits = 0;
-
-        int nUdhBytes = (udh == null) ? 0 : udh.length;
-
-        // UDH + UDHL
-        int nUdhBits = 0;
-
-        // UD + UDH + UDHL
-        int nTotalBytes = 0;
-        int nTotalBits = 0;
-        int nTotalSeptets = 0;
-
-        int nFillBits = 0;
-
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(161);
+        int start = buf.position();
 
         try
         {
-            // UDH?
-            if (nUdhBytes == 0)
-            {
-                // TP-Message-Type-Indicator = SUBMIT
-                // TP-Reject-Duplicates = ON
-                // TP-Validity-Period-Format = No field
-                // TP-Status-Report-Request = No
-                // TP-User-Data-Header = No
-                // TP-Reply-Path = No
-                baos.write(0x01);
-            }
-            else
-            {
-                // +1 is for the UDHL
-                nUdhBits = nUdhBytes * 8;
-
-                if ( (nUdhBits % 7) > 0 )
-                {
-                    nFillBits = 7 - (nUdhBits % 7);
-                }
-
-                // TP-Message-Type-Indicator = SUBMIT
-                // TP-Reject-Duplicates = ON
-                // TP-Validity-Period-Format = No field
-                // TP-Status-Report-Request = No
-                // TP-User-Data-Header = Yes
-                // TP-Reply-Path = No
-                baos.write(0x41);
-            }
-
-            nUdBits = nUdSeptets * 7;
-
-            nTotalBits = nUdBits + nFillBits + nUdhBits;
-            nTotalSeptets = nTotalBits / 7;
-
-            nTotalBytes = nTotalBits / 8;
-            if (nTotalBits % 8 > 0)
-            {
-                nTotalBytes += 1;
-            }
+            buf.put(getFirstOctet(pdu));
 
             // TP-Message-Reference
             // Leave to 0x00, MS will set it
-            baos.write(0x00);
+            buf.put((byte) 0x00);
 
             // 2-12 octets
             // TP-DA
@@ -164,189 +113,213 @@ public final class GsmEncoder
             //   - myBit 4-6 - TON
             //   - myBit 0-3 - NPI
             // - n octets - BCD
-            writeDestinationAddress(baos, destination);
-
-            // TP-PID
-            baos.write(0x00);
+            writeDestinationAddress(buf, destination);
 
-            // TP-DCS
-            // UCS, septets, language, SMS class...
-            baos.write(pdu.getDcs().getValue());
-
-            // TP-VP - Optional
-            // Probably not needed
+            writeTail(pdu, buf);
+        }
+        catch (BufferOverflowException ex)
+        {
+            throw new SmsException("Buffer too small for the encoded pdu", ex);
+        }
 
-            // UDH?
-            if ((udh == null) || (udh.length == 0))
-            {
-                // TP-UDL
-                baos.write(nUdSeptets);
+        return buf.position() - start;
+    }
 
-                // TP-UD
-                baos.write(ud);
-            }
-            else
-            {
-                // The whole UD PDU
-                byte[] fullUd = new byte[nTotalBytes];
+    /**
+     * Calculates the size of the encoded pdu.
+     * 
+     * @param pdu
+     * @param destination
+     * @return Number of bytes needed by encodePdu
+     */
+    public static int getEncodedLength(SmsPdu pdu, SmsAddress destination)
+    {
+        // First octet, MR, DA, PID, DCS, UDL, UD
+        return 1 + 1 + getDestinationAddressLength(destination) + getTailLength(pdu);
+    }
 
-                // TP-UDL
-                // UDL includes the length of the UDHL
-                baos.write(nTotalSeptets);
+    /**
+     * Returns the first octet of the SMS-SUBMIT pdu.
+     */
+    static byte getFirstOctet(SmsPdu pdu)
+    {
+        byte[] udh = pdu.getUserDataHeaders();
 
-                // TP-UDH (including user data header length)
-                System.arraycopy(udh, 0, fullUd, 0, nUdhBytes);
+        // TP-Message-Type-Indicator = SUBMIT
+        // TP-Reject-Duplicates = ON
+        // TP-Validity-Period-Format = No field
+        // TP-Status-Report-Request = No
+        // TP-User-Data-Header = Yes if there is an UDH
+        // TP-Reply-Path = No
+        return ((udh == null) || (udh.length == 0)) ? (byte) 0x01 : (byte) 0x41;
+    }
 
-                // TP-UD
-                SmsPduUtil.arrayCopy(ud, 0, fullUd, nUdhBytes, nFillBits, nUdBits);
+    /**
+     * Returns the size of everything after TP-DA, from TP-PID to the end of
+     * TP-UD.
+     */
+    static int getTailLength(SmsPdu pdu)
+    {
+        SmsUserData userData = pdu.getUserData();
+        byte[] udh = pdu.getUserDataHeaders();
+        int nUdhBytes = (udh == null) ? 0 : udh.length;
+        int nUdBytes;
 
-                baos.write(fullUd);
-            }
-            baos.close();
+        if (pdu.getDcs().getAlphabet() == SmsAlphabet.GSM)
+        {
+            nUdBytes = SeptetCodec.getOctetCount(userData.getLength(), nUdhBytes * 8 + getFillBits(nUdhBytes));
         }
-        catch (IOException ex)
+        else
         {
-            throw new SmsException(ex);
+            nUdBytes = nUdhBytes + userData.getLength();
         }
 
-        return baos.toByteArray();
+        // PID, DCS, UDL, UD
+        return 1 + 1 + 1 + nUdBytes;
     }
 
     /**
-     * Encodes an octet encoded sms pdu.
+     * Writes everything after TP-DA, from TP-PID to the end of TP-UD.
+     * <p>
+     * This part doesn't depend on the destination, so it can be encoded once
+     * for messages that are sent to many destinations.
      * 
      * @param pdu
-     * @param destination
-     * @param sender
-     * @return
-     * @throws SmsException
+     * @param buf
      */
-    private static byte[] encodeOctetPdu(SmsPdu pdu, SmsAddress destination, SmsAddress sender)
-        throws SmsException
+    static void writeTail(SmsPdu pdu, ByteBuffer buf)
+    {
+        switch (pdu.getDcs().getAlphabet()) {
+        case GSM:
+            writeSeptetTail(pdu, buf);
+            break;
+         
+        default:
+            writeOctetTail(pdu, buf);
+            break;
+        }
+    }
+
+    /**
+     * Number of fill bits needed after the UDH to reach a septet boundary.
+     */
+    private static int getFillBits(int nUdhBytes)
+    {
+        int nUdhBits = nUdhBytes * 8;
+        return ((nUdhBits % 7) > 0) ? (7 - (nUdhBits % 7)) : 0;
+    }
+    
+    /**
+     * Writes the tail of a septet encoded pdu.
+     * 
+     * @param pdu
+     * @param buf
+     */
+    private static void writeSeptetTail(SmsPdu pdu, ByteBuffer buf)
     {
         SmsUserData userData = pdu.getUserData();
-        byte[] ud = userData.getData();
+        byte[] ud = userData.getBuffer();
+        int udOffset = userData.getOffset();
         byte[] udh = pdu.getUserDataHeaders();
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(200);
-        
-        try
-        {
-            int nUdBytes = userData.getLength();
-            int nUdhBytes = (udh == null) ? 0 : udh.length;
-            // +1 For the UDH Length
-            int tpUdl = nUdBytes + nUdhBytes + 1;
-
-            // UDH?
-            if (nUdhBytes == 0)
-            {
-                // TP-Message-Type-Indicator = SUBMIT
-                // TP-Reject-Duplicates = ON
-                // TP-Validity-Period-Format = No field
-                // TP-Status-Report-Request = No
-                // TP-User-Data-Header = No
-                // TP-Reply-Path = No
-                baos.write(0x01);
-            }
-            else
-            {
-                // TP-Message-Type-Indicator = SUBMIT
-                // TP-Reject-Duplicates = ON
-                // TP-Validity-Period-Format = No field
-                // TP-Status-Report-Request = No
-                // TP-User-Data-Header = Yes
-                // TP-Reply-Path = No
-                baos.write(0x41);
-            }
+        int nUdSeptets = userData.getLength();
+        int nUdhBytes = (udh == null) ? 0 : udh.length;
 
-            // TP-Message-Reference
-            // Leave to 0x00, MS will set it
-            baos.write(0x00);
+        // UDH + UDHL
+        int nUdhBits = nUdhBytes * 8;
+        int nFillBits = (nUdhBytes == 0) ? 0 : getFillBits(nUdhBytes);
 
-            // 2-12 octets
-            // TP-DA
-            // - 1:st octet - length of address (4 bits)
-            // - 2:nd octet
-            //   - myBit 7 - always 1
-            //   - myBit 4-6 - TON
-            //   - myBit 0-3 - NPI
-            // - n octets - BCD
-            writeDestinationAddress(baos, destination);
-
-            // TP-PID
-            baos.write(0x00);
-
-            // TP-DCS
-            baos.write(pdu.getDcs().getValue());
-
-            // 1 octet/ 7 octets
-            // TP-VP - Optional
-
-            // UDH?
-            if (nUdhBytes == 0)
-            {
-                // 1 Integer
-                // TP-UDL
-                // UDL includes the length of UDH
-                baos.write(nUdBytes);
-
-                // n octets
-                // TP-UD
-                baos.write(ud);
-            }
-            else
-            {
-                // The whole UD PDU without the header length byte
-                byte[] fullUd = new byte[nUdBytes + nUdhBytes];
-
-                // TP-UDL includes the length of UDH
-                // +1 is for the size header...
-                baos.write(nUdBytes + nUdhBytes);
-
-                // TP-UDH (including user data header length)
-                System.arraycopy(udh, 0, fullUd, 0, nUdhBytes);
-                // TP-UD
-                System.arraycopy(ud, 0, fullUd, nUdhBytes, nUdBytes);
-
-                baos.write(fullUd);
-            }
-            baos.close();
+        // UD + UDH + UDHL
+        int nTotalSeptets = (nUdSeptets * 7 + nFillBits + nUdhBits) / 7;
+
+        // TP-PID
+        buf.put((byte) 0x00);
+
+        // TP-DCS
+        // UCS, septets, language, SMS class...
+        buf.put(pdu.getDcs().getValue());
+
+        // TP-VP - Optional
+        // Probably not needed
+
+        // UDH?
+        if (nUdhBytes == 0)
+        {
+            // TP-UDL
+            buf.put((byte) nUdSeptets);
+
+            // TP-UD
+            SeptetCodec.write(ud, udOffset, nUdSeptets, buf, 0);
         }
-        catch (IOException ex)
+        else
         {
-            throw new SmsException(ex);
+            // TP-UDL
+            // UDL includes the length of the UDHL
+            buf.put((byte) nTotalSeptets);
+
+            // TP-UDH (including user data header length)
+            buf.put(udh);
+
+            // TP-UD, starts at the first septet boundary after the UDH
+            SeptetCodec.write(ud, udOffset, nUdSeptets, buf, nFillBits);
         }
-        
-        return baos.toByteArray();
     }
-    
+
     /**
-     * Writes a destination address to the given stream in the correct format
-     *
-     * @param os Stream to write to
-     * @param destination Destination address to encode
-     * @throws IOException Thrown if failing to write to the stream
+     * Writes the tail of an octet encoded pdu.
+     * 
+     * @param pdu
+     * @param buf
      */
-    private static void writeDestinationAddress(OutputStream os, SmsAddress destination)
-        throws IOException
+    private static void writeOctetTail(SmsPdu pdu, ByteBuffer buf)
     {
-        String address = destination.getAddress();
-        SmsTon ton = destination.getTypeOfNumber();
-        SmsNpi npi = destination.getNumberingPlanIdentification();
+        SmsUserData userData = pdu.getUserData();
+        byte[] udh = pdu.getUserDataHeaders();
+
+        int nUdBytes = userData.getLength();
+        int nUdhBytes = (udh == null) ? 0 : udh.length;
+
+        // TP-PID
+        buf.put((byte) 0x00);
 
-        // trim leading + from address
-        if (address.charAt(0) == '+')
+        // TP-DCS
+        buf.put(pdu.getDcs().getValue());
+
+        // 1 octet/ 7 octets
+        // TP-VP - Optional
+
+        // TP-UDL includes the length of UDH
+        buf.put((byte) (nUdBytes + nUdhBytes));
+
+        // TP-UDH (including user data header length)
+        if (nUdhBytes > 0)
         {
-            address = address.substring(1);
+            buf.put(udh);
         }
 
-        // Length in semi octets
-        os.write(address.length());
-
-        // Type Of Address
-        os.write(0x80 | ton.getValue() << 4 | npi.getValue());
+        // n octets
+        // TP-UD
+        buf.put(userData.getBuffer(), userData.getOffset(), nUdBytes);
+    }
 
-        // BCD encode
-        SmsPduUtil.writeBcdNumber(os, address);
+    /**
+     * Returns the size of the encoded destination address.
+     */
+    static int getDestinationAddressLength(SmsAddress destination)
+    {
+        return destination.getTpAddressLength();
+    }
+    
+    /**
+     * Writes a destination address to the given buffer in the correct format
+     *
+     * @param buf Buffer to write to
+     * @param destination Destination address to encode
+     */
+    static void writeDestinationAddress(ByteBuffer buf, SmsAddress destination)
+    {
+        // Length in semi octets, TOA and the BCD digits, cached in the
+        // address
+        destination.writeTpAddress(buf);
     }    
 }
@@ -0,0 +1,174 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport.gsm;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsException;
+import org.marre.sms.SmsPdu;
+import org.marre.sms.SmsUdhUtil;
+
+/**
+ * A GSM SMS-SUBMIT pdu that is encoded once and sent to many destinations.
+ * <p>
+ * Everything after TP-DA is encoded when the template is created, only the
+ * destination address and the concat reference are written for each
+ * destination. Instances are immutable and can be shared between threads.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public final class GsmPduTemplate
+{
+    /** Offset of the UDH in the tail (TP-PID, TP-DCS and TP-UDL before it). */
+    private static final int UDH_OFFSET = 3;
+
+    private final byte firstOctet_;
+    private final byte[] tail_;
+    private final int refLength_;
+
+    /**
+     * Encodes everything but the destination address of the given pdu.
+     * 
+     * @param pdu
+     *            The pdu
+     */
+    public GsmPduTemplate(SmsPdu pdu)
+    {
+        firstOctet_ = GsmEncoder.getFirstOctet(pdu);
+        tail_ = new byte[GsmEncoder.getTailLength(pdu)];
+        GsmEncoder.writeTail(pdu, ByteBuffer.wrap(tail_));
+        refLength_ = SmsUdhUtil.getConcatRefLength(pdu.getUserDataHeaders());
+    }
+
+    /**
+     * Creates templates for all given pdus.
+     * 
+     * @param pdus
+     *            The pdus
+     * @return One template per pdu
+     */
+    public static GsmPduTemplate[] create(SmsPdu[] pdus)
+    {
+        GsmPduTemplate[] templates = new GsmPduTemplate[pdus.length];
+        for (int i = 0; i < pdus.length; i++)
+        {
+            templates[i] = new GsmPduTemplate(pdus[i]);
+        }
+        return templates;
+    }
+
+    /**
+     * Calculates the size of the encoded pdu.
+     * 
+     * @param destination
+     * @return Number of bytes needed by encode
+     */
+    public int getEncodedLength(SmsAddress destination)
+    {
+        return 1 + 1 + GsmEncoder.getDestinationAddressLength(destination) + tail_.length;
+    }
+
+    /**
+     * Encodes the pdu for the given destination.
+     * 
+     * @param destination
+     *            Destination address
+     * @param refno
+     *            Concat reference, or -1 to keep the reference of the pdu
+     * @return The encoded pdu
+     * @throws SmsException
+     */
+    public byte[] encode(SmsAddress destination, int refno) throws SmsException
+    {
+        byte[] data = new byte[getEncodedLength(destination)];
+        encode(destination, refno, ByteBuffer.wrap(data));
+        return data;
+    }
+
+    /**
+     * Encodes the pdu for the given destination.
+     * <p>
+     * The pdu is written at the current position of the buffer and the
+     * position is moved past the pdu.
+     * 
+     * @param destination
+     *            Destination address
+     * @param refno
+     *            Concat reference, or -1 to keep the reference of the pdu
+     * @param buf
+     *            Buffer to write the encoded pdu to
+     * @return Number of bytes written
+     * @throws SmsException
+     *             If the buffer is too small
+     */
+    public int encode(SmsAddress destination, int refno, ByteBuffer buf) throws SmsException
+    {
+        int start = buf.position();
+
+        try
+        {
+            buf.put(firstOctet_);
+
+            // TP-Message-Reference
+            buf.put((byte) 0x00);
+
+            // TP-DA
+            GsmEncoder.writeDestinationAddress(buf, destination);
+
+            int tailStart = buf.position();
+            buf.put(tail_);
+
+            // Patch the concat reference
+            if ((refno >= 0) && (refLength_ > 0))
+            {
+                int refPos = tailStart + UDH_OFFSET + SmsUdhUtil.CONCAT_REF_OFFSET;
+                if (refLength_ == 2)
+                {
+                    buf.put(refPos++, (byte) ((refno >> 8) & 0xff));
+                }
+                buf.put(refPos, (byte) (refno & 0xff));
+            }
+        }
+        catch (BufferOverflowException ex)
+        {
+            throw new SmsException("Buffer too small for the encoded pdu", ex);
+        }
+
+        return buf.position() - start;
+    }
+}
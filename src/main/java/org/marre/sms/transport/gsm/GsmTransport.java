@@ -36,10 +36,14 @@
 package org.marre.sms.transport.gsm;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Properties;
 
 import org.marre.sms.*;
-import org.marre.sms.transport.SmsTransport;
+import org.marre.sms.transport.SmsBroadcastException;
+import org.marre.sms.transport.SmsBroadcastTransport;
+import org.marre.sms.transport.SmsRateLimiter;
+import org.marre.sms.transport.SmsRejectedException;
 import org.marre.sms.transport.gsm.commands.MessageFormatSetReq;
 import org.marre.sms.transport.gsm.commands.PduSendMessageReq;
 import org.marre.sms.transport.gsm.commands.PduSendMessageRsp;
@@ -72,7 +76,7 @@ import org.slf4j.LoggerFactory;
  * @author Markus Eriksson, Boris von Loesch
  * @version $Id$
  */
-public class GsmTransport implements SmsTransport
+public class GsmTransport implements SmsBroadcastTransport
 {
     private static final Logger log_ = LoggerFactory.getLogger(SerialComm.class);
     
@@ -85,6 +89,7 @@ public class GsmTransport implements SmsTransport
     private static final int RESPONSE_CONTINUE = 16;
     
     private SerialComm serialComm_ = null;
+    private volatile SmsRateLimiter rateLimiter_;
     
     /**
      * Creates a GsmTransport.
@@ -97,10 +102,14 @@ public class GsmTransport implements SmsTransport
 
     /**
      * Initializes this transport.
+     * <p>
+     * Sending can be throttled with <b>smsj.throttle.tps</b> and
+     * <b>smsj.throttle.burst</b>, see SmsRateLimiter.
      * 
      * @param props 
+     * @throws SmsException 
      */
-    public void init(Properties props)
+    public void init(Properties props) throws SmsException
     {
         String appName = props.getProperty("sms.gsm.appname", DEFAULT_SERIAL_PORT_APP_NAME); 
         String portName = props.getProperty("sms.gsm.serialport", "COM1");
@@ -114,6 +123,37 @@ public class GsmTransport implements SmsTransport
         serialComm_.setFlowControl(props.getProperty("sms.gsm.flowcontrol", "NONE"));
         serialComm_.setTimeout(props.getProperty("sms.gsm.timeout", "0"));
         serialComm_.setEcho(props.getProperty("sms.gsm.echo", "1").equals("1"));
+
+        rateLimiter_ = SmsRateLimiter.create(props);
+    }
+
+    /**
+     * Returns the rate limiter, null if the transport is not throttled.
+     * 
+     * @return The rate limiter
+     */
+    public SmsRateLimiter getRateLimiter()
+    {
+        return rateLimiter_;
+    }
+
+    /**
+     * Sets the rate limiter, ex. to share one between several transports.
+     * 
+     * @param rateLimiter The rate limiter, or null to not throttle
+     */
+    public void setRateLimiter(SmsRateLimiter rateLimiter)
+    {
+        rateLimiter_ = rateLimiter;
+    }
+
+    private void throttle(int segments) throws InterruptedIOException
+    {
+        SmsRateLimiter rateLimiter = rateLimiter_;
+        if (rateLimiter != null)
+        {
+            rateLimiter.throttle(segments);
+        }
     }
     
     /**
@@ -159,33 +199,147 @@ public class GsmTransport implements SmsTransport
      * @param msg The message to send
      * @param dest The reciever
      * @param sender The sending address, ignored
-     * @return Returns a local message id
+     * @return Returns the message reference of the first SMS
      * @throws SmsException Thrown if we fail to send the SMS
      * @throws IOException 
      */
     public String send(SmsMessage msg, SmsAddress dest, SmsAddress sender) throws SmsException, IOException
     {
+        String messageReference = null;
+
         if (dest.getTypeOfNumber() == SmsTon.ALPHANUMERIC)
         {
             throw new SmsException("Cannot send SMS to an ALPHANUMERIC address");
         }
 
+        int nSent = 0;
         try
         {
-            SmsPdu[] msgPdu = msg.getPdus();
-            for (SmsPdu aMsgPdu : msgPdu) {
+            // Let the message allocate concat references per destination
+            SmsPdu[] msgPdu = (msg instanceof SmsConcatMessage) ? ((SmsConcatMessage) msg).getPdus(dest) : msg.getPdus();
+            for (SmsPdu aMsgPdu : msgPdu)
+            {
                 byte[] data = GsmEncoder.encodePdu(aMsgPdu, dest, sender);
                 PduSendMessageReq sendMessageReq = new PduSendMessageReq(data);
+                throttle(1);
                 PduSendMessageRsp sendMessageRsp = sendMessageReq.send(serialComm_);
+                if (messageReference == null)
+                {
+                    messageReference = sendMessageRsp.getMessageReference();
+                }
+                nSent++;
             }
         }
         catch (GsmException e)
         {
-            throw new SmsException("Send failed: " + e.getMessage() + " Last response:" + e.getResponse(), e);
+            throw toSmsException(e, nSent);
+        }
+
+        return messageReference;
+    }
+
+    /**
+     * Sends the same message to many recipients.
+     * <p>
+     * The message is only encoded once, each recipient only costs the
+     * encoding of the destination address.
+     *
+     * @param msg The message to send
+     * @param destinations The recievers
+     * @param sender The sending address, ignored
+     * @return Returns the message reference of the first SMS for each
+     *         reciever
+     * @throws SmsBroadcastException If any reciever failed, see
+     *         SmsBroadcastTransport
+     * @throws SmsException Thrown if we fail to send the SMS
+     * @throws IOException 
+     */
+    public String[] send(SmsMessage msg, SmsAddress[] destinations, SmsAddress sender) throws SmsException, IOException
+    {
+        for (SmsAddress dest : destinations)
+        {
+            if (dest.getTypeOfNumber() == SmsTon.ALPHANUMERIC)
+            {
+                throw new SmsException("Cannot send SMS to an ALPHANUMERIC address");
+            }
+        }
+
+        SmsConcatMessage concatMsg = (msg instanceof SmsConcatMessage) ? (SmsConcatMessage) msg : null;
+
+        // Templates for 8-bit and 16-bit concat references
+        GsmPduTemplate[][] templates = new GsmPduTemplate[2][];
+        String[] messageReferences = new String[destinations.length];
+        SmsException[] errors = new SmsException[destinations.length];
+
+        for (int i = 0; i < destinations.length; i++)
+        {
+            SmsAddress dest = destinations[i];
+            int refno = (concatMsg != null) ? concatMsg.allocateRef(dest) : -1;
+            int refType = ((refno >= 0) && ((refno & SmsConcatRefAllocator.REF_16BIT) != 0)) ? 1 : 0;
+
+            if (templates[refType] == null)
+            {
+                SmsPdu[] msgPdu = (concatMsg != null) ? concatMsg.getPdusWithRef(refno) : msg.getPdus();
+                templates[refType] = GsmPduTemplate.create(msgPdu);
+            }
+
+            int nSent = 0;
+            try
+            {
+                String messageReference = null;
+                for (GsmPduTemplate template : templates[refType])
+                {
+                    PduSendMessageReq sendMessageReq = new PduSendMessageReq(template.encode(dest, refno));
+                    throttle(1);
+                    PduSendMessageRsp sendMessageRsp = sendMessageReq.send(serialComm_);
+                    if (messageReference == null)
+                    {
+                        messageReference = sendMessageRsp.getMessageReference();
+                    }
+                    nSent++;
+                }
+                messageReferences[i] = messageReference;
+            }
+            catch (GsmException e)
+            {
+                log_.debug("Failed to send to " + dest.getAddress(), e);
+                errors[i] = toSmsException(e, nSent);
+            }
+            catch (SmsException e)
+            {
+                errors[i] = e;
+            }
+            catch (IOException e)
+            {
+                throw SmsBroadcastException.aborted(messageReferences, errors, i, e);
+            }
+        }
+
+        SmsBroadcastException failure = SmsBroadcastException.create(messageReferences, errors);
+        if (failure != null)
+        {
+            throw failure;
+        }
+        return messageReferences;
+    }
+
+    /**
+     * Converts a failed AT+CMGS. A +CMS ERROR means that the network
+     * rejected the SMS, anything else is a problem with the phone.
+     * 
+     * @param acceptedSegments The number of segments that were already sent
+     */
+    static SmsException toSmsException(GsmException e, int acceptedSegments)
+    {
+        String response = e.getResponse();
+        String msg = "Send failed: " + e.getMessage() + " Last response:" + response;
+
+        if ((response != null) && response.startsWith("+CMS ERROR:"))
+        {
+            String errorCode = response.substring("+CMS ERROR:".length()).trim();
+            return new SmsRejectedException(msg, errorCode, acceptedSegments, e);
         }
-        
-        // TODO: Return a real message id
-        return null;
+        return new SmsException(msg, e);
     }
 
     /**
@@ -221,7 +221,27 @@ public class SerialComm implements GsmComm
         log_.debug(">> " + row);
 
         serialOs_.write(row.getBytes());
-        
+        readEcho();
+    }
+
+    /* (non-Javadoc)
+     * @see org.marre.sms.transport.gsm.GsmComm#send(byte[], int, int)
+     */
+    public void send(byte[] data, int offset, int length) 
+        throws IOException
+    {
+        if (log_.isDebugEnabled())
+        {
+            log_.debug(">> " + new String(data, offset, length, "ISO-8859-1"));
+        }
+
+        serialOs_.write(data, offset, length);
+        readEcho();
+    }
+
+    private void readEcho()
+        throws IOException
+    {
         if (echo_) {
             String echo = readOneRowOfData(null);
             
@@ -38,7 +38,7 @@ import java.io.IOException;
 
 import org.marre.sms.transport.gsm.GsmComm;
 import org.marre.sms.transport.gsm.GsmException;
-import org.marre.util.StringUtil;
+import org.marre.util.HexCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -93,11 +93,15 @@ public class PduSendMessageReq
         log_.debug("Read response from AT+CMGS command. Expecting a single '> ' without crlf.");
         readContinue(comm);
 
-        // Build cmgs string.
-        String cmgsPduString = StringUtil.bytesToHexString(smscPdu_) + StringUtil.bytesToHexString(smsPdu_);
+        // Hex code the pdus straight into the bytes that are sent, followed
+        // by ctrl-z
+        byte[] cmgs = new byte[(smscPdu_.length + smsPdu_.length) * 2 + 1];
+        int pos = HexCodec.encode(smscPdu_, 0, smscPdu_.length, cmgs, 0);
+        pos = HexCodec.encode(smsPdu_, 0, smsPdu_.length, cmgs, pos);
+        cmgs[pos] = '\032';
         
         log_.debug("Send hexcoded PDU.");
-        comm.send(cmgsPduString + '\032');
+        comm.send(cmgs, 0, cmgs.length);
         return readResponse(comm);
     }
 
@@ -136,8 +140,18 @@ public class PduSendMessageReq
                 throw new GsmException("AT+CMGF failed.", ok);
             }
             
-            // TODO: Parse message reference
-            return new PduSendMessageRsp(cmgs);
+            // +CMGS: <mr>[,<scts>]
+            String messageReference = cmgs.substring("+CMGS".length()).trim();
+            if (messageReference.startsWith(":"))
+            {
+                messageReference = messageReference.substring(1).trim();
+            }
+            int comma = messageReference.indexOf(',');
+            if (comma >= 0)
+            {
+                messageReference = messageReference.substring(0, comma).trim();
+            }
+            return new PduSendMessageRsp(messageReference);
         } 
         else if (cmgs.startsWith("+CMS ERROR:"))
         {
@@ -48,7 +48,11 @@ public class PduSendMessageRsp
         messageReference_ = messageReference;
     }
     
-    String getMessageReference()
+    /**
+     * Returns the message reference (TP-MR) that the phone assigned to the
+     * SMS.
+     */
+    public String getMessageReference()
     {
         return messageReference_;
     }
@@ -117,8 +117,8 @@ public class UcpSeries50 extends UcpMsg
     {
         StringBuffer xSerBuff = new StringBuffer();
 
+        // TT LL DD..., the UDH from SmsPdu already starts with its length
         xSerBuff.append(StringUtil.byteToHexString(type));
-        xSerBuff.append(StringUtil.byteToHexString((byte) (data.length + 1 & 0xff)));
         xSerBuff.append(StringUtil.byteToHexString((byte) (data.length & 0xff)));
         xSerBuff.append(StringUtil.bytesToHexString(data));
 
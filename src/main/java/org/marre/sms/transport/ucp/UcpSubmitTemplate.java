@@ -0,0 +1,220 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport.ucp;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsException;
+import org.marre.sms.SmsUdhUtil;
+import org.marre.util.StringUtil;
+
+/**
+ * An UCP submit command that is built once and sent to many destinations.
+ * <p>
+ * Everything but the recipient address (AdC) is formatted when the template
+ * is created. For each destination only the address, the length, the
+ * checksum and the concat reference in the UDH are written. Instances are
+ * immutable and can be shared between threads.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public final class UcpSubmitTemplate
+{
+    /** TRN and the separator after it. */
+    private final byte[] trn_;
+
+    /** O|R and OT with separators. */
+    private final byte[] header_;
+
+    /** Fields before the address, with separators. */
+    private final byte[] before_;
+
+    /** Fields after the address, with separators. */
+    private final byte[] after_;
+
+    /** Length of the command without the address. */
+    private final int length_;
+
+    /** Sum of all fixed chars in the command, used for the checksum. */
+    private final int sum_;
+
+    /** Index of the concat reference (hex) in after_, or -1 if not concatenated. */
+    private final int refIndex_;
+
+    /** Number of bytes in the concat reference. */
+    private final int refLength_;
+
+    /**
+     * Creates a template from an UCP message where the given field varies.
+     * 
+     * @param msg
+     *            The message, the field is ignored
+     * @param field
+     *            Field that contains the destination address
+     * @param udh
+     *            The UDH of the message, null if none
+     * @throws SmsException
+     *            If the message is concatenated and the UDH isn't found in the message
+     */
+    UcpSubmitTemplate(UcpMsg msg, int field, byte[] udh) throws SmsException
+    {
+        StringBuilder before = new StringBuilder();
+        StringBuilder after = new StringBuilder(200);
+
+        for (int i = 0; i < msg.ucpFields_.length; i++)
+        {
+            if (i == field)
+            {
+                // The separator after the address
+                after.append('/');
+                continue;
+            }
+
+            StringBuilder buf = (i < field) ? before : after;
+            if (msg.ucpFields_[i] != null)
+            {
+                buf.append(msg.ucpFields_[i]);
+            }
+            buf.append('/');
+        }
+
+        trn_ = toBytes(StringUtil.intToString(msg.trn_, 2) + "/");
+        header_ = toBytes("/" + msg.or_ + "/" + StringUtil.intToString(msg.ot_, 2) + "/");
+        before_ = toBytes(before.toString());
+        after_ = toBytes(after.toString());
+
+        // Same as UcpMsg.buildCommand(), trn + len + o|r + ot + data + checksum
+        length_ = 3 + 5 + 2 + 3 + before_.length + after_.length + 3;
+        sum_ = sum(trn_, 0, trn_.length) + sum(header_, 0, header_.length) + sum(before_, 0, before_.length)
+                + sum(after_, 0, after_.length);
+
+        refLength_ = SmsUdhUtil.getConcatRefLength(udh);
+        if (refLength_ > 0)
+        {
+            int udhIndex = after.lastIndexOf(StringUtil.bytesToHexString(udh));
+            if (udhIndex < 0)
+            {
+                // Every destination would get the same reference
+                throw new SmsException("Can't find the concat reference in the UCP message");
+            }
+            refIndex_ = udhIndex + SmsUdhUtil.CONCAT_REF_OFFSET * 2;
+        }
+        else
+        {
+            refIndex_ = -1;
+        }
+    }
+
+    /**
+     * Builds the command for the given destination.
+     * 
+     * @param destination
+     *            Destination address
+     * @param refno
+     *            Concat reference, or -1 to keep the reference of the pdu
+     * @return The command, including STX and ETX
+     */
+    public byte[] getCommand(SmsAddress destination, int refno)
+    {
+        String address = destination.getAddress();
+        byte[] len = toBytes(StringUtil.intToString(length_ + address.length(), 5));
+        byte[] command = new byte[1 + trn_.length + len.length + header_.length + before_.length + address.length()
+                + after_.length + 2 + 1];
+        int sum = sum_ + sum(len, 0, len.length);
+        int pos = 0;
+
+        command[pos++] = UcpMsg.STX;
+        pos = put(trn_, command, pos);
+        pos = put(len, command, pos);
+        pos = put(header_, command, pos);
+        pos = put(before_, command, pos);
+        for (int i = 0; i < address.length(); i++)
+        {
+            char ch = address.charAt(i);
+            command[pos++] = (byte) ch;
+            sum += ch;
+        }
+
+        int afterPos = pos;
+        pos = put(after_, command, pos);
+
+        // Patch the concat reference
+        if ((refno >= 0) && (refIndex_ >= 0))
+        {
+            int refPos = afterPos + refIndex_;
+            int nChars = refLength_ * 2;
+
+            sum -= sum(command, refPos, nChars);
+            for (int i = nChars - 1; i >= 0; i--)
+            {
+                command[refPos + i] = (byte) Character.toUpperCase(Character.forDigit(refno & 0x0f, 16));
+                refno >>>= 4;
+            }
+            sum += sum(command, refPos, nChars);
+        }
+
+        // Checksum
+        pos = put(toBytes(StringUtil.byteToHexString((byte) sum)), command, pos);
+
+        command[pos] = UcpMsg.ETX;
+        return command;
+    }
+
+    private static byte[] toBytes(String str)
+    {
+        byte[] data = new byte[str.length()];
+        for (int i = 0; i < data.length; i++)
+        {
+            data[i] = (byte) str.charAt(i);
+        }
+        return data;
+    }
+
+    private static int put(byte[] src, byte[] dest, int pos)
+    {
+        System.arraycopy(src, 0, dest, pos, src.length);
+        return pos + src.length;
+    }
+
+    private static int sum(byte[] data, int offset, int length)
+    {
+        int sum = 0;
+        for (int i = offset; i < offset + length; i++)
+        {
+            sum += data[i] & 0xff;
+        }
+        return sum;
+    }
+}
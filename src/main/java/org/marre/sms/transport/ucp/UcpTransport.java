@@ -37,23 +37,33 @@ package org.marre.sms.transport.ucp;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.Socket;
 import java.util.Properties;
 
 import org.marre.sms.*;
-import org.marre.sms.transport.SmsTransport;
+import org.marre.sms.transport.SmsBroadcastException;
+import org.marre.sms.transport.SmsBroadcastTransport;
+import org.marre.sms.transport.SmsRateLimiter;
+import org.marre.sms.transport.SmsRejectedException;
 import org.marre.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * An SmsTransport that sends the SMS through an UCP SMSC
  * 
- * 
+ * The local identifier of a sent segment is the SM field of the positive
+ * acknowledgement from the SMSC (AdC:SCTS). Use SmsAsyncTransportAdapter to
+ * send asynchronously.
  * 
  * @author Markus Eriksson
  * @version $Id$
  */
-public class UcpTransport implements SmsTransport
+public class UcpTransport implements SmsBroadcastTransport
 {
+    private static final Logger log_ = LoggerFactory.getLogger(UcpTransport.class);
+
     private String ucpServerName_;
     private int ucpServerPort_;
     private String ucp60Uid_;
@@ -64,6 +74,8 @@ public class UcpTransport implements SmsTransport
     private DataOutputStream ucpOs_;
     private DataInputStream ucpIs_;
 
+    private volatile SmsRateLimiter rateLimiter_;
+
     public UcpTransport()
     {
     }
@@ -77,6 +89,8 @@ public class UcpTransport implements SmsTransport
      *            <b>smsj.ucp.ip.port </b>: the ip port of the UCP server <br>
      *            <b>smsj.ucp.ucp60.uid </b>: the UCP60 user id <br>
      *            <b>smsj.ucp.ucp60.password </b>: the UCP60 password</br>
+     *            <b>smsj.throttle.tps </b>: max submitted segments per second, see SmsRateLimiter</br>
+     *            <b>smsj.throttle.burst </b>: segments that can be submitted at once</br>
      * 
      * @throws SmsException
      */
@@ -90,6 +104,7 @@ public class UcpTransport implements SmsTransport
         ucpServerPort_ = Integer.parseInt(props.getProperty("smsj.ucp.ip.port"));
         ucp60Uid_ = props.getProperty("smsj.ucp.ucp60.uid");
         ucp60Pwd_ = props.getProperty("smsj.ucp.ucp60.password");
+        rateLimiter_ = SmsRateLimiter.create(props);
 
         if (ucp60Uid_ == null || ucp60Pwd_ == null)
         {
@@ -105,7 +120,7 @@ public class UcpTransport implements SmsTransport
         }
     }
 
-    public void connect() throws SmsException, IOException
+    public synchronized void connect() throws SmsException, IOException
     {
         // Connect to the UCP server
         ucpSocket_ = new Socket(ucpServerName_, ucpServerPort_);
@@ -122,7 +137,21 @@ public class UcpTransport implements SmsTransport
         }
     }
 
+    /**
+     * Sends the message and returns the identifier of the first segment.
+     */
     public String send(SmsMessage msg, SmsAddress destination, SmsAddress sender) throws SmsException, IOException
+    {
+        String[] ids = submit(msg, destination, sender);
+        return (ids.length > 0) ? ids[0] : null;
+    }
+
+    /**
+     * Sends all segments of the message and returns the identifier of each
+     * segment.
+     */
+    private synchronized String[] submit(SmsMessage msg, SmsAddress destination, SmsAddress sender)
+        throws SmsException, IOException
     {
         SmsPdu[] msgPdu = null;
 
@@ -131,16 +160,140 @@ public class UcpTransport implements SmsTransport
             throw new SmsException("Cannot sent SMS to ALPHANUMERIC address");
         }
 
-        msgPdu = msg.getPdus();
+        // Let the message allocate concat references per destination
+        msgPdu = (msg instanceof SmsConcatMessage) ? ((SmsConcatMessage) msg).getPdus(destination) : msg.getPdus();
+        String[] ids = new String[msgPdu.length];
         for (int i = 0; i < msgPdu.length; i++)
         {
             boolean moreToSend = (i < (msgPdu.length - 1));
             byte[] submitCmd = buildSubmit(msgPdu[i], moreToSend, destination, sender);
+            throttle(1);
             String response = sendUcp(submitCmd);
-            System.err.println("SMSC response: " + response);
+            log_.debug("SMSC response: {}", response);
+            ids[i] = parseSubmitResponse(response, i);
         }
         
-        return null;
+        return ids;
+    }
+
+    public synchronized String[] send(SmsMessage msg, SmsAddress[] destinations, SmsAddress sender) throws SmsException, IOException
+    {
+        for (SmsAddress destination : destinations)
+        {
+            if (destination.isAlphanumeric())
+            {
+                throw new SmsException("Cannot sent SMS to ALPHANUMERIC address");
+            }
+        }
+
+        SmsConcatMessage concatMsg = (msg instanceof SmsConcatMessage) ? (SmsConcatMessage) msg : null;
+
+        // Templates for 8-bit and 16-bit concat references
+        UcpSubmitTemplate[][] templates = new UcpSubmitTemplate[2][];
+
+        String[] ids = new String[destinations.length];
+        SmsException[] errors = new SmsException[destinations.length];
+        for (int d = 0; d < destinations.length; d++)
+        {
+            SmsAddress destination = destinations[d];
+            int refno = (concatMsg != null) ? concatMsg.allocateRef(destination) : -1;
+            int refType = ((refno >= 0) && ((refno & SmsConcatRefAllocator.REF_16BIT) != 0)) ? 1 : 0;
+
+            try
+            {
+                if (templates[refType] == null)
+                {
+                    SmsPdu[] msgPdu = (concatMsg != null) ? concatMsg.getPdusWithRef(refno) : msg.getPdus();
+                    UcpSubmitTemplate[] submits = new UcpSubmitTemplate[msgPdu.length];
+                    for (int i = 0; i < msgPdu.length; i++)
+                    {
+                        boolean moreToSend = (i < (msgPdu.length - 1));
+                        submits[i] = buildSubmitTemplate(msgPdu[i], moreToSend, sender);
+                    }
+                    templates[refType] = submits;
+                }
+            }
+            catch (SmsException ex)
+            {
+                // The message can't be sent to anyone
+                throw SmsBroadcastException.aborted(ids, errors, d, ex);
+            }
+
+            try
+            {
+                String firstId = null;
+                for (int i = 0; i < templates[refType].length; i++)
+                {
+                    throttle(1);
+                    String response = sendUcp(templates[refType][i].getCommand(destination, refno));
+                    log_.debug("SMSC response: {}", response);
+                    String id = parseSubmitResponse(response, i);
+                    if (i == 0)
+                    {
+                        firstId = id;
+                    }
+                }
+                ids[d] = firstId;
+            }
+            catch (SmsException ex)
+            {
+                log_.debug("Failed to send to " + destination.getAddress(), ex);
+                errors[d] = ex;
+            }
+            catch (IOException ex)
+            {
+                throw SmsBroadcastException.aborted(ids, errors, d, ex);
+            }
+        }
+
+        SmsBroadcastException failure = SmsBroadcastException.create(ids, errors);
+        if (failure != null)
+        {
+            throw failure;
+        }
+        return ids;
+    }
+
+    /**
+     * Parses the response to a submit operation.
+     * 
+     * @param response The response without STX and ETX, ex.
+     *        "01/00045/R/51/A//46701234567:180414123456/2B"
+     * @return The SM field of a positive acknowledgement (AdC:SCTS), or null if it is empty
+     * @throws SmsRejectedException If the SMSC rejected the message
+     * @throws SmsException If the SMSC sent a bad reply
+     */
+    static String parseSubmitResponse(String response) throws SmsException
+    {
+        return parseSubmitResponse(response, 0);
+    }
+
+    /**
+     * Parses the response to the submit of a segment.
+     * 
+     * @param response The response without STX and ETX
+     * @param segment Index of the segment, the number of segments that were already accepted
+     */
+    private static String parseSubmitResponse(String response, int segment) throws SmsException
+    {
+        // TRN/LEN/O|R/OT/ACK|NACK/MVP|EC/SM/checksum
+        String[] fields = response.split("/", -1);
+        if (fields.length < 8 || !"R".equals(fields[2]))
+        {
+            throw new SmsException("The SMSC sends a bad reply: " + response);
+        }
+
+        if ("N".equals(fields[4]))
+        {
+            throw new SmsRejectedException("The SMSC rejected the message, error " + fields[5] + ": " + fields[6],
+                    fields[5], segment, null);
+        }
+        else if (!"A".equals(fields[4]))
+        {
+            throw new SmsException("The SMSC sends a bad reply: " + response);
+        }
+
+        return (fields[6].length() > 0) ? fields[6] : null;
     }
 
     /**
@@ -168,6 +321,36 @@ public class UcpTransport implements SmsTransport
 
     public byte[] buildSubmit(SmsPdu pdu, boolean moreToSend, SmsAddress destination, SmsAddress sender)
             throws SmsException
+    {
+        UcpSeries50 ucpSubmit = createSubmit(pdu, moreToSend, sender);
+
+        // AdC = Address code recipient for the SM
+        ucpSubmit.setField(UcpSeries50.FIELD_ADC, destination.getAddress());
+
+        return ucpSubmit.getCommand();
+    }
+
+    /**
+     * Builds a submit command that can be sent to many destinations.
+     * 
+     * @param pdu
+     * @param moreToSend
+     * @param sender
+     * @return The template
+     * @throws SmsException
+     */
+    public UcpSubmitTemplate buildSubmitTemplate(SmsPdu pdu, boolean moreToSend, SmsAddress sender)
+            throws SmsException
+    {
+        UcpSeries50 ucpSubmit = createSubmit(pdu, moreToSend, sender);
+        return new UcpSubmitTemplate(ucpSubmit, UcpSeries50.FIELD_ADC, pdu.getUserDataHeaders());
+    }
+
+    /**
+     * Creates a submit message with all fields but AdC set.
+     */
+    private UcpSeries50 createSubmit(SmsPdu pdu, boolean moreToSend, SmsAddress sender)
+            throws SmsException
     {
         String ud;
         byte[] udhData;
@@ -193,23 +376,16 @@ public class UcpTransport implements SmsTransport
             }
 
             // Changed by LB. The Alphanumeric Sender was not set correctly
-            String codedaddr = StringUtil.bytesToHexString(SmsPduUtil.getSeptets(addr));
-            int x = codedaddr.length();
-            StringBuffer sb = new StringBuffer("00");
-            sb.replace(2 - Integer.toHexString(x).toUpperCase().length(), 2, Integer.toHexString(x).toUpperCase());
-
-            ucpSubmit.setField(UcpSeries50.FIELD_OADC, sb.toString().concat(codedaddr));
+            ucpSubmit.setField(UcpSeries50.FIELD_OADC, sender.getUcpOAdC());
             ucpSubmit.setField(UcpSeries50.FIELD_OTOA, "5039");
 
         }
         else
         {
             ucpSubmit.setField(UcpSeries50.FIELD_OTOA, "1139");
-            ucpSubmit.setField(UcpSeries50.FIELD_OADC, sender.getAddress());
+            ucpSubmit.setField(UcpSeries50.FIELD_OADC, sender.getUcpOAdC());
         }
 
-        // AdC = Address code recipient for the SM
-        ucpSubmit.setField(UcpSeries50.FIELD_ADC, destination.getAddress());
         if (pdu.getUserDataHeaders() == null) // Handel Messages without UDH
         {
             switch (pdu.getDcs().getAlphabet())
@@ -217,7 +393,7 @@ public class UcpTransport implements SmsTransport
             case GSM:
                 System.out.println("GSM Message without UDH");
                 ucpSubmit.setField(UcpSeries50.FIELD_MT, "3");
-                String msg = SmsPduUtil.readSeptets(pdu.getUserData().getData(), pdu.getUserData().getLength());
+                String msg = SmsPduUtil.readSeptets(pdu.getUserData().getBuffer(), pdu.getUserData().getOffset(), pdu.getUserData().getLength());
                 ucpSubmit.setField(UcpSeries50.FIELD_MSG, StringUtil.bytesToHexString(SmsPduUtil.toGsmCharset(msg)));
                 System.out.println(msg.length());
                 break;
@@ -225,7 +401,7 @@ public class UcpTransport implements SmsTransport
                 throw new SmsException(" 8Bit Messages without UDH are not Supported");
             case UCS2:
                 System.out.println("UCS2 Message without UDH");
-                ud = StringUtil.bytesToHexString(pdu.getUserData().getData());
+                ud = StringUtil.bytesToHexString(pdu.getUserData().getBuffer(), pdu.getUserData().getOffset(), pdu.getUserData().getOctetLength());
                 ucpSubmit.setField(UcpSeries50.FIELD_MSG, ud);
                 //Numer of of bits in Transperent Data Message
                 udBits = pdu.getUserData().getLength() * ((isSeptets) ? 7 : 8);
@@ -244,9 +420,10 @@ public class UcpTransport implements SmsTransport
             switch (pdu.getDcs().getAlphabet())
             {
             case GSM:
-                throw new SmsException("Cannot send 7 bit encoded messages with UDH");
+                // Sent as transparent data, the septets are packed from the
+                // first bit and the SMSC adds the fill bits after the UDH
             case LATIN1:
-                ud = StringUtil.bytesToHexString(pdu.getUserData().getData());
+                ud = StringUtil.bytesToHexString(pdu.getUserData().getBuffer(), pdu.getUserData().getOffset(), pdu.getUserData().getOctetLength());
                 udhData = pdu.getUserDataHeaders();
                 // Add length of udh
                 String udhStr = StringUtil.bytesToHexString(new byte[]{(byte) (udhData.length)});
@@ -287,7 +464,7 @@ public class UcpTransport implements SmsTransport
             ucpSubmit.setField(UcpSeries50.FIELD_MMS, "1");
         }
 
-        return ucpSubmit.getCommand();
+        return ucpSubmit;
     }
 
     public void ping()
@@ -301,13 +478,42 @@ public class UcpTransport implements SmsTransport
      * @throws SmsException
      *  
      */
-    public void disconnect() throws IOException
+    public synchronized void disconnect() throws IOException
     {
         ucpOs_.close();
         ucpIs_.close();
         ucpSocket_.close();
     }
 
+    /**
+     * Returns the rate limiter, null if the transport is not throttled.
+     * 
+     * @return The rate limiter
+     */
+    public SmsRateLimiter getRateLimiter()
+    {
+        return rateLimiter_;
+    }
+
+    /**
+     * Sets the rate limiter, ex. to share one between several transports.
+     * 
+     * @param rateLimiter The rate limiter, or null to not throttle
+     */
+    public void setRateLimiter(SmsRateLimiter rateLimiter)
+    {
+        rateLimiter_ = rateLimiter;
+    }
+
+    private void throttle(int segments) throws InterruptedIOException
+    {
+        SmsRateLimiter rateLimiter = rateLimiter_;
+        if (rateLimiter != null)
+        {
+            rateLimiter.throttle(segments);
+        }
+    }
+
     /**
      * This method is sending the Data to over the existing Connection and
      * recives the answer, the Answer is returned as a String.
@@ -317,7 +523,7 @@ public class UcpTransport implements SmsTransport
      * @throws SmsException
      * @throws IOException 
      */
-    public String sendUcp(byte[] data) throws SmsException, IOException
+    public synchronized String sendUcp(byte[] data) throws SmsException, IOException
     {
         if (!ucpSocket_.isConnected() || ucpOs_ == null || ucpIs_ == null)
         {
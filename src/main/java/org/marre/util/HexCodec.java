@@ -0,0 +1,325 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Table driven hex encoding and decoding.
+ * <p>
+ * Encodes into char arrays, ASCII byte arrays, buffers and streams, so that
+ * hex coded pdus can be written to a device or socket without building
+ * intermediate strings. Hex digits are written in upper case, both cases
+ * are accepted when decoding.
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public final class HexCodec
+{
+    /** Upper case hex digits. */
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /** The two hex digits of each byte value, high digit first. */
+    private static final char[] BYTE_DIGITS = new char[512];
+
+    /** Value of each ASCII hex digit, -1 for other chars. */
+    private static final byte[] VALUES = new byte[128];
+
+    /** Size of the chunks written to streams. */
+    private static final int CHUNK_SIZE = 256;
+
+    static
+    {
+        for (int i = 0; i < 256; i++)
+        {
+            BYTE_DIGITS[i * 2] = DIGITS[i >>> 4];
+            BYTE_DIGITS[i * 2 + 1] = DIGITS[i & 0x0f];
+        }
+
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < 16; i++)
+        {
+            VALUES[DIGITS[i]] = (byte) i;
+            VALUES[Character.toLowerCase(DIGITS[i])] = (byte) i;
+        }
+    }
+
+    /**
+     * This class isn't intended to be instantiated.
+     */
+    private HexCodec()
+    {
+    }
+
+    /**
+     * Encodes bytes as hex into a char array.
+     * 
+     * @param src
+     *            Data to encode
+     * @param offset
+     *            Offset of the first byte to encode
+     * @param length
+     *            Number of bytes to encode
+     * @param dest
+     *            Destination, must have room for length * 2 chars
+     * @param destOffset
+     *            Offset in dest
+     * @return The offset after the last written char
+     */
+    public static int encode(byte[] src, int offset, int length, char[] dest, int destOffset)
+    {
+        int pos = destOffset;
+
+        for (int i = offset; i < offset + length; i++)
+        {
+            int index = (src[i] & 0xff) << 1;
+            dest[pos++] = BYTE_DIGITS[index];
+            dest[pos++] = BYTE_DIGITS[index + 1];
+        }
+
+        return pos;
+    }
+
+    /**
+     * Encodes bytes as ASCII hex into a byte array.
+     * 
+     * @param src
+     *            Data to encode
+     * @param offset
+     *            Offset of the first byte to encode
+     * @param length
+     *            Number of bytes to encode
+     * @param dest
+     *            Destination, must have room for length * 2 bytes
+     * @param destOffset
+     *            Offset in dest
+     * @return The offset after the last written byte
+     */
+    public static int encode(byte[] src, int offset, int length, byte[] dest, int destOffset)
+    {
+        int pos = destOffset;
+
+        for (int i = offset; i < offset + length; i++)
+        {
+            int index = (src[i] & 0xff) << 1;
+            dest[pos++] = (byte) BYTE_DIGITS[index];
+            dest[pos++] = (byte) BYTE_DIGITS[index + 1];
+        }
+
+        return pos;
+    }
+
+    /**
+     * Encodes bytes as ASCII hex into a buffer.
+     * 
+     * @param src
+     *            Data to encode
+     * @param offset
+     *            Offset of the first byte to encode
+     * @param length
+     *            Number of bytes to encode
+     * @param dest
+     *            Destination buffer
+     */
+    public static void encode(byte[] src, int offset, int length, ByteBuffer dest)
+    {
+        if (dest.hasArray())
+        {
+            int pos = dest.position();
+            encode(src, offset, length, dest.array(), dest.arrayOffset() + pos);
+            dest.position(pos + length * 2);
+        }
+        else
+        {
+            for (int i = offset; i < offset + length; i++)
+            {
+                int index = (src[i] & 0xff) << 1;
+                dest.put((byte) BYTE_DIGITS[index]);
+                dest.put((byte) BYTE_DIGITS[index + 1]);
+            }
+        }
+    }
+
+    /**
+     * Encodes bytes as ASCII hex to a stream.
+     * <p>
+     * The hex is written in chunks, the stream doesn't have to be buffered.
+     * 
+     * @param src
+     *            Data to encode
+     * @param offset
+     *            Offset of the first byte to encode
+     * @param length
+     *            Number of bytes to encode
+     * @param os
+     *            Stream to write to
+     * @throws IOException
+     *             Thrown when failing to write to os
+     */
+    public static void encode(byte[] src, int offset, int length, OutputStream os) throws IOException
+    {
+        byte[] chunk = new byte[Math.min(length, CHUNK_SIZE) * 2];
+
+        for (int i = offset; i < offset + length; i += CHUNK_SIZE)
+        {
+            int n = Math.min(CHUNK_SIZE, offset + length - i);
+            encode(src, i, n, chunk, 0);
+            os.write(chunk, 0, n * 2);
+        }
+    }
+
+    /**
+     * Encodes bytes as a hex string.
+     * 
+     * @param src
+     *            Data to encode
+     * @param offset
+     *            Offset of the first byte to encode
+     * @param length
+     *            Number of bytes to encode
+     * @return The hex string
+     */
+    public static String encode(byte[] src, int offset, int length)
+    {
+        char[] hex = new char[length * 2];
+        encode(src, offset, length, hex, 0);
+        return new String(hex);
+    }
+
+    /**
+     * Encodes one byte as a two digit hex string.
+     * 
+     * @param data
+     *            Byte to encode
+     * @return The hex string
+     */
+    public static String encode(byte data)
+    {
+        int index = (data & 0xff) << 1;
+        return new String(BYTE_DIGITS, index, 2);
+    }
+
+    /**
+     * Decodes a hex string into a byte array.
+     * 
+     * @param hex
+     *            Hex to decode
+     * @param offset
+     *            Offset of the first hex digit
+     * @param nBytes
+     *            Number of bytes to decode, two hex digits each
+     * @param dest
+     *            Destination, must have room for nBytes bytes
+     * @param destOffset
+     *            Offset in dest
+     * @return The offset after the last written byte
+     * @throws NumberFormatException
+     *             If the hex contains an invalid digit
+     */
+    public static int decode(CharSequence hex, int offset, int nBytes, byte[] dest, int destOffset)
+    {
+        int pos = destOffset;
+
+        for (int i = offset; i < offset + nBytes * 2; i += 2)
+        {
+            dest[pos++] = (byte) ((valueOf(hex.charAt(i)) << 4) | valueOf(hex.charAt(i + 1)));
+        }
+
+        return pos;
+    }
+
+    /**
+     * Decodes ASCII hex into a byte array.
+     * 
+     * @param hex
+     *            Hex to decode
+     * @param offset
+     *            Offset of the first hex digit
+     * @param nBytes
+     *            Number of bytes to decode, two hex digits each
+     * @param dest
+     *            Destination, must have room for nBytes bytes
+     * @param destOffset
+     *            Offset in dest
+     * @return The offset after the last written byte
+     * @throws NumberFormatException
+     *             If the hex contains an invalid digit
+     */
+    public static int decode(byte[] hex, int offset, int nBytes, byte[] dest, int destOffset)
+    {
+        int pos = destOffset;
+
+        for (int i = offset; i < offset + nBytes * 2; i += 2)
+        {
+            dest[pos++] = (byte) ((valueOf((char) (hex[i] & 0xff)) << 4) | valueOf((char) (hex[i + 1] & 0xff)));
+        }
+
+        return pos;
+    }
+
+    /**
+     * Decodes a hex string.
+     * <p>
+     * A trailing odd digit is ignored.
+     * 
+     * @param hex
+     *            Hex to decode
+     * @return The decoded bytes
+     * @throws NumberFormatException
+     *             If the hex contains an invalid digit
+     */
+    public static byte[] decode(CharSequence hex)
+    {
+        byte[] data = new byte[hex.length() / 2];
+        decode(hex, 0, data.length, data, 0);
+        return data;
+    }
+
+    private static int valueOf(char digit)
+    {
+        int value = (digit < VALUES.length) ? VALUES[digit] : -1;
+
+        if (value < 0)
+        {
+            throw new NumberFormatException("Invalid hex digit '" + digit + "'");
+        }
+
+        return value;
+    }
+}
@@ -84,17 +84,23 @@ public final class StringUtil
      */
     public static String bytesToHexString(byte[] data)
     {
-        StringBuilder hexStrBuff = new StringBuilder(data.length * 2);
-
-        for (byte aData : data) {
-            String hexByteStr = Integer.toHexString(aData & 0xff).toUpperCase();
-            if (hexByteStr.length() == 1) {
-                hexStrBuff.append("0");
-            }
-            hexStrBuff.append(hexByteStr);
-        }
+        return bytesToHexString(data, 0, data.length);
+    }
 
-        return hexStrBuff.toString();
+    /**
+     * Converts a part of a byte array to a string with hex values.
+     * 
+     * @param data
+     *            Data to convert
+     * @param offset
+     *            Offset of the first byte to convert
+     * @param length
+     *            Number of bytes to convert
+     * @return the encoded string
+     */
+    public static String bytesToHexString(byte[] data, int offset, int length)
+    {
+        return HexCodec.encode(data, offset, length);
     }
 
     /**
@@ -106,16 +112,7 @@ public final class StringUtil
      */
     public static String byteToHexString(byte data)
     {
-        StringBuilder hexStrBuff = new StringBuilder(2);
-
-        String hexByteStr = Integer.toHexString(data & 0xff).toUpperCase();
-        if (hexByteStr.length() == 1)
-        {
-            hexStrBuff.append("0");
-        }
-        hexStrBuff.append(hexByteStr);
-
-        return hexStrBuff.toString();
+        return HexCodec.encode(data);
     }
 
     /**
@@ -127,15 +124,7 @@ public final class StringUtil
      */
     public static byte[] hexStringToBytes(String hexString)
     {
-        byte[] data = new byte[hexString.length() / 2];
-
-        for (int i = 0; i < data.length; i++)
-        {
-            String a = hexString.substring(i * 2, i * 2 + 2);
-            data[i] = (byte) Integer.parseInt(a, 16);
-        }
-
-        return data;
+        return HexCodec.decode(hexString);
     }
 
     /**
@@ -51,4 +51,13 @@ public class GsmOperatorTest extends TestCase
         
         assertTrue(operators.size() > 0);
     }
+
+    public void testGetOperator()
+    {
+        GsmOperator operator = GsmOperator.getOperator(240, 7);
+        assertEquals("Comviq GSM", operator.getName());
+        assertEquals("se", operator.getCountry());
+
+        assertNull(GsmOperator.getOperator(240, 999));
+    }
 }
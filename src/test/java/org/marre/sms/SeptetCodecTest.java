@@ -0,0 +1,148 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.marre.util.StringUtil;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SeptetCodecTest extends TestCase
+{
+    private static final String TEXT = "Hello {world} 100€, 0123456789";
+
+    public void testEncodeAtBitOffset()
+    {
+        byte[] expected = SmsPduUtil.getSeptets(TEXT);
+        int nSeptets = SmsPduUtil.getSeptetCount(TEXT);
+
+        for (int bitOffset = 0; bitOffset < 16; bitOffset++)
+        {
+            byte[] shifted = new byte[SeptetCodec.getOctetCount(nSeptets, bitOffset)];
+            SmsPduUtil.arrayCopyBits(expected, 0, shifted, bitOffset, nSeptets * 7);
+
+            // Garbage in the buffer must be overwritten
+            byte[] buf = new byte[shifted.length];
+            Arrays.fill(buf, (byte) 0xff);
+            for (int i = 0; i < bitOffset; i++)
+            {
+                buf[i / 8] &= (byte) ~(1 << (i % 8));
+            }
+
+            assertEquals(nSeptets, SeptetCodec.encode(TEXT, buf, bitOffset));
+            assertEquals(StringUtil.bytesToHexString(shifted), StringUtil.bytesToHexString(buf));
+        }
+    }
+
+    public void testEncodeToByteBuffer()
+    {
+        byte[] expected = SmsPduUtil.getSeptets(TEXT);
+        int nSeptets = SmsPduUtil.getSeptetCount(TEXT);
+
+        for (int fillBits = 0; fillBits < 7; fillBits++)
+        {
+            byte[] shifted = new byte[SeptetCodec.getOctetCount(nSeptets, fillBits)];
+            SmsPduUtil.arrayCopyBits(expected, 0, shifted, fillBits, nSeptets * 7);
+
+            ByteBuffer buf = ByteBuffer.allocate(200);
+            assertEquals(nSeptets, SeptetCodec.encode(TEXT, buf, fillBits));
+            assertEquals(shifted.length, buf.position());
+            assertEquals(StringUtil.bytesToHexString(shifted),
+                    StringUtil.bytesToHexString(Arrays.copyOf(buf.array(), buf.position())));
+
+            buf.clear();
+            SeptetCodec.write(expected, nSeptets, buf, fillBits);
+            assertEquals(shifted.length, buf.position());
+            assertEquals(StringUtil.bytesToHexString(shifted),
+                    StringUtil.bytesToHexString(Arrays.copyOf(buf.array(), buf.position())));
+        }
+    }
+
+    public void testDecode()
+    {
+        byte[] septets = SmsPduUtil.getSeptets(TEXT);
+        int nSeptets = SmsPduUtil.getSeptetCount(TEXT);
+        char[] chars = new char[nSeptets];
+
+        for (int bitOffset = 0; bitOffset < 16; bitOffset++)
+        {
+            byte[] shifted = new byte[SeptetCodec.getOctetCount(nSeptets, bitOffset)];
+            SmsPduUtil.arrayCopyBits(septets, 0, shifted, bitOffset, nSeptets * 7);
+
+            int nChars = SeptetCodec.decode(shifted, bitOffset, nSeptets, chars, 0);
+            assertEquals(TEXT, new String(chars, 0, nChars));
+        }
+    }
+
+    public void testBlockPackingMatchesStreamEncoder() throws Exception
+    {
+        Random rnd = new Random(4711);
+        String chars = "abcXYZ0129 @\u00e4\u00d6{}[]\u20ac\u4e2d";
+
+        for (int length = 0; length < 100; length++)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < length; i++)
+            {
+                // Mostly plain chars to exercise the fast path
+                sb.append(chars.charAt(rnd.nextInt(rnd.nextInt(4) == 0 ? chars.length() : 6)));
+            }
+            String text = sb.toString();
+            int nSeptets = SmsPduUtil.getSeptetCount(text);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            SmsPduUtil.writeSeptets(baos, text);
+
+            byte[] buf = new byte[SeptetCodec.getOctetCount(nSeptets, 0)];
+            assertEquals(nSeptets, SeptetCodec.encode(text, buf, 0));
+            assertEquals(StringUtil.bytesToHexString(baos.toByteArray()), StringUtil.bytesToHexString(buf));
+
+            String expected = SmsPduUtil.readSeptets(new ByteArrayInputStream(buf), nSeptets);
+            char[] decoded = new char[nSeptets];
+            int nChars = SeptetCodec.decode(buf, 0, nSeptets, decoded, 0);
+            assertEquals(expected, new String(decoded, 0, nChars));
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+import junit.framework.TestCase;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsConcatReassemblerTest extends TestCase
+{
+    private static final String TEXT;
+
+    static
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50; i++)
+        {
+            sb.append("Part of a long text ").append(i).append(". ");
+        }
+        TEXT = sb.toString();
+    }
+
+    private static class ManualClockReassembler extends SmsConcatReassembler
+    {
+        long now_;
+
+        ManualClockReassembler(long ttlMillis, long maxBytes)
+        {
+            super(4, ttlMillis, maxBytes);
+        }
+
+        protected long currentTimeMillis()
+        {
+            return now_;
+        }
+    }
+
+    public void testAnyOrder() throws SmsException
+    {
+        SmsAddress originator = new SmsAddress("+46701234567");
+        SmsPdu[] pdus = new SmsTextMessage(TEXT).getPdusWithRef(42);
+        assertTrue(pdus.length > 3);
+
+        SmsConcatReassembler reassembler = new SmsConcatReassembler();
+        String text = null;
+        for (int i = pdus.length - 1; i >= 0; i--)
+        {
+            assertNull(text);
+            text = reassembler.add(originator, pdus[(i + 2) % pdus.length]);
+        }
+
+        assertEquals(TEXT, text);
+        assertEquals(1, reassembler.getCompletedCount());
+        assertEquals(0, reassembler.getIncompleteCount());
+        assertEquals(0, reassembler.getMemoryUsage());
+    }
+
+    public void testInterleaved() throws SmsException
+    {
+        SmsAddress originator1 = new SmsAddress("+46701234567");
+        SmsAddress originator2 = new SmsAddress("+46707654321");
+        SmsPdu[] pdus8 = new SmsTextMessage(TEXT).getPdusWithRef(7);
+        SmsPdu[] pdus16 = new SmsTextMessage(TEXT + "!").getPdusWithRef(SmsConcatRefAllocator.REF_16BIT | 7);
+        SmsPdu[] pdus2 = new SmsTextMessage("2" + TEXT).getPdusWithRef(7);
+
+        SmsConcatReassembler reassembler = new SmsConcatReassembler();
+        for (int i = 0; i < pdus8.length - 1; i++)
+        {
+            assertNull(reassembler.add(originator1, pdus8[i]));
+            assertNull(reassembler.add(originator1, pdus16[i]));
+            assertNull(reassembler.add(originator2, pdus2[i]));
+        }
+        assertEquals(3, reassembler.getIncompleteCount());
+
+        assertEquals(TEXT, reassembler.add(originator1, pdus8[pdus8.length - 1]));
+        assertEquals(TEXT + "!", reassembler.add(originator1, pdus16[pdus16.length - 1]));
+        assertEquals("2" + TEXT, reassembler.add(originator2, pdus2[pdus2.length - 1]));
+        assertEquals(0, reassembler.getIncompleteCount());
+    }
+
+    public void testSinglePart() throws SmsException
+    {
+        SmsConcatReassembler reassembler = new SmsConcatReassembler();
+        SmsPdu[] pdus = new SmsTextMessage("Short").getPdus();
+        assertEquals("Short", reassembler.add(new SmsAddress("123"), pdus[0]));
+        assertEquals(0, reassembler.getIncompleteCount());
+    }
+
+    public void testDuplicate() throws SmsException
+    {
+        SmsAddress originator = new SmsAddress("123");
+        SmsPdu[] pdus = new SmsTextMessage(TEXT).getPdusWithRef(1);
+
+        SmsConcatReassembler reassembler = new SmsConcatReassembler();
+        assertNull(reassembler.add(originator, pdus[0]));
+        assertNull(reassembler.add(originator, pdus[0]));
+        assertEquals(1, reassembler.getDuplicateCount());
+
+        String text = null;
+        for (int i = 1; i < pdus.length; i++)
+        {
+            text = reassembler.add(originator, pdus[i]);
+        }
+        assertEquals(TEXT, text);
+    }
+
+    public void testTtl() throws SmsException
+    {
+        SmsAddress originator = new SmsAddress("123");
+        SmsPdu[] pdus1 = new SmsTextMessage(TEXT).getPdusWithRef(1);
+        SmsPdu[] pdus2 = new SmsTextMessage(TEXT).getPdusWithRef(2);
+
+        ManualClockReassembler reassembler = new ManualClockReassembler(1000, Long.MAX_VALUE);
+        reassembler.now_ = 10000;
+        assertNull(reassembler.add(originator, pdus1[0]));
+        reassembler.now_ = 10500;
+        assertNull(reassembler.add(originator, pdus2[0]));
+        assertEquals(2, reassembler.getIncompleteCount());
+
+        reassembler.now_ = 11000;
+        assertEquals(1, reassembler.expire());
+        assertEquals(1, reassembler.getExpiredCount());
+        assertEquals(1, reassembler.getIncompleteCount());
+
+        // The rest of the first message starts a new incomplete message
+        for (int i = 1; i < pdus1.length; i++)
+        {
+            assertNull(reassembler.add(originator, pdus1[i]));
+        }
+
+        reassembler.now_ = 20000;
+        assertEquals(2, reassembler.expire());
+        assertEquals(0, reassembler.getIncompleteCount());
+        assertEquals(0, reassembler.getMemoryUsage());
+    }
+
+    public void testEviction() throws SmsException
+    {
+        SmsPdu[] pdus = new SmsTextMessage(TEXT).getPdusWithRef(1);
+        SmsConcatReassembler reassembler = new SmsConcatReassembler(4, 60000, 4096);
+
+        for (int i = 0; i < 100; i++)
+        {
+            assertNull(reassembler.add(new SmsAddress(Integer.toString(1000 + i)), pdus[0]));
+            assertTrue(reassembler.getMemoryUsage() <= 4096);
+        }
+
+        assertTrue(reassembler.getEvictedCount() > 0);
+        assertEquals(100, reassembler.getEvictedCount() + reassembler.getIncompleteCount());
+
+        // The last message is still there
+        SmsAddress last = new SmsAddress("1099");
+        String text = null;
+        for (int i = 1; i < pdus.length; i++)
+        {
+            text = reassembler.add(last, pdus[i]);
+        }
+        assertEquals(TEXT, text);
+    }
+}
@@ -102,4 +102,31 @@ public class SmsDcsTest extends TestCase
         assertEquals(SmsMsgClass.CLASS_0, dcs.getMessageClass());
         assertEquals(DcsGroup.GENERAL_DATA_CODING, dcs.getGroup());       
     }
+
+    public void testSharedInstances()
+    {
+        for (int i = 0; i < 256; i++)
+        {
+            SmsDcs dcs = SmsDcs.valueOf((byte) i);
+            SmsDcs created = new SmsDcs((byte) i);
+
+            assertSame(dcs, SmsDcs.valueOf((byte) i));
+            assertEquals((byte) i, dcs.getValue());
+            assertEquals(created.getAlphabet(), dcs.getAlphabet());
+            assertEquals(created.getGroup(), dcs.getGroup());
+            assertNotNull(dcs.getMessageClass());
+        }
+
+        assertSame(SmsDcs.valueOf((byte) 0x08),
+                SmsDcs.getGeneralDataCodingDcs(SmsAlphabet.UCS2, SmsMsgClass.CLASS_UNKNOWN));
+
+        // Reserved group
+        SmsDcs reserved = SmsDcs.valueOf((byte) 0x80);
+        assertNull(reserved.getGroup());
+        assertNull(reserved.getAlphabet());
+        assertEquals(SmsMsgClass.CLASS_UNKNOWN, reserved.getMessageClass());
+
+        // Automatic deletion group
+        assertEquals(SmsAlphabet.UCS2, SmsDcs.valueOf((byte) 0x48).getAlphabet());
+    }
 }
@@ -34,6 +34,8 @@
  * ***** END LICENSE BLOCK ***** */
 package org.marre.sms;
 
+import java.nio.ByteBuffer;
+
 import junit.framework.TestCase;
 
 import org.marre.util.StringUtil;
@@ -130,4 +132,105 @@ public class SmsPduUtilTest extends TestCase
         assertEquals("00FF", StringUtil.bytesToHexString(dstData));                
     }    
     
+    public void testGsmCharsetLookup()
+    {
+        // Default table
+        assertEquals(0x00, SmsPduUtil.toGsmCharset('@'));
+        assertEquals(0x41, SmsPduUtil.toGsmCharset('A'));
+        assertEquals(0x7f, SmsPduUtil.toGsmCharset('\u00e0'));
+
+        // All alternatives
+        for (int i = 0; i < SmsPduUtil.GSM_DEFAULT_ALPHABET_ALTERNATIVES.length; i += 2)
+        {
+            assertEquals(SmsPduUtil.GSM_DEFAULT_ALPHABET_ALTERNATIVES[i + 1],
+                    SmsPduUtil.toGsmCharset(SmsPduUtil.GSM_DEFAULT_ALPHABET_ALTERNATIVES[i]));
+        }
+
+        // Not in the GSM charset
+        assertEquals('?', SmsPduUtil.toGsmCharset('\u4e2d'));
+        assertFalse(SmsPduUtil.isGsmChar('\u4e2d'));
+        assertTrue(SmsPduUtil.isGsmChar('\u20ac'));
+    }
+
+    public void testExtensionTable()
+    {
+        String text = "{a}[b]~\\|^\u20ac";
+
+        assertEquals(20, SmsPduUtil.getSeptetCount(text));
+        assertEquals("1B28611B291B3C621B3E1B3D1B2F1B401B141B65",
+                StringUtil.bytesToHexString(SmsPduUtil.toGsmCharset(text)));
+
+        byte[] septets = SmsPduUtil.getSeptets(text);
+        assertEquals((20 * 7 + 7) / 8, septets.length);
+        assertEquals(text, SmsPduUtil.readSeptets(septets, 20));
+    }
+    
+    public void testSeptetSlicing()
+    {
+        String text = "The quick brown fox jumps over the lazy dog";
+        byte[] septets = SmsPduUtil.getSeptets(text);
+
+        for (int offset = 0; offset < text.length(); offset += 5)
+        {
+            for (int length = 0; offset + length <= text.length(); length += 3)
+            {
+                byte[] slice = new byte[(length * 7 + 7) / 8];
+                SmsPduUtil.arrayCopyBits(septets, offset * 7, slice, 0, length * 7);
+                assertEquals(StringUtil.bytesToHexString(SmsPduUtil.getSeptets(text.substring(offset, offset + length))),
+                        StringUtil.bytesToHexString(slice));
+            }
+        }
+    }
+
+    public void testConcatSeptetSegments()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 400; i++)
+        {
+            sb.append((char) ('a' + (i % 26)));
+        }
+        String text = sb.toString();
+
+        SmsPdu[] pdus = new SmsTextMessage(text).getPdus();
+        assertEquals(3, pdus.length);
+
+        StringBuilder decoded = new StringBuilder();
+        for (SmsPdu pdu : pdus)
+        {
+            decoded.append(SmsPduUtil.readSeptets(pdu.getUserData().getData(), pdu.getUserData().getLength()));
+        }
+        assertEquals(text, decoded.toString());
+    }
+
+    public void testNationalLanguageShift()
+    {
+        String text = "\u015eehir i\u00e7in \u0131\u011fd\u0131r \u0130zmir \u20ac{}";
+        SmsNationalLanguage turkish = SmsNationalLanguage.TURKISH;
+
+        // Only the escaped chars need two septets
+        int nSeptets = SmsPduUtil.getSeptetCount(text, turkish, turkish);
+        assertEquals(text.length() + 2, nSeptets);
+
+        byte[] septets = new byte[SeptetCodec.getOctetCount(nSeptets, 0)];
+        assertEquals(nSeptets, SeptetCodec.encode(text, septets, 0, turkish, turkish));
+
+        char[] chars = new char[nSeptets];
+        int nChars = SeptetCodec.decode(septets, 0, nSeptets, chars, 0, turkish, turkish);
+        assertEquals(text, new String(chars, 0, nChars));
+
+        assertSame(turkish, SmsNationalLanguage.valueOf((byte) 0x01));
+        assertFalse(SmsNationalLanguage.SPANISH.hasLockingShiftTable());
+        assertEquals(SmsUdhIei.NATIONAL_LANGUAGE_LOCKING_SHIFT, SmsUdhIei.valueOf((byte) 0x25));
+    }
+
+    public void testBcdNumber()
+    {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        SmsPduUtil.writeBcdNumber(buf, "46701234567*#ab");
+        assertEquals("6407214365A7CBFE", StringUtil.bytesToHexString(buf.array()));
+        assertEquals("46701234567*#ab", SmsPduUtil.readBcdNumber(buf.array(), 0, 8));
+
+        // The filler is skipped
+        assertEquals("123", SmsPduUtil.readBcdNumber(new byte[] {0x21, (byte) 0xF3}, 0, 2));
+    }
 }
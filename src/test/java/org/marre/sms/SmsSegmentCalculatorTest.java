@@ -0,0 +1,200 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+import junit.framework.TestCase;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsSegmentCalculatorTest extends TestCase
+{
+    static String repeat(char ch, int n)
+    {
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++)
+        {
+            sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+    public void testMaxUdLength()
+    {
+        assertEquals(160, SmsSegmentCalculator.getMaxUdLength(SmsAlphabet.GSM, 0));
+        assertEquals(153, SmsSegmentCalculator.getMaxUdLength(SmsAlphabet.GSM, 6));
+        assertEquals(152, SmsSegmentCalculator.getMaxUdLength(SmsAlphabet.GSM, 7));
+        assertEquals(140, SmsSegmentCalculator.getMaxUdLength(SmsAlphabet.UCS2, 0));
+        assertEquals(134, SmsSegmentCalculator.getMaxUdLength(SmsAlphabet.UCS2, 6));
+        assertEquals(134, SmsSegmentCalculator.getMaxUdLength(SmsAlphabet.LATIN1, 6));
+    }
+
+    public void testSegmentCountMatchesPdus()
+    {
+        SmsDcs gsm = SmsDcs.getGeneralDataCodingDcs(SmsAlphabet.GSM, SmsMsgClass.CLASS_UNKNOWN);
+        SmsDcs ucs2 = SmsDcs.getGeneralDataCodingDcs(SmsAlphabet.UCS2, SmsMsgClass.CLASS_UNKNOWN);
+        SmsDcs latin1 = SmsDcs.getGeneralDataCodingDcs(SmsAlphabet.LATIN1, SmsMsgClass.CLASS_UNKNOWN);
+        int[] lengths = {0, 1, 67, 70, 71, 134, 140, 141, 153, 160, 161, 306, 307, 459, 460};
+
+        for (int length : lengths)
+        {
+            for (SmsDcs dcs : new SmsDcs[] {gsm, ucs2, latin1})
+            {
+                SmsTextMessage msg = new SmsTextMessage(repeat('a', length), dcs);
+                SmsSegmentInfo info = msg.getSegmentInfo();
+                assertEquals(dcs.getAlphabet() + " " + length, msg.getPdus().length, info.getSegmentCount());
+                assertEquals(dcs.getAlphabet(), info.getAlphabet());
+            }
+        }
+
+        // Extension chars are two septets
+        SmsTextMessage msg = new SmsTextMessage(repeat('{', 80));
+        assertEquals(160, msg.getSegmentInfo().getUdLength());
+        assertEquals(1, msg.getSegmentInfo().getSegmentCount());
+        assertEquals(0, msg.getSegmentInfo().getUdhLength());
+
+        msg = new SmsTextMessage(repeat('{', 81));
+        assertEquals(2, msg.getSegmentInfo().getSegmentCount());
+        assertEquals(6, msg.getSegmentInfo().getUdhLength());
+        assertEquals(2, msg.getPdus().length);
+    }
+
+    public void testTruncate()
+    {
+        SmsDcs gsm = SmsDcs.getGeneralDataCodingDcs(SmsAlphabet.GSM, SmsMsgClass.CLASS_UNKNOWN);
+        SmsDcs ucs2 = SmsDcs.getGeneralDataCodingDcs(SmsAlphabet.UCS2, SmsMsgClass.CLASS_UNKNOWN);
+
+        assertEquals("short", SmsSegmentCalculator.truncate("short", gsm, null, 1));
+        assertEquals(160, SmsSegmentCalculator.truncate(repeat('a', 200), gsm, null, 1).length());
+        assertEquals(306, SmsSegmentCalculator.truncate(repeat('a', 400), gsm, null, 2).length());
+
+        // Don't split an escaped char
+        assertEquals(repeat('a', 159), SmsSegmentCalculator.truncate(repeat('a', 159) + "{", gsm, null, 1));
+
+        // Don't split a surrogate pair
+        String emoji = "\ud83d\ude00";
+        String text = repeat('a', 69) + emoji;
+        assertEquals(repeat('a', 69), SmsSegmentCalculator.truncate(text, ucs2, null, 1));
+    }
+
+    public void testCheapestAlphabet()
+    {
+        assertEquals(SmsAlphabet.GSM, SmsSegmentCalculator.getCheapestAlphabet("Hello {world} \u20ac"));
+        assertEquals(SmsAlphabet.UCS2, SmsSegmentCalculator.getCheapestAlphabet("Hello \u4e16\u754c"));
+
+        SmsTextMessage msg = new SmsTextMessage("Price: 10\u20ac");
+        assertEquals(SmsAlphabet.GSM, msg.getDcs().getAlphabet());
+
+        msg.setText("\u041f\u0440\u0438\u0432\u0435\u0442");
+        assertEquals(SmsAlphabet.UCS2, msg.getDcs().getAlphabet());
+        assertEquals(1, msg.getPdus().length);
+
+        // An explicit dcs turns off the automatic choice
+        msg.setText("abc", SmsDcs.getGeneralDataCodingDcs(SmsAlphabet.UCS2, SmsMsgClass.CLASS_1));
+        msg.setText("def");
+        assertEquals(SmsAlphabet.UCS2, msg.getDcs().getAlphabet());
+        assertEquals(SmsMsgClass.CLASS_1, msg.getDcs().getMessageClass());
+    }
+
+    public void testEscapeNotSplit()
+    {
+        String text = repeat('a', 152) + "{" + repeat('a', 152);
+        SmsTextMessage msg = new SmsTextMessage(text);
+
+        // 306 septets would fit in 2 SMS if the escape could be split
+        assertEquals(2, SmsSegmentCalculator.calculate(306, SmsAlphabet.GSM, null).getSegmentCount());
+        assertEquals(3, msg.getSegmentInfo().getSegmentCount());
+
+        SmsPdu[] pdus = msg.getPdus();
+        assertEquals(3, pdus.length);
+        assertEquals(152, pdus[0].getUserData().getLength());
+        assertEquals(153, pdus[1].getUserData().getLength());
+
+        StringBuilder decoded = new StringBuilder();
+        for (SmsPdu pdu : pdus)
+        {
+            decoded.append(SmsPduUtil.readSeptets(pdu.getUserData().getData(), pdu.getUserData().getLength()));
+        }
+        assertEquals(text, decoded.toString());
+        assertEquals(3, SmsSegmentCalculator.calculate(msg.getUserData(), null).getSegmentCount());
+    }
+
+    public void testSegmentCountFromLength()
+    {
+        // The escape lands on the first boundary
+        String text = repeat('a', 152) + "{" + repeat('a', 152);
+        assertEquals(-1, SmsSegmentCalculator.getSegmentCount(306, 1, SmsAlphabet.GSM, null));
+        assertEquals(3, new SmsTextMessage(text).getSegmentInfo().getSegmentCount());
+
+        // Room to spare for a wasted septet on each boundary
+        assertEquals(2, SmsSegmentCalculator.getSegmentCount(305, 1, SmsAlphabet.GSM, null));
+        assertEquals(1, SmsSegmentCalculator.getSegmentCount(160, 80, SmsAlphabet.GSM, null));
+        assertEquals(3, SmsSegmentCalculator.getSegmentCount(459, 0, SmsAlphabet.GSM, null));
+        assertEquals(2, SmsSegmentCalculator.getSegmentCount(152, 2, SmsAlphabet.UCS2, null));
+        assertEquals(-1, SmsSegmentCalculator.getSegmentCount(268, 1, SmsAlphabet.UCS2, null));
+
+        // Must agree with walking the text
+        char[] units = {'a', '{', '\u00e7', '\u011f'};
+        for (int length = 60; length < 330; length += 7)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < length; i++)
+            {
+                sb.append(units[(i * 7 + length) % units.length]);
+            }
+            SmsTextMessage msg = new SmsTextMessage(sb.toString());
+            assertEquals(sb.toString(), msg.getPdus().length, msg.getSegmentInfo().getSegmentCount());
+        }
+    }
+
+    public void testSurrogatePairNotSplit() throws Exception
+    {
+        String text = repeat('a', 66) + "\ud83d\ude00" + repeat('a', 10);
+        SmsTextMessage msg = new SmsTextMessage(text);
+        assertEquals(SmsAlphabet.UCS2, msg.getDcs().getAlphabet());
+
+        SmsPdu[] pdus = msg.getPdus();
+        assertEquals(2, pdus.length);
+        assertEquals(132, pdus[0].getUserData().getLength());
+        assertEquals(24, pdus[1].getUserData().getLength());
+        assertEquals(2, msg.getSegmentInfo().getSegmentCount());
+
+        String decoded = new String(pdus[0].getUserData().getData(), "UTF-16BE")
+                + new String(pdus[1].getUserData().getData(), "UTF-16BE");
+        assertEquals(text, decoded);
+    }
+}
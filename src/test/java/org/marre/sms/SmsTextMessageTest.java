@@ -0,0 +1,211 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+import junit.framework.TestCase;
+
+import org.marre.util.StringUtil;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsTextMessageTest extends TestCase
+{
+    public void testNationalLanguageSelection()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5; i++)
+        {
+            sb.append("Bug\u00fcn \u0130stanbul'da hava \u00e7ok g\u00fczel. ");
+        }
+        SmsTextMessage msg = new SmsTextMessage(sb.toString());
+
+        // UCS2 would need 3 SMS, the Turkish single shift table fits in 2.
+        // The locking shift table would also fit but isn't needed.
+        assertEquals(SmsAlphabet.GSM, msg.getDcs().getAlphabet());
+        assertSame(SmsNationalLanguage.DEFAULT, msg.getLockingShift());
+        assertSame(SmsNationalLanguage.TURKISH, msg.getSingleShift());
+
+        SmsPdu[] pdus = msg.getPdus();
+        assertEquals(2, pdus.length);
+        assertEquals(msg.getSegmentInfo().getSegmentCount(), pdus.length);
+        for (SmsPdu pdu : pdus)
+        {
+            String udh = StringUtil.bytesToHexString(pdu.getUserDataHeaders());
+            assertTrue(udh, udh.indexOf("240101") >= 0);
+        }
+
+        // Lots of Turkish chars makes the locking shift table cheaper
+        sb.setLength(0);
+        for (int i = 0; i < 20; i++)
+        {
+            sb.append("\u0131\u011f\u015f\u00e7 ");
+        }
+        msg.setText(sb.toString());
+        assertSame(SmsNationalLanguage.TURKISH, msg.getLockingShift());
+        assertSame(SmsNationalLanguage.DEFAULT, msg.getSingleShift());
+        assertEquals(1, msg.getPdus().length);
+
+        // 72 chars, 2 SMS as UCS2
+        sb.setLength(0);
+        for (int i = 0; i < 6; i++)
+        {
+            sb.append("\u00bfC\u00f3mo est\u00e1s?");
+        }
+        msg.setText(sb.toString());
+        assertEquals(SmsAlphabet.GSM, msg.getDcs().getAlphabet());
+        assertSame(SmsNationalLanguage.DEFAULT, msg.getLockingShift());
+        assertSame(SmsNationalLanguage.SPANISH, msg.getSingleShift());
+        assertEquals(1, msg.getPdus().length);
+
+        // Plain GSM text doesn't get any shift tables
+        msg.setText("Hello [world]");
+        assertSame(SmsNationalLanguage.DEFAULT, msg.getSingleShift());
+        assertNull(msg.getUdhElements());
+    }
+
+    public void testAutoNationalLanguageShiftOff()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 4; i++)
+        {
+            sb.append("Bug\u00fcn \u0130stanbul'da hava \u00e7ok g\u00fczel. ");
+        }
+        SmsTextMessage msg = new SmsTextMessage(sb.toString());
+        assertSame(SmsNationalLanguage.TURKISH, msg.getSingleShift());
+
+        // For transports that can't send 7-bit text with a UDH
+        msg.setAutoNationalLanguageShift(false);
+        assertEquals(SmsAlphabet.UCS2, msg.getDcs().getAlphabet());
+        assertSame(SmsNationalLanguage.DEFAULT, msg.getSingleShift());
+
+        // Texts that fit the default alphabet are still GSM
+        msg.setText("Hello [world]");
+        assertEquals(SmsAlphabet.GSM, msg.getDcs().getAlphabet());
+        assertNull(msg.getUdhElements());
+    }
+
+    public void testShortNationalTextIsUcs2()
+    {
+        // Fits in one SMS as UCS2, the shift tables would save nothing
+        SmsTextMessage msg = new SmsTextMessage("\u015eehir i\u00e7in \u0131\u011fd\u0131r");
+        assertEquals(SmsAlphabet.UCS2, msg.getDcs().getAlphabet());
+        assertSame(SmsNationalLanguage.DEFAULT, msg.getLockingShift());
+        assertSame(SmsNationalLanguage.DEFAULT, msg.getSingleShift());
+        assertNull(msg.getUdhElements());
+
+        SmsPdu[] pdus = msg.getPdus();
+        assertEquals(1, pdus.length);
+        assertNull(pdus[0].getUserDataHeaders());
+
+        msg.setText("\u00bfC\u00f3mo est\u00e1s?");
+        assertEquals(SmsAlphabet.UCS2, msg.getDcs().getAlphabet());
+        assertNull(msg.getUdhElements());
+    }
+
+    public void testTransliterate()
+    {
+        // A single curly quote makes this 100 char text UCS2 (2 SMS)
+        StringBuilder sb = new StringBuilder("It\u2019s ");
+        while (sb.length() < 100)
+        {
+            sb.append('x');
+        }
+        SmsTextMessage msg = new SmsTextMessage(sb.toString());
+        assertEquals(SmsAlphabet.UCS2, msg.getDcs().getAlphabet());
+        assertNull(msg.getTransliteration());
+
+        msg.setTransliterate(true);
+        SmsTransliteration result = msg.getTransliteration();
+        assertEquals(SmsAlphabet.GSM, msg.getDcs().getAlphabet());
+        assertEquals("'", result.getSubstitutions().get('\u2019'));
+        assertEquals(2, result.getOriginalSegmentCount());
+        assertEquals(1, result.getSegmentCount());
+        assertEquals(1, result.getSavedSegmentCount());
+        assertEquals(sb.toString(), msg.getText());
+        assertEquals(1, msg.getPdus().length);
+
+        // Nothing is lost when it doesn't save any SMS
+        msg.setText("It\u2019s");
+        assertFalse(msg.getTransliteration().isTransliterated());
+        assertEquals(SmsAlphabet.UCS2, msg.getDcs().getAlphabet());
+
+        // With an explicit GSM alphabet it's better than '?'
+        msg.setText("It\u2019s", SmsDcs.getGeneralDataCodingDcs(SmsAlphabet.GSM, SmsMsgClass.CLASS_UNKNOWN));
+        assertEquals("It's", msg.getTransliteration().getText());
+        assertEquals("It's", SmsPduUtil.readSeptets(msg.getUserData().getData(), 4));
+    }
+
+    public void testConcatUdh() throws Exception
+    {
+        SmsTextMessage msg = new SmsTextMessage(SmsSegmentCalculatorTest.repeat('a', 300));
+        SmsAddress dest = new SmsAddress("+46701234567");
+
+        msg.setRefAllocator(new SmsConcatRefAllocator()
+        {
+            public int nextRef(SmsAddress destination)
+            {
+                return REF_16BIT | 0x1234;
+            }
+        });
+
+        SmsPdu[] pdus = msg.getPdus(dest);
+        assertEquals(2, pdus.length);
+        assertEquals("06080412340201", StringUtil.bytesToHexString(pdus[0].getUserDataHeaders()));
+        // A 16-bit reference takes one more octet
+        assertEquals(152, pdus[0].getUserData().getLength());
+    }
+
+    public void testPduCache() throws Exception
+    {
+        SmsTextMessage msg = new SmsTextMessage(SmsSegmentCalculatorTest.repeat('a', 300));
+        SmsAddress dest = new SmsAddress("+46701234567");
+
+        SmsPdu[] first = msg.getPdus(dest);
+        SmsPdu[] second = msg.getPdus(dest);
+        assertEquals(2, second.length);
+        // Segments are shared, but every send gets its own reference
+        assertSame(first[0].getUserData(), second[0].getUserData());
+        assertNotSame(first[0], second[0]);
+        assertFalse(StringUtil.bytesToHexString(first[0].getUserDataHeaders()).equals(
+                StringUtil.bytesToHexString(second[0].getUserDataHeaders())));
+        assertSame(first[0].getUserDataHeaders(), first[0].getUserDataHeaders());
+
+        msg.setText(SmsSegmentCalculatorTest.repeat('b', 10));
+        assertEquals(1, msg.getPdus(dest).length);
+    }
+}
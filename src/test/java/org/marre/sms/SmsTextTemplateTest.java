@@ -0,0 +1,119 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.marre.util.StringUtil;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsTextTemplateTest extends TestCase
+{
+    private static void assertSameAsText(SmsTextTemplate template, SmsAlphabet alphabet, String... values)
+    {
+        String text = template.getText(values);
+        SmsConcatMessage msg = template.createMessage(values);
+        SmsTextMessage textMsg = new SmsTextMessage(text, alphabet, SmsMsgClass.CLASS_UNKNOWN);
+
+        assertEquals(text, alphabet, msg.getUserData().getDcs().getAlphabet());
+        assertEquals(text, textMsg.getUserData().getLength(), msg.getUserData().getLength());
+        assertEquals(text, StringUtil.bytesToHexString(textMsg.getUserData().getData()),
+                StringUtil.bytesToHexString(msg.getUserData().getData()));
+        assertEquals(text, textMsg.getPdus().length, msg.getPdus().length);
+    }
+
+    public void testGsm() throws Exception
+    {
+        SmsTextTemplate template = new SmsTextTemplate("Hi ${name}, your code is ${code}. Bye ${name}!");
+        assertEquals(2, template.getVariableNames().length);
+        assertEquals("name", template.getVariableNames()[0]);
+
+        // Values of all lengths so that every bit offset is used
+        String name = "";
+        for (int i = 0; i < 10; i++)
+        {
+            assertSameAsText(template, SmsAlphabet.GSM, name, "1234");
+            assertSameAsText(template, SmsAlphabet.GSM, name, "{\u20ac}");
+            name += (char) ('a' + i);
+        }
+
+        // Escapes in the template
+        template = new SmsTextTemplate("[${a}]\u20ac${b}");
+        assertSameAsText(template, SmsAlphabet.GSM, "x", "");
+        assertSameAsText(template, SmsAlphabet.GSM, "", "^^^");
+
+        // Long enough to be concatenated
+        assertSameAsText(template, SmsAlphabet.GSM, SmsSegmentCalculatorTest.repeat('x', 200), "y");
+    }
+
+    public void testUcs2() throws Exception
+    {
+        SmsTextTemplate template = new SmsTextTemplate("Hi ${name}!");
+
+        // A value that isn't in the GSM alphabet
+        assertSameAsText(template, SmsAlphabet.UCS2, "\u0416\u0435\u043d\u044f");
+
+        // A template that isn't in the GSM alphabet
+        template = new SmsTextTemplate("\u041f\u0440\u0438\u0432\u0435\u0442 ${name}");
+        assertSameAsText(template, SmsAlphabet.UCS2, "Bob");
+    }
+
+    public void testMap() throws Exception
+    {
+        SmsTextTemplate template = new SmsTextTemplate("${a}-${b}");
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("b", "2");
+        values.put("a", "1");
+        assertEquals("1-2", SmsPduUtil.readSeptets(template.createMessage(values).getUserData().getData(), 3));
+
+        values.remove("a");
+        try
+        {
+            template.createMessage(values);
+            fail("Missing value");
+        }
+        catch (IllegalArgumentException ex)
+        {
+            // Expected
+        }
+    }
+}
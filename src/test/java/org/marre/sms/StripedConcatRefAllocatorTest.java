@@ -0,0 +1,104 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms;
+
+import junit.framework.TestCase;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class StripedConcatRefAllocatorTest extends TestCase
+{
+    public void testMonotonicPerDestination() throws Exception
+    {
+        StripedConcatRefAllocator allocator = new StripedConcatRefAllocator(16, 0);
+        SmsAddress dest = new SmsAddress("+46701234567");
+
+        int first = allocator.nextRef(dest);
+        for (int i = 1; i < 256; i++)
+        {
+            assertEquals((first + i) & 0xff, allocator.nextRef(dest));
+        }
+
+        // Never switches to 16-bit without an in-flight time
+        assertFalse(allocator.is16Bit(dest));
+    }
+
+    public void testNullDestination() throws Exception
+    {
+        // One stripe, the null destination must still have its own counter
+        StripedConcatRefAllocator allocator = new StripedConcatRefAllocator(1, 0);
+        SmsAddress dest = new SmsAddress("+46701234567");
+
+        int first = allocator.nextRef(dest);
+        allocator.nextRef(null);
+        allocator.nextRef(null);
+        assertEquals((first + 1) & 0xff, allocator.nextRef(dest));
+
+        int firstNull = allocator.nextRef(null);
+        assertEquals((firstNull + 1) & 0xff, allocator.nextRef(null));
+    }
+
+    public void testSwitchTo16Bit() throws Exception
+    {
+        StripedConcatRefAllocator allocator = new StripedConcatRefAllocator(1, 60000);
+        SmsAddress dest = new SmsAddress("+46701234567");
+
+        // Wrapping twice within the in-flight time switches to 16-bit
+        for (int i = 0; i < 600; i++)
+        {
+            allocator.nextRef(dest);
+        }
+        assertTrue(allocator.is16Bit(dest));
+        assertTrue((allocator.nextRef(dest) & SmsConcatRefAllocator.REF_16BIT) != 0);
+    }
+
+    public void testForRate() throws Exception
+    {
+        assertEquals(1, StripedConcatRefAllocator.getStripeCount(0.1, 60000));
+        assertEquals(64, StripedConcatRefAllocator.getStripeCount(100, 60000));
+        assertEquals(8192, StripedConcatRefAllocator.DEFAULT_STRIPES);
+
+        // The expected traffic over many destinations stays on 8-bit references
+        StripedConcatRefAllocator allocator = StripedConcatRefAllocator.forRate(100, 60000);
+        for (int i = 0; i < 6000; i++)
+        {
+            SmsAddress dest = new SmsAddress(String.valueOf(46700000000L + i * 7919L));
+            assertEquals(0, allocator.nextRef(dest) & SmsConcatRefAllocator.REF_16BIT);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsException;
+import org.marre.sms.SmsMessage;
+import org.marre.sms.SmsTextMessage;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsAsyncTransportAdapterTest extends TestCase
+{
+    /**
+     * Records the messages it sends, fails with an IOException for "fail".
+     */
+    private static class RecordingTransport implements SmsTransport
+    {
+        final List<String> sent_ = new ArrayList<String>();
+        boolean connected_;
+
+        public void init(Properties props)
+        {
+        }
+
+        public void connect()
+        {
+            connected_ = true;
+        }
+
+        public String send(SmsMessage msg, SmsAddress destination, SmsAddress sender) throws IOException
+        {
+            if ("fail".equals(destination.getAddress()))
+            {
+                throw new IOException("failed");
+            }
+            sent_.add(destination.getAddress());
+            return "id" + sent_.size();
+        }
+
+        public void ping()
+        {
+        }
+
+        public void disconnect()
+        {
+            connected_ = false;
+        }
+    }
+
+    public void testSendAsync() throws Exception
+    {
+        RecordingTransport transport = new RecordingTransport();
+        SmsAsyncTransportAdapter adapter = new SmsAsyncTransportAdapter(transport);
+        SmsMessage msg = new SmsTextMessage("Hello");
+        SmsAddress sender = new SmsAddress("4670111111");
+
+        adapter.connect();
+        assertTrue(transport.connected_);
+
+        List<Future<String[]>> futures = new ArrayList<Future<String[]>>();
+        for (int i = 0; i < 10; i++)
+        {
+            futures.add(adapter.sendAsync(msg, new SmsAddress("4670" + i), sender));
+        }
+
+        for (int i = 0; i < 10; i++)
+        {
+            String[] ids = futures.get(i).get();
+            assertEquals(1, ids.length);
+            // The own executor keeps the order
+            assertEquals("id" + (i + 1), ids[0]);
+            assertEquals("4670" + i, transport.sent_.get(i));
+        }
+
+        adapter.disconnect();
+        assertFalse(transport.connected_);
+    }
+
+    public void testSendAsyncFailure() throws Exception
+    {
+        SmsAsyncTransportAdapter adapter = new SmsAsyncTransportAdapter(new RecordingTransport());
+        Future<String[]> future = adapter.sendAsync(new SmsTextMessage("Hello"), new SmsAddress("fail"), null);
+
+        try
+        {
+            future.get();
+            fail("Expected ExecutionException");
+        }
+        catch (ExecutionException ex)
+        {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+
+        adapter.disconnect();
+    }
+
+    public void testDisconnectWaitsForQueuedMessages() throws Exception
+    {
+        RecordingTransport transport = new RecordingTransport();
+        SmsAsyncTransportAdapter adapter = new SmsAsyncTransportAdapter(transport);
+        SmsMessage msg = new SmsTextMessage("Hello");
+
+        for (int i = 0; i < 100; i++)
+        {
+            adapter.sendAsync(msg, new SmsAddress("4670" + i), null);
+        }
+        adapter.disconnect();
+        assertEquals(100, transport.sent_.size());
+
+        // A new executor is created after a reconnect
+        adapter.connect();
+        assertEquals("id101", adapter.sendAsync(msg, new SmsAddress("46701"), null).get()[0]);
+        adapter.disconnect();
+    }
+
+    public void testNullTransport() throws SmsException
+    {
+        try
+        {
+            new SmsAsyncTransportAdapter(null);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex)
+        {
+            // Expected
+        }
+    }
+}
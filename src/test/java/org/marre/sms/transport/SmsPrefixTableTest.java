@@ -0,0 +1,173 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsException;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsPrefixTableTest extends TestCase
+{
+    private static final String TABLE =
+        "# Sweden\n"
+        + "46|ucp\n"
+        + "4670|ucp|240|1\n"
+        + "  4673 | modem | 240 | 7  \n"
+        + "\n"
+        + "49||262|2\n";
+
+    public void testLoad() throws Exception
+    {
+        SmsPrefixTable table = SmsPrefixTable.load(new StringReader(TABLE));
+        assertEquals(4, table.size());
+        assertEquals(4, table.getEntries().size());
+
+        SmsPrefixTable.Entry entry = table.lookup("46731234567");
+        assertEquals("4673", entry.getPrefix());
+        assertEquals("modem", entry.getRoute());
+        assertEquals(240, entry.getMcc());
+        assertEquals(7, entry.getMnc());
+        assertEquals("Comviq GSM", entry.getOperator().getName());
+
+        entry = table.lookup("4949123");
+        assertNull(entry.getRoute());
+        assertEquals("D2 Mannesmann Mobilfunk", entry.getOperator().getName());
+
+        entry = table.lookup("46812345");
+        assertEquals("46", entry.getPrefix());
+        assertEquals(-1, entry.getMcc());
+        assertNull(entry.getOperator());
+    }
+
+    public void testLookup() throws Exception
+    {
+        SmsPrefixTable table = SmsPrefixTable.load(new StringReader(TABLE));
+
+        assertEquals("4670", table.lookup("+46701234567").getPrefix());
+        assertEquals("4670", table.lookup("4670").getPrefix());
+        assertEquals("46", table.lookup("467").getPrefix());
+        assertEquals("46", table.lookup("46").getPrefix());
+        assertNull(table.lookup("4"));
+        assertNull(table.lookup(""));
+        assertNull(table.lookup("4412345"));
+        // Stops at the first non digit
+        assertEquals("46", table.lookup("46*70").getPrefix());
+
+        assertEquals("4670", table.lookup(new SmsAddress("+46701234567")).getPrefix());
+        assertNull(table.lookup(new SmsAddress("SMSJ")));
+    }
+
+    public void testDefaultEntry() throws Exception
+    {
+        SmsPrefixTable table = SmsPrefixTable.load(new StringReader("|http\n46|ucp\n"));
+        assertEquals("http", table.lookup("4412345").getRoute());
+        assertEquals("ucp", table.lookup("4612345").getRoute());
+    }
+
+    public void testSameAsLinearSearch() throws Exception
+    {
+        Random random = new Random(42);
+        Map<String, SmsPrefixTable.Entry> prefixes = new HashMap<String, SmsPrefixTable.Entry>();
+        for (int i = 0; i < 2000; i++)
+        {
+            String prefix = randomDigits(random, 1 + random.nextInt(6));
+            prefixes.put(prefix, new SmsPrefixTable.Entry(prefix, "r" + i, -1, -1));
+        }
+        SmsPrefixTable table = new SmsPrefixTable(prefixes.values());
+        assertEquals(prefixes.size(), table.size());
+
+        for (int i = 0; i < 10000; i++)
+        {
+            String number = randomDigits(random, 11);
+            SmsPrefixTable.Entry expected = null;
+            for (int length = number.length(); length > 0 && expected == null; length--)
+            {
+                expected = prefixes.get(number.substring(0, length));
+            }
+            assertSame(number, expected, table.lookup(number));
+        }
+    }
+
+    private static String randomDigits(Random random, int length)
+    {
+        char[] digits = new char[length];
+        for (int i = 0; i < length; i++)
+        {
+            digits[i] = (char) ('0' + random.nextInt(10));
+        }
+        return new String(digits);
+    }
+
+    public void testErrors() throws Exception
+    {
+        String[] bad = {"46|ucp\n46|modem\n", "4a6|ucp\n", "46|ucp|x|1\n"};
+        for (String table : bad)
+        {
+            try
+            {
+                SmsPrefixTable.load(new StringReader(table));
+                fail("Expected SmsException for " + table);
+            }
+            catch (SmsException ex)
+            {
+                // Expected
+            }
+        }
+
+        List<SmsPrefixTable.Entry> entries = new ArrayList<SmsPrefixTable.Entry>();
+        try
+        {
+            entries.add(new SmsPrefixTable.Entry("+46", null, -1, -1));
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex)
+        {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.marre.sms.SmsException;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsRateLimiterTest extends TestCase
+{
+    /**
+     * Rate limiter with a clock that the test controls.
+     */
+    private static class TestRateLimiter extends SmsRateLimiter
+    {
+        long now_ = -5000000000L;
+
+        TestRateLimiter(double unitsPerSecond, int burst)
+        {
+            super(unitsPerSecond, burst);
+        }
+
+        protected long nanoTime()
+        {
+            return now_;
+        }
+    }
+
+    private static final long MS = 1000000L;
+
+    public void testBurst()
+    {
+        TestRateLimiter limiter = new TestRateLimiter(10, 5);
+        assertEquals(5, limiter.getAvailable());
+        assertEquals(0.0, limiter.getUtilization(), 0.0);
+
+        assertTrue(limiter.tryAcquire(3));
+        assertTrue(limiter.tryAcquire(2));
+        assertFalse(limiter.tryAcquire(1));
+        assertEquals(0, limiter.getAvailable());
+        assertEquals(1.0, limiter.getUtilization(), 1e-9);
+
+        // One token every 100 ms
+        limiter.now_ += 100 * MS;
+        assertEquals(1, limiter.getAvailable());
+        assertTrue(limiter.tryAcquire(1));
+        assertFalse(limiter.tryAcquire(1));
+
+        // Never more than the burst
+        limiter.now_ += 10000 * MS;
+        assertEquals(5, limiter.getAvailable());
+        assertFalse(limiter.tryAcquire(6));
+        assertEquals(6, limiter.getAcquired());
+    }
+
+    public void testReserve()
+    {
+        TestRateLimiter limiter = new TestRateLimiter(10, 2);
+
+        assertEquals(0, limiter.reserve(2));
+        assertEquals(100 * MS, limiter.reserve(1));
+        // Queued after the previous reservation
+        assertEquals(400 * MS, limiter.reserve(3));
+        assertEquals(3.0, limiter.getUtilization(), 1e-9);
+        assertEquals(0, limiter.getAvailable());
+
+        limiter.now_ += 400 * MS;
+        assertEquals(1.0, limiter.getUtilization(), 1e-9);
+        assertEquals(100 * MS, limiter.reserve(1));
+    }
+
+    public void testAcquireWaits() throws Exception
+    {
+        SmsRateLimiter limiter = new SmsRateLimiter(200, 1);
+        long start = System.nanoTime();
+        for (int i = 0; i < 21; i++)
+        {
+            limiter.acquire(1);
+        }
+        // 20 x 5 ms after the first one
+        assertTrue(System.nanoTime() - start >= 95 * MS);
+    }
+
+    public void testThreadsShareRate() throws Exception
+    {
+        final SmsRateLimiter limiter = new SmsRateLimiter(1000, 10);
+        Thread[] threads = new Thread[4];
+        final int[] acquired = new int[threads.length];
+        long start = System.nanoTime();
+
+        for (int i = 0; i < threads.length; i++)
+        {
+            final int threadNo = i;
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for (int j = 0; j < 50; j++)
+                        {
+                            limiter.acquire(1);
+                            acquired[threadNo]++;
+                        }
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        // Test fails below
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        // 200 units with a burst of 10 takes at least 190 ms
+        assertTrue(System.nanoTime() - start >= 185 * MS);
+        assertEquals(200, limiter.getAcquired());
+        for (int count : acquired)
+        {
+            assertEquals(50, count);
+        }
+    }
+
+    public void testCreate() throws Exception
+    {
+        Properties props = new Properties();
+        assertNull(SmsRateLimiter.create(props));
+
+        props.setProperty("smsj.throttle.tps", "2.5");
+        SmsRateLimiter limiter = SmsRateLimiter.create(props);
+        assertEquals(2.5, limiter.getUnitsPerSecond(), 0.0);
+        assertEquals(3, limiter.getBurst());
+
+        props.setProperty("smsj.throttle.burst", "20");
+        assertEquals(20, SmsRateLimiter.create(props).getBurst());
+
+        String[] bad = {"0", "-1", "x"};
+        for (String tps : bad)
+        {
+            props.setProperty("smsj.throttle.tps", tps);
+            try
+            {
+                SmsRateLimiter.create(props);
+                fail("Expected SmsException for " + tps);
+            }
+            catch (SmsException ex)
+            {
+                // Expected
+            }
+        }
+    }
+}
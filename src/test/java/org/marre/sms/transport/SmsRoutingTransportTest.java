@@ -0,0 +1,407 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsException;
+import org.marre.sms.SmsMessage;
+import org.marre.sms.SmsTextMessage;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsRoutingTransportTest extends TestCase
+{
+    /**
+     * Created by the router through SmsTransportManager, named by the route
+     * specific property "fake.name".
+     */
+    public static class FakeTransport implements SmsTransport
+    {
+        static final ConcurrentHashMap<String, AtomicInteger> sent_ = new ConcurrentHashMap<String, AtomicInteger>();
+        static final ConcurrentHashMap<String, Boolean> failing_ = new ConcurrentHashMap<String, Boolean>();
+        /** Routes where the SMSC rejects messages, mapped to the number of segments accepted first */
+        static final ConcurrentHashMap<String, Integer> rejecting_ = new ConcurrentHashMap<String, Integer>();
+
+        private String name_;
+
+        static int getSent(String name)
+        {
+            AtomicInteger count = sent_.get(name);
+            return (count != null) ? count.get() : 0;
+        }
+
+        public void init(Properties props)
+        {
+            name_ = props.getProperty("fake.name");
+            sent_.putIfAbsent(name_, new AtomicInteger());
+        }
+
+        public void connect() throws IOException
+        {
+            if (failing_.containsKey(name_))
+            {
+                throw new IOException(name_ + " is down");
+            }
+        }
+
+        public String send(SmsMessage msg, SmsAddress destination, SmsAddress sender) throws SmsException, IOException
+        {
+            if (failing_.containsKey(name_))
+            {
+                throw new IOException(name_ + " is down");
+            }
+            if ("bad".equals(destination.getAddress()))
+            {
+                throw new SmsException("bad message");
+            }
+            Integer accepted = rejecting_.get(name_);
+            if (accepted != null)
+            {
+                sent_.get(name_).addAndGet(accepted.intValue());
+                throw new SmsRejectedException(name_ + " rejected message", "02", accepted.intValue(), null);
+            }
+            return name_ + sent_.get(name_).incrementAndGet();
+        }
+
+        public void ping() throws IOException
+        {
+            connect();
+        }
+
+        public void disconnect()
+        {
+        }
+    }
+
+    /**
+     * Router with a clock that the test controls.
+     */
+    private static class TestRouter extends SmsRoutingTransport
+    {
+        long now_ = 1000000;
+
+        protected long currentTimeMillis()
+        {
+            return now_;
+        }
+    }
+
+    private SmsMessage msg_;
+    private SmsAddress dest_;
+
+    protected void setUp() throws SmsException
+    {
+        FakeTransport.sent_.clear();
+        FakeTransport.failing_.clear();
+        FakeTransport.rejecting_.clear();
+        msg_ = new SmsTextMessage("Hello");
+        dest_ = new SmsAddress("46701234567");
+    }
+
+    private static TestRouter createRouter(int weightA, int weightB) throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty("smsj.router.routes", "a, b");
+        props.setProperty("smsj.router.halflife", "1000");
+        props.setProperty("fake.name", "default");
+        props.setProperty("smsj.router.route.a.transport", FakeTransport.class.getName());
+        props.setProperty("smsj.router.route.a.weight", String.valueOf(weightA));
+        props.setProperty("smsj.router.route.a.fake.name", "a");
+        props.setProperty("smsj.router.route.b.transport", FakeTransport.class.getName());
+        props.setProperty("smsj.router.route.b.weight", String.valueOf(weightB));
+        props.setProperty("smsj.router.route.b.fake.name", "b");
+
+        TestRouter router = new TestRouter();
+        router.init(props);
+        return router;
+    }
+
+    public void testWeights() throws Exception
+    {
+        TestRouter router = createRouter(3, 1);
+        router.connect();
+        assertEquals(2, router.getRouteNames().length);
+        assertEquals("a", router.getRouteNames()[0]);
+
+        for (int i = 0; i < 400; i++)
+        {
+            router.send(msg_, dest_, null);
+        }
+
+        // Latency differences can move a few messages
+        assertTrue(FakeTransport.getSent("a") > 250);
+        assertTrue(FakeTransport.getSent("b") > 50);
+        assertEquals(400, FakeTransport.getSent("a") + FakeTransport.getSent("b"));
+        assertEquals(0, FakeTransport.getSent("default"));
+        router.disconnect();
+    }
+
+    public void testFailover() throws Exception
+    {
+        TestRouter router = createRouter(1, 1);
+        router.connect();
+
+        FakeTransport.failing_.put("a", Boolean.TRUE);
+        for (int i = 0; i < 200; i++)
+        {
+            assertTrue(router.send(msg_, dest_, null).startsWith("b"));
+        }
+
+        assertEquals(200, FakeTransport.getSent("b"));
+        assertTrue(router.getErrorRate("a") > 0.9);
+        assertEquals(0.0, router.getErrorRate("b"), 0.0);
+        assertTrue(router.getEffectiveWeight("a") < 0.05);
+        router.disconnect();
+    }
+
+    public void testDegradedRouteRecovers() throws Exception
+    {
+        TestRouter router = createRouter(1, 1);
+        router.connect();
+
+        FakeTransport.failing_.put("a", Boolean.TRUE);
+        for (int i = 0; i < 100; i++)
+        {
+            router.send(msg_, dest_, null);
+        }
+        int degradedShare = FakeTransport.getSent("a");
+        assertEquals(0, degradedShare);
+
+        // Old errors lose their weight, the route is probed and comes back
+        FakeTransport.failing_.remove("a");
+        router.now_ += 10000;
+        for (int i = 0; i < 300; i++)
+        {
+            router.send(msg_, dest_, null);
+        }
+
+        assertTrue(router.getErrorRate("a") < 0.01);
+        assertTrue(FakeTransport.getSent("a") > 100);
+        router.disconnect();
+    }
+
+    public void testRouteDownAtConnect() throws Exception
+    {
+        FakeTransport.failing_.put("b", Boolean.TRUE);
+        TestRouter router = createRouter(1, 1);
+        router.connect();
+        assertEquals(1.0, router.getErrorRate("b"), 0.0);
+
+        // Connected again when chosen
+        FakeTransport.failing_.remove("b");
+        router.now_ += 100000;
+        for (int i = 0; i < 200; i++)
+        {
+            router.send(msg_, dest_, null);
+        }
+        assertTrue(FakeTransport.getSent("b") > 0);
+        router.disconnect();
+    }
+
+    public void testAllRoutesFail() throws Exception
+    {
+        TestRouter router = createRouter(1, 1);
+        router.connect();
+
+        FakeTransport.failing_.put("a", Boolean.TRUE);
+        FakeTransport.failing_.put("b", Boolean.TRUE);
+        try
+        {
+            router.send(msg_, dest_, null);
+            fail("Expected IOException");
+        }
+        catch (IOException ex)
+        {
+            // Expected
+        }
+
+        try
+        {
+            router.ping();
+            fail("Expected IOException");
+        }
+        catch (IOException ex)
+        {
+            // Expected
+        }
+    }
+
+    public void testMessageFailureIsNotRouteError() throws Exception
+    {
+        TestRouter router = createRouter(1, 1);
+        router.connect();
+
+        try
+        {
+            router.send(msg_, new SmsAddress("bad"), null);
+            fail("Expected SmsException");
+        }
+        catch (SmsException ex)
+        {
+            // Expected
+        }
+
+        assertEquals(0.0, router.getErrorRate("a"), 0.0);
+        assertEquals(0.0, router.getErrorRate("b"), 0.0);
+    }
+
+    public void testRejectionIsRouteError() throws Exception
+    {
+        TestRouter router = createRouter(1, 1);
+        router.connect();
+
+        FakeTransport.rejecting_.put("a", Integer.valueOf(0));
+        for (int i = 0; i < 200; i++)
+        {
+            assertTrue(router.send(msg_, dest_, null).startsWith("b"));
+        }
+
+        assertEquals(200, FakeTransport.getSent("b"));
+        assertTrue(router.getErrorRate("a") > 0.9);
+        assertTrue(router.getEffectiveWeight("a") < 0.05);
+        router.disconnect();
+    }
+
+    public void testNoFailoverAfterAcceptedSegments() throws Exception
+    {
+        TestRouter router = createRouter(1, 1);
+        router.connect();
+
+        FakeTransport.rejecting_.put("a", Integer.valueOf(1));
+        FakeTransport.rejecting_.put("b", Integer.valueOf(1));
+        try
+        {
+            router.send(msg_, dest_, null);
+            fail("Expected SmsRejectedException");
+        }
+        catch (SmsRejectedException ex)
+        {
+            assertEquals(1, ex.getAcceptedSegments());
+            assertEquals("02", ex.getErrorCode());
+        }
+
+        // Only one route got the first segment
+        assertEquals(1, FakeTransport.getSent("a") + FakeTransport.getSent("b"));
+        assertEquals(1.0, router.getErrorRate("a") + router.getErrorRate("b"), 0.0);
+        router.disconnect();
+    }
+
+    public void testPrefixTable() throws Exception
+    {
+        TestRouter router = createRouter(100, 1);
+        router.setPrefixTable(SmsPrefixTable.load(new StringReader("4673|b|240|7\n46|a\n")));
+        router.connect();
+
+        for (int i = 0; i < 50; i++)
+        {
+            assertTrue(router.send(msg_, new SmsAddress("46731234567"), null).startsWith("b"));
+        }
+        assertEquals(50, FakeTransport.getSent("b"));
+
+        // Fails over to the other routes
+        FakeTransport.failing_.put("b", Boolean.TRUE);
+        assertTrue(router.send(msg_, new SmsAddress("46731234567"), null).startsWith("a"));
+
+        // Replaced while in use
+        router.setPrefixTable(null);
+        assertNull(router.getPrefixTable());
+
+        try
+        {
+            router.setPrefixTable(SmsPrefixTable.load(new StringReader("46|c\n")));
+            fail("Expected SmsException");
+        }
+        catch (SmsException ex)
+        {
+            // Expected
+        }
+        router.disconnect();
+    }
+
+    public void testThrottleIsPerRoute() throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty("smsj.throttle.tps", "100");
+        props.setProperty("smsj.throttle.burst", "10");
+        props.setProperty("fake.name", "default");
+        props.setProperty("smsj.router.route.a.smsj.throttle.tps", "5");
+
+        Properties routeA = SmsRoutingTransport.getRouteProperties(props, "smsj.router.route.a.");
+        assertEquals("5", routeA.getProperty("smsj.throttle.tps"));
+        assertNull(routeA.getProperty("smsj.throttle.burst"));
+        assertEquals("default", routeA.getProperty("fake.name"));
+
+        // The general limit would be multiplied by the number of routes
+        Properties routeB = SmsRoutingTransport.getRouteProperties(props, "smsj.router.route.b.");
+        assertNull(routeB.getProperty("smsj.throttle.tps"));
+        assertNull(routeB.getProperty("smsj.router.route.a.smsj.throttle.tps"));
+    }
+
+    public void testMissingConfig() throws Exception
+    {
+        Properties props = new Properties();
+        try
+        {
+            new SmsRoutingTransport().init(props);
+            fail("Expected SmsException");
+        }
+        catch (SmsException ex)
+        {
+            // Expected
+        }
+
+        props.setProperty("smsj.router.routes", "a");
+        try
+        {
+            new SmsRoutingTransport().init(props);
+            fail("Expected SmsException");
+        }
+        catch (SmsException ex)
+        {
+            // Expected
+        }
+    }
+}
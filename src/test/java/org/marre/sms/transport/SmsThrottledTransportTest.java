@@ -0,0 +1,114 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsMessage;
+import org.marre.sms.SmsTextMessage;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsThrottledTransportTest extends TestCase
+{
+    /**
+     * Created by the wrapper through SmsTransportManager.
+     */
+    public static class NullTransport implements SmsTransport
+    {
+        static Properties props_;
+        static int sent_;
+
+        public void init(Properties props)
+        {
+            props_ = props;
+        }
+
+        public void connect()
+        {
+        }
+
+        public String send(SmsMessage msg, SmsAddress destination, SmsAddress sender)
+        {
+            sent_++;
+            return null;
+        }
+
+        public void ping()
+        {
+        }
+
+        public void disconnect()
+        {
+        }
+    }
+
+    public void testCountsSegments() throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty("smsj.throttle.transport", NullTransport.class.getName());
+        props.setProperty("smsj.throttle.tps", "1");
+        props.setProperty("smsj.throttle.burst", "100");
+        props.setProperty("smsj.other", "x");
+
+        SmsThrottledTransport transport = (SmsThrottledTransport) SmsTransportManager.getTransport(
+                SmsThrottledTransport.class.getName(), props);
+        assertTrue(transport.getTransport() instanceof NullTransport);
+        assertEquals("x", NullTransport.props_.getProperty("smsj.other"));
+        assertNull(NullTransport.props_.getProperty("smsj.throttle.tps"));
+
+        char[] text = new char[400];
+        Arrays.fill(text, 'x');
+        SmsAddress dest = new SmsAddress("46701234567");
+        NullTransport.sent_ = 0;
+
+        transport.connect();
+        transport.send(new SmsTextMessage("Hello"), dest, null);
+        transport.send(new SmsTextMessage(new String(text)), dest, null);
+        transport.disconnect();
+
+        // 400 GSM chars are 3 segments, the bucket barely refills at 1 TPS
+        assertEquals(4, transport.getRateLimiter().getAcquired());
+        assertEquals(2, NullTransport.sent_);
+        assertEquals(0.04, transport.getRateLimiter().getUtilization(), 0.01);
+    }
+}
@@ -0,0 +1,471 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsException;
+import org.marre.sms.SmsMessage;
+import org.marre.sms.SmsTextMessage;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class SmsTransportPoolTest extends TestCase
+{
+    /**
+     * Created by the pool through SmsTransportManager.
+     */
+    public static class FakeTransport implements SmsTransport
+    {
+        static final AtomicInteger connects_ = new AtomicInteger();
+        static final AtomicInteger failConnects_ = new AtomicInteger();
+        static final AtomicInteger sent_ = new AtomicInteger();
+        static final List<FakeTransport> instances_ = Collections.synchronizedList(new ArrayList<FakeTransport>());
+        static volatile boolean overlap_;
+        static volatile Properties props_;
+        static volatile CountDownLatch connecting_;
+        static volatile CountDownLatch holdConnect_;
+
+        volatile boolean broken_;
+        volatile boolean failSend_;
+        volatile boolean disconnected_;
+        private final AtomicInteger inUse_ = new AtomicInteger();
+
+        static void reset()
+        {
+            connects_.set(0);
+            failConnects_.set(0);
+            sent_.set(0);
+            instances_.clear();
+            overlap_ = false;
+            connecting_ = null;
+            holdConnect_ = null;
+        }
+
+        public void init(Properties props)
+        {
+            props_ = props;
+        }
+
+        public void connect() throws IOException
+        {
+            CountDownLatch holdConnect = holdConnect_;
+            if (holdConnect != null)
+            {
+                // Like a slow login that doesn't notice interrupts
+                connecting_.countDown();
+                boolean interrupted = false;
+                while (holdConnect.getCount() > 0)
+                {
+                    try
+                    {
+                        holdConnect.await();
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failConnects_.getAndDecrement() > 0)
+            {
+                throw new IOException("connect failed");
+            }
+            connects_.incrementAndGet();
+            instances_.add(this);
+        }
+
+        public String send(SmsMessage msg, SmsAddress destination, SmsAddress sender)
+            throws SmsException, IOException
+        {
+            if (inUse_.incrementAndGet() > 1)
+            {
+                overlap_ = true;
+            }
+            try
+            {
+                if (broken_ || failSend_)
+                {
+                    throw new IOException("send failed");
+                }
+                if ("bad".equals(destination.getAddress()))
+                {
+                    throw new SmsException("bad message");
+                }
+                Thread.yield();
+                return "id" + sent_.incrementAndGet();
+            }
+            finally
+            {
+                inUse_.decrementAndGet();
+            }
+        }
+
+        public void ping() throws IOException
+        {
+            if (broken_)
+            {
+                throw new IOException("ping failed");
+            }
+        }
+
+        public void disconnect()
+        {
+            disconnected_ = true;
+        }
+    }
+
+    private final SmsMessage msg_ = new SmsTextMessage("Hello");
+    private SmsAddress dest_;
+
+    protected void setUp() throws SmsException
+    {
+        FakeTransport.reset();
+        dest_ = new SmsAddress("46701234567");
+    }
+
+    private static SmsTransportPool createPool(int size, int validationInterval) throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty("smsj.pool.transport", FakeTransport.class.getName());
+        props.setProperty("smsj.pool.size", String.valueOf(size));
+        props.setProperty("smsj.pool.validationinterval", String.valueOf(validationInterval));
+        props.setProperty("smsj.pool.retryinterval", "10");
+        props.setProperty("smsj.pool.borrowtimeout", "5000");
+        return (SmsTransportPool) SmsTransportManager.getTransport(SmsTransportPool.class.getName(), props);
+    }
+
+    private static void waitForIdle(SmsTransportPool pool, int count) throws InterruptedException
+    {
+        for (int i = 0; i < 500 && pool.getIdleCount() < count; i++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(count, pool.getIdleCount());
+    }
+
+    public void testThrottleIsSharedByThePool() throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty("smsj.pool.transport", FakeTransport.class.getName());
+        props.setProperty("smsj.pool.size", "4");
+        props.setProperty("smsj.throttle.tps", "100");
+        props.setProperty("smsj.throttle.burst", "1");
+        SmsTransportPool pool = (SmsTransportPool) SmsTransportManager.getTransport(
+                SmsTransportPool.class.getName(), props);
+        pool.connect();
+
+        // The pooled transports must not throttle by themselves
+        assertNull(FakeTransport.props_.getProperty("smsj.throttle.tps"));
+        assertEquals("4", FakeTransport.props_.getProperty("smsj.pool.size"));
+
+        long start = System.nanoTime();
+        List<Future<String[]>> futures = new ArrayList<Future<String[]>>();
+        for (int i = 0; i < 21; i++)
+        {
+            futures.add(pool.sendAsync(msg_, dest_, null));
+        }
+        for (Future<String[]> future : futures)
+        {
+            future.get();
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        pool.disconnect();
+
+        // 100 TPS for the 4 connections together, not per connection
+        assertEquals(21, pool.getRateLimiter().getAcquired());
+        assertTrue("Sent 21 SMS in " + elapsed + " ms", elapsed >= 190);
+    }
+
+    public void testPreconnect() throws Exception
+    {
+        SmsTransportPool pool = createPool(3, 30000);
+        pool.connect();
+
+        assertEquals(3, FakeTransport.connects_.get());
+        assertEquals(3, pool.getIdleCount());
+        assertEquals(0, pool.getActiveCount());
+
+        pool.disconnect();
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    public void testConcurrentSend() throws Exception
+    {
+        final SmsTransportPool pool = createPool(2, 30000);
+        pool.connect();
+
+        Thread[] threads = new Thread[4];
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        for (int i = 0; i < threads.length; i++)
+        {
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for (int j = 0; j < 50; j++)
+                        {
+                            pool.send(msg_, dest_, null);
+                        }
+                    }
+                    catch (Throwable ex)
+                    {
+                        failures.add(ex);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        List<Future<String[]>> futures = new ArrayList<Future<String[]>>();
+        for (int i = 0; i < 50; i++)
+        {
+            futures.add(pool.sendAsync(msg_, dest_, null));
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        for (Future<String[]> future : futures)
+        {
+            assertEquals(1, future.get().length);
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertFalse("A transport was used by two threads", FakeTransport.overlap_);
+        assertEquals(250, FakeTransport.sent_.get());
+        assertEquals(2, FakeTransport.connects_.get());
+        pool.disconnect();
+    }
+
+    public void testBrokenTransportIsReplaced() throws Exception
+    {
+        // Validate on every borrow
+        SmsTransportPool pool = createPool(1, 0);
+        pool.connect();
+
+        FakeTransport.instances_.get(0).broken_ = true;
+        assertEquals("id1", pool.send(msg_, dest_, null));
+        assertEquals(2, FakeTransport.connects_.get());
+        pool.disconnect();
+    }
+
+    public void testBackgroundValidation() throws Exception
+    {
+        SmsTransportPool pool = createPool(2, 20);
+        pool.connect();
+
+        FakeTransport.instances_.get(0).broken_ = true;
+        for (int i = 0; i < 500 && FakeTransport.connects_.get() < 3; i++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(3, FakeTransport.connects_.get());
+        waitForIdle(pool, 2);
+        pool.disconnect();
+    }
+
+    public void testSendFailureInvalidates() throws Exception
+    {
+        SmsTransportPool pool = createPool(1, 30000);
+        pool.connect();
+
+        FakeTransport.instances_.get(0).failSend_ = true;
+        try
+        {
+            pool.send(msg_, dest_, null);
+            fail("Expected IOException");
+        }
+        catch (IOException ex)
+        {
+            // Expected
+        }
+
+        waitForIdle(pool, 1);
+        assertEquals(2, FakeTransport.connects_.get());
+        assertEquals("id1", pool.send(msg_, dest_, null));
+        pool.disconnect();
+    }
+
+    public void testDisconnectWhileReplacing() throws Exception
+    {
+        final SmsTransportPool pool = createPool(1, 30000);
+        pool.connect();
+
+        FakeTransport.connecting_ = new CountDownLatch(1);
+        FakeTransport.holdConnect_ = new CountDownLatch(1);
+        FakeTransport.instances_.get(0).failSend_ = true;
+        try
+        {
+            pool.send(msg_, dest_, null);
+            fail("Expected IOException");
+        }
+        catch (IOException ex)
+        {
+            // Expected
+        }
+        assertTrue(FakeTransport.connecting_.await(5, TimeUnit.SECONDS));
+
+        Thread closer = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    pool.disconnect();
+                }
+                catch (Exception ex)
+                {
+                    throw new RuntimeException(ex);
+                }
+            }
+        };
+        closer.start();
+
+        // disconnect() waits for the replacement
+        closer.join(100);
+        assertTrue(closer.isAlive());
+
+        FakeTransport.holdConnect_.countDown();
+        closer.join(5000);
+        assertFalse(closer.isAlive());
+
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(2, FakeTransport.instances_.size());
+        assertTrue(FakeTransport.instances_.get(1).disconnected_);
+    }
+
+    public void testMessageFailureKeepsTransport() throws Exception
+    {
+        SmsTransportPool pool = createPool(1, 30000);
+        pool.connect();
+
+        try
+        {
+            pool.send(msg_, new SmsAddress("bad"), null);
+            fail("Expected SmsException");
+        }
+        catch (SmsException ex)
+        {
+            // Expected
+        }
+
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(1, FakeTransport.connects_.get());
+        pool.disconnect();
+    }
+
+    public void testConnectFailureIsRetried() throws Exception
+    {
+        FakeTransport.failConnects_.set(1);
+        SmsTransportPool pool = createPool(2, 30000);
+        pool.connect();
+
+        waitForIdle(pool, 2);
+        assertEquals(2, FakeTransport.connects_.get());
+        pool.disconnect();
+    }
+
+    public void testAllConnectsFail() throws Exception
+    {
+        FakeTransport.failConnects_.set(Integer.MAX_VALUE);
+        SmsTransportPool pool = createPool(2, 30000);
+        try
+        {
+            pool.connect();
+            fail("Expected SmsException");
+        }
+        catch (SmsException ex)
+        {
+            // Expected
+        }
+    }
+
+    public void testBorrow() throws Exception
+    {
+        SmsTransportPool pool = createPool(1, 30000);
+        pool.connect();
+
+        SmsTransport transport = pool.borrow();
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(1, pool.getActiveCount());
+
+        pool.release(transport);
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(0, pool.getActiveCount());
+
+        try
+        {
+            pool.release(transport);
+            fail("Expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex)
+        {
+            // Expected
+        }
+        pool.disconnect();
+
+        try
+        {
+            pool.borrow();
+            fail("Expected SmsException");
+        }
+        catch (SmsException ex)
+        {
+            // Expected
+        }
+    }
+}
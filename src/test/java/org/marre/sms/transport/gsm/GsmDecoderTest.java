@@ -0,0 +1,206 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport.gsm;
+
+import java.nio.ByteBuffer;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+import org.marre.sms.*;
+import org.marre.util.StringUtil;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class GsmDecoderTest extends TestCase
+{
+    private static long utc(int year, int month, int day, int hour, int minute, int second)
+    {
+        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        cal.clear();
+        cal.set(year, month - 1, day, hour, minute, second);
+        return cal.getTimeInMillis();
+    }
+
+    public void testDeliver() throws SmsException
+    {
+        ByteBuffer buf = ByteBuffer.wrap(StringUtil.hexStringToBytes(
+                "07911326040000F0040B911346610089F60000208062917314800CC8F71D14969741F977FD07"));
+
+        SmsAddress sca = GsmDecoder.readServiceCentreAddress(buf);
+        assertEquals("31624000000", sca.getAddress());
+        assertEquals(SmsTon.INTERNATIONAL, sca.getTypeOfNumber());
+
+        SmsDeliverPdu pdu = (SmsDeliverPdu) GsmDecoder.decodePdu(buf);
+        assertFalse(buf.hasRemaining());
+        assertEquals("31641600986", pdu.getOriginator().getAddress());
+        assertEquals(SmsTon.INTERNATIONAL, pdu.getOriginator().getTypeOfNumber());
+        assertEquals(SmsNpi.ISDN_TELEPHONE, pdu.getOriginator().getNumberingPlanIdentification());
+        assertEquals(0, pdu.getProtocolId());
+        assertFalse(pdu.hasMoreMessagesToSend());
+        assertFalse(pdu.isStatusReportIndicated());
+
+        // 2002-08-26 19:37:41 +02:00
+        assertEquals(utc(2002, 8, 26, 17, 37, 41), pdu.getServiceCentreTimestamp());
+
+        assertEquals(SmsAlphabet.GSM, pdu.getDcs().getAlphabet());
+        assertEquals(12, pdu.getUserData().getLength());
+        assertEquals("How are you?", pdu.getText());
+    }
+
+    public void testNegativeTimeZone() throws SmsException
+    {
+        // 2010-01-02 03:04:05 -04:30
+        SmsDeliverPdu pdu = (SmsDeliverPdu) GsmDecoder.decodePdu(StringUtil.hexStringToBytes(
+                "0003C921F30000011020304050890131"));
+        assertEquals(utc(2010, 1, 2, 7, 34, 5), pdu.getServiceCentreTimestamp());
+        assertEquals("123", pdu.getOriginator().getAddress());
+        assertEquals("1", pdu.getText());
+    }
+
+    public void testConcatGsm() throws SmsException
+    {
+        // UDH 05 00 03 01 02 02, one fill bit, then "abc"
+        byte[] ud = new byte[9];
+        ud[0] = 0x05;
+        ud[1] = 0x00;
+        ud[2] = 0x03;
+        ud[3] = 0x01;
+        ud[4] = 0x02;
+        ud[5] = 0x02;
+        SeptetCodec.encode("abc", ud, 49);
+
+        byte[] data = StringUtil.hexStringToBytes("4403C921F3000001102003305000" + "0A"
+                + StringUtil.bytesToHexString(ud));
+
+        SmsDeliverPdu pdu = (SmsDeliverPdu) GsmDecoder.decodePdu(data);
+        assertEquals(1, pdu.getUdhElements().length);
+
+        SmsUdhElement concat = pdu.getUdhElement(SmsUdhIei.CONCATENATED_8BIT);
+        assertNotNull(concat);
+        assertEquals("010202", StringUtil.bytesToHexString(concat.getUdhIeiData()));
+        assertEquals(3, pdu.getUserData().getLength());
+        assertEquals("abc", pdu.getText());
+    }
+
+    public void testNationalLanguageShift() throws SmsException
+    {
+        String text = "\u015f\u011f";
+        int nSeptets = SmsPduUtil.getSeptetCount(text, SmsNationalLanguage.TURKISH, SmsNationalLanguage.DEFAULT);
+
+        // UDH 03 25 01 01, locking shift to turkish, three fill bits
+        byte[] ud = new byte[SeptetCodec.getOctetCount(nSeptets + 5, 0)];
+        ud[0] = 0x03;
+        ud[1] = 0x25;
+        ud[2] = 0x01;
+        ud[3] = 0x01;
+        SeptetCodec.encode(text, ud, 35, SmsNationalLanguage.TURKISH, SmsNationalLanguage.DEFAULT);
+
+        byte[] data = StringUtil.hexStringToBytes("4403C921F3000001102003305000"
+                + StringUtil.byteToHexString((byte) (nSeptets + 5)) + StringUtil.bytesToHexString(ud));
+
+        SmsPdu pdu = GsmDecoder.decodePdu(data);
+        assertEquals(text, pdu.getText());
+    }
+
+    public void testUcs2AlphanumericOriginator() throws SmsException
+    {
+        byte[] alpha = new byte[4];
+        SeptetCodec.encode("Test", alpha, 0);
+
+        byte[] data = StringUtil.hexStringToBytes("4407D0" + StringUtil.bytesToHexString(alpha)
+                + "0008011020033050000A" + "0500032A0201" + "00480069");
+
+        SmsDeliverPdu pdu = (SmsDeliverPdu) GsmDecoder.decodePdu(data, 0, data.length);
+        assertTrue(pdu.getOriginator().isAlphanumeric());
+        assertEquals("Test", pdu.getOriginator().getAddress());
+        assertEquals(SmsAlphabet.UCS2, pdu.getDcs().getAlphabet());
+        assertEquals("2A0201", StringUtil.bytesToHexString(
+                pdu.getUdhElement(SmsUdhIei.CONCATENATED_8BIT).getUdhIeiData()));
+        assertEquals("Hi", pdu.getText());
+    }
+
+    public void testStatusReport() throws SmsException
+    {
+        byte[] data = StringUtil.hexStringToBytes("06050B911346610089F6"
+                + "20806291731480" + "20806291831480" + "00");
+
+        SmsStatusReportPdu pdu = (SmsStatusReportPdu) GsmDecoder.decodePdu(data);
+        assertEquals(5, pdu.getMessageReference());
+        assertEquals("31641600986", pdu.getRecipient().getAddress());
+        assertEquals(utc(2002, 8, 26, 17, 37, 41), pdu.getServiceCentreTimestamp());
+        assertEquals(utc(2002, 8, 26, 17, 38, 41), pdu.getDischargeTime());
+        assertEquals(0, pdu.getStatus());
+        assertTrue(pdu.isDelivered());
+        assertEquals(0, pdu.getUserData().getLength());
+
+        // With TP-PI, TP-PID and TP-DCS
+        data = StringUtil.hexStringToBytes("06050B911346610089F6"
+                + "20806291731480" + "20806291831480" + "45" + "03" + "7F" + "08");
+        pdu = (SmsStatusReportPdu) GsmDecoder.decodePdu(data);
+        assertEquals(0x45, pdu.getStatus());
+        assertFalse(pdu.isDelivered());
+        assertEquals(0x7F, pdu.getProtocolId());
+        assertEquals(SmsAlphabet.UCS2, pdu.getDcs().getAlphabet());
+    }
+
+    public void testInvalid()
+    {
+        try
+        {
+            // SMS-SUBMIT
+            GsmDecoder.decodePdu(StringUtil.hexStringToBytes("0100039121F30000"));
+            fail("Expected SmsException");
+        }
+        catch (SmsException ex)
+        {
+            // Expected
+        }
+
+        try
+        {
+            GsmDecoder.decodePdu(StringUtil.hexStringToBytes("040B911346610089F60000208062"));
+            fail("Expected SmsException");
+        }
+        catch (SmsException ex)
+        {
+            // Expected
+        }
+    }
+}
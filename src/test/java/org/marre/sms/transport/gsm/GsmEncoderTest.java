@@ -34,6 +34,8 @@
  * ***** END LICENSE BLOCK ***** */
 package org.marre.sms.transport.gsm;
 
+import java.util.Arrays;
+
 import junit.framework.TestCase;
 
 import org.marre.sms.*;
@@ -306,4 +308,64 @@ public class GsmEncoderTest extends TestCase
         assertEquals("0100039121F3000800",
                      StringUtil.bytesToHexString(data));        
     }    
+
+    public void testUserDataView() throws SmsException
+    {
+        char[] text = new char[300];
+        Arrays.fill(text, 'x');
+        SmsMessage msg = new SmsTextMessage(new String(text), SmsAlphabet.LATIN1, SmsMsgClass.CLASS_UNKNOWN);
+        SmsPdu[] smsPdus = msg.getPdus();
+        assertEquals(3, smsPdus.length);
+
+        // All parts are views of the same array
+        SmsUserData first = smsPdus[0].getUserData();
+        SmsUserData second = smsPdus[1].getUserData();
+        assertSame(first.getBuffer(), second.getBuffer());
+        assertEquals(0, first.getOffset());
+        assertEquals(134, second.getOffset());
+        assertEquals(134, second.getData().length);
+
+        byte[] data = GsmEncoder.encodePdu(smsPdus[1], new SmsAddress("123"), new SmsAddress("456"));
+        assertEquals(134 + 6, data[8] & 0xff);
+        assertEquals('x', data[data.length - 1]);
+
+        // Septets at an octet offset are encoded like a copy of them
+        SmsDcs dcs = SmsDcs.getGeneralDataCodingDcs(SmsAlphabet.GSM, SmsMsgClass.CLASS_UNKNOWN);
+        byte[] septets = SmsPduUtil.getSeptets("0123456789abcdef");
+        SmsPdu view = new SmsPdu(null, new SmsUserData(septets, 7, 8, dcs));
+        SmsPdu copy = new SmsPdu(null, new SmsUserData(Arrays.copyOfRange(septets, 7, 14), 8, dcs));
+        assertEquals(StringUtil.bytesToHexString(GsmEncoder.encodePdu(copy, new SmsAddress("123"), null)),
+                StringUtil.bytesToHexString(GsmEncoder.encodePdu(view, new SmsAddress("123"), null)));
+        assertEquals("89abcdef", SmsPduUtil.readSeptets(septets, 7, 8));
+    }
+
+    public void testTemplate() throws SmsException
+    {
+        char[] text = new char[300];
+        Arrays.fill(text, 'x');
+        SmsConcatMessage msg = new SmsTextMessage(new String(text));
+        SmsAddress[] dests = {new SmsAddress("123"), new SmsAddress("+46701234567")};
+        int[] refs = {0x12, SmsConcatRefAllocator.REF_16BIT | 0x1234};
+
+        for (int ref : refs)
+        {
+            SmsPdu[] smsPdus = msg.getPdusWithRef(ref);
+            GsmPduTemplate[] templates = GsmPduTemplate.create(msg.getPdusWithRef(ref & SmsConcatRefAllocator.REF_16BIT));
+
+            for (SmsAddress dest : dests)
+            {
+                for (int i = 0; i < smsPdus.length; i++)
+                {
+                    assertEquals(StringUtil.bytesToHexString(GsmEncoder.encodePdu(smsPdus[i], dest, null)),
+                            StringUtil.bytesToHexString(templates[i].encode(dest, ref)));
+                }
+            }
+        }
+
+        // Single SMS, nothing to patch
+        msg = new SmsTextMessage("hello");
+        assertEquals(-1, msg.allocateRef(dests[0]));
+        assertEquals(StringUtil.bytesToHexString(GsmEncoder.encodePdu(msg.getPdus()[0], dests[1], null)),
+                StringUtil.bytesToHexString(new GsmPduTemplate(msg.getPdus()[0]).encode(dests[1], -1)));
+    }
 }
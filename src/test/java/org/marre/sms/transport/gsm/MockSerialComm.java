@@ -38,6 +38,7 @@ public class MockSerialComm implements GsmComm
 {
     private final String[] responses_;
     private int currentResponse_;
+    private final StringBuilder sent_ = new StringBuilder();
     
     public MockSerialComm(String[] responses) {
         responses_ = responses;
@@ -56,7 +57,20 @@ public class MockSerialComm implements GsmComm
 
     public void send(String data)
     {
-        // Empty
+        sent_.append(data);
+    }
+
+    public void send(byte[] data, int offset, int length)
+    {
+        for (int i = offset; i < offset + length; i++)
+        {
+            sent_.append((char) (data[i] & 0xff));
+        }
+    }
+
+    public String getSent()
+    {
+        return sent_.toString();
     }
 
     public String readLine()
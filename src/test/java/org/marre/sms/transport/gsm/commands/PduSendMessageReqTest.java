@@ -36,7 +36,6 @@ package org.marre.sms.transport.gsm.commands;
 
 import junit.framework.TestCase;
 
-import org.marre.sms.transport.gsm.GsmComm;
 import org.marre.sms.transport.gsm.MockSerialComm;
 import org.marre.util.StringUtil;
 
@@ -44,7 +43,7 @@ public class PduSendMessageReqTest extends TestCase
 {
     public void testSuccessfulCMGS() throws Exception
     {
-        GsmComm comm = new MockSerialComm(new String[]{
+        MockSerialComm comm = new MockSerialComm(new String[]{
                 "> ", 
                 "+CMGS: 97",
                 "",
@@ -52,6 +51,20 @@ public class PduSendMessageReqTest extends TestCase
         
         PduSendMessageReq req = new PduSendMessageReq(StringUtil.hexStringToBytes("41000C919333289868390000A0050003B5020140201008040281623010080402814020190C040281402010680603814020100804A2C1402010080402816A30100804028140201B0C040281402010E80603814020100804C2C140201008040281723010080402814031180C0402814020502C060381402010081493C1402010080402C56630100804028140311A0C040281402050AC06038140"));
         
-        req.send(comm);
+        PduSendMessageRsp rsp = req.send(comm);
+        assertEquals("97", rsp.getMessageReference());
+        assertEquals("AT+CMGS=153\r0041000C919333289868390000A0050003B5020140201008040281623010080402814020190C040281402010680603814020100804A2C1402010080402816A30100804028140201B0C040281402010E80603814020100804C2C140201008040281723010080402814031180C0402814020502C060381402010081493C1402010080402C56630100804028140311A0C040281402050AC06038140\032", comm.getSent());
+    }
+
+    public void testMessageReferenceWithTimestamp() throws Exception
+    {
+        MockSerialComm comm = new MockSerialComm(new String[]{
+                "> ",
+                "+CMGS: 12,\"26/10/18,15:54:03+08\"",
+                "",
+                "OK"});
+
+        PduSendMessageReq req = new PduSendMessageReq(StringUtil.hexStringToBytes("0001000B919333289868F30000"));
+        assertEquals("12", req.send(comm).getMessageReference());
     }
 }
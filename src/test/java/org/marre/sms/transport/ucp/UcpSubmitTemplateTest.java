@@ -0,0 +1,100 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport.ucp;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.marre.sms.*;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class UcpSubmitTemplateTest extends TestCase
+{
+    public void testSameAsBuildSubmit() throws Exception
+    {
+        char[] text = new char[300];
+        Arrays.fill(text, 'x');
+        SmsConcatMessage msg = new SmsTextMessage(new String(text), SmsAlphabet.LATIN1, SmsMsgClass.CLASS_UNKNOWN);
+        UcpTransport transport = new UcpTransport();
+        SmsAddress sender = new SmsAddress("4670111111");
+        SmsAddress[] dests = {new SmsAddress("123"), new SmsAddress("46701234567")};
+        int[] refs = {0xAB, SmsConcatRefAllocator.REF_16BIT | 0x1F2E};
+
+        for (int ref : refs)
+        {
+            SmsPdu[] pdus = msg.getPdusWithRef(ref);
+            SmsPdu[] templatePdus = msg.getPdusWithRef(ref & SmsConcatRefAllocator.REF_16BIT);
+
+            for (int i = 0; i < pdus.length; i++)
+            {
+                boolean moreToSend = (i < (pdus.length - 1));
+                UcpSubmitTemplate template = transport.buildSubmitTemplate(templatePdus[i], moreToSend, sender);
+
+                for (SmsAddress dest : dests)
+                {
+                    assertEquals(new String(transport.buildSubmit(pdus[i], moreToSend, dest, sender)),
+                            new String(template.getCommand(dest, ref)));
+                }
+            }
+        }
+    }
+
+    public void testConcatRefNotFound() throws Exception
+    {
+        char[] text = new char[300];
+        Arrays.fill(text, 'x');
+        SmsConcatMessage msg = new SmsTextMessage(new String(text), SmsAlphabet.LATIN1, SmsMsgClass.CLASS_UNKNOWN);
+        byte[] udh = msg.getPdusWithRef(0)[0].getUserDataHeaders();
+
+        // Submit without the UDH
+        UcpSeries50 submit = new UcpSeries50(UcpSeries50.OP_SUBMIT_SHORT_MESSAGE);
+        submit.setField(UcpSeries50.FIELD_MT, "3");
+        submit.setField(UcpSeries50.FIELD_MSG, "78787878");
+        try
+        {
+            new UcpSubmitTemplate(submit, UcpSeries50.FIELD_ADC, udh);
+            fail("Expected SmsException");
+        }
+        catch (SmsException ex)
+        {
+            // Expected
+        }
+    }
+}
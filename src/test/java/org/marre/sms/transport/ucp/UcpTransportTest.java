@@ -0,0 +1,244 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.sms.transport.ucp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.marre.sms.SeptetCodec;
+import org.marre.sms.SmsAddress;
+import org.marre.sms.SmsAlphabet;
+import org.marre.sms.SmsException;
+import org.marre.sms.SmsNationalLanguage;
+import org.marre.sms.SmsPdu;
+import org.marre.sms.SmsTextMessage;
+import org.marre.sms.transport.SmsBroadcastException;
+import org.marre.sms.transport.SmsRejectedException;
+import org.marre.util.StringUtil;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class UcpTransportTest extends TestCase
+{
+    public void testParseSubmitResponse() throws Exception
+    {
+        assertEquals("0612345678:020198103000",
+                UcpTransport.parseSubmitResponse("00/00045/R/51/A//0612345678:020198103000/E2"));
+        assertNull(UcpTransport.parseSubmitResponse("01/00020/R/51/A///9B"));
+
+        String[] bad = {"00/00022/R/51/N/02//05", "00/00019/O/51/A///9B", "00/00010/R/51", "garbage"};
+        for (String response : bad)
+        {
+            try
+            {
+                UcpTransport.parseSubmitResponse(response);
+                fail("Expected SmsException for " + response);
+            }
+            catch (SmsException ex)
+            {
+                // Expected
+            }
+        }
+
+        try
+        {
+            UcpTransport.parseSubmitResponse("00/00022/R/51/N/02//05");
+            fail("Expected SmsRejectedException");
+        }
+        catch (SmsRejectedException ex)
+        {
+            assertEquals("02", ex.getErrorCode());
+            assertEquals(0, ex.getAcceptedSegments());
+        }
+    }
+
+    public void testShiftTableText() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 4; i++)
+        {
+            sb.append("Bug\u00fcn \u0130stanbul'da hava \u00e7ok g\u00fczel. ");
+        }
+        SmsTextMessage msg = new SmsTextMessage(sb.toString());
+        assertEquals(SmsAlphabet.GSM, msg.getDcs().getAlphabet());
+        assertSame(SmsNationalLanguage.TURKISH, msg.getSingleShift());
+
+        SmsPdu[] pdus = msg.getPdus();
+        assertEquals(1, pdus.length);
+
+        // TRN/LEN/O/51/AdC/OAdC/.../MT/NB/TMsg/.../XSer/RES4/RES5/checksum
+        String cmd = new String(new UcpTransport().buildSubmit(pdus[0], false, new SmsAddress("46701234567"),
+                new SmsAddress("4670111111")));
+        String[] fields = cmd.substring(1, cmd.length() - 1).split("/", -1);
+        assertEquals("4", fields[22]);
+        assertEquals(StringUtil.intToString(pdus[0].getUserData().getLength() * 7, 4), fields[23]);
+        int nSeptets = pdus[0].getUserData().getLength();
+        char[] decoded = new char[nSeptets];
+        int nChars = SeptetCodec.decode(StringUtil.hexStringToBytes(fields[24]), 0, nSeptets, decoded, 0,
+                SmsNationalLanguage.DEFAULT, SmsNationalLanguage.TURKISH);
+        assertEquals(sb.toString(), new String(decoded, 0, nChars));
+        // The dcs and the single shift UDH
+        assertEquals("020100" + "010403240101", fields[34]);
+    }
+
+    /**
+     * Acks every submit except to "222", closes the connection after
+     * maxSubmits submits.
+     */
+    private static ServerSocket startSmsc(final int maxSubmits) throws Exception
+    {
+        final ServerSocket server = new ServerSocket(0);
+        Thread thread = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    Socket socket = server.accept();
+                    InputStream is = socket.getInputStream();
+                    OutputStream os = socket.getOutputStream();
+                    for (int n = 0; n < maxSubmits; n++)
+                    {
+                        ByteArrayOutputStream cmd = new ByteArrayOutputStream();
+                        int b;
+                        while ((b = is.read()) != 3)
+                        {
+                            if (b < 0)
+                            {
+                                return;
+                            }
+                            if (b != 2)
+                            {
+                                cmd.write(b);
+                            }
+                        }
+                        String adc = new String(cmd.toByteArray(), "ISO-8859-1").split("/")[4];
+                        String response = "222".equals(adc) ? "01/00022/R/51/N/02//00"
+                                : "01/00045/R/51/A//" + adc + ":180414123456/00";
+                        os.write(("\u0002" + response + "\u0003").getBytes("ISO-8859-1"));
+                        os.flush();
+                    }
+                    socket.close();
+                }
+                catch (Exception ex)
+                {
+                    // The test fails on the client side
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+
+    private static UcpTransport connect(ServerSocket server) throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty("smsj.ucp.ip.host", "127.0.0.1");
+        props.setProperty("smsj.ucp.ip.port", String.valueOf(server.getLocalPort()));
+        UcpTransport transport = new UcpTransport();
+        transport.init(props);
+        transport.connect();
+        return transport;
+    }
+
+    public void testBroadcastContinuesAfterNack() throws Exception
+    {
+        ServerSocket server = startSmsc(Integer.MAX_VALUE);
+        UcpTransport transport = connect(server);
+        SmsAddress[] dests = {new SmsAddress("111"), new SmsAddress("222"), new SmsAddress("333")};
+
+        try
+        {
+            transport.send(new SmsTextMessage("Hello"), dests, new SmsAddress("4670111111"));
+            fail("Expected SmsBroadcastException");
+        }
+        catch (SmsBroadcastException ex)
+        {
+            assertNull(ex.getCause());
+            assertEquals(3, ex.getProcessedCount());
+            assertEquals("111:180414123456", ex.getIds()[0]);
+            assertNull(ex.getIds()[1]);
+            assertTrue(ex.getErrors()[1] instanceof SmsRejectedException);
+            assertEquals("333:180414123456", ex.getIds()[2]);
+            assertTrue(ex.isSent(0));
+            assertFalse(ex.isSent(1));
+            assertTrue(ex.isSent(2));
+        }
+        finally
+        {
+            transport.disconnect();
+            server.close();
+        }
+    }
+
+    public void testBroadcastAbortsOnConnectionFailure() throws Exception
+    {
+        ServerSocket server = startSmsc(2);
+        UcpTransport transport = connect(server);
+        SmsAddress[] dests = {new SmsAddress("111"), new SmsAddress("222"), new SmsAddress("333"),
+                new SmsAddress("444")};
+
+        try
+        {
+            transport.send(new SmsTextMessage("Hello"), dests, new SmsAddress("4670111111"));
+            fail("Expected SmsBroadcastException");
+        }
+        catch (SmsBroadcastException ex)
+        {
+            assertTrue(ex.getCause() instanceof IOException);
+            assertEquals(2, ex.getProcessedCount());
+            assertTrue(ex.isSent(0));
+            assertFalse(ex.isSent(1));
+            assertFalse(ex.isSent(2));
+            assertNull(ex.getIds()[3]);
+        }
+        finally
+        {
+            transport.disconnect();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is "SMS Library for the Java platform".
+ *
+ * The Initial Developer of the Original Code is Markus Eriksson.
+ * Portions created by the Initial Developer are Copyright (C) 2002
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.marre.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+ * 
+ * @author Markus Eriksson
+ * @version $Id$
+ */
+public class HexCodecTest extends TestCase
+{
+    public void testEncode() throws IOException
+    {
+        byte[] data = new byte[600];
+        for (int i = 0; i < data.length; i++)
+        {
+            data[i] = (byte) (i * 7);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < data.length; i++)
+        {
+            String hex = Integer.toHexString(data[i] & 0xff).toUpperCase();
+            sb.append((hex.length() == 1) ? "0" + hex : hex);
+        }
+        String expected = sb.toString();
+
+        assertEquals(expected, StringUtil.bytesToHexString(data));
+        assertEquals(expected.substring(10, 30), StringUtil.bytesToHexString(data, 5, 10));
+        assertEquals("0F", StringUtil.byteToHexString((byte) 0x0f));
+        assertEquals("F0", StringUtil.byteToHexString((byte) 0xf0));
+
+        byte[] ascii = new byte[4 + data.length * 2];
+        assertEquals(ascii.length, HexCodec.encode(data, 0, data.length, ascii, 4));
+        assertEquals(expected, new String(ascii, 4, data.length * 2, "US-ASCII"));
+
+        ByteBuffer buf = ByteBuffer.allocateDirect(data.length * 2);
+        HexCodec.encode(data, 0, data.length, buf);
+        assertFalse(buf.hasRemaining());
+        buf.flip();
+        byte[] direct = new byte[buf.remaining()];
+        buf.get(direct);
+        assertEquals(expected, new String(direct, "US-ASCII"));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        HexCodec.encode(data, 0, data.length, baos);
+        assertEquals(expected, new String(baos.toByteArray(), "US-ASCII"));
+    }
+
+    public void testDecode()
+    {
+        assertEquals("00FFA5", StringUtil.bytesToHexString(StringUtil.hexStringToBytes("00ffA5")));
+
+        byte[] data = new byte[2];
+        assertEquals(2, HexCodec.decode(new byte[] {'1', '2', 'a', 'B'}, 0, 2, data, 0));
+        assertEquals("12AB", StringUtil.bytesToHexString(data));
+
+        try
+        {
+            StringUtil.hexStringToBytes("0G");
+            fail("Expected NumberFormatException");
+        }
+        catch (NumberFormatException ex)
+        {
+            // Expected
+        }
+    }
+}